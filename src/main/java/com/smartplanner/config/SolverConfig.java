@@ -0,0 +1,101 @@
+package com.smartplanner.config;
+
+import com.smartplanner.model.SolveRouter;
+import com.smartplanner.model.SolvedPlanCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+public class SolverConfig {
+
+    public static final String SOLVER_EXECUTOR = "solverExecutor";
+    public static final String SOLVER_FORK_JOIN_POOL = "solverForkJoinPool";
+    public static final String PROGRESS_SCHEDULER = "progressScheduler";
+
+    // 0 means one thread per available processor
+    @Value("${smartplanner.solver.threads:0}")
+    private int threads;
+
+    @Value("${smartplanner.solver.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${smartplanner.solver.cache-capacity:1000}")
+    private int cacheCapacity;
+
+    @Value("${smartplanner.solver.cache-time-to-live-in-minutes:60}")
+    private long cacheTimeToLiveInMinutes;
+
+    // plans with more valid timetables aren't re-scored when only their optimized activity changes, 0 disables it
+    @Value("${smartplanner.solver.valid-timetables-limit:250000}")
+    private long validTimetablesLimit;
+
+    // plans whose exact search is predicted to take longer are only searched for heuristic-time-limit-in-millis
+    @Value("${smartplanner.solver.routing.max-exact-solve-time-in-millis:60000}")
+    private long maxExactSolveTimeInMillis;
+
+    // plans with a larger estimated search space are rejected
+    @Value("${smartplanner.solver.routing.max-candidates:1e15}")
+    private double maxCandidates;
+
+    @Value("${smartplanner.solver.routing.heuristic-time-limit-in-millis:10000}")
+    private long heuristicTimeLimitInMillis;
+
+    // seed of heuristic searches of plans whose exact search would take too long
+    @Value("${smartplanner.solver.routing.heuristic-seed:0}")
+    private long heuristicSeed;
+
+    // throughput assumed until the first searches have been measured
+    @Value("${smartplanner.solver.routing.initial-candidates-per-second:2000000}")
+    private double initialCandidatesPerSecond;
+
+    // runs the search of every plan, so all solves together never use more threads than there are processors
+    @Bean(name = SOLVER_FORK_JOIN_POOL, destroyMethod = "shutdownNow")
+    public ForkJoinPool solverForkJoinPool() {
+        return new ForkJoinPool(getThreads());
+    }
+
+    // runs whole solves outside of request threads, when its queue is full new solves are rejected
+    @Bean(name = SOLVER_EXECUTOR)
+    public ThreadPoolTaskExecutor solverExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(getThreads());
+        executor.setMaxPoolSize(getThreads());
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("solver-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+
+        return executor;
+    }
+
+    // sends progress of running solves to subscribed clients
+    @Bean(name = PROGRESS_SCHEDULER)
+    public ThreadPoolTaskScheduler progressScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("solver-progress-");
+
+        return scheduler;
+    }
+
+    // optimal timetables of recently solved plans, shared by all requests
+    @Bean
+    public SolvedPlanCache solvedPlanCache() {
+        return new SolvedPlanCache(cacheCapacity, cacheTimeToLiveInMinutes * 60 * 1000, validTimetablesLimit);
+    }
+
+    // decides whether a plan is searched exactly, heuristically or not at all
+    @Bean
+    public SolveRouter solveRouter() {
+        return new SolveRouter(maxExactSolveTimeInMillis, maxCandidates, heuristicTimeLimitInMillis, heuristicSeed,
+                initialCandidatesPerSecond);
+    }
+
+    private int getThreads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -2,9 +2,14 @@ package com.smartplanner.controller;
 
 import com.smartplanner.exception.InvalidDataProvidedException;
 import com.smartplanner.exception.ResourceNotFoundException;
+import com.smartplanner.model.SolveBudget;
+import com.smartplanner.model.dto.CommuteLimitPlanDto;
+import com.smartplanner.model.dto.PlanBatchInputDto;
+import com.smartplanner.model.dto.PlanBatchResultDto;
 import com.smartplanner.model.dto.PlanInputDto;
 import com.smartplanner.model.dto.PlanOutputDto;
 import com.smartplanner.model.entity.Plan;
+import com.smartplanner.service.PlanJobService;
 import com.smartplanner.service.PlanService;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,23 +18,32 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @RestController
 @RequestMapping("/api/plans")
 @CrossOrigin(origins = "*", maxAge = 3600)
 public class PlanController {
+    // time left for saving the plan after the search has stopped because of the time limit
+    private static final long RESPONSE_GRACE_PERIOD_IN_MILLIS = 10_000;
 
     private final PlanService planService;
+    private final PlanJobService planJobService;
     private ModelMapper modelMapper;
 
     @Autowired
-    public PlanController(PlanService planService) {
-        this(planService, new ModelMapper());
+    public PlanController(PlanService planService, PlanJobService planJobService) {
+        this(planService, planJobService, new ModelMapper());
     }
 
-    public PlanController(PlanService planService, ModelMapper modelMapper) {
+    public PlanController(PlanService planService, PlanJobService planJobService, ModelMapper modelMapper) {
         this.planService = planService;
+        this.planJobService = planJobService;
         this.modelMapper = modelMapper;
     }
 
@@ -50,15 +64,98 @@ public class PlanController {
 
     @PostMapping()
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
-    public PlanOutputDto createPlan(@RequestBody PlanInputDto planInputDto) {
+    public DeferredResult<PlanOutputDto> createPlan(@RequestBody PlanInputDto planInputDto) {
 
         Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
         String username = ((UserDetails) principal).getUsername();
 
-        try {
-            return planService.generateOptimalPlan(planInputDto, username);
-        } catch (InvalidDataProvidedException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        SolveBudget budget = new SolveBudget(planInputDto.getTimeLimitInMillis(), planInputDto.getCandidateLimit());
+        DeferredResult<PlanOutputDto> result = createDeferredResult(planInputDto.getTimeLimitInMillis(), budget);
+        completeDeferredResult(result, planJobService.generateOptimalPlanAsync(planInputDto, username, budget));
+
+        return result;
+    }
+
+    // the edited plan is searched starting from terms picked in the saved one and saved as a new plan
+    @PostMapping("{id}/reoptimize")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public DeferredResult<PlanOutputDto> reoptimizePlan(@PathVariable(value = "id") int id,
+                                                        @RequestBody PlanInputDto planInputDto) {
+
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        String username = ((UserDetails) principal).getUsername();
+
+        SolveBudget budget = new SolveBudget(planInputDto.getTimeLimitInMillis(), planInputDto.getCandidateLimit());
+        DeferredResult<PlanOutputDto> result = createDeferredResult(planInputDto.getTimeLimitInMillis(), budget);
+        completeDeferredResult(result, planJobService.reoptimizePlanAsync(id, planInputDto, username, budget));
+
+        return result;
+    }
+
+    // plans share lessons and commute matrix, each of them has its own optimized activity and limits of the search
+    @PostMapping("batch")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public DeferredResult<List<PlanBatchResultDto>> createPlans(@RequestBody PlanBatchInputDto planBatchInputDto) {
+
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        String username = ((UserDetails) principal).getUsername();
+
+        SolveBudget budget = new SolveBudget(planBatchInputDto.getTimeLimitInMillis(),
+                planBatchInputDto.getCandidateLimit());
+        DeferredResult<List<PlanBatchResultDto>> result = createDeferredResult(planBatchInputDto.getTimeLimitInMillis(),
+                budget);
+        completeDeferredResult(result, planJobService.generateOptimalPlansAsync(planBatchInputDto, username, budget));
+
+        return result;
+    }
+
+    // optimal plans for every commute limit from 1 to maxCommutesPerDay of the input, found by a single search,
+    // they aren't saved
+    @PostMapping("commute-limits")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public DeferredResult<List<CommuteLimitPlanDto>> createPlansForEveryCommuteLimit(
+            @RequestBody PlanInputDto planInputDto) {
+
+        SolveBudget budget = new SolveBudget(planInputDto.getTimeLimitInMillis(), planInputDto.getCandidateLimit());
+        DeferredResult<List<CommuteLimitPlanDto>> result = createDeferredResult(planInputDto.getTimeLimitInMillis(),
+                budget);
+        completeDeferredResult(result,
+                planJobService.generateOptimalPlansForEveryCommuteLimitAsync(planInputDto, budget));
+
+        return result;
+    }
+
+    // the search runs on the solver pool, so it's stopped when the request completes, times out or fails,
+    // e.g. after the client has disconnected
+    private <T> DeferredResult<T> createDeferredResult(Long timeLimitInMillis, SolveBudget budget) {
+        long timeout = timeLimitInMillis != null && timeLimitInMillis > 0
+                ? timeLimitInMillis + RESPONSE_GRACE_PERIOD_IN_MILLIS : -1L;
+
+        DeferredResult<T> result = new DeferredResult<>(timeout);
+        result.onCompletion(budget::cancel);
+        result.onTimeout(() -> {
+            budget.cancel();
+            result.setErrorResult(
+                    new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Plan couldn't be generated in time"));
+        });
+        result.onError(e -> budget.cancel());
+
+        return result;
+    }
+
+    private <T> void completeDeferredResult(DeferredResult<T> result, CompletableFuture<T> future) {
+        future.whenComplete((value, e) -> {
+            if (e == null) {
+                result.setResult(value);
+                return;
+            }
+
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof InvalidDataProvidedException) {
+                result.setErrorResult(new ResponseStatusException(HttpStatus.BAD_REQUEST, cause.getMessage()));
+            } else {
+                result.setErrorResult(cause);
+            }
+        });
     }
 }
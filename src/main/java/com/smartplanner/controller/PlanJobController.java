@@ -0,0 +1,145 @@
+package com.smartplanner.controller;
+
+import com.smartplanner.config.SolverConfig;
+import com.smartplanner.exception.InvalidDataProvidedException;
+import com.smartplanner.exception.ResourceNotFoundException;
+import com.smartplanner.model.PlanJobStatus;
+import com.smartplanner.model.dto.PlanInputDto;
+import com.smartplanner.model.dto.PlanJobDto;
+import com.smartplanner.model.dto.PlanJobProgressDto;
+import com.smartplanner.model.dto.PlanOutputDto;
+import com.smartplanner.service.PlanJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+
+@RestController
+@RequestMapping("/api/plans/jobs")
+@CrossOrigin(origins = "*", maxAge = 3600)
+public class PlanJobController {
+    // progress is sent at most this often, no matter how fast the solver goes
+    private static final long PROGRESS_INTERVAL_IN_MILLIS = 500;
+
+    private final PlanJobService planJobService;
+    private final TaskScheduler progressScheduler;
+
+    @Autowired
+    public PlanJobController(PlanJobService planJobService,
+                             @Qualifier(SolverConfig.PROGRESS_SCHEDULER) TaskScheduler progressScheduler) {
+        this.planJobService = planJobService;
+        this.progressScheduler = progressScheduler;
+    }
+
+    @PostMapping()
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public PlanJobDto submitPlanJob(@RequestBody PlanInputDto planInputDto) {
+        return planJobService.submitPlanJob(planInputDto, getUsername());
+    }
+
+    @GetMapping("{id}")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public PlanJobDto getPlanJob(@PathVariable(value = "id") String id) {
+        return planJobService.getPlanJob(id, getUsername());
+    }
+
+    @GetMapping("{id}/result")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public PlanOutputDto getPlanJobResult(@PathVariable(value = "id") String id) {
+        try {
+            return planJobService.getPlanJobResult(id, getUsername());
+        } catch (InvalidDataProvidedException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @GetMapping(value = "{id}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public SseEmitter streamPlanJobProgress(@PathVariable(value = "id") String id) {
+        String username = getUsername();
+        // unknown job is reported before the stream is opened
+        planJobService.getPlanJob(id, username);
+
+        SseEmitter emitter = new SseEmitter(-1L);
+        ProgressStream progressStream = new ProgressStream(emitter, id, username);
+        progressStream.start();
+        emitter.onCompletion(progressStream::stop);
+        emitter.onTimeout(progressStream::stop);
+        emitter.onError(e -> progressStream.stop());
+
+        return emitter;
+    }
+
+    @DeleteMapping("{id}")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public PlanJobDto cancelPlanJob(@PathVariable(value = "id") String id) {
+        return planJobService.cancelPlanJob(id, getUsername());
+    }
+
+    /**
+     * Sends "progress" events of a job until it finishes (the last event has its final status) or the client leaves
+     */
+    private class ProgressStream implements Runnable {
+        private final SseEmitter emitter;
+        private final String id;
+        private final String username;
+        private volatile ScheduledFuture<?> sending;
+        private volatile boolean isStopped;
+
+        private ProgressStream(SseEmitter emitter, String id, String username) {
+            this.emitter = emitter;
+            this.id = id;
+            this.username = username;
+        }
+
+        private void start() {
+            sending = progressScheduler.scheduleAtFixedRate(this, PROGRESS_INTERVAL_IN_MILLIS);
+            if (isStopped) {
+                sending.cancel(false);
+            }
+        }
+
+        private void stop() {
+            isStopped = true;
+            if (sending != null) {
+                sending.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (isStopped) {
+                return;
+            }
+
+            try {
+                PlanJobProgressDto progress = planJobService.getPlanJobProgress(id, username);
+                emitter.send(SseEmitter.event().name("progress").data(progress));
+                if (progress.getStatus() == PlanJobStatus.SUCCEEDED || progress.getStatus() == PlanJobStatus.FAILED) {
+                    stop();
+                    emitter.complete();
+                }
+            } catch (IOException | ResourceNotFoundException e) {
+                stop();
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private String getUsername() {
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+
+        return ((UserDetails) principal).getUsername();
+    }
+}
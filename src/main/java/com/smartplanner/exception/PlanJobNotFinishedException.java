@@ -0,0 +1,17 @@
+package com.smartplanner.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@Getter
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class PlanJobNotFinishedException extends RuntimeException {
+
+    private String jobId;
+
+    public PlanJobNotFinishedException(String jobId) {
+        super(String.format("Plan job '%s' hasn't finished yet", jobId));
+        this.jobId = jobId;
+    }
+}
@@ -0,0 +1,12 @@
+package com.smartplanner.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.UNPROCESSABLE_ENTITY)
+public class SearchSpaceTooLargeException extends RuntimeException {
+
+    public SearchSpaceTooLargeException(String message) {
+        super(message);
+    }
+}
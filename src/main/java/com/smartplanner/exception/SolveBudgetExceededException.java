@@ -0,0 +1,12 @@
+package com.smartplanner.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class SolveBudgetExceededException extends RuntimeException {
+
+    public SolveBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.smartplanner.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.TOO_MANY_REQUESTS)
+public class TooManyPlanJobsException extends RuntimeException {
+
+    public TooManyPlanJobsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,815 @@
+package com.smartplanner.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finder of optimal timetable that picks terms one lesson at a time (depth-first branch and bound).
+ *
+ * A partial timetable is dropped as soon as two of its entries overlap or can't be reached in time, and a whole
+ * branch is cut when even the most optimistic score it can still reach doesn't beat the best timetable found so far.
+ * Lessons that have the fewest possible terms (and the most conflicts with other lessons) are picked first.
+ *
+ * The search runs on a fork/join pool. Picks are numbered in mixed radix (like in LessonPicker), with the first lesson
+ * in search order as the most significant digit, and the whole index space is split recursively into ranges that idle
+ * workers can steal. All workers share one SolverIncumbent, so a timetable found by one of them prunes the others.
+ * Timetables with equal score are resolved by the smallest picks in search order, so the result doesn't depend on
+ * scheduling of the workers.
+ *
+ * The search runs on CompiledPlan arrays, terms are identified by their global numbers and only the best timetable is
+ * turned back into entities.
+ *
+ * Terms are checked pairwise with TermConflictIndex of the plan, live terms of every lesson are kept as a bitset.
+ * If the index isn't exact (see TermConflictIndex), complete timetables are also checked by TimetableValidator.
+ * Only terms left by ConsistentTermDomains of the plan are searched, digits of the index space are numbered among them,
+ * and the search doesn't start at all if some lesson has no term left.
+ *
+ * The search can be limited by SolveBudget. When the budget runs out, workers abandon their branches, remembering
+ * the most optimistic score each of them could still reach, and the best timetable found so far is returned together
+ * with an upper bound of the optimal score.
+ *
+ * The incumbent can be seeded with a known timetable (e.g. terms previously chosen for an edited plan), which prunes
+ * the search from the first node without changing its result.
+ *
+ * Progress of the search is reported to SolverProgress, the search space is measured in indexes of the index space.
+ *
+ * The incumbent can also be shared with heuristic searches of the same plan running at the same time (see
+ * PortfolioSolver), so timetables they find prune this search. Since they use the same tie-break keys, the result is
+ * still the same as the one of the search alone.
+ *
+ * Every valid timetable can also be collected into ValidTimetableStore. Branches aren't pruned by score while the
+ * store accepts timetables (only conflicts prune them then), so the store gets all of them unless it gives up.
+ *
+ * A single search can also find the optimal timetable for every commute limit up to the limit of the plan. Validity
+ * doesn't depend on the limit, so settled days are scored for all limits at once, each limit has its own incumbent
+ * and a branch is cut only when it can't beat any of them.
+ *
+ * BranchAndBoundSolver can't be reused, what means that you have to create new object for each search.
+ */
+public class BranchAndBoundSolver {
+    // index space is limited to the leading lessons whose picks fit in 62 bits, the rest is searched inside ranges
+    private static final long MAX_INDEX_SPACE_SIZE = 1L << 62;
+    private static final int MAX_SURPLUS_QUEUED_TASKS = 3;
+
+    private CompiledPlan compiledPlan;
+    private int qntOfLessons;
+    private int daysInCycle;
+    private ForkJoinPool forkJoinPool;
+
+    private TermConflictIndex conflictIndex;
+    private ConsistentTermDomains consistentTermDomains;
+    // term indexes left by ConsistentTermDomains for each lesson, the digit of a lesson is a position in its array
+    private int[][] termIndexesOfDigits;
+
+    private int[] searchOrder;
+    private int[] givenSearchOrder;
+    private int[] depthOfLesson;
+    private int[][] daysSettledAtDepth;
+    private int[] optimisticScoreOfUnsettledDaysAfterDepth;
+    private int optimisticScoreOfDaysWithLessons;
+    private int scoreOfDaysWithoutLessons;
+
+    private int indexedDepth;
+    private long[] placeValues;
+    private long indexSpaceSize;
+
+    private SolverIncumbent incumbent;
+    private SolverIncumbent sharedIncumbent;
+    // incumbent of each commute limit when the search sweeps over commute limits, the last one is the incumbent
+    private SolverIncumbent[] incumbentOfCommuteLimit;
+    private int[] initialPickedTerms;
+    // picks of the initial timetable in search order, once it has been offered
+    private int[] initialPicksInSearchOrder;
+    private ValidTimetableStore validTimetableStore;
+    private SolveBudget budget;
+    private SolverProgress progress;
+    // the most optimistic score of branches abandoned because of the budget
+    private AtomicInteger upperBoundOfAbandonedBranches;
+
+    /**
+     * Creates solver for the compiled plan that runs on the common fork/join pool.
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     */
+    public BranchAndBoundSolver(CompiledPlan compiledPlan) {
+        this(compiledPlan, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates solver for the compiled plan.
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     * @param forkJoinPool pool that runs the search
+     */
+    public BranchAndBoundSolver(CompiledPlan compiledPlan, ForkJoinPool forkJoinPool) {
+        this.compiledPlan = compiledPlan;
+        this.qntOfLessons = compiledPlan.getNumberOfLessons();
+        this.daysInCycle = compiledPlan.getDaysInCycle();
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Sets a timetable that is offered to the incumbent before the search starts. Picks that don't make a valid
+     * timetable are ignored.
+     *
+     * @param pickedTerms term index for each lesson
+     * @return this solver
+     */
+    public BranchAndBoundSolver withInitialTimetable(int[] pickedTerms) {
+        this.initialPickedTerms = pickedTerms;
+        return this;
+    }
+
+    /**
+     * Sets the order in which lessons are picked instead of the one of orderLessonsByConstraints(), e.g. the order of
+     * lessons in the search of a larger plan (see DecomposingSolver), so timetables with equal score are resolved the
+     * same way as there.
+     *
+     * @param searchOrder lesson index for each depth of the search
+     * @return this solver
+     */
+    public BranchAndBoundSolver withSearchOrder(int[] searchOrder) {
+        this.givenSearchOrder = searchOrder;
+        return this;
+    }
+
+    /**
+     * Sets an incumbent shared with other searches of the plan, which offer their timetables to it with picks in search
+     * order of this solver as tie-break keys. It has to keep as many timetables as the search looks for.
+     *
+     * @param incumbent incumbent used instead of a new one
+     * @return this solver
+     */
+    public BranchAndBoundSolver withSharedIncumbent(SolverIncumbent incumbent) {
+        this.sharedIncumbent = incumbent;
+        return this;
+    }
+
+    /**
+     * Sets a store that gets every valid timetable found by the search. The store is completed if the search has
+     * checked the whole search space before it gave up, otherwise it's left incomplete.
+     *
+     * @param validTimetableStore empty store for the lessons of the plan
+     * @return this solver
+     */
+    public BranchAndBoundSolver withValidTimetableStore(ValidTimetableStore validTimetableStore) {
+        this.validTimetableStore = validTimetableStore;
+        return this;
+    }
+
+    /**
+     * Searches for the timetable with the highest amount of time spent on optimized activity.
+     *
+     * @return the best valid timetable with its decision points and score. If there is no valid timetable that allows
+     * to spend any time on optimized activity, returns object with score equal to 0 and every other field set to null
+     */
+    public TimetableWithDecisionPointsAndScore solve() {
+        return solve(SolveBudget.unlimited());
+    }
+
+    /**
+     * Searches for the timetable with the highest amount of time spent on optimized activity within provided budget.
+     *
+     * @param budget limits of the search
+     * @return the best timetable found, like solve(). If the budget ran out before the search has finished,
+     * isProvenOptimal() of the result may be false and getUpperBoundOfMinutes() tells how good the optimal timetable
+     * can be
+     */
+    public TimetableWithDecisionPointsAndScore solve(SolveBudget budget) {
+        return solve(budget, new SolverProgress());
+    }
+
+    /**
+     * Searches for the timetable within provided budget and reports progress of the search.
+     *
+     * @param budget limits of the search
+     * @param progress counters updated while the search is running
+     * @return the same as solve(SolveBudget)
+     */
+    public TimetableWithDecisionPointsAndScore solve(SolveBudget budget, SolverProgress progress) {
+        runSearch(1, budget, progress);
+
+        return toScoredTimetable(compiledPlan, incumbent, incumbent.getBestPickedTerms());
+    }
+
+    /**
+     * Searches for the optimal timetable of every commute limit from 1 to maxCommutesPerDay of the plan at once. It's
+     * a bit slower than a single solve(), but much faster than solving the plan for each limit separately.
+     *
+     * @param budget limits of the search
+     * @param progress counters updated while the search is running, the best score is the one of the highest limit
+     * @return the timetable for commute limit c at index c - 1, the same as solve(SolveBudget) of the plan with that
+     * limit. If the budget ran out, upper bound of the highest limit is given for all of them
+     */
+    public List<TimetableWithDecisionPointsAndScore> solveForEveryCommuteLimit(SolveBudget budget,
+                                                                              SolverProgress progress) {
+        int maxCommutesPerDay = Math.max(compiledPlan.getMaxCommutesPerDay(), 0);
+        incumbentOfCommuteLimit = new SolverIncumbent[maxCommutesPerDay + 1];
+        for (int commutes = 1; commutes < maxCommutesPerDay; ++commutes)
+            incumbentOfCommuteLimit[commutes] = new SolverIncumbent();
+        runSearch(1, budget, progress);
+
+        List<TimetableWithDecisionPointsAndScore> timetables = new ArrayList<TimetableWithDecisionPointsAndScore>();
+        for (int commutes = 1; commutes <= maxCommutesPerDay; ++commutes) {
+            SolverIncumbent incumbentOfLimit = getIncumbentOfCommuteLimit(commutes);
+            CompiledPlan compiledPlanWithLimit = commutes == maxCommutesPerDay ? compiledPlan
+                    : compiledPlan.withOptimizedActivity(commutes, compiledPlan.getOptimizedActivity());
+            timetables.add(toScoredTimetable(compiledPlanWithLimit, incumbentOfLimit,
+                    incumbentOfLimit.getBestPickedTerms()));
+        }
+        return timetables;
+    }
+
+    /**
+     * Searches for several best distinct timetables at once. Branches are pruned against the worst of the timetables
+     * kept so far, so it's only a bit slower than the search for the best one.
+     *
+     * @param numberOfTimetables amount of timetables to find
+     * @param budget limits of the search
+     * @param progress counters updated while the search is running
+     * @return up to numberOfTimetables valid timetables with positive score, the best one first. The outcome of the
+     * search (isProvenOptimal() and getUpperBoundOfMinutes()) is the same for all of them and refers to the best one.
+     * If no timetable has been found, the list contains the single result of solve()
+     */
+    public List<TimetableWithDecisionPointsAndScore> solveForBestTimetables(int numberOfTimetables, SolveBudget budget,
+                                                                           SolverProgress progress) {
+        runSearch(numberOfTimetables, budget, progress);
+
+        List<TimetableWithDecisionPointsAndScore> timetables = new ArrayList<TimetableWithDecisionPointsAndScore>();
+        for (int[] pickedTerms : incumbent.getBestPickedTermsOfAll())
+            timetables.add(toScoredTimetable(compiledPlan, incumbent, pickedTerms));
+        if (timetables.isEmpty())
+            timetables.add(toScoredTimetable(compiledPlan, incumbent, null));
+        return timetables;
+    }
+
+    private void runSearch(int numberOfTimetables, SolveBudget budget, SolverProgress progress) {
+        this.budget = budget;
+        this.progress = progress;
+        incumbent = sharedIncumbent != null ? sharedIncumbent : new SolverIncumbent(numberOfTimetables);
+        if (isSweepingCommuteLimits())
+            incumbentOfCommuteLimit[incumbentOfCommuteLimit.length - 1] = incumbent;
+        upperBoundOfAbandonedBranches = new AtomicInteger();
+
+        consistentTermDomains = compiledPlan.getConsistentTermDomains();
+        if (!consistentTermDomains.isConsistent()) {
+            // there is no valid timetable at all, so the empty store already holds all of them
+            if (validTimetableStore != null)
+                validTimetableStore.complete(
+                        orderLessonsByConstraints(compiledPlan, compiledPlan.getTermConflictIndex()));
+            return;
+        }
+
+        conflictIndex = compiledPlan.getTermConflictIndex();
+        termIndexesOfDigits = new int[qntOfLessons][];
+        for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex)
+            termIndexesOfDigits[lessonIndex] = consistentTermDomains.getTermIndexes(lessonIndex);
+        orderLessonsByConstraints();
+        offerInitialTimetable();
+        planDaySettlement();
+        planIndexSpace();
+        progress.start(indexSpaceSize);
+
+        forkJoinPool.invoke(new SearchRangeTask(0, indexSpaceSize));
+
+        // abandoned branches may have contained valid timetables
+        if (validTimetableStore != null && !budget.isExhausted())
+            validTimetableStore.complete(searchOrder);
+    }
+
+    private boolean isCollectingValidTimetables() {
+        return validTimetableStore != null && validTimetableStore.isAccepting();
+    }
+
+    private boolean isSweepingCommuteLimits() {
+        return incumbentOfCommuteLimit != null;
+    }
+
+    private SolverIncumbent getIncumbentOfCommuteLimit(int commutes) {
+        return commutes == incumbentOfCommuteLimit.length - 1 ? incumbent : incumbentOfCommuteLimit[commutes];
+    }
+
+    // settled days score the most with the highest commute limit, so its upper bound also bounds the lower limits
+    private TimetableWithDecisionPointsAndScore toScoredTimetable(CompiledPlan compiledPlan, SolverIncumbent incumbent,
+                                                                  int[] pickedTerms) {
+        int bestScore = incumbent.getBestScore();
+        int upperBound = upperBoundOfAbandonedBranches.get();
+        boolean isProvenOptimal = upperBound <= bestScore;
+
+        TimetableWithDecisionPointsAndScore timetable = pickedTerms == null
+                ? new TimetableWithDecisionPointsAndScore(0, null, null)
+                : new OptimalityCalculator(compiledPlan).calculate(compiledPlan.toTimetable(pickedTerms));
+
+        return timetable.withPickedTerms(pickedTerms).withSearchOutcome(isProvenOptimal, Math.max(bestScore, upperBound));
+    }
+
+    private void abandonBranch(int optimisticScore) {
+        upperBoundOfAbandonedBranches.accumulateAndGet(optimisticScore, Math::max);
+    }
+
+    /**
+     * Range [first, end) of the index space. The task drops the whole range if the picks shared by all indexes in it
+     * can't lead to a better timetable, splits it in halves while there are idle workers and searches it otherwise.
+     */
+    private class SearchRangeTask extends RecursiveAction {
+        private final long first;
+        private final long end;
+
+        private SearchRangeTask(long first, long end) {
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            Search search = new Search(first, end - 1);
+            if (!search.pickCommonPrefix()) {
+                progress.report(0, 0, 0, end - first);
+                return;
+            }
+
+            if (budget.isExhausted()) {
+                abandonBranch(search.getOptimisticScore(search.commonPrefixLength, search.scoreOfCommonPrefix));
+                return;
+            }
+
+            if (end - first > 1 && getSurplusQueuedTaskCount() <= MAX_SURPLUS_QUEUED_TASKS) {
+                long middle = first + (end - first) / 2;
+                invokeAll(new SearchRangeTask(first, middle), new SearchRangeTask(middle, end));
+                return;
+            }
+
+            search.searchRange();
+        }
+    }
+
+    /**
+     * State of a depth-first search over range [first, last] of the index space. Owned by a single worker.
+     */
+    private class Search {
+        private final int[] pickedTerms;
+        // picked term indexes in search order, used as a tie-break key
+        private final int[] picksInSearchOrder;
+        // liveTerms - bitset of terms that are still possible, liveTermsBeforeDepth[depth] - its copy from before the pick
+        private final long[] liveTerms;
+        private final long[][] liveTermsBeforeDepth;
+        private final OptimalityCalculator optimalityCalculator;
+        private final TimetableValidator validator;
+        private final int[] entriesOfDay;
+        private final int[] firstDigits;
+        private final int[] lastDigits;
+        // scores of days settled before each depth for every commute limit, only when sweeping over commute limits
+        private final int[][] scoreByCommutesBeforeDepth;
+        private final int[] dayScoreByCommutes;
+        // valid timetables not added to the store yet, packed one after another
+        private final int[] validTimetablesToStore;
+        private int qntOfValidTimetablesToStore;
+        private int commonPrefixLength;
+        private int scoreOfCommonPrefix;
+        private int candidatesSinceBudgetCheck;
+        private final long first;
+        private final long last;
+        // counters not reported to SolverProgress yet
+        private long exploredCandidates;
+        private long prunedCandidates;
+        private long validTimetables;
+        private long coveredIndexes;
+
+        private Search(long first, long last) {
+            pickedTerms = new int[qntOfLessons];
+            picksInSearchOrder = new int[qntOfLessons];
+            liveTerms = consistentTermDomains.getTerms().clone();
+            liveTermsBeforeDepth = new long[qntOfLessons][liveTerms.length];
+            optimalityCalculator = new OptimalityCalculator(compiledPlan);
+            validator = new TimetableValidator(compiledPlan);
+            entriesOfDay = new int[compiledPlan.getNumberOfEntries()];
+            validTimetablesToStore = validTimetableStore != null
+                    ? new int[SolveBudget.CANDIDATES_BETWEEN_CHECKS * qntOfLessons] : null;
+            if (isSweepingCommuteLimits()) {
+                scoreByCommutesBeforeDepth = new int[qntOfLessons + 1][incumbentOfCommuteLimit.length];
+                Arrays.fill(scoreByCommutesBeforeDepth[0], scoreOfDaysWithoutLessons);
+                dayScoreByCommutes = new int[incumbentOfCommuteLimit.length];
+            } else {
+                scoreByCommutesBeforeDepth = null;
+                dayScoreByCommutes = null;
+            }
+
+            this.first = first;
+            this.last = last;
+            firstDigits = toDigits(first);
+            lastDigits = toDigits(last);
+            commonPrefixLength = 0;
+            while (commonPrefixLength < indexedDepth
+                    && firstDigits[commonPrefixLength] == lastDigits[commonPrefixLength])
+                ++commonPrefixLength;
+        }
+
+        /**
+         * Picks terms that are the same for every index of the range.
+         *
+         * @return false if the range can't contain a timetable that would be kept by the incumbent, true else
+         */
+        private boolean pickCommonPrefix() {
+            int score = scoreOfDaysWithoutLessons;
+            for (int depth = 0; depth < commonPrefixLength; ++depth) {
+                int lessonIndex = searchOrder[depth];
+                int termIndex = termIndexesOfDigits[lessonIndex][firstDigits[depth]];
+                if (!TermConflictIndex.contains(liveTerms, compiledPlan.getFirstTermOfLesson(lessonIndex) + termIndex)
+                        || !pick(depth, lessonIndex, termIndex))
+                    return false;
+
+                score += scoreDaysSettledAt(depth);
+                if (!isPromising(depth, score))
+                    return false;
+            }
+
+            scoreOfCommonPrefix = score;
+            return true;
+        }
+
+        private void searchRange() {
+            long firstIndexOfPrefix = 0;
+            for (int depth = 0; depth < commonPrefixLength; ++depth)
+                firstIndexOfPrefix += firstDigits[depth] * placeValues[depth];
+
+            search(commonPrefixLength, scoreOfCommonPrefix, true, true, firstIndexOfPrefix);
+            // a range of a single index has no indexed depth left to count it
+            if (commonPrefixLength == indexedDepth && !budget.isExhausted())
+                ++coveredIndexes;
+            storeValidTimetables();
+            reportProgress();
+        }
+
+        private void storeValidTimetables() {
+            if (qntOfValidTimetablesToStore > 0)
+                validTimetableStore.addAll(validTimetablesToStore, qntOfValidTimetablesToStore);
+            qntOfValidTimetablesToStore = 0;
+        }
+
+        private void reportProgress() {
+            progress.report(exploredCandidates, prunedCandidates, validTimetables, coveredIndexes);
+            exploredCandidates = 0;
+            prunedCandidates = 0;
+            validTimetables = 0;
+            coveredIndexes = 0;
+        }
+
+        /**
+         * Counts indexes of the range that belong to the branch of a term picked at indexed depth
+         */
+        private long countIndexesOfBranch(int depth, long firstIndexOfBranch) {
+            long lastIndexOfBranch = firstIndexOfBranch + placeValues[depth] - 1;
+            return Math.min(lastIndexOfBranch, last) - Math.max(firstIndexOfBranch, first) + 1;
+        }
+
+        private void search(int depth, int scoreOfSettledDays, boolean isOnFirstEdge, boolean isOnLastEdge,
+                            long firstIndexOfBranch) {
+            if (depth == searchOrder.length) {
+                evaluateCompleteTimetable(scoreOfSettledDays);
+                return;
+            }
+
+            if (isBudgetExhausted()) {
+                abandonBranch(getOptimisticScore(depth, scoreOfSettledDays));
+                return;
+            }
+
+            int lessonIndex = searchOrder[depth];
+            int[] termIndexes = termIndexesOfDigits[lessonIndex];
+            int firstDigit = 0;
+            int firstTerm = compiledPlan.getFirstTermOfLesson(lessonIndex);
+            int lastDigit = termIndexes.length - 1;
+            boolean isIndexed = depth < indexedDepth;
+            if (isIndexed && isOnFirstEdge)
+                firstDigit = firstDigits[depth];
+            if (isIndexed && isOnLastEdge)
+                lastDigit = lastDigits[depth];
+
+            for (int digit = firstDigit; digit <= lastDigit; ++digit) {
+                int termIndex = termIndexes[digit];
+                long firstIndexOfChild = isIndexed ? firstIndexOfBranch + digit * placeValues[depth] : 0;
+                ++exploredCandidates;
+                boolean isPruned = true;
+                if (TermConflictIndex.contains(liveTerms, firstTerm + termIndex)) {
+                    if (pick(depth, lessonIndex, termIndex)) {
+                        int score = scoreOfSettledDays + scoreDaysSettledAt(depth);
+                        if (isPromising(depth, score)) {
+                            isPruned = false;
+                            search(depth + 1, score,
+                                    isIndexed && isOnFirstEdge && digit == firstDigits[depth],
+                                    isIndexed && isOnLastEdge && digit == lastDigits[depth],
+                                    firstIndexOfChild);
+                        }
+                    }
+                    restoreTermsRemovedAt(depth);
+                }
+
+                if (budget.isExhausted()) {
+                    abandonBranch(getOptimisticScore(depth, scoreOfSettledDays));
+                    return;
+                }
+
+                if (isPruned)
+                    ++prunedCandidates;
+                // branches of the last indexed depth are covered once they're searched, higher ones by their children
+                if (isIndexed && (isPruned || depth == indexedDepth - 1))
+                    coveredIndexes += countIndexesOfBranch(depth, firstIndexOfChild);
+            }
+        }
+
+        private boolean isBudgetExhausted() {
+            if (++candidatesSinceBudgetCheck < SolveBudget.CANDIDATES_BETWEEN_CHECKS)
+                return budget.isExhausted();
+
+            candidatesSinceBudgetCheck = 0;
+            reportProgress();
+            return budget.examineCandidates(SolveBudget.CANDIDATES_BETWEEN_CHECKS);
+        }
+
+        /**
+         * Returns the most optimistic score of timetables in a branch where lessons before the depth have been picked
+         */
+        private int getOptimisticScore(int depth, int scoreOfSettledDays) {
+            return scoreOfSettledDays + (depth == 0
+                    ? optimisticScoreOfDaysWithLessons
+                    : optimisticScoreOfUnsettledDaysAfterDepth[depth - 1]);
+        }
+
+        private boolean isPromising(int depth, int scoreOfSettledDays) {
+            if (isCollectingValidTimetables())
+                return true;
+
+            int optimisticScore = scoreOfSettledDays + optimisticScoreOfUnsettledDaysAfterDepth[depth];
+            if (incumbent.canBeBeatenBy(optimisticScore, picksInSearchOrder, depth + 1))
+                return true;
+            if (!isSweepingCommuteLimits())
+                return false;
+
+            int[] scoreByCommutes = scoreByCommutesBeforeDepth[depth + 1];
+            for (int commutes = 1; commutes < scoreByCommutes.length - 1; ++commutes)
+                if (incumbentOfCommuteLimit[commutes].canBeBeatenBy(
+                        scoreByCommutes[commutes] + optimisticScoreOfUnsettledDaysAfterDepth[depth],
+                        picksInSearchOrder, depth + 1))
+                    return true;
+            return false;
+        }
+
+        /**
+         * Picks the term and rules out terms of lessons that haven't been picked yet and can't be combined with it.
+         *
+         * @return false if some lesson was left without any possible term, true else
+         */
+        private boolean pick(int depth, int pickedLessonIndex, int pickedTermIndex) {
+            pickedTerms[pickedLessonIndex] = pickedTermIndex;
+            picksInSearchOrder[depth] = pickedTermIndex;
+            System.arraycopy(liveTerms, 0, liveTermsBeforeDepth[depth], 0, liveTerms.length);
+            conflictIndex.removeConflictingTerms(compiledPlan.getFirstTermOfLesson(pickedLessonIndex) + pickedTermIndex,
+                    liveTerms);
+
+            for (int laterDepth = depth + 1; laterDepth < searchOrder.length; ++laterDepth) {
+                int lessonIndex = searchOrder[laterDepth];
+                if (TermConflictIndex.countTermsInRange(liveTerms, compiledPlan.getFirstTermOfLesson(lessonIndex),
+                        compiledPlan.getFirstTermOfLesson(lessonIndex + 1)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private void restoreTermsRemovedAt(int depth) {
+            System.arraycopy(liveTermsBeforeDepth[depth], 0, liveTerms, 0, liveTerms.length);
+        }
+
+        /**
+         * Scores days settled at the depth. When sweeping over commute limits, scores of all limits are also added to
+         * the ones of the previous depth.
+         *
+         * @return score of the days with commute limit of the plan
+         */
+        private int scoreDaysSettledAt(int depth) {
+            if (isSweepingCommuteLimits())
+                System.arraycopy(scoreByCommutesBeforeDepth[depth], 0, scoreByCommutesBeforeDepth[depth + 1], 0,
+                        dayScoreByCommutes.length);
+
+            int score = 0;
+            for (int cycleDayNumber : daysSettledAtDepth[depth]) {
+                // entries are collected in the same order as in complete timetable, so ties in start time are
+                // resolved the same way
+                int qntOfEntries = 0;
+                for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex) {
+                    if (depthOfLesson[lessonIndex] > depth)
+                        continue;
+                    int term = compiledPlan.getFirstTermOfLesson(lessonIndex) + pickedTerms[lessonIndex];
+                    for (int entry = compiledPlan.getFirstEntryOfTerm(term); entry < compiledPlan.getFirstEntryOfTerm(term + 1); ++entry)
+                        if (compiledPlan.getEntryCycleDay(entry) == cycleDayNumber)
+                            entriesOfDay[qntOfEntries++] = entry;
+                }
+                EntriesByDay.sortByStartTime(compiledPlan, entriesOfDay, 0, qntOfEntries);
+                if (!isSweepingCommuteLimits()) {
+                    score += optimalityCalculator.calculateForDay(cycleDayNumber, entriesOfDay, 0, qntOfEntries);
+                    continue;
+                }
+
+                optimalityCalculator.calculateForDayByCommutes(cycleDayNumber, entriesOfDay, 0, qntOfEntries,
+                        dayScoreByCommutes);
+                for (int commutes = 1; commutes < dayScoreByCommutes.length; ++commutes)
+                    scoreByCommutesBeforeDepth[depth + 1][commutes] += dayScoreByCommutes[commutes];
+                score += dayScoreByCommutes[dayScoreByCommutes.length - 1];
+            }
+            return score;
+        }
+
+        /**
+         * Offers complete timetable to the incumbent. Every day is settled at the last depth, so the score of settled
+         * days is already the score of the whole timetable.
+         */
+        private void evaluateCompleteTimetable(int score) {
+            if (!conflictIndex.isExact() && !validator.isValid(pickedTerms))
+                return;
+
+            ++validTimetables;
+            if (isCollectingValidTimetables()) {
+                if (qntOfValidTimetablesToStore * qntOfLessons == validTimetablesToStore.length)
+                    storeValidTimetables();
+                System.arraycopy(pickedTerms, 0, validTimetablesToStore, qntOfValidTimetablesToStore * qntOfLessons,
+                        qntOfLessons);
+                ++qntOfValidTimetablesToStore;
+            }
+
+            if (incumbent.canBeBeatenBy(score, picksInSearchOrder, picksInSearchOrder.length)
+                    && offer(score, pickedTerms.clone(), picksInSearchOrder.clone()))
+                progress.offerBestScore(score);
+
+            if (isSweepingCommuteLimits())
+                offerToLowerCommuteLimits();
+        }
+
+        private void offerToLowerCommuteLimits() {
+            int[] scoreByCommutes = scoreByCommutesBeforeDepth[qntOfLessons];
+            // picks are copied at most once, incumbents of all limits can share them
+            int[] keptPickedTerms = null;
+            int[] keptPicksInSearchOrder = null;
+            for (int commutes = 1; commutes < scoreByCommutes.length - 1; ++commutes) {
+                if (!incumbentOfCommuteLimit[commutes].canBeBeatenBy(scoreByCommutes[commutes], picksInSearchOrder,
+                        picksInSearchOrder.length))
+                    continue;
+
+                if (keptPickedTerms == null) {
+                    keptPickedTerms = pickedTerms.clone();
+                    keptPicksInSearchOrder = picksInSearchOrder.clone();
+                }
+                incumbentOfCommuteLimit[commutes].offer(scoreByCommutes[commutes], keptPickedTerms,
+                        keptPicksInSearchOrder);
+            }
+        }
+    }
+
+    private void offerInitialTimetable() {
+        if (initialPickedTerms == null || initialPickedTerms.length != qntOfLessons)
+            return;
+
+        for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex)
+            if (initialPickedTerms[lessonIndex] < 0 || initialPickedTerms[lessonIndex] >= compiledPlan.getNumberOfTerms(lessonIndex))
+                return;
+
+        int[] pickedTerms = initialPickedTerms.clone();
+        if (conflictIndex.hasConflicts(compiledPlan, pickedTerms)
+                || (!conflictIndex.isExact() && !new TimetableValidator(compiledPlan).isValid(pickedTerms)))
+            return;
+
+        int[] picksInSearchOrder = new int[qntOfLessons];
+        for (int depth = 0; depth < qntOfLessons; ++depth)
+            picksInSearchOrder[depth] = pickedTerms[searchOrder[depth]];
+
+        int score = new OptimalityCalculator(compiledPlan).calculate(pickedTerms);
+        if (offer(score, pickedTerms, picksInSearchOrder))
+            progress.offerBestScore(score);
+        initialPicksInSearchOrder = picksInSearchOrder;
+    }
+
+    // a shared incumbent may already keep the timetable, if another search has found it before. The initial timetable
+    // is reached by the search again, it's offered only once, so the best timetables stay distinct
+    private boolean offer(int score, int[] pickedTerms, int[] picksInSearchOrder) {
+        if (initialPicksInSearchOrder != null && Arrays.equals(picksInSearchOrder, initialPicksInSearchOrder))
+            return false;
+        if (sharedIncumbent != null)
+            return incumbent.offerIfAbsent(score, pickedTerms, picksInSearchOrder);
+
+        return incumbent.offer(score, pickedTerms, picksInSearchOrder);
+    }
+
+    private void orderLessonsByConstraints() {
+        searchOrder = givenSearchOrder != null ? givenSearchOrder
+                : orderLessonsByConstraints(compiledPlan, conflictIndex);
+        depthOfLesson = new int[qntOfLessons];
+        for (int depth = 0; depth < qntOfLessons; ++depth)
+            depthOfLesson[searchOrder[depth]] = depth;
+    }
+
+    /**
+     * Orders lessons so that the ones with the fewest possible terms are picked first. Lessons with the same amount
+     * of terms are ordered by the number of conflicts with terms of other lessons (the more conflicts, the earlier).
+     *
+     * @return lesson index for each depth of the search
+     */
+    static int[] orderLessonsByConstraints(CompiledPlan compiledPlan, TermConflictIndex conflictIndex) {
+        int qntOfLessons = compiledPlan.getNumberOfLessons();
+        int[] numberOfConflicts = new int[qntOfLessons];
+        for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex)
+            for (int term = compiledPlan.getFirstTermOfLesson(lessonIndex);
+                 term < compiledPlan.getFirstTermOfLesson(lessonIndex + 1); ++term)
+                numberOfConflicts[lessonIndex] += conflictIndex.countConflicts(term);
+
+        Integer[] order = new Integer[qntOfLessons];
+        for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex)
+            order[lessonIndex] = lessonIndex;
+
+        Arrays.sort(order, (lhs, rhs) -> {
+            int lhsQntOfTerms = compiledPlan.getNumberOfTerms(lhs);
+            int rhsQntOfTerms = compiledPlan.getNumberOfTerms(rhs);
+            if (lhsQntOfTerms != rhsQntOfTerms)
+                return Integer.compare(lhsQntOfTerms, rhsQntOfTerms);
+            return Integer.compare(numberOfConflicts[rhs], numberOfConflicts[lhs]);
+        });
+
+        int[] searchOrder = new int[qntOfLessons];
+        for (int depth = 0; depth < qntOfLessons; ++depth)
+            searchOrder[depth] = order[depth];
+        return searchOrder;
+    }
+
+    /**
+     * Finds the depth of the search after which no more entries can be added to each day. From that depth on the day is
+     * settled and is scored exactly, before that it can't be scored better than optimizedActivity.maxTimeInMinutes.
+     */
+    private void planDaySettlement() {
+        int[] lastDepthTouchingDay = new int[daysInCycle];
+        Arrays.fill(lastDepthTouchingDay, -1);
+        for (int depth = 0; depth < searchOrder.length; ++depth) {
+            int lessonIndex = searchOrder[depth];
+            for (int termIndex : termIndexesOfDigits[lessonIndex]) {
+                int term = compiledPlan.getFirstTermOfLesson(lessonIndex) + termIndex;
+                for (int entry = compiledPlan.getFirstEntryOfTerm(term); entry < compiledPlan.getFirstEntryOfTerm(term + 1);
+                     ++entry)
+                    lastDepthTouchingDay[compiledPlan.getEntryCycleDay(entry)] = depth;
+            }
+        }
+
+        List<List<Integer>> daysSettledAt = new ArrayList<List<Integer>>(searchOrder.length);
+        for (int depth = 0; depth < searchOrder.length; ++depth)
+            daysSettledAt.add(new ArrayList<Integer>());
+
+        OptimalityCalculator optimalityCalculator = new OptimalityCalculator(compiledPlan);
+        scoreOfDaysWithoutLessons = 0;
+        optimisticScoreOfDaysWithLessons = 0;
+        optimisticScoreOfUnsettledDaysAfterDepth = new int[searchOrder.length];
+        for (int cycleDayNumber = 0; cycleDayNumber < daysInCycle; ++cycleDayNumber) {
+            if (lastDepthTouchingDay[cycleDayNumber] == -1) {
+                scoreOfDaysWithoutLessons += optimalityCalculator.calculateForDay(cycleDayNumber, new int[0], 0, 0);
+                continue;
+            }
+
+            daysSettledAt.get(lastDepthTouchingDay[cycleDayNumber]).add(cycleDayNumber);
+            if (compiledPlan.isOptimizedActivityOpenedInDay(cycleDayNumber) == false)
+                continue;
+
+            optimisticScoreOfDaysWithLessons += compiledPlan.getMaxTimeAtOptimizedActivityPerDay();
+            for (int depth = 0; depth < lastDepthTouchingDay[cycleDayNumber]; ++depth)
+                optimisticScoreOfUnsettledDaysAfterDepth[depth] += compiledPlan.getMaxTimeAtOptimizedActivityPerDay();
+        }
+
+        daysSettledAtDepth = new int[searchOrder.length][];
+        for (int depth = 0; depth < searchOrder.length; ++depth)
+            daysSettledAtDepth[depth] = daysSettledAt.get(depth).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void planIndexSpace() {
+        indexedDepth = 0;
+        indexSpaceSize = 1;
+        while (indexedDepth < searchOrder.length) {
+            int qntOfTerms = termIndexesOfDigits[searchOrder[indexedDepth]].length;
+            if (indexSpaceSize > MAX_INDEX_SPACE_SIZE / qntOfTerms)
+                break;
+            indexSpaceSize *= qntOfTerms;
+            ++indexedDepth;
+        }
+
+        placeValues = new long[indexedDepth];
+        long placeValue = 1;
+        for (int depth = indexedDepth - 1; depth >= 0; --depth) {
+            placeValues[depth] = placeValue;
+            placeValue *= termIndexesOfDigits[searchOrder[depth]].length;
+        }
+    }
+
+    private int[] toDigits(long index) {
+        int[] digits = new int[indexedDepth];
+        for (int depth = 0; depth < indexedDepth; ++depth)
+            digits[depth] = (int) (index / placeValues[depth] % termIndexesOfDigits[searchOrder[depth]].length);
+
+        return digits;
+    }
+}
@@ -0,0 +1,391 @@
+package com.smartplanner.model;
+
+import com.smartplanner.exception.InvalidDataProvidedException;
+import com.smartplanner.model.dto.PlanInputDto;
+import com.smartplanner.model.entity.OptimizedActivity;
+import com.smartplanner.model.entity.Term;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plan data compiled to primitive arrays for the solver.
+ *
+ * Every possible term of every lesson gets a global term number, terms of lesson l are numbered from
+ * getFirstTermOfLesson(l) to getFirstTermOfLesson(l + 1) - 1. Every term is expanded to entries, one per repeat in cycle,
+ * and entries of term t are numbered from getFirstEntryOfTerm(t) to getFirstEntryOfTerm(t + 1) - 1. Entries are stored as
+ * struct of arrays (start minute, end minute, cycle day, location id and lesson index), times are minutes from midnight.
+ * Terms have to end before midnight, entries don't wrap to the next day.
+ *
+ * Picked terms are passed around as int[] with a term index (relative to the lesson) for each lesson, the same as in
+ * LessonPicker. Entities are only created for the picked timetable that should be returned to the user.
+ */
+public class CompiledPlan {
+    private static final int MINUTES_IN_DAY = 24 * 60;
+
+    private List<LessonWithPossibleTerms> lessons;
+    private int daysInCycle;
+    private int maxCommutesPerDay;
+    private TimeDistanceManager timeDistanceManager;
+    private OptimizedActivity optimizedActivity;
+    private LessonPicker lessonPicker;
+
+    private int[] firstTermOfLesson;
+    private int[] firstEntryOfTerm;
+
+    private int[] entryStartMinute;
+    private int[] entryEndMinute;
+    private int[] entryCycleDay;
+    private int[] entryLocation;
+    private int[] entryLesson;
+    private int[] entryMinutesToOptimizedActivity;
+    private int[] entryMinutesFromOptimizedActivity;
+
+    private int optimizedActivityLocation;
+    private int optimizedActivityStartMinute;
+    private int optimizedActivityEndMinute;
+    private boolean[] isOptimizedActivityOpenedInDay;
+
+    private volatile TermConflictIndex termConflictIndex;
+    private volatile ConsistentTermDomains consistentTermDomains;
+    private volatile DayScoreCache dayScoreCache = new DayScoreCache();
+
+    /**
+     * Compiles plan that will be used to find the optimal timetable.
+     *
+     * @param lessons list of all lessons that contains among others possible terms for each lesson.
+     * @param daysInCycle amount of days, after which the whole plan will repeat
+     * @param timeDistanceManager object that contains commute matrix, which is data about travel time between each lesson and work
+     * @param maxCommutesPerDay maximal amount of commutes to work per day (specified by a user)
+     * @param optimizedActivity object containing data about optimized activity (for example work)
+     * @throws InvalidDataProvidedException if the commute matrix doesn't contain some of the activities or some term
+     * doesn't end before midnight
+     */
+    public CompiledPlan(List<LessonWithPossibleTerms> lessons,
+                        int daysInCycle,
+                        TimeDistanceManager timeDistanceManager,
+                        int maxCommutesPerDay,
+                        OptimizedActivity optimizedActivity) {
+        this.lessons = lessons;
+        this.daysInCycle = daysInCycle;
+        this.timeDistanceManager = timeDistanceManager;
+        this.maxCommutesPerDay = maxCommutesPerDay;
+        this.optimizedActivity = optimizedActivity;
+        this.lessonPicker = new LessonPicker(lessons, daysInCycle);
+
+        validatePlaces();
+        validateTerms();
+        compileOptimizedActivity();
+        compileTerms();
+    }
+
+    // shares everything besides optimized activity with the compiled catalogue
+    private CompiledPlan(CompiledPlan catalogue, int maxCommutesPerDay, OptimizedActivity optimizedActivity) {
+        this.lessons = catalogue.lessons;
+        this.daysInCycle = catalogue.daysInCycle;
+        this.timeDistanceManager = catalogue.timeDistanceManager;
+        this.maxCommutesPerDay = maxCommutesPerDay;
+        this.optimizedActivity = optimizedActivity;
+        this.lessonPicker = catalogue.lessonPicker;
+
+        validatePlaces();
+        compileOptimizedActivity();
+
+        this.firstTermOfLesson = catalogue.firstTermOfLesson;
+        this.firstEntryOfTerm = catalogue.firstEntryOfTerm;
+        this.entryStartMinute = catalogue.entryStartMinute;
+        this.entryEndMinute = catalogue.entryEndMinute;
+        this.entryCycleDay = catalogue.entryCycleDay;
+        this.entryLocation = catalogue.entryLocation;
+        this.entryLesson = catalogue.entryLesson;
+        this.termConflictIndex = catalogue.termConflictIndex;
+        this.consistentTermDomains = catalogue.consistentTermDomains;
+        compileTravelTimesOfOptimizedActivity();
+    }
+
+    /**
+     * Compiles plan with the same lessons, days in cycle and commute matrix as this one, but with different optimized
+     * activity and commute limit, e.g. for another plan of a batch. Terms, entries, TermConflictIndex and
+     * ConsistentTermDomains (if they have already been built) are shared with this plan, only travel times to and from
+     * optimized activity are compiled again.
+     *
+     * @param maxCommutesPerDay maximal amount of commutes to work per day
+     * @param optimizedActivity object containing data about optimized activity
+     * @return compiled plan
+     * @throws InvalidDataProvidedException if the commute matrix doesn't contain the optimized activity
+     */
+    public CompiledPlan withOptimizedActivity(int maxCommutesPerDay, OptimizedActivity optimizedActivity) {
+        return new CompiledPlan(this, maxCommutesPerDay, optimizedActivity);
+    }
+
+    /**
+     * Compiles plan provided by a user.
+     *
+     * @param planInputDto plan with lessons, possible terms, commute matrix and optimized activity
+     * @return compiled plan
+     */
+    public static CompiledPlan compile(PlanInputDto planInputDto) {
+        return new CompiledPlan(
+                planInputDto.getLessons(),
+                planInputDto.getDaysInCycle(),
+                new TimeDistanceManager(planInputDto.getTimeDistanceInMinutes()),
+                planInputDto.getMaxCommutesPerDay(),
+                planInputDto.getOptimizedActivity()
+        );
+    }
+
+    private void validatePlaces() {
+        if (timeDistanceManager.containsPlace(optimizedActivity.getId()) == false)
+            throw new InvalidDataProvidedException("Commute matrix doesn't contain the optimized activity");
+
+        for (LessonWithPossibleTerms lesson : lessons)
+            if (timeDistanceManager.containsPlace(lesson.getId()) == false)
+                throw new InvalidDataProvidedException("Commute matrix doesn't contain lesson " + lesson.getName());
+    }
+
+    private void validateTerms() {
+        for (LessonWithPossibleTerms lesson : lessons) {
+            if (lesson.getPossibleTerms() == null)
+                continue;
+
+            for (Term term : lesson.getPossibleTerms())
+                if (toMinuteOfDay(term.getStartTime()) + term.getDurationInMinutes() >= MINUTES_IN_DAY)
+                    throw new InvalidDataProvidedException("Term of lesson " + lesson.getName()
+                            + " has to end before midnight");
+        }
+    }
+
+    private void compileOptimizedActivity() {
+        optimizedActivityLocation = optimizedActivity.getId();
+        optimizedActivityStartMinute = toMinuteOfDay(optimizedActivity.getStartsAt());
+        optimizedActivityEndMinute = toMinuteOfDay(optimizedActivity.getEndsAt());
+
+        isOptimizedActivityOpenedInDay = new boolean[daysInCycle];
+        for (int cycleDayNumber = 0; cycleDayNumber < daysInCycle; ++cycleDayNumber)
+            isOptimizedActivityOpenedInDay[cycleDayNumber] = optimizedActivity.isOpenedInDay(cycleDayNumber);
+    }
+
+    private void compileTerms() {
+        int numberOfTerms = 0;
+        firstTermOfLesson = new int[lessons.size() + 1];
+        for (int lessonIndex = 0; lessonIndex < lessons.size(); ++lessonIndex) {
+            firstTermOfLesson[lessonIndex] = numberOfTerms;
+            List<Term> possibleTerms = lessons.get(lessonIndex).getPossibleTerms();
+            numberOfTerms += possibleTerms == null ? 0 : possibleTerms.size();
+        }
+        firstTermOfLesson[lessons.size()] = numberOfTerms;
+
+        List<TimetableEntry> entries = new ArrayList<TimetableEntry>();
+        List<Integer> lessonOfEntries = new ArrayList<Integer>();
+        firstEntryOfTerm = new int[numberOfTerms + 1];
+        for (int lessonIndex = 0; lessonIndex < lessons.size(); ++lessonIndex) {
+            for (int termIndex = 0; termIndex < getNumberOfTerms(lessonIndex); ++termIndex) {
+                firstEntryOfTerm[firstTermOfLesson[lessonIndex] + termIndex] = entries.size();
+                for (TimetableEntry entry : lessonPicker.getEntriesForTerm(lessonIndex, termIndex)) {
+                    entries.add(entry);
+                    lessonOfEntries.add(lessonIndex);
+                }
+            }
+        }
+        firstEntryOfTerm[numberOfTerms] = entries.size();
+
+        int numberOfEntries = entries.size();
+        entryStartMinute = new int[numberOfEntries];
+        entryEndMinute = new int[numberOfEntries];
+        entryCycleDay = new int[numberOfEntries];
+        entryLocation = new int[numberOfEntries];
+        entryLesson = new int[numberOfEntries];
+        for (int entryIndex = 0; entryIndex < numberOfEntries; ++entryIndex) {
+            Term term = entries.get(entryIndex).getTerm();
+
+            entryStartMinute[entryIndex] = toMinuteOfDay(term.getStartTime());
+            entryEndMinute[entryIndex] = entryStartMinute[entryIndex] + term.getDurationInMinutes();
+            entryCycleDay[entryIndex] = term.getCycleDayNumber();
+            entryLocation[entryIndex] = entries.get(entryIndex).getLesson().getId();
+            entryLesson[entryIndex] = lessonOfEntries.get(entryIndex);
+        }
+
+        compileTravelTimesOfOptimizedActivity();
+    }
+
+    private void compileTravelTimesOfOptimizedActivity() {
+        int numberOfEntries = entryLocation.length;
+        entryMinutesToOptimizedActivity = new int[numberOfEntries];
+        entryMinutesFromOptimizedActivity = new int[numberOfEntries];
+        for (int entryIndex = 0; entryIndex < numberOfEntries; ++entryIndex) {
+            entryMinutesToOptimizedActivity[entryIndex] =
+                    timeDistanceManager.getTimeDistanceInMinutes(entryLocation[entryIndex], optimizedActivityLocation);
+            entryMinutesFromOptimizedActivity[entryIndex] =
+                    timeDistanceManager.getTimeDistanceInMinutes(optimizedActivityLocation, entryLocation[entryIndex]);
+        }
+    }
+
+    /**
+     * Creates entities for picked terms. Entries are ordered in the same way as in timetables returned by LessonPicker.
+     *
+     * @param pickedTerms term index for each lesson
+     * @return timetable with picked terms and all of their repeats in cycle
+     */
+    public ArrayList<TimetableEntry> toTimetable(int[] pickedTerms) {
+        ArrayList<TimetableEntry> timetable = new ArrayList<TimetableEntry>();
+        for (int lessonIndex = 0; lessonIndex < lessons.size(); ++lessonIndex)
+            timetable.addAll(lessonPicker.getEntriesForTerm(lessonIndex, pickedTerms[lessonIndex]));
+
+        return timetable;
+    }
+
+    /**
+     * Returns index of conflicts between terms. It's built on the first call and shared by all callers.
+     *
+     * @return conflicts between every pair of terms of the plan
+     */
+    public TermConflictIndex getTermConflictIndex() {
+        TermConflictIndex index = termConflictIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = termConflictIndex;
+                if (index == null) {
+                    index = new TermConflictIndex(this);
+                    termConflictIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns terms left after arc consistency has been enforced. They're found on the first call and shared by all
+     * callers.
+     *
+     * @return terms that can be a part of a valid timetable
+     */
+    public ConsistentTermDomains getConsistentTermDomains() {
+        ConsistentTermDomains domains = consistentTermDomains;
+        if (domains == null) {
+            synchronized (this) {
+                domains = consistentTermDomains;
+                if (domains == null) {
+                    domains = new ConsistentTermDomains(this);
+                    consistentTermDomains = domains;
+                }
+            }
+        }
+        return domains;
+    }
+
+    /**
+     * Returns cache of scores of single days, shared by all calculators of the plan
+     *
+     * @return cache of day scores
+     */
+    public DayScoreCache getDayScoreCache() {
+        return dayScoreCache;
+    }
+
+    /**
+     * Replaces cache of scores of single days, e.g. with a cache of another plan whose days are scored the same way
+     * (see PlanFingerprint.ofDayScoring()). It has to be called before the plan is solved.
+     *
+     * @param dayScoreCache cache of day scores
+     */
+    public void setDayScoreCache(DayScoreCache dayScoreCache) {
+        this.dayScoreCache = dayScoreCache;
+    }
+
+    private static int toMinuteOfDay(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    public List<LessonWithPossibleTerms> getLessons() {
+        return lessons;
+    }
+
+    public int getNumberOfLessons() {
+        return lessons.size();
+    }
+
+    public int getNumberOfTerms(int lessonIndex) {
+        return firstTermOfLesson[lessonIndex + 1] - firstTermOfLesson[lessonIndex];
+    }
+
+    public int getNumberOfTerms() {
+        return firstTermOfLesson[lessons.size()];
+    }
+
+    public int getFirstTermOfLesson(int lessonIndex) {
+        return firstTermOfLesson[lessonIndex];
+    }
+
+    public int getNumberOfEntries() {
+        return entryStartMinute.length;
+    }
+
+    public int getFirstEntryOfTerm(int term) {
+        return firstEntryOfTerm[term];
+    }
+
+    public int getEntryStartMinute(int entry) {
+        return entryStartMinute[entry];
+    }
+
+    public int getEntryEndMinute(int entry) {
+        return entryEndMinute[entry];
+    }
+
+    public int getEntryCycleDay(int entry) {
+        return entryCycleDay[entry];
+    }
+
+    public int getEntryLocation(int entry) {
+        return entryLocation[entry];
+    }
+
+    public int getEntryLesson(int entry) {
+        return entryLesson[entry];
+    }
+
+    public int getEntryMinutesToOptimizedActivity(int entry) {
+        return entryMinutesToOptimizedActivity[entry];
+    }
+
+    public int getEntryMinutesFromOptimizedActivity(int entry) {
+        return entryMinutesFromOptimizedActivity[entry];
+    }
+
+    public int getDaysInCycle() {
+        return daysInCycle;
+    }
+
+    public int getMaxCommutesPerDay() {
+        return maxCommutesPerDay;
+    }
+
+    public TimeDistanceManager getTimeDistanceManager() {
+        return timeDistanceManager;
+    }
+
+    public OptimizedActivity getOptimizedActivity() {
+        return optimizedActivity;
+    }
+
+    public int getOptimizedActivityStartMinute() {
+        return optimizedActivityStartMinute;
+    }
+
+    public int getOptimizedActivityEndMinute() {
+        return optimizedActivityEndMinute;
+    }
+
+    public int getMinTimeAtOptimizedActivityAtOnce() {
+        return optimizedActivity.getMinTimeInMinutes();
+    }
+
+    public int getMaxTimeAtOptimizedActivityPerDay() {
+        return optimizedActivity.getMaxTimeInMinutes();
+    }
+
+    public boolean isOptimizedActivityOpenedInDay(int cycleDayNumber) {
+        return isOptimizedActivityOpenedInDay[cycleDayNumber];
+    }
+}
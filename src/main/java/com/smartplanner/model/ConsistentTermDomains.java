@@ -0,0 +1,196 @@
+package com.smartplanner.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Terms that are left after arc consistency has been enforced over conflicts of TermConflictIndex. A term is removed if
+ * every remaining term of some other lesson conflicts with it, because such term can't be a part of any valid timetable.
+ * Removing it may leave terms of other lessons without a compatible term, so lessons are revised again until nothing
+ * changes (AC-3).
+ *
+ * Conflicts of the index are always real ones, so no valid timetable is lost, even if the index isn't exact. If some
+ * lesson is left without any term, the plan has no valid timetable at all and lessons that can't be attended together
+ * are found: the smallest set (no lesson can be dropped from it) for which arc consistency still fails.
+ */
+public class ConsistentTermDomains {
+    private CompiledPlan compiledPlan;
+    private TermConflictIndex conflictIndex;
+    private long[] terms;
+    private int[] numberOfTermsOfLesson;
+    private List<Integer> conflictingLessons;
+
+    /**
+     * Enforces arc consistency, it builds TermConflictIndex of the plan if it hasn't been built yet
+     *
+     * @param compiledPlan plan with lessons and possible terms
+     */
+    public ConsistentTermDomains(CompiledPlan compiledPlan) {
+        this.compiledPlan = compiledPlan;
+        this.conflictIndex = compiledPlan.getTermConflictIndex();
+
+        int numberOfLessons = compiledPlan.getNumberOfLessons();
+        boolean[] isLessonIncluded = new boolean[numberOfLessons];
+        Arrays.fill(isLessonIncluded, true);
+        terms = getTermsOfLessons(isLessonIncluded);
+        boolean isConsistent = propagate(isLessonIncluded, terms) == -1;
+
+        numberOfTermsOfLesson = new int[numberOfLessons];
+        for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex)
+            numberOfTermsOfLesson[lessonIndex] = TermConflictIndex.countTermsInRange(terms,
+                    compiledPlan.getFirstTermOfLesson(lessonIndex), compiledPlan.getFirstTermOfLesson(lessonIndex + 1));
+
+        conflictingLessons = isConsistent ? Collections.emptyList() : findConflictingLessons();
+    }
+
+    /**
+     * Checks if every lesson has some term left
+     *
+     * @return false if the plan has no valid timetable, true else
+     */
+    public boolean isConsistent() {
+        return conflictingLessons.isEmpty();
+    }
+
+    /**
+     * Returns bitset of terms left, it's shared, so it has to be copied before it's modified
+     *
+     * @return bitset of global term numbers with TermConflictIndex.getWordsForTerms() words
+     */
+    public long[] getTerms() {
+        return terms;
+    }
+
+    /**
+     * Returns amount of terms left for a lesson
+     *
+     * @param lessonIndex index of the lesson
+     * @return amount of terms of the lesson that can be a part of a valid timetable
+     */
+    public int getNumberOfTerms(int lessonIndex) {
+        return numberOfTermsOfLesson[lessonIndex];
+    }
+
+    /**
+     * Returns indexes of terms left for a lesson
+     *
+     * @param lessonIndex index of the lesson
+     * @return term indexes (relative to the lesson) in ascending order
+     */
+    public int[] getTermIndexes(int lessonIndex) {
+        int firstTerm = compiledPlan.getFirstTermOfLesson(lessonIndex);
+        int[] termIndexes = new int[numberOfTermsOfLesson[lessonIndex]];
+        int numberOfTermIndexes = 0;
+        for (int term = firstTerm; term < compiledPlan.getFirstTermOfLesson(lessonIndex + 1); ++term)
+            if (TermConflictIndex.contains(terms, term))
+                termIndexes[numberOfTermIndexes++] = term - firstTerm;
+
+        return termIndexes;
+    }
+
+    /**
+     * Returns lessons that can't be attended together, if the plan isn't consistent
+     *
+     * @return indexes of lessons in ascending order, empty list if the plan is consistent
+     */
+    public List<Integer> getConflictingLessons() {
+        return conflictingLessons;
+    }
+
+    private long[] getTermsOfLessons(boolean[] isLessonIncluded) {
+        long[] termsOfLessons = new long[TermConflictIndex.getWordsForTerms(compiledPlan.getNumberOfTerms())];
+        for (int lessonIndex = 0; lessonIndex < isLessonIncluded.length; ++lessonIndex)
+            if (isLessonIncluded[lessonIndex])
+                for (int term = compiledPlan.getFirstTermOfLesson(lessonIndex);
+                     term < compiledPlan.getFirstTermOfLesson(lessonIndex + 1); ++term)
+                    termsOfLessons[term >>> 6] |= 1L << term;
+
+        return termsOfLessons;
+    }
+
+    /**
+     * Removes terms of included lessons that have no compatible term in some other included lesson
+     *
+     * @param isLessonIncluded lessons that are taken into account
+     * @param terms bitset of terms of included lessons, it's modified in place
+     * @return index of a lesson left without any term, -1 if there is no such lesson
+     */
+    private int propagate(boolean[] isLessonIncluded, long[] terms) {
+        int numberOfLessons = isLessonIncluded.length;
+        ArrayDeque<Integer> changedLessons = new ArrayDeque<Integer>();
+        boolean[] isChanged = new boolean[numberOfLessons];
+        for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex) {
+            if (!isLessonIncluded[lessonIndex])
+                continue;
+            if (compiledPlan.getNumberOfTerms(lessonIndex) == 0)
+                return lessonIndex;
+
+            changedLessons.add(lessonIndex);
+            isChanged[lessonIndex] = true;
+        }
+
+        // terms of the changed lesson only, the ones other terms need a compatible term from
+        long[] supportingTerms = new long[terms.length];
+        while (!changedLessons.isEmpty()) {
+            int changedLessonIndex = changedLessons.poll();
+            isChanged[changedLessonIndex] = false;
+            Arrays.fill(supportingTerms, 0);
+            int numberOfSupportingTerms = 0;
+            for (int term = compiledPlan.getFirstTermOfLesson(changedLessonIndex);
+                 term < compiledPlan.getFirstTermOfLesson(changedLessonIndex + 1); ++term) {
+                if (TermConflictIndex.contains(terms, term)) {
+                    supportingTerms[term >>> 6] |= 1L << term;
+                    ++numberOfSupportingTerms;
+                }
+            }
+
+            for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex) {
+                if (lessonIndex == changedLessonIndex || !isLessonIncluded[lessonIndex])
+                    continue;
+
+                int firstTerm = compiledPlan.getFirstTermOfLesson(lessonIndex);
+                int lastTerm = compiledPlan.getFirstTermOfLesson(lessonIndex + 1);
+                boolean isRevised = false;
+                for (int term = firstTerm; term < lastTerm; ++term) {
+                    if (TermConflictIndex.contains(terms, term)
+                            && conflictIndex.countConflictsWith(term, supportingTerms) == numberOfSupportingTerms) {
+                        terms[term >>> 6] &= ~(1L << term);
+                        isRevised = true;
+                    }
+                }
+
+                if (!isRevised)
+                    continue;
+                if (TermConflictIndex.countTermsInRange(terms, firstTerm, lastTerm) == 0)
+                    return lessonIndex;
+                if (!isChanged[lessonIndex]) {
+                    changedLessons.add(lessonIndex);
+                    isChanged[lessonIndex] = true;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Drops lessons one by one, as long as arc consistency still fails without them (deletion filter)
+     */
+    private List<Integer> findConflictingLessons() {
+        boolean[] isLessonIncluded = new boolean[compiledPlan.getNumberOfLessons()];
+        Arrays.fill(isLessonIncluded, true);
+        for (int lessonIndex = 0; lessonIndex < isLessonIncluded.length; ++lessonIndex) {
+            isLessonIncluded[lessonIndex] = false;
+            if (propagate(isLessonIncluded, getTermsOfLessons(isLessonIncluded)) == -1)
+                isLessonIncluded[lessonIndex] = true;
+        }
+
+        List<Integer> lessons = new ArrayList<Integer>();
+        for (int lessonIndex = 0; lessonIndex < isLessonIncluded.length; ++lessonIndex)
+            if (isLessonIncluded[lessonIndex])
+                lessons.add(lessonIndex);
+        return Collections.unmodifiableList(lessons);
+    }
+}
@@ -0,0 +1,168 @@
+package com.smartplanner.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of scores of single days, shared by all calculators of a compiled plan (also by workers of parallel search).
+ *
+ * Score of a day depends only on its entries in chronological order, i.e. on their start and end times and travel
+ * times to and from optimized activity, so a day is identified by these values packed into one long per entry.
+ * Neighbouring candidates differ in a single lesson, so most of their days are found in the cache. The cache is
+ * bounded, when it's full new days aren't added.
+ *
+ * Keys don't depend on ids of places, so plans with the same optimized activity and maxCommutesPerDay (see
+ * PlanFingerprint.ofDayScoring()) can share one cache, e.g. a plan and its edited version.
+ */
+public class DayScoreCache {
+    /**
+     * Days with more entries aren't cached, so a key of fixed size can be refilled for every lookup
+     */
+    public static final int MAX_ENTRIES_IN_DAY = Long.SIZE - 2;
+    private static final int DEFAULT_CAPACITY = 1 << 17;
+    private static final int MAX_PACKED_MINUTES = 0xFFFF;
+
+    private final ConcurrentHashMap<DayKey, DayScore> scores;
+    private final int capacity;
+
+    /**
+     * Creates cache with default capacity
+     */
+    public DayScoreCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates cache that holds at most provided amount of days
+     *
+     * @param capacity maximal amount of cached days
+     */
+    public DayScoreCache(int capacity) {
+        this.capacity = capacity;
+        this.scores = new ConcurrentHashMap<DayKey, DayScore>();
+    }
+
+    /**
+     * Returns cached score of a day
+     *
+     * @param key key of the day, filled by DayKey.fill()
+     * @return cached score or null if the day isn't in the cache
+     */
+    public DayScore get(DayKey key) {
+        return scores.get(key);
+    }
+
+    /**
+     * Adds score of a day to the cache, unless the cache is full
+     *
+     * @param key key of the day, it's copied, so the same key can be reused for lookups
+     * @param dayScore score of the day
+     */
+    public void put(DayKey key, DayScore dayScore) {
+        if (scores.size() < capacity)
+            scores.putIfAbsent(key.copy(), dayScore);
+    }
+
+    public int size() {
+        return scores.size();
+    }
+
+    public boolean isFull() {
+        return scores.size() >= capacity;
+    }
+
+    /**
+     * Best amount of minutes spent on optimized activity in a day
+     */
+    public static class DayScore {
+        private final int minutes;
+
+        public DayScore(int minutes) {
+            this.minutes = minutes;
+        }
+
+        public int getMinutes() {
+            return minutes;
+        }
+    }
+
+    /**
+     * Key of a day, i.e. start time, end time and travel times to and from optimized activity of each entry in
+     * chronological order. A single key object is meant to be refilled for every lookup, so it isn't safe to share it
+     * between threads.
+     */
+    public static class DayKey {
+        private long[] packedEntries;
+        private int length;
+        private int hash;
+
+        public DayKey() {
+            this.packedEntries = new long[MAX_ENTRIES_IN_DAY];
+        }
+
+        private DayKey(long[] packedEntries, int length, int hash) {
+            this.packedEntries = packedEntries;
+            this.length = length;
+            this.hash = hash;
+        }
+
+        /**
+         * Fills the key with entries of a day
+         *
+         * @param compiledPlan plan the entries belong to
+         * @param sortedEntries entry numbers sorted by start time
+         * @param from index of the first entry of the day
+         * @param to index after the last entry of the day
+         * @return false if the day can't be cached (too many entries or minutes that don't fit in the key), true else
+         */
+        public boolean fill(CompiledPlan compiledPlan, int[] sortedEntries, int from, int to) {
+            if (to - from > MAX_ENTRIES_IN_DAY)
+                return false;
+
+            length = 0;
+            for (int i = from; i < to; ++i) {
+                int entry = sortedEntries[i];
+                int startMinute = compiledPlan.getEntryStartMinute(entry);
+                int endMinute = compiledPlan.getEntryEndMinute(entry);
+                int minutesToOptimizedActivity = compiledPlan.getEntryMinutesToOptimizedActivity(entry);
+                int minutesFromOptimizedActivity = compiledPlan.getEntryMinutesFromOptimizedActivity(entry);
+                if (!canBePacked(startMinute) || !canBePacked(endMinute)
+                        || !canBePacked(minutesToOptimizedActivity) || !canBePacked(minutesFromOptimizedActivity))
+                    return false;
+
+                packedEntries[length++] = (long) startMinute << 48 | (long) endMinute << 32
+                        | (long) minutesToOptimizedActivity << 16 | minutesFromOptimizedActivity;
+            }
+
+            int h = 1;
+            for (int i = 0; i < length; ++i)
+                h = 31 * h + Long.hashCode(packedEntries[i]);
+            hash = h;
+            return true;
+        }
+
+        private static boolean canBePacked(int minutes) {
+            return minutes >= 0 && minutes <= MAX_PACKED_MINUTES;
+        }
+
+        private DayKey copy() {
+            return new DayKey(Arrays.copyOf(packedEntries, length), length, hash);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other)
+                return true;
+            if (!(other instanceof DayKey))
+                return false;
+
+            DayKey otherKey = (DayKey) other;
+            return hash == otherKey.hash && Arrays.equals(packedEntries, 0, length, otherKey.packedEntries, 0, otherKey.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.smartplanner.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Finder of the best timetables that splits lessons into independent components and searches each of them on its own.
+ *
+ * Two lessons are in the same component if some of their terms (with all of their repeats in cycle) fall on the same
+ * cycle day. TimetableValidator and OptimalityCalculator look at each day separately, so lessons of different
+ * components never conflict and their picks don't change scores of each other. The best timetable of the plan is made
+ * of the best timetables of components, so the search space is the sum of the spaces of components instead of their
+ * product.
+ *
+ * Every component is compiled as a plan with only its lessons and searched by BranchAndBoundSolver, all of them at the
+ * same time on the fork/join pool and within the same budget. Such plan scores other days as days without lessons, so
+ * the score of the whole timetable is the sum of scores of components minus (components - 1) times the score of the
+ * cycle without lessons. Each component is searched with its lessons in the same order as in the search of the whole
+ * plan, so the result (also the choice between timetables with equal score) is the same.
+ *
+ * Several best timetables are combined from the best timetables of components (a timetable that uses a worse one
+ * can't be better than the ones that use the better ones instead). Commute limits apply to each day separately, so
+ * the optimal timetable of every commute limit is combined from the optimal timetables of components with that limit.
+ *
+ * Components can also be searched by PortfolioSolver instead, for plans whose components are still too large to be
+ * searched exactly in a predictable time.
+ *
+ * DecomposingSolver can't be reused, what means that you have to create new object for each search.
+ */
+public class DecomposingSolver {
+    // covered part of the search space of each component is reported to SolverProgress in these units
+    private static final long COVERED_UNITS_OF_COMPONENT = 1L << 20;
+
+    private CompiledPlan compiledPlan;
+    private ForkJoinPool forkJoinPool;
+    private int[] initialPickedTerms;
+    private boolean isRacingHeuristics;
+    private long heuristicSeed;
+    private int[][] components;
+    private int[] searchOrder;
+
+    /**
+     * Creates solver for the compiled plan
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     * @param forkJoinPool pool that runs searches of all components
+     */
+    public DecomposingSolver(CompiledPlan compiledPlan, ForkJoinPool forkJoinPool) {
+        this.compiledPlan = compiledPlan;
+        this.forkJoinPool = forkJoinPool;
+        this.components = findComponents(compiledPlan);
+    }
+
+    /**
+     * Seeds searches of components with a known timetable, see BranchAndBoundSolver.withInitialTimetable()
+     *
+     * @param initialPickedTerms term index for each lesson of the plan or null if there is no known timetable
+     * @return this solver
+     */
+    public DecomposingSolver withInitialTimetable(int[] initialPickedTerms) {
+        this.initialPickedTerms = initialPickedTerms;
+        return this;
+    }
+
+    /**
+     * Searches each component by PortfolioSolver instead of BranchAndBoundSolver. The initial timetable isn't used
+     * then.
+     *
+     * @param heuristicSeed seed of the heuristic searches of components
+     * @return this solver
+     */
+    public DecomposingSolver withHeuristics(long heuristicSeed) {
+        this.isRacingHeuristics = true;
+        this.heuristicSeed = heuristicSeed;
+        return this;
+    }
+
+    /**
+     * Splits lessons into groups that don't share any cycle day
+     *
+     * @param compiledPlan plan with lessons and possible terms
+     * @return lesson indexes of each component in ascending order, components are ordered by their first lesson
+     */
+    public static int[][] findComponents(CompiledPlan compiledPlan) {
+        int numberOfLessons = compiledPlan.getNumberOfLessons();
+        int[] parent = new int[numberOfLessons];
+        for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex)
+            parent[lessonIndex] = lessonIndex;
+
+        int[] lessonOfDay = new int[compiledPlan.getDaysInCycle()];
+        Arrays.fill(lessonOfDay, -1);
+        for (int entry = 0; entry < compiledPlan.getNumberOfEntries(); ++entry) {
+            int cycleDayNumber = compiledPlan.getEntryCycleDay(entry);
+            int lessonIndex = compiledPlan.getEntryLesson(entry);
+            if (lessonOfDay[cycleDayNumber] == -1)
+                lessonOfDay[cycleDayNumber] = lessonIndex;
+            else
+                parent[findRoot(parent, lessonIndex)] = findRoot(parent, lessonOfDay[cycleDayNumber]);
+        }
+
+        int[] componentOfRoot = new int[numberOfLessons];
+        Arrays.fill(componentOfRoot, -1);
+        List<List<Integer>> lessonsOfComponents = new ArrayList<List<Integer>>();
+        for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex) {
+            int root = findRoot(parent, lessonIndex);
+            if (componentOfRoot[root] == -1) {
+                componentOfRoot[root] = lessonsOfComponents.size();
+                lessonsOfComponents.add(new ArrayList<Integer>());
+            }
+            lessonsOfComponents.get(componentOfRoot[root]).add(lessonIndex);
+        }
+
+        int[][] components = new int[lessonsOfComponents.size()][];
+        for (int component = 0; component < components.length; ++component)
+            components[component] = lessonsOfComponents.get(component).stream().mapToInt(Integer::intValue).toArray();
+        return components;
+    }
+
+    private static int findRoot(int[] parent, int lessonIndex) {
+        while (parent[lessonIndex] != lessonIndex) {
+            parent[lessonIndex] = parent[parent[lessonIndex]];
+            lessonIndex = parent[lessonIndex];
+        }
+        return lessonIndex;
+    }
+
+    /**
+     * Checks if the plan splits into more than one component
+     *
+     * @return true if searching components separately makes the search space smaller, false else
+     */
+    public boolean isDecomposable() {
+        return components.length > 1;
+    }
+
+    /**
+     * Searches for several best timetables within provided budget
+     *
+     * @param numberOfTimetables amount of timetables to find
+     * @param budget limits of the search, shared by searches of all components
+     * @param progress counters updated by searches of all components, the best score is reported once they finish
+     * @return the same as BranchAndBoundSolver.solveForBestTimetables(). The timetables are proven optimal if the
+     * timetables of every component are
+     */
+    public List<TimetableWithDecisionPointsAndScore> solveForBestTimetables(int numberOfTimetables, SolveBudget budget,
+                                                                           SolverProgress progress) {
+        List<List<TimetableWithDecisionPointsAndScore>> timetablesOfComponents = searchComponents(progress,
+                (planOfComponent, lessons, searchOrderOfComponent, progressOfComponent) -> isRacingHeuristics
+                        ? new PortfolioSolver(planOfComponent, forkJoinPool, heuristicSeed)
+                                .withSearchOrder(searchOrderOfComponent)
+                                .solveForBestTimetables(numberOfTimetables, budget, progressOfComponent)
+                        : new BranchAndBoundSolver(planOfComponent, forkJoinPool)
+                                .withSearchOrder(searchOrderOfComponent)
+                                .withInitialTimetable(getPicksOfComponent(initialPickedTerms, lessons))
+                                .solveForBestTimetables(numberOfTimetables, budget, progressOfComponent));
+
+        List<TimetableWithDecisionPointsAndScore> timetables =
+                combine(compiledPlan, numberOfTimetables, timetablesOfComponents);
+        progress.offerBestScore(timetables.get(0).getMinutesSpentAtOptimizedActivity());
+        return timetables;
+    }
+
+    /**
+     * Searches for the optimal timetable of every commute limit from 1 to maxCommutesPerDay of the plan, each component
+     * by a single BranchAndBoundSolver.solveForEveryCommuteLimit()
+     *
+     * @param budget limits of the search, shared by searches of all components
+     * @param progress counters updated by searches of all components, the best score is the one of the highest limit
+     * @return the same as BranchAndBoundSolver.solveForEveryCommuteLimit(). The timetable of a limit is proven optimal
+     * if the timetables of every component with that limit are
+     */
+    public List<TimetableWithDecisionPointsAndScore> solveForEveryCommuteLimit(SolveBudget budget,
+                                                                              SolverProgress progress) {
+        List<List<TimetableWithDecisionPointsAndScore>> timetablesOfComponents = searchComponents(progress,
+                (planOfComponent, lessons, searchOrderOfComponent, progressOfComponent) ->
+                        new BranchAndBoundSolver(planOfComponent, forkJoinPool).withSearchOrder(searchOrderOfComponent)
+                                .solveForEveryCommuteLimit(budget, progressOfComponent));
+
+        int maxCommutesPerDay = Math.max(compiledPlan.getMaxCommutesPerDay(), 0);
+        List<TimetableWithDecisionPointsAndScore> timetables = new ArrayList<TimetableWithDecisionPointsAndScore>();
+        for (int commutes = 1; commutes <= maxCommutesPerDay; ++commutes) {
+            CompiledPlan compiledPlanWithLimit = commutes == maxCommutesPerDay ? compiledPlan
+                    : compiledPlan.withOptimizedActivity(commutes, compiledPlan.getOptimizedActivity());
+            List<List<TimetableWithDecisionPointsAndScore>> timetablesOfLimit =
+                    new ArrayList<List<TimetableWithDecisionPointsAndScore>>();
+            for (List<TimetableWithDecisionPointsAndScore> timetablesOfComponent : timetablesOfComponents)
+                timetablesOfLimit.add(Collections.singletonList(timetablesOfComponent.get(commutes - 1)));
+            timetables.add(combine(compiledPlanWithLimit, 1, timetablesOfLimit).get(0));
+        }
+
+        if (!timetables.isEmpty())
+            progress.offerBestScore(timetables.get(maxCommutesPerDay - 1).getMinutesSpentAtOptimizedActivity());
+        return timetables;
+    }
+
+    /**
+     * Runs searches of all components at the same time on the fork/join pool
+     *
+     * @return timetables found by the search of each component
+     */
+    private List<List<TimetableWithDecisionPointsAndScore>> searchComponents(SolverProgress progress,
+                                                                             ComponentSearch componentSearch) {
+        progress.start(components.length * COVERED_UNITS_OF_COMPONENT);
+        searchOrder = BranchAndBoundSolver.orderLessonsByConstraints(compiledPlan, compiledPlan.getTermConflictIndex());
+        List<ForkJoinTask<List<TimetableWithDecisionPointsAndScore>>> searches =
+                new ArrayList<ForkJoinTask<List<TimetableWithDecisionPointsAndScore>>>();
+        for (int[] lessons : components) {
+            CompiledPlan planOfComponent = compileComponent(lessons);
+            int[] searchOrderOfComponent = getSearchOrderOfComponent(lessons);
+            searches.add(ForkJoinTask.adapt(() -> componentSearch.search(planOfComponent, lessons,
+                    searchOrderOfComponent, new ComponentProgress(progress))));
+        }
+        forkJoinPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(searches)));
+
+        List<List<TimetableWithDecisionPointsAndScore>> timetablesOfComponents =
+                new ArrayList<List<TimetableWithDecisionPointsAndScore>>();
+        for (ForkJoinTask<List<TimetableWithDecisionPointsAndScore>> search : searches)
+            timetablesOfComponents.add(search.join());
+        return timetablesOfComponents;
+    }
+
+    private interface ComponentSearch {
+        List<TimetableWithDecisionPointsAndScore> search(CompiledPlan planOfComponent, int[] lessons,
+                                                         int[] searchOrderOfComponent, SolverProgress progress);
+    }
+
+    private CompiledPlan compileComponent(int[] lessons) {
+        List<LessonWithPossibleTerms> lessonsOfComponent = new ArrayList<LessonWithPossibleTerms>(lessons.length);
+        for (int lessonIndex : lessons)
+            lessonsOfComponent.add(compiledPlan.getLessons().get(lessonIndex));
+
+        CompiledPlan planOfComponent = new CompiledPlan(lessonsOfComponent, compiledPlan.getDaysInCycle(),
+                compiledPlan.getTimeDistanceManager(), compiledPlan.getMaxCommutesPerDay(),
+                compiledPlan.getOptimizedActivity());
+        // days are scored the same way in the whole plan and in its components
+        planOfComponent.setDayScoreCache(compiledPlan.getDayScoreCache());
+        return planOfComponent;
+    }
+
+    // shortest travel times in the plan of a component don't go through places of other lessons, so its conflicts and
+    // the order of orderLessonsByConstraints() may differ from the ones of the whole plan
+    private int[] getSearchOrderOfComponent(int[] lessons) {
+        int[] indexInComponent = new int[compiledPlan.getNumberOfLessons()];
+        Arrays.fill(indexInComponent, -1);
+        for (int index = 0; index < lessons.length; ++index)
+            indexInComponent[lessons[index]] = index;
+
+        return Arrays.stream(searchOrder).filter(x -> indexInComponent[x] >= 0).map(x -> indexInComponent[x])
+                .toArray();
+    }
+
+    private int[] getPicksOfComponent(int[] pickedTerms, int[] lessons) {
+        if (pickedTerms == null || pickedTerms.length != compiledPlan.getNumberOfLessons())
+            return null;
+
+        int[] picksOfComponent = new int[lessons.length];
+        for (int index = 0; index < lessons.length; ++index)
+            picksOfComponent[index] = pickedTerms[lessons[index]];
+        return picksOfComponent;
+    }
+
+    // compiledPlan is the plan with the commute limit of the timetables of components
+    private List<TimetableWithDecisionPointsAndScore> combine(
+            CompiledPlan compiledPlan, int numberOfTimetables,
+            List<List<TimetableWithDecisionPointsAndScore>> timetablesOfComponents) {
+        // every component adds the score of days without lessons of the others
+        int scoreOfOtherComponents = -(components.length - 1) * getScoreOfCycleWithoutLessons(compiledPlan);
+        boolean isProvenOptimal = true;
+        boolean hasEveryComponentTimetable = true;
+        boolean hasComponentWithoutAnyTimetable = false;
+        int upperBound = scoreOfOtherComponents;
+        for (List<TimetableWithDecisionPointsAndScore> timetables : timetablesOfComponents) {
+            TimetableWithDecisionPointsAndScore best = timetables.get(0);
+            isProvenOptimal &= best.isProvenOptimal();
+            hasEveryComponentTimetable &= best.getOptimalTimetable() != null;
+            hasComponentWithoutAnyTimetable |= best.getOptimalTimetable() == null && best.isProvenOptimal();
+            upperBound += best.getUpperBoundOfMinutes();
+        }
+
+        SolverIncumbent incumbent = new SolverIncumbent(numberOfTimetables);
+        if (hasEveryComponentTimetable) {
+            int[] bestScoreOfComponentsFrom = new int[components.length + 1];
+            for (int component = components.length - 1; component >= 0; --component)
+                bestScoreOfComponentsFrom[component] = bestScoreOfComponentsFrom[component + 1]
+                        + timetablesOfComponents.get(component).get(0).getMinutesSpentAtOptimizedActivity();
+
+            combineFrom(0, scoreOfOtherComponents, new int[compiledPlan.getNumberOfLessons()], timetablesOfComponents,
+                    bestScoreOfComponentsFrom, incumbent);
+        } else if (hasComponentWithoutAnyTimetable) {
+            // the whole plan has no valid timetable either
+            isProvenOptimal = true;
+            upperBound = 0;
+        }
+
+        int bestScore = incumbent.getBestScore();
+        upperBound = isProvenOptimal ? bestScore : Math.max(bestScore, upperBound);
+        return ScoredTimetables.toScoredTimetables(compiledPlan, incumbent, isProvenOptimal, upperBound);
+    }
+
+    /**
+     * Picks a timetable of each component from the given one on, timetables of each component are ordered from the best
+     */
+    private void combineFrom(int component, int score, int[] pickedTerms,
+                             List<List<TimetableWithDecisionPointsAndScore>> timetablesOfComponents,
+                             int[] bestScoreOfComponentsFrom, SolverIncumbent incumbent) {
+        if (component == components.length) {
+            int[] picksInSearchOrder = new int[searchOrder.length];
+            for (int depth = 0; depth < searchOrder.length; ++depth)
+                picksInSearchOrder[depth] = pickedTerms[searchOrder[depth]];
+            incumbent.offer(score, pickedTerms.clone(), picksInSearchOrder);
+            return;
+        }
+
+        int[] lessons = components[component];
+        for (TimetableWithDecisionPointsAndScore timetable : timetablesOfComponents.get(component)) {
+            int scoreWithComponent = score + timetable.getMinutesSpentAtOptimizedActivity();
+            if (!incumbent.canBeBeatenBy(scoreWithComponent + bestScoreOfComponentsFrom[component + 1], null, 0))
+                return;
+
+            int[] picksOfComponent = timetable.getPickedTerms();
+            for (int index = 0; index < lessons.length; ++index)
+                pickedTerms[lessons[index]] = picksOfComponent[index];
+            combineFrom(component + 1, scoreWithComponent, pickedTerms, timetablesOfComponents,
+                    bestScoreOfComponentsFrom, incumbent);
+        }
+    }
+
+    private static int getScoreOfCycleWithoutLessons(CompiledPlan compiledPlan) {
+        OptimalityCalculator optimalityCalculator = new OptimalityCalculator(compiledPlan);
+        int score = 0;
+        for (int cycleDayNumber = 0; cycleDayNumber < compiledPlan.getDaysInCycle(); ++cycleDayNumber)
+            score += optimalityCalculator.calculateForDay(cycleDayNumber, new int[0], 0, 0);
+        return score;
+    }
+
+    /**
+     * Progress of the search of a single component. Counters are passed on to the progress of the whole search right
+     * away, the covered part in units of the component. Scores of components aren't scores of the whole timetable, so
+     * they aren't passed on.
+     */
+    private static class ComponentProgress extends SolverProgress {
+        private final SolverProgress progress;
+        private long reportedUnits;
+
+        private ComponentProgress(SolverProgress progress) {
+            this.progress = progress;
+        }
+
+        @Override
+        public void report(long explored, long pruned, long valid, long covered) {
+            super.report(explored, pruned, valid, covered);
+            progress.report(explored, pruned, valid, takeNewlyCoveredUnits());
+        }
+
+        private synchronized long takeNewlyCoveredUnits() {
+            long coveredUnits = (long) (getCoveredFraction() * COVERED_UNITS_OF_COMPONENT);
+            long newlyCoveredUnits = Math.max(coveredUnits - reportedUnits, 0);
+            reportedUnits += newlyCoveredUnits;
+            return newlyCoveredUnits;
+        }
+    }
+}
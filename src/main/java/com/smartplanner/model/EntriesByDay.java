@@ -0,0 +1,91 @@
+package com.smartplanner.model;
+
+import java.util.Arrays;
+
+/**
+ * Entries of picked terms grouped by cycle day, each day sorted by start time. Entries that start at the same time keep
+ * the order of the timetable returned by LessonPicker.
+ *
+ * The object is a reusable buffer for a single compiled plan, it isn't safe to share it between threads.
+ */
+public class EntriesByDay {
+    private CompiledPlan compiledPlan;
+    private int[] firstEntryOfDay;
+    private int[] entries;
+
+    /**
+     * Creates empty buffer for the compiled plan
+     *
+     * @param compiledPlan plan whose entries will be grouped
+     */
+    public EntriesByDay(CompiledPlan compiledPlan) {
+        this.compiledPlan = compiledPlan;
+        this.firstEntryOfDay = new int[compiledPlan.getDaysInCycle() + 1];
+        this.entries = new int[compiledPlan.getNumberOfEntries()];
+    }
+
+    /**
+     * Groups entries of picked terms, replacing the previous content of the buffer
+     *
+     * @param pickedTerms term index for each lesson
+     */
+    public void fill(int[] pickedTerms) {
+        int daysInCycle = compiledPlan.getDaysInCycle();
+        Arrays.fill(firstEntryOfDay, 0);
+
+        for (int lessonIndex = 0; lessonIndex < pickedTerms.length; ++lessonIndex) {
+            int term = compiledPlan.getFirstTermOfLesson(lessonIndex) + pickedTerms[lessonIndex];
+            for (int entry = compiledPlan.getFirstEntryOfTerm(term); entry < compiledPlan.getFirstEntryOfTerm(term + 1); ++entry)
+                ++firstEntryOfDay[compiledPlan.getEntryCycleDay(entry) + 1];
+        }
+        for (int cycleDayNumber = 0; cycleDayNumber < daysInCycle; ++cycleDayNumber)
+            firstEntryOfDay[cycleDayNumber + 1] += firstEntryOfDay[cycleDayNumber];
+
+        // firstEntryOfDay[day] is used as an insertion point and moved forward, so afterwards it points to the next day
+        for (int lessonIndex = 0; lessonIndex < pickedTerms.length; ++lessonIndex) {
+            int term = compiledPlan.getFirstTermOfLesson(lessonIndex) + pickedTerms[lessonIndex];
+            for (int entry = compiledPlan.getFirstEntryOfTerm(term); entry < compiledPlan.getFirstEntryOfTerm(term + 1); ++entry)
+                entries[firstEntryOfDay[compiledPlan.getEntryCycleDay(entry)]++] = entry;
+        }
+        for (int cycleDayNumber = daysInCycle; cycleDayNumber > 0; --cycleDayNumber)
+            firstEntryOfDay[cycleDayNumber] = firstEntryOfDay[cycleDayNumber - 1];
+        firstEntryOfDay[0] = 0;
+
+        for (int cycleDayNumber = 0; cycleDayNumber < daysInCycle; ++cycleDayNumber)
+            sortByStartTime(compiledPlan, entries, firstEntryOfDay[cycleDayNumber], firstEntryOfDay[cycleDayNumber + 1]);
+    }
+
+    /**
+     * Sorts entries by start time (insertion sort, which is stable and fast for a handful of entries in a day)
+     *
+     * @param compiledPlan plan the entries belong to
+     * @param entries array of entry numbers
+     * @param from index of the first entry to sort
+     * @param to index after the last entry to sort
+     */
+    public static void sortByStartTime(CompiledPlan compiledPlan, int[] entries, int from, int to) {
+        for (int i = from + 1; i < to; ++i) {
+            int entry = entries[i];
+            int startMinute = compiledPlan.getEntryStartMinute(entry);
+            int j = i - 1;
+            while (j >= from && compiledPlan.getEntryStartMinute(entries[j]) > startMinute) {
+                entries[j + 1] = entries[j];
+                --j;
+            }
+            entries[j + 1] = entry;
+        }
+    }
+
+    /**
+     * Returns sorted entries, entries of day d are stored between getFirstEntryOfDay(d) and getFirstEntryOfDay(d + 1)
+     *
+     * @return array of entry numbers
+     */
+    public int[] getEntries() {
+        return entries;
+    }
+
+    public int getFirstEntryOfDay(int cycleDayNumber) {
+        return firstEntryOfDay[cycleDayNumber];
+    }
+}
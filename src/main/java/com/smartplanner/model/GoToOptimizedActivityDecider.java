@@ -1,17 +1,25 @@
 package com.smartplanner.model;
 
+import com.smartplanner.exception.InvalidDataProvidedException;
+
 import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Generator for decision points (that tells us if we should go to work)
  *
+ * Combinations are walked as long bitmasks in increasing order, where n-th bit set means that after n-th lesson we
+ * should go to optimized activity. If the amount of commutes is limited, masks with too many bits set are skipped
+ * without visiting them.
+ *
  * GoToOptimizedActivityDecider can't be reused, what means that you have to create new object each time you want to get all of combinations.
  * After getNext() returns false, the object is useless.
  */
 public class GoToOptimizedActivityDecider {
-    private ArrayList<TimetableEntry> singleDayTimetable;
-    private ArrayList<AtomicInteger> currentCombination;
+    private static final int MAX_NUMBER_OF_DECISION_POINTS = Long.SIZE - 2;
+
+    private int numberOfDecisionPoints;
+    private int maxCommutesPerDay;
+    private long currentCombination;
     private boolean hasFinished;
 
     /**
@@ -20,13 +28,7 @@ public class GoToOptimizedActivityDecider {
      * @param singleDayTimetable a timetable schedule for particular day
      */
     public GoToOptimizedActivityDecider(ArrayList<TimetableEntry> singleDayTimetable) {
-        this.singleDayTimetable = singleDayTimetable;
-        this.hasFinished = false;
-
-        int numberOfDecisionPoints = singleDayTimetable.size() + 1;
-        this.currentCombination = new ArrayList<AtomicInteger>(numberOfDecisionPoints);
-        for (int i = 0; i < numberOfDecisionPoints; ++i)
-            currentCombination.add(new AtomicInteger(0));
+        this(singleDayTimetable.size() + 1, Integer.MAX_VALUE);
     }
 
     /**
@@ -38,19 +40,24 @@ public class GoToOptimizedActivityDecider {
      *                                      return decisions for the day passed in this argument
      */
     public GoToOptimizedActivityDecider(ArrayList<TimetableEntry> completeTimetable, int getDecisionsForCycleNumberDay) {
-        ArrayList<TimetableEntry> singleDayTimetable = new ArrayList<TimetableEntry>();
-
-        for (TimetableEntry entry : completeTimetable)
-            if (entry.getTerm().getCycleDayNumber() == getDecisionsForCycleNumberDay)
-                singleDayTimetable.add(entry);
-
-        this.singleDayTimetable = singleDayTimetable;
-        this.hasFinished = false;
+        this(countEntriesInDay(completeTimetable, getDecisionsForCycleNumberDay) + 1, Integer.MAX_VALUE);
+    }
 
-        int numberOfDecisionPoints = singleDayTimetable.size() + 1;
-        this.currentCombination = new ArrayList<AtomicInteger>(numberOfDecisionPoints);
-        for (int i = 0; i < numberOfDecisionPoints; ++i)
-            currentCombination.add(new AtomicInteger(0));
+    /**
+     * Creates decider that returns only combinations with limited amount of commutes to optimized activity
+     *
+     * @param numberOfDecisionPoints amount of decision points, i.e. amount of entries in the day increased by one
+     * @param maxCommutesPerDay maximal amount of decision points set in a single combination
+     */
+    public GoToOptimizedActivityDecider(int numberOfDecisionPoints, int maxCommutesPerDay) {
+        if (numberOfDecisionPoints > MAX_NUMBER_OF_DECISION_POINTS)
+            throw new InvalidDataProvidedException(
+                    "Too many activities in a single day to check every combination of decision points");
+
+        this.numberOfDecisionPoints = numberOfDecisionPoints;
+        this.maxCommutesPerDay = maxCommutesPerDay;
+        this.currentCombination = 0;
+        this.hasFinished = maxCommutesPerDay < 0;
     }
 
     /**
@@ -60,17 +67,35 @@ public class GoToOptimizedActivityDecider {
      *          means that after n-th lesson we should go to optimized activity
      */
     public ArrayList<Boolean> getNext() {
-        ArrayList<Boolean> returnedCombination = castToBooleanArrayList(currentCombination);
+        return castToBooleanArrayList(getNextMask());
+    }
+
+    /**
+     * Returns next combination of decisions without allocating anything
+     *
+     * @return bitmask of decision points, n-th bit set means that after n-th lesson we should go to optimized activity
+     */
+    public long getNextMask() {
+        long returnedCombination = currentCombination;
 
         shiftIndexesToNextSet();
         return returnedCombination;
     }
 
-    private ArrayList<Boolean> castToBooleanArrayList(ArrayList<AtomicInteger> currentCombination) {
-        ArrayList<Boolean> casted = new ArrayList<Boolean>(currentCombination.size());
+    /**
+     * Returns the amount of decision points in each combination
+     *
+     * @return amount of entries in the day increased by one
+     */
+    public int getNumberOfDecisionPoints() {
+        return numberOfDecisionPoints;
+    }
+
+    private ArrayList<Boolean> castToBooleanArrayList(long combination) {
+        ArrayList<Boolean> casted = new ArrayList<Boolean>(numberOfDecisionPoints);
 
-        for (int i = 0; i < currentCombination.size(); ++i)
-            casted.add(currentCombination.get(i).get() == 1);
+        for (int i = 0; i < numberOfDecisionPoints; ++i)
+            casted.add((combination >>> i & 1) == 1);
 
         return casted;
     }
@@ -85,17 +110,24 @@ public class GoToOptimizedActivityDecider {
     }
 
     private void shiftIndexesToNextSet() {
-        currentCombination.get(0).incrementAndGet();
+        long endOfCombinations = 1L << numberOfDecisionPoints;
+        long nextCombination = currentCombination + 1;
 
-        for (int i = 0; i + 1 < currentCombination.size(); ++i) {
-            if (currentCombination.get(i).get() > 1) {
-                currentCombination.get(i).getAndSet(0);
-                currentCombination.get(i + 1).getAndIncrement();
-            }
-        }
+        // every mask between x and x + lowestOneBit(x) contains all bits of x, so none of them can have fewer bits set
+        while (nextCombination < endOfCombinations && Long.bitCount(nextCombination) > maxCommutesPerDay)
+            nextCombination += Long.lowestOneBit(nextCombination);
 
-        int lastIndex = currentCombination.size() - 1;
-        if (currentCombination.get(lastIndex).get() > 1)
+        if (nextCombination >= endOfCombinations)
             hasFinished = true;
+        currentCombination = nextCombination;
+    }
+
+    private static int countEntriesInDay(ArrayList<TimetableEntry> completeTimetable, int cycleDayNumber) {
+        int numberOfEntries = 0;
+        for (TimetableEntry entry : completeTimetable)
+            if (entry.getTerm().getCycleDayNumber() == cycleDayNumber)
+                ++numberOfEntries;
+
+        return numberOfEntries;
     }
 }
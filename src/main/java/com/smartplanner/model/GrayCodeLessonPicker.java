@@ -0,0 +1,100 @@
+package com.smartplanner.model;
+
+/**
+ * Generator for possible picks of terms for each lesson in reflected mixed-radix Gray code order, which means that
+ * consecutive combinations differ in the term of exactly one lesson. It lets IncrementalTimetable update a candidate
+ * instead of building it from scratch. Every step takes constant time (loopless algorithm H from Knuth's TAOCP 7.2.1.1).
+ *
+ * The first combination picks the first term of every lesson. GrayCodeLessonPicker can't be reused, after isNext()
+ * returns false, the object is useless.
+ */
+public class GrayCodeLessonPicker {
+    private int[] termIndexes;
+    // lessons with at least two terms, only their terms can change
+    private int[] changingLessons;
+    private int[] radices;
+    private int[] directions;
+    private int[] focusPointers;
+    private boolean isFirst;
+    private boolean hasFinished;
+
+    /**
+     * Creates picker for the compiled plan
+     *
+     * @param compiledPlan plan with lessons and their possible terms
+     */
+    public GrayCodeLessonPicker(CompiledPlan compiledPlan) {
+        int qntOfLessons = compiledPlan.getNumberOfLessons();
+        this.termIndexes = new int[qntOfLessons];
+        this.isFirst = true;
+
+        int qntOfChangingLessons = 0;
+        for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex) {
+            if (compiledPlan.getNumberOfTerms(lessonIndex) == 0)
+                hasFinished = true;
+            if (compiledPlan.getNumberOfTerms(lessonIndex) > 1)
+                ++qntOfChangingLessons;
+        }
+
+        changingLessons = new int[qntOfChangingLessons];
+        radices = new int[qntOfChangingLessons];
+        directions = new int[qntOfChangingLessons];
+        focusPointers = new int[qntOfChangingLessons + 1];
+        int position = 0;
+        for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex) {
+            if (compiledPlan.getNumberOfTerms(lessonIndex) > 1) {
+                changingLessons[position] = lessonIndex;
+                radices[position] = compiledPlan.getNumberOfTerms(lessonIndex);
+                directions[position] = 1;
+                focusPointers[position] = position;
+                ++position;
+            }
+        }
+        focusPointers[qntOfChangingLessons] = qntOfChangingLessons;
+    }
+
+    /**
+     * Checks if there is next combination available.
+     *
+     * @return true if there is another combination, false else
+     */
+    public boolean isNext() {
+        return !hasFinished;
+    }
+
+    /**
+     * Moves to the next combination
+     *
+     * @return index of the lesson whose term has changed, -1 for the first combination
+     */
+    public int getNextChangedLesson() {
+        if (isFirst) {
+            isFirst = false;
+            hasFinished = hasFinished || focusPointers[0] == changingLessons.length;
+            return -1;
+        }
+
+        int position = focusPointers[0];
+        focusPointers[0] = 0;
+
+        int lessonIndex = changingLessons[position];
+        termIndexes[lessonIndex] += directions[position];
+        if (termIndexes[lessonIndex] == 0 || termIndexes[lessonIndex] == radices[position] - 1) {
+            directions[position] = -directions[position];
+            focusPointers[position] = focusPointers[position + 1];
+            focusPointers[position + 1] = position + 1;
+        }
+
+        hasFinished = focusPointers[0] == changingLessons.length;
+        return lessonIndex;
+    }
+
+    /**
+     * Returns current combination of term picks
+     *
+     * @return term index for each lesson. The array is updated in place by the next call of getNextChangedLesson()
+     */
+    public int[] getTermIndexes() {
+        return termIndexes;
+    }
+}
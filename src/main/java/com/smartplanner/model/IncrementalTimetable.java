@@ -0,0 +1,191 @@
+package com.smartplanner.model;
+
+import java.util.Arrays;
+
+/**
+ * Candidate timetable of a compiled plan that is updated one lesson at a time.
+ *
+ * Changing the term of a lesson retracts entries of the old term and inserts entries of the new one into per-day lists
+ * kept in chronological order, so the rest of the timetable isn't rebuilt. Conflicts between picked terms are counted
+ * with TermConflictIndex (a popcount of the picked bitset against the rows of both terms), and only days touched by
+ * the change are rescored, lazily, when the score is needed.
+ *
+ * If the index isn't exact, entries of changed days that can't be reached in time are counted too, so the amount of
+ * violations tells how far the picks are from a valid timetable (e.g. for local search).
+ *
+ * The object keeps mutable state, so it shouldn't be shared between threads.
+ */
+public class IncrementalTimetable {
+    private CompiledPlan compiledPlan;
+    private TermConflictIndex conflictIndex;
+    private TimetableValidator validator;
+    private OptimalityCalculator optimalityCalculator;
+
+    private int[] pickedTerms;
+    private long[] pickedTermsBitset;
+    private int numberOfConflicts;
+
+    // entriesOfDay[day][0 .. numberOfEntriesInDay[day]) sorted by start time and then by lesson index
+    private int[][] entriesOfDay;
+    private int[] numberOfEntriesInDay;
+    private int[] scoreOfDay;
+    private int[] unreachableEntriesOfDay;
+    private boolean[] isDayChanged;
+    private int score;
+    private int numberOfUnreachableEntries;
+
+    /**
+     * Creates timetable that picks the first term of every lesson. Every lesson needs at least one possible term.
+     *
+     * @param compiledPlan plan compiled to primitive arrays
+     */
+    public IncrementalTimetable(CompiledPlan compiledPlan) {
+        this.compiledPlan = compiledPlan;
+        this.conflictIndex = compiledPlan.getTermConflictIndex();
+        this.validator = new TimetableValidator(compiledPlan);
+        this.optimalityCalculator = new OptimalityCalculator(compiledPlan);
+
+        int daysInCycle = compiledPlan.getDaysInCycle();
+        this.pickedTerms = new int[compiledPlan.getNumberOfLessons()];
+        this.pickedTermsBitset = new long[TermConflictIndex.getWordsForTerms(compiledPlan.getNumberOfTerms())];
+        this.entriesOfDay = new int[daysInCycle][compiledPlan.getNumberOfEntries()];
+        this.numberOfEntriesInDay = new int[daysInCycle];
+        this.scoreOfDay = new int[daysInCycle];
+        this.unreachableEntriesOfDay = new int[daysInCycle];
+        this.isDayChanged = new boolean[daysInCycle];
+        Arrays.fill(isDayChanged, true);
+
+        for (int lessonIndex = 0; lessonIndex < pickedTerms.length; ++lessonIndex)
+            addTerm(compiledPlan.getFirstTermOfLesson(lessonIndex));
+    }
+
+    /**
+     * Replaces the picked term of a lesson
+     *
+     * @param lessonIndex index of the lesson
+     * @param termIndex index of the new term (relative to the lesson)
+     */
+    public void changeTerm(int lessonIndex, int termIndex) {
+        removeTerm(compiledPlan.getFirstTermOfLesson(lessonIndex) + pickedTerms[lessonIndex]);
+        pickedTerms[lessonIndex] = termIndex;
+        addTerm(compiledPlan.getFirstTermOfLesson(lessonIndex) + termIndex);
+    }
+
+    /**
+     * Checks if the current picks make a valid timetable, the same as TimetableValidator.isValid()
+     *
+     * @return true if timetable is valid, false else
+     */
+    public boolean isValid() {
+        if (numberOfConflicts > 0)
+            return false;
+
+        return conflictIndex.isExact() || validator.isValid(pickedTerms);
+    }
+
+    /**
+     * Returns amount of violations of the current picks: pairs of picked terms that conflict according to
+     * TermConflictIndex and, if the index isn't exact, entries that can't be reached in time from the previous entry.
+     * Only days changed since the previous call are checked again.
+     *
+     * @return amount of violations, 0 if and only if the timetable is valid
+     */
+    public int getNumberOfViolations() {
+        updateChangedDays();
+        return numberOfConflicts + numberOfUnreachableEntries;
+    }
+
+    /**
+     * Counts picked terms that conflict with the picked term of a lesson
+     *
+     * @param lessonIndex index of the lesson
+     * @return amount of other lessons whose picked terms conflict with it
+     */
+    public int countConflictsOfLesson(int lessonIndex) {
+        return conflictIndex.countConflictsWith(compiledPlan.getFirstTermOfLesson(lessonIndex) + pickedTerms[lessonIndex],
+                pickedTermsBitset);
+    }
+
+    /**
+     * Returns score of the current picks, the same as OptimalityCalculator.calculate(). Only days changed since the
+     * previous call are rescored.
+     *
+     * @return amount of minutes spent on optimized activity
+     */
+    public int getScore() {
+        updateChangedDays();
+        return score;
+    }
+
+    /**
+     * Returns current picks
+     *
+     * @return term index for each lesson. The array is updated in place by changeTerm()
+     */
+    public int[] getPickedTerms() {
+        return pickedTerms;
+    }
+
+    private void updateChangedDays() {
+        for (int cycleDayNumber = 0; cycleDayNumber < isDayChanged.length; ++cycleDayNumber) {
+            if (isDayChanged[cycleDayNumber] == false)
+                continue;
+
+            score -= scoreOfDay[cycleDayNumber];
+            scoreOfDay[cycleDayNumber] = optimalityCalculator.calculateForDay(cycleDayNumber,
+                    entriesOfDay[cycleDayNumber], 0, numberOfEntriesInDay[cycleDayNumber]);
+            score += scoreOfDay[cycleDayNumber];
+
+            if (conflictIndex.isExact() == false) {
+                numberOfUnreachableEntries -= unreachableEntriesOfDay[cycleDayNumber];
+                unreachableEntriesOfDay[cycleDayNumber] = validator.countUnreachableEntries(
+                        entriesOfDay[cycleDayNumber], 0, numberOfEntriesInDay[cycleDayNumber]);
+                numberOfUnreachableEntries += unreachableEntriesOfDay[cycleDayNumber];
+            }
+            isDayChanged[cycleDayNumber] = false;
+        }
+    }
+
+    private void addTerm(int term) {
+        numberOfConflicts += conflictIndex.countConflictsWith(term, pickedTermsBitset);
+        pickedTermsBitset[term >>> 6] |= 1L << term;
+
+        for (int entry = compiledPlan.getFirstEntryOfTerm(term); entry < compiledPlan.getFirstEntryOfTerm(term + 1); ++entry) {
+            int cycleDayNumber = compiledPlan.getEntryCycleDay(entry);
+            int[] entries = entriesOfDay[cycleDayNumber];
+            int position = numberOfEntriesInDay[cycleDayNumber]++;
+            while (position > 0 && isLater(entries[position - 1], entry)) {
+                entries[position] = entries[position - 1];
+                --position;
+            }
+            entries[position] = entry;
+            isDayChanged[cycleDayNumber] = true;
+        }
+    }
+
+    private void removeTerm(int term) {
+        pickedTermsBitset[term >>> 6] &= ~(1L << term);
+        numberOfConflicts -= conflictIndex.countConflictsWith(term, pickedTermsBitset);
+
+        for (int entry = compiledPlan.getFirstEntryOfTerm(term); entry < compiledPlan.getFirstEntryOfTerm(term + 1); ++entry) {
+            int cycleDayNumber = compiledPlan.getEntryCycleDay(entry);
+            int[] entries = entriesOfDay[cycleDayNumber];
+            int position = 0;
+            while (entries[position] != entry)
+                ++position;
+            System.arraycopy(entries, position + 1, entries, position, numberOfEntriesInDay[cycleDayNumber] - position - 1);
+            --numberOfEntriesInDay[cycleDayNumber];
+            isDayChanged[cycleDayNumber] = true;
+        }
+    }
+
+    // the same order as in EntriesByDay, where entries with equal start time stay in the order of lessons
+    private boolean isLater(int entry, int otherEntry) {
+        int startMinute = compiledPlan.getEntryStartMinute(entry);
+        int otherStartMinute = compiledPlan.getEntryStartMinute(otherEntry);
+        if (startMinute != otherStartMinute)
+            return startMinute > otherStartMinute;
+
+        return compiledPlan.getEntryLesson(entry) > compiledPlan.getEntryLesson(otherEntry);
+    }
+}
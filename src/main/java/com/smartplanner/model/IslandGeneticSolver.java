@@ -0,0 +1,349 @@
+package com.smartplanner.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Heuristic finder of good timetables for the largest plans that evolves several populations of timetables (a genetic
+ * algorithm with the island model).
+ *
+ * A genome is the vector of picked term indexes, the same one that LessonPicker produces. Its fitness is the score
+ * of the timetable minus a penalty for every violation (a pair of conflicting terms or an entry that can't be reached
+ * in time), computed by IncrementalTimetable of the island, so invalid genomes aren't thrown away but slowly bred out.
+ * Children are made by uniform crossover of parents chosen in tournaments and mutated by changing random picks, the
+ * best genomes of each generation survive unchanged.
+ *
+ * Islands evolve on their own on the fork/join pool, each of them with its own generator of random numbers split from
+ * provided seed. Every few generations all islands stop and the best genomes of each island migrate to the next one in
+ * a ring, replacing its worst genomes. Migration happens only when every island has finished its generations, so for
+ * a fixed seed and amount of islands the evolution is always the same, no matter how the islands are scheduled. Only
+ * the point where SolveBudget stops it can differ: each island charges its evaluations to the budget after every
+ * generation, so a limit of candidates is exceeded by at most one generation of each island, but islands charge it
+ * at the same time and the one that reaches the limit first differs from run to run.
+ *
+ * Valid timetables are kept in a shared SolverIncumbent, equal scores are resolved by the smallest picks in search
+ * order, like in BranchAndBoundSolver. Improvements of the best score are recorded by SolverProgress, which shows how
+ * the evolution converges. The evolution ends when the budget is exhausted, when the best fitness hasn't improved for
+ * several migrations or when every kept timetable reaches the upper bound of the score.
+ *
+ * IslandGeneticSolver can't be reused, what means that you have to create new object for each search.
+ */
+public class IslandGeneticSolver {
+    private static final int POPULATION_OF_ISLAND = 48;
+    private static final int ELITES = 2;
+    private static final int MIGRANTS = 2;
+    private static final int TOURNAMENT_SIZE = 3;
+    private static final int GENERATIONS_BETWEEN_MIGRATIONS = 10;
+    private static final int MAX_MIGRATIONS_WITHOUT_IMPROVEMENT = 100;
+
+    private CompiledPlan compiledPlan;
+    private ForkJoinPool forkJoinPool;
+    private int qntOfLessons;
+    private int numberOfIslands;
+    private long seed;
+
+    private int[] searchOrder;
+    private int[] givenSearchOrder;
+    // lessons with more than one possible term
+    private int[] movableLessons;
+    private int violationPenalty;
+    private int maxScore;
+
+    private SolverIncumbent incumbent;
+    private SolverIncumbent sharedIncumbent;
+    private SolveBudget budget;
+
+    /**
+     * Creates solver for the compiled plan
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     * @param forkJoinPool pool that runs the islands
+     * @param numberOfIslands amount of populations, e.g. the parallelism of the pool
+     * @param seed seed of the evolution, the same seed and amount of islands give the same evolution
+     */
+    public IslandGeneticSolver(CompiledPlan compiledPlan, ForkJoinPool forkJoinPool, int numberOfIslands, long seed) {
+        this.compiledPlan = compiledPlan;
+        this.forkJoinPool = forkJoinPool;
+        this.qntOfLessons = compiledPlan.getNumberOfLessons();
+        this.numberOfIslands = Math.max(numberOfIslands, 1);
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the order of lessons whose picks are tie-break keys of timetables with equal score instead of the one of
+     * BranchAndBoundSolver.orderLessonsByConstraints(), see BranchAndBoundSolver.withSearchOrder()
+     *
+     * @param searchOrder lesson index for each depth of the search
+     * @return this solver
+     */
+    public IslandGeneticSolver withSearchOrder(int[] searchOrder) {
+        this.givenSearchOrder = searchOrder;
+        return this;
+    }
+
+    /**
+     * Sets an incumbent shared with other searches of the plan (see BranchAndBoundSolver.withSharedIncumbent())
+     *
+     * @param incumbent incumbent used instead of a new one
+     * @return this solver
+     */
+    public IslandGeneticSolver withSharedIncumbent(SolverIncumbent incumbent) {
+        this.sharedIncumbent = incumbent;
+        return this;
+    }
+
+    /**
+     * Searches for several best timetables within provided budget
+     *
+     * @param numberOfTimetables amount of timetables to find
+     * @param budget limits of the search, every evaluated genome counts as a candidate
+     * @param progress counters of the search, it doesn't set the size of the search space, which is unknown
+     * @return the same as LocalSearchSolver.solveForBestTimetables()
+     */
+    public List<TimetableWithDecisionPointsAndScore> solveForBestTimetables(int numberOfTimetables, SolveBudget budget,
+                                                                           SolverProgress progress) {
+        this.incumbent = sharedIncumbent != null ? sharedIncumbent : new SolverIncumbent(numberOfTimetables);
+        this.budget = budget;
+        maxScore = ScoredTimetables.getMaxScore(compiledPlan);
+
+        boolean isSearched = false;
+        if (ScoredTimetables.hasEveryLessonPossibleTerms(compiledPlan)) {
+            evolve(progress);
+            isSearched = true;
+        }
+
+        // without possible terms of some lesson there is no valid timetable at all
+        return ScoredTimetables.toHeuristicResult(compiledPlan, incumbent, isSearched, maxScore);
+    }
+
+    private void evolve(SolverProgress progress) {
+        searchOrder = givenSearchOrder != null ? givenSearchOrder
+                : BranchAndBoundSolver.orderLessonsByConstraints(compiledPlan, compiledPlan.getTermConflictIndex());
+        movableLessons = ScoredTimetables.findMovableLessons(compiledPlan);
+        violationPenalty = Math.max(compiledPlan.getMaxTimeAtOptimizedActivityPerDay(), 1);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        Island[] islands = new Island[numberOfIslands];
+        for (int islandIndex = 0; islandIndex < numberOfIslands; ++islandIndex)
+            islands[islandIndex] = new Island(random.split());
+
+        runOnIslands(islands, Island::populate);
+        int bestFitness = Integer.MIN_VALUE;
+        int migrationsWithoutImprovement = 0;
+        while (true) {
+            long evaluations = 0;
+            long unchargedEvaluations = 0;
+            long validGenomes = 0;
+            int fitness = Integer.MIN_VALUE;
+            for (Island island : islands) {
+                evaluations += island.evaluationsSinceReport;
+                unchargedEvaluations += island.takeUnchargedEvaluations();
+                validGenomes += island.validGenomesSinceReport;
+                island.evaluationsSinceReport = 0;
+                island.validGenomesSinceReport = 0;
+                fitness = Math.max(fitness, island.getBestFitness());
+            }
+            progress.report(evaluations, 0, validGenomes, 0);
+            progress.offerBestScore(incumbent.getBestScore());
+
+            // evaluations of populating, of migrants and of the last generation haven't been charged by islands yet
+            if (budget.examineCandidates((int) Math.min(unchargedEvaluations, Integer.MAX_VALUE))
+                    || ScoredTimetables.isReachingMaxScore(incumbent, maxScore) || movableLessons.length == 0)
+                return;
+
+            migrationsWithoutImprovement = fitness > bestFitness ? 0 : migrationsWithoutImprovement + 1;
+            bestFitness = Math.max(bestFitness, fitness);
+            if (migrationsWithoutImprovement >= MAX_MIGRATIONS_WITHOUT_IMPROVEMENT)
+                return;
+
+            runOnIslands(islands, island -> island.breed(GENERATIONS_BETWEEN_MIGRATIONS));
+            migrate(islands);
+        }
+    }
+
+    private void runOnIslands(Island[] islands, IslandAction action) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(islands.length);
+        for (Island island : islands)
+            tasks.add(ForkJoinTask.adapt(() -> action.run(island)));
+
+        forkJoinPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
+    // the best genomes of each island replace the worst ones of the next island, all of them are taken before any
+    // island is changed
+    private void migrate(Island[] islands) {
+        if (islands.length == 1)
+            return;
+
+        int[][][] migrants = new int[islands.length][][];
+        for (int islandIndex = 0; islandIndex < islands.length; ++islandIndex)
+            migrants[islandIndex] = islands[islandIndex].getBestGenomes(MIGRANTS);
+
+        for (int islandIndex = 0; islandIndex < islands.length; ++islandIndex)
+            islands[(islandIndex + 1) % islands.length].receive(migrants[islandIndex]);
+    }
+
+    private interface IslandAction {
+        void run(Island island);
+    }
+
+    /**
+     * Population evolved by a single worker at a time
+     */
+    private class Island {
+        private final SplittableRandom random;
+        private final IncrementalTimetable timetable;
+        private final int[] picksInSearchOrder;
+        private int[][] population;
+        private int[] fitness;
+        private int[][] nextPopulation;
+        private int[] nextFitness;
+        // genome indexes from the fittest one
+        private final Integer[] ranking;
+        private long evaluationsSinceReport;
+        private long validGenomesSinceReport;
+        private int evaluationsSinceCharge;
+
+        private Island(SplittableRandom random) {
+            this.random = random;
+            this.timetable = new IncrementalTimetable(compiledPlan);
+            this.picksInSearchOrder = new int[qntOfLessons];
+            this.population = new int[POPULATION_OF_ISLAND][];
+            this.fitness = new int[POPULATION_OF_ISLAND];
+            this.nextPopulation = new int[POPULATION_OF_ISLAND][];
+            this.nextFitness = new int[POPULATION_OF_ISLAND];
+            this.ranking = new Integer[POPULATION_OF_ISLAND];
+        }
+
+        private void populate() {
+            for (int genomeIndex = 0; genomeIndex < POPULATION_OF_ISLAND; ++genomeIndex) {
+                int[] genome = new int[qntOfLessons];
+                for (int lessonIndex : movableLessons)
+                    genome[lessonIndex] = random.nextInt(compiledPlan.getNumberOfTerms(lessonIndex));
+                population[genomeIndex] = genome;
+                fitness[genomeIndex] = evaluate(genome);
+            }
+            rank();
+        }
+
+        private void breed(int generations) {
+            for (int generation = 0; generation < generations; ++generation) {
+                if (budget.examineCandidates(takeUnchargedEvaluations()))
+                    return;
+
+                for (int genomeIndex = 0; genomeIndex < ELITES; ++genomeIndex) {
+                    nextPopulation[genomeIndex] = population[ranking[genomeIndex]];
+                    nextFitness[genomeIndex] = fitness[ranking[genomeIndex]];
+                }
+                for (int genomeIndex = ELITES; genomeIndex < POPULATION_OF_ISLAND; ++genomeIndex) {
+                    int[] child = crossOver(population[selectParent()], population[selectParent()]);
+                    mutate(child);
+                    nextPopulation[genomeIndex] = child;
+                    nextFitness[genomeIndex] = evaluate(child);
+                }
+
+                int[][] previousPopulation = population;
+                int[] previousFitness = fitness;
+                population = nextPopulation;
+                fitness = nextFitness;
+                nextPopulation = previousPopulation;
+                nextFitness = previousFitness;
+                rank();
+            }
+        }
+
+        private int takeUnchargedEvaluations() {
+            int evaluations = evaluationsSinceCharge;
+            evaluationsSinceCharge = 0;
+            return evaluations;
+        }
+
+        private int selectParent() {
+            int winner = random.nextInt(POPULATION_OF_ISLAND);
+            for (int round = 1; round < TOURNAMENT_SIZE; ++round) {
+                int rival = random.nextInt(POPULATION_OF_ISLAND);
+                if (fitness[rival] > fitness[winner])
+                    winner = rival;
+            }
+            return winner;
+        }
+
+        private int[] crossOver(int[] parent, int[] otherParent) {
+            int[] child = new int[qntOfLessons];
+            for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex)
+                child[lessonIndex] = random.nextBoolean() ? parent[lessonIndex] : otherParent[lessonIndex];
+
+            return child;
+        }
+
+        // every movable lesson changes its term with probability 1 / number of movable lessons
+        private void mutate(int[] genome) {
+            for (int lessonIndex : movableLessons) {
+                if (random.nextInt(movableLessons.length) != 0)
+                    continue;
+
+                int termIndex = random.nextInt(compiledPlan.getNumberOfTerms(lessonIndex) - 1);
+                genome[lessonIndex] = termIndex >= genome[lessonIndex] ? termIndex + 1 : termIndex;
+            }
+        }
+
+        private int evaluate(int[] genome) {
+            int[] pickedTerms = timetable.getPickedTerms();
+            for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex)
+                if (pickedTerms[lessonIndex] != genome[lessonIndex])
+                    timetable.changeTerm(lessonIndex, genome[lessonIndex]);
+
+            ++evaluationsSinceReport;
+            ++evaluationsSinceCharge;
+            int score = timetable.getScore();
+            int numberOfViolations = timetable.getNumberOfViolations();
+            if (numberOfViolations == 0) {
+                ++validGenomesSinceReport;
+                offer(score, genome);
+            }
+            return score - violationPenalty * numberOfViolations;
+        }
+
+        private void offer(int score, int[] genome) {
+            if (score <= 0 || !incumbent.canBeBeatenBy(score, null, 0))
+                return;
+
+            for (int depth = 0; depth < qntOfLessons; ++depth)
+                picksInSearchOrder[depth] = genome[searchOrder[depth]];
+            if (incumbent.canBeBeatenBy(score, picksInSearchOrder, qntOfLessons) && timetable.isValid())
+                incumbent.offerIfAbsent(score, genome.clone(), picksInSearchOrder.clone());
+        }
+
+        // genomes with equal fitness keep their order, so ranking doesn't depend on anything but the population
+        private void rank() {
+            for (int genomeIndex = 0; genomeIndex < POPULATION_OF_ISLAND; ++genomeIndex)
+                ranking[genomeIndex] = genomeIndex;
+            Arrays.sort(ranking, (lhs, rhs) -> Integer.compare(fitness[rhs], fitness[lhs]));
+        }
+
+        private int getBestFitness() {
+            return fitness[ranking[0]];
+        }
+
+        private int[][] getBestGenomes(int numberOfGenomes) {
+            int[][] genomes = new int[numberOfGenomes][];
+            for (int genomeIndex = 0; genomeIndex < numberOfGenomes; ++genomeIndex)
+                genomes[genomeIndex] = population[ranking[genomeIndex]].clone();
+
+            return genomes;
+        }
+
+        private void receive(int[][] migrants) {
+            for (int migrantIndex = 0; migrantIndex < migrants.length; ++migrantIndex) {
+                int genomeIndex = ranking[POPULATION_OF_ISLAND - 1 - migrantIndex];
+                population[genomeIndex] = migrants[migrantIndex];
+                fitness[genomeIndex] = evaluate(migrants[migrantIndex]);
+            }
+            rank();
+        }
+    }
+}
@@ -3,17 +3,27 @@ package com.smartplanner.model;
 import com.smartplanner.model.entity.Term;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Generator for possible picks of terms for each lesson
  *
  * LessonPicker can't be reused, what means that you have to create new object each time you want to get all of combinations.
  * After getNext() returns false, the object is useless.
+ *
+ * Combinations are built lazily, one per call, so the picker can be consumed as an Iterator or a Stream without
+ * keeping the whole cartesian product of terms in memory.
  */
-public class LessonPicker {
+public class LessonPicker implements Iterator<ArrayList<TimetableEntry>> {
     private List<LessonWithPossibleTerms> lessons;
     private int[] termIndexes;
+    private int[] returnedTermIndexes;
     private boolean hasFinished = false;
     private int daysInCycle;
 
@@ -25,13 +35,15 @@ public class LessonPicker {
      *                   to max(LessonWithPossibleTerms.repeatingPeriod) rounded up to a number that is multiple of 7
      *                    (the amount of days in a week)
      */
-    public LessonPicker(ArrayList<LessonWithPossibleTerms> lessons, int daysInCycle) {
+    public LessonPicker(List<LessonWithPossibleTerms> lessons, int daysInCycle) {
         this.daysInCycle = daysInCycle;
         this.lessons = lessons;
         this.termIndexes = new int[lessons.size()];
+        this.returnedTermIndexes = new int[lessons.size()];
 
-        for (int index : termIndexes)
-            index = 0;
+        for (LessonWithPossibleTerms lesson : lessons)
+            if (lesson.getPossibleTerms() == null || lesson.getPossibleTerms().isEmpty())
+                hasFinished = true;
     }
 
     /**
@@ -43,6 +55,30 @@ public class LessonPicker {
         return !hasFinished;
     }
 
+    @Override
+    public boolean hasNext() {
+        return isNext();
+    }
+
+    @Override
+    public ArrayList<TimetableEntry> next() {
+        if (!isNext())
+            throw new NoSuchElementException("All combinations of terms have been already returned");
+
+        return getNext();
+    }
+
+    /**
+     * Returns the remaining combinations as a lazy, sequential stream. Each timetable is created only when
+     * the stream pulls it, so consumers that don't collect the stream need constant memory.
+     *
+     * @return stream of the combinations that haven't been returned yet
+     */
+    public Stream<ArrayList<TimetableEntry>> stream() {
+        int characteristics = Spliterator.ORDERED | Spliterator.NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, characteristics), false);
+    }
+
     /**
      * Returns next combination of term picks
      *
@@ -52,7 +88,7 @@ public class LessonPicker {
         ArrayList<TimetableEntry> possibleTimeTable = new ArrayList<TimetableEntry>();
 
         for (int lessonIndex = 0; lessonIndex < lessons.size(); ++lessonIndex) {
-            ArrayList<Term> currLessonTerms = (ArrayList<Term>) lessons.get(lessonIndex).getPossibleTerms();
+            List<Term> currLessonTerms = lessons.get(lessonIndex).getPossibleTerms();
             Term firstTerm = currLessonTerms.get(termIndexes[lessonIndex]);
 
             addRepeatsInCycle(possibleTimeTable, lessonIndex, firstTerm);
@@ -61,11 +97,40 @@ public class LessonPicker {
         return possibleTimeTable;
     }
 
+    /**
+     * Returns next combination of term picks as indexes, without creating any timetable entries. It's meant to be used
+     * with CompiledPlan, entities can be created later only for the picks that are needed.
+     *
+     * @return term index for each lesson. The array is reused, it's overwritten by the next call
+     */
+    public int[] getNextTermIndexes() {
+        System.arraycopy(termIndexes, 0, returnedTermIndexes, 0, termIndexes.length);
+        shiftIndexesToNextSet();
+        return returnedTermIndexes;
+    }
+
+    /**
+     * Returns entries that a single pick of a term adds to the timetable, which are the term itself and all of its
+     * repeats in cycle.
+     *
+     * @param lessonIndex index of the lesson in the list passed in constructor
+     * @param termIndex index of the picked term in the possible terms of the lesson
+     * @return entries of the picked term, one per each repeat in cycle
+     */
+    public ArrayList<TimetableEntry> getEntriesForTerm(int lessonIndex, int termIndex) {
+        ArrayList<TimetableEntry> entries = new ArrayList<TimetableEntry>();
+        addRepeatsInCycle(entries, lessonIndex, lessons.get(lessonIndex).getPossibleTerms().get(termIndex));
+
+        return entries;
+    }
+
     private void addRepeatsInCycle(ArrayList<TimetableEntry> timetable, int activityIndex, Term firstTerm) {
+        int repeatingPeriod = lessons.get(activityIndex).getRepeatingPeriod();
         for (int i = 0; ; ++i) { //adds repeats in cycle
-            int nextRepeatDay = firstTerm.getCycleDayNumber() + i * lessons.get(activityIndex).getRepeatingPeriod();
+            int nextRepeatDay = firstTerm.getCycleDayNumber() + i * repeatingPeriod;
             // -1 because nextRepeatDay is counted from 0 whereas daysInCycle is counted from 0
-            if (nextRepeatDay > daysInCycle - 1)
+            // lessons without positive repeating period take place only once in cycle
+            if (nextRepeatDay > daysInCycle - 1 || (i > 0 && repeatingPeriod <= 0))
                 break;
             Term nextTerm = new Term(firstTerm.getDurationInMinutes(), nextRepeatDay, firstTerm.getStartTime());
             timetable.add(new TimetableEntry(lessons.get(activityIndex), nextTerm));
@@ -73,6 +138,11 @@ public class LessonPicker {
     }
 
     private void shiftIndexesToNextSet() {
+        if (termIndexes.length == 0) {
+            hasFinished = true;
+            return;
+        }
+
         ++termIndexes[0];
 
         for (int activityIndex = 0; activityIndex + 1 < termIndexes.length; ++activityIndex) {
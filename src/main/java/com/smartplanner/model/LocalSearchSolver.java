@@ -0,0 +1,272 @@
+package com.smartplanner.model;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Heuristic finder of good timetables for plans whose search space is too large for BranchAndBoundSolver (simulated
+ * annealing with a short tabu list).
+ *
+ * The search walks over complete timetables, including invalid ones. A move changes the term of a single lesson of
+ * IncrementalTimetable, so only days touched by the move are rescored. Timetables are rated by their score minus
+ * a penalty for every violation (a pair of conflicting terms or an entry that can't be reached in time), which lets
+ * the walk pass through invalid timetables on its way between valid ones. While there are violations, moves prefer
+ * lessons whose terms conflict with others.
+ *
+ * A move that lowers the rating is accepted with probability exp(delta / temperature). The temperature falls
+ * geometrically during a round of moves and every round starts again from the best rated timetable. A lesson can't
+ * return to the term it has just left for a few moves, unless the move leads to the best rating so far.
+ *
+ * The walk starts from a timetable built greedily in search order of BranchAndBoundSolver, each lesson gets the term
+ * with the fewest conflicts with the lessons before it.
+ *
+ * Moves are drawn from a generator with provided seed, the temperature is counted in moves, not in time, and computed
+ * with StrictMath, so the same seed always makes the same walk and only the point where SolveBudget stops it can
+ * differ. The search ends when the budget is exhausted, when several rounds in a row haven't improved the best rating
+ * or when every kept timetable reaches the upper bound of the score (they're proven optimal then).
+ *
+ * Valid timetables are kept in SolverIncumbent, timetables with equal score are resolved by the smallest picks in
+ * search order, like in BranchAndBoundSolver.
+ *
+ * LocalSearchSolver can't be reused, what means that you have to create new object for each search.
+ */
+public class LocalSearchSolver {
+    private static final int MOVES_PER_LESSON_IN_ROUND = 2_000;
+    private static final int MAX_ROUNDS_WITHOUT_IMPROVEMENT = 4;
+    // temperatures as a part of the maximal time at optimized activity per day
+    private static final double INITIAL_TEMPERATURE = 0.1;
+    private static final double FINAL_TEMPERATURE = 0.002;
+    private static final int TRIES_TO_FIND_CONFLICTING_LESSON = 4;
+
+    private CompiledPlan compiledPlan;
+    private int qntOfLessons;
+    private long seed;
+
+    private int[] searchOrder;
+    private int[] givenSearchOrder;
+    // lessons with more than one possible term
+    private int[] movableLessons;
+    private int violationPenalty;
+    private int maxScore;
+
+    private SolverIncumbent incumbent;
+    private SolverIncumbent sharedIncumbent;
+    private IncrementalTimetable timetable;
+    private int[] picksInSearchOrder;
+
+    /**
+     * Creates solver for the compiled plan
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     * @param seed seed of the generator of moves, the same seed gives the same search
+     */
+    public LocalSearchSolver(CompiledPlan compiledPlan, long seed) {
+        this.compiledPlan = compiledPlan;
+        this.qntOfLessons = compiledPlan.getNumberOfLessons();
+        this.seed = seed;
+    }
+
+    /**
+     * Searches for the timetable with the highest amount of time spent on optimized activity within provided budget
+     *
+     * @param budget limits of the search, every move counts as a candidate
+     * @param progress counters of the search, it doesn't set the size of the search space, which is unknown
+     * @return the best valid timetable found, like BranchAndBoundSolver.solve(SolveBudget). It's proven optimal only if
+     * it reaches the upper bound of the score
+     */
+    public TimetableWithDecisionPointsAndScore solve(SolveBudget budget, SolverProgress progress) {
+        return solveForBestTimetables(1, budget, progress).get(0);
+    }
+
+    /**
+     * Sets the order of lessons whose picks are tie-break keys of timetables with equal score instead of the one of
+     * BranchAndBoundSolver.orderLessonsByConstraints(), see BranchAndBoundSolver.withSearchOrder()
+     *
+     * @param searchOrder lesson index for each depth of the search
+     * @return this solver
+     */
+    public LocalSearchSolver withSearchOrder(int[] searchOrder) {
+        this.givenSearchOrder = searchOrder;
+        return this;
+    }
+
+    /**
+     * Sets an incumbent shared with other searches of the plan (see BranchAndBoundSolver.withSharedIncumbent())
+     *
+     * @param incumbent incumbent used instead of a new one
+     * @return this solver
+     */
+    public LocalSearchSolver withSharedIncumbent(SolverIncumbent incumbent) {
+        this.sharedIncumbent = incumbent;
+        return this;
+    }
+
+    /**
+     * Searches for several best timetables within provided budget
+     *
+     * @param numberOfTimetables amount of timetables to find
+     * @param budget limits of the search, every move counts as a candidate
+     * @param progress counters of the search, it doesn't set the size of the search space, which is unknown
+     * @return up to numberOfTimetables distinct valid timetables, the best one first. If no valid timetable that allows
+     * to spend any time on optimized activity has been found, the list contains a single timetable like the one
+     * returned by solve()
+     */
+    public List<TimetableWithDecisionPointsAndScore> solveForBestTimetables(int numberOfTimetables, SolveBudget budget,
+                                                                           SolverProgress progress) {
+        incumbent = sharedIncumbent != null ? sharedIncumbent : new SolverIncumbent(numberOfTimetables);
+        maxScore = ScoredTimetables.getMaxScore(compiledPlan);
+
+        boolean isSearched = false;
+        if (ScoredTimetables.hasEveryLessonPossibleTerms(compiledPlan)) {
+            search(budget, progress);
+            isSearched = true;
+        }
+
+        // without possible terms of some lesson there is no valid timetable at all
+        return ScoredTimetables.toHeuristicResult(compiledPlan, incumbent, isSearched, maxScore);
+    }
+
+    private void search(SolveBudget budget, SolverProgress progress) {
+        searchOrder = givenSearchOrder != null ? givenSearchOrder
+                : BranchAndBoundSolver.orderLessonsByConstraints(compiledPlan, compiledPlan.getTermConflictIndex());
+        picksInSearchOrder = new int[qntOfLessons];
+        movableLessons = ScoredTimetables.findMovableLessons(compiledPlan);
+        violationPenalty = Math.max(compiledPlan.getMaxTimeAtOptimizedActivityPerDay(), 1);
+
+        timetable = new IncrementalTimetable(compiledPlan);
+        pickTermsGreedily();
+        int[] pickedTerms = timetable.getPickedTerms();
+        int rating = getRating();
+        int bestRating = rating;
+        int[] bestRatedPicks = pickedTerms.clone();
+        long validTimetables = 0;
+        if (offerIfValid())
+            progress.offerBestScore(incumbent.getBestScore());
+        if (movableLessons.length == 0 || ScoredTimetables.isReachingMaxScore(incumbent, maxScore))
+            return;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int movesInRound = MOVES_PER_LESSON_IN_ROUND * movableLessons.length;
+        double initialTemperature = INITIAL_TEMPERATURE * violationPenalty;
+        double cooling = StrictMath.pow(FINAL_TEMPERATURE / INITIAL_TEMPERATURE, 1.0 / movesInRound);
+        int tabuTenure = Math.max(movableLessons.length / 2, 1);
+        // number of the move until which a term can't be picked again
+        long[] tabuUntilMove = new long[compiledPlan.getNumberOfTerms()];
+        long move = 0;
+        int movesSinceBudgetCheck = 0;
+        int roundsWithoutImprovement = 0;
+
+        while (roundsWithoutImprovement < MAX_ROUNDS_WITHOUT_IMPROVEMENT) {
+            for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex)
+                if (pickedTerms[lessonIndex] != bestRatedPicks[lessonIndex])
+                    timetable.changeTerm(lessonIndex, bestRatedPicks[lessonIndex]);
+            rating = bestRating;
+            boolean isImproved = false;
+
+            double temperature = initialTemperature;
+            for (int moveInRound = 0; moveInRound < movesInRound; ++moveInRound, ++move) {
+                if (++movesSinceBudgetCheck == SolveBudget.CANDIDATES_BETWEEN_CHECKS) {
+                    progress.report(movesSinceBudgetCheck, 0, validTimetables, 0);
+                    validTimetables = 0;
+                    movesSinceBudgetCheck = 0;
+                    if (budget.examineCandidates(SolveBudget.CANDIDATES_BETWEEN_CHECKS))
+                        return;
+                }
+                temperature *= cooling;
+
+                int lessonIndex = pickLessonToMove(random);
+                int firstTerm = compiledPlan.getFirstTermOfLesson(lessonIndex);
+                int oldTermIndex = pickedTerms[lessonIndex];
+                int newTermIndex = random.nextInt(compiledPlan.getNumberOfTerms(lessonIndex) - 1);
+                if (newTermIndex >= oldTermIndex)
+                    ++newTermIndex;
+
+                timetable.changeTerm(lessonIndex, newTermIndex);
+                int newRating = getRating();
+                boolean isTabu = tabuUntilMove[firstTerm + newTermIndex] > move && newRating <= bestRating;
+                int delta = newRating - rating;
+                if (isTabu || (delta < 0 && random.nextDouble() >= StrictMath.exp(delta / temperature))) {
+                    timetable.changeTerm(lessonIndex, oldTermIndex);
+                    continue;
+                }
+
+                rating = newRating;
+                tabuUntilMove[firstTerm + oldTermIndex] = move + tabuTenure;
+                if (timetable.getNumberOfViolations() == 0) {
+                    ++validTimetables;
+                    if (offerIfValid())
+                        progress.offerBestScore(incumbent.getBestScore());
+                }
+                if (rating > bestRating) {
+                    bestRating = rating;
+                    System.arraycopy(pickedTerms, 0, bestRatedPicks, 0, qntOfLessons);
+                    isImproved = true;
+                }
+                if (ScoredTimetables.isReachingMaxScore(incumbent, maxScore))
+                    return;
+            }
+
+            roundsWithoutImprovement = isImproved ? 0 : roundsWithoutImprovement + 1;
+        }
+        progress.report(movesSinceBudgetCheck, 0, validTimetables, 0);
+    }
+
+    // each lesson gets the term with the fewest conflicts with lessons picked before it, the first such term on ties
+    private void pickTermsGreedily() {
+        TermConflictIndex conflictIndex = compiledPlan.getTermConflictIndex();
+        long[] pickedTermsBitset = new long[TermConflictIndex.getWordsForTerms(compiledPlan.getNumberOfTerms())];
+
+        for (int lessonIndex : searchOrder) {
+            int firstTerm = compiledPlan.getFirstTermOfLesson(lessonIndex);
+            int bestTerm = firstTerm;
+            int fewestConflicts = Integer.MAX_VALUE;
+            for (int term = firstTerm; term < compiledPlan.getFirstTermOfLesson(lessonIndex + 1); ++term) {
+                int numberOfConflicts = conflictIndex.countConflictsWith(term, pickedTermsBitset);
+                if (numberOfConflicts < fewestConflicts) {
+                    fewestConflicts = numberOfConflicts;
+                    bestTerm = term;
+                }
+            }
+
+            pickedTermsBitset[bestTerm >>> 6] |= 1L << bestTerm;
+            timetable.changeTerm(lessonIndex, bestTerm - firstTerm);
+        }
+    }
+
+    // while there are violations, a few random lessons are tried to find one whose term conflicts with others
+    private int pickLessonToMove(SplittableRandom random) {
+        int lessonIndex = movableLessons[random.nextInt(movableLessons.length)];
+        if (timetable.getNumberOfViolations() == 0)
+            return lessonIndex;
+
+        for (int tries = 1; tries < TRIES_TO_FIND_CONFLICTING_LESSON; ++tries) {
+            if (timetable.countConflictsOfLesson(lessonIndex) > 0)
+                return lessonIndex;
+            lessonIndex = movableLessons[random.nextInt(movableLessons.length)];
+        }
+        return lessonIndex;
+    }
+
+    private int getRating() {
+        return timetable.getScore() - violationPenalty * timetable.getNumberOfViolations();
+    }
+
+    /**
+     * Offers current picks to the incumbent, if they make a valid timetable that isn't kept yet
+     *
+     * @return true if the timetable became the best one, false else
+     */
+    private boolean offerIfValid() {
+        int score = timetable.getScore();
+        if (score <= 0 || !incumbent.canBeBeatenBy(score, null, 0))
+            return false;
+
+        int[] pickedTerms = timetable.getPickedTerms();
+        for (int depth = 0; depth < qntOfLessons; ++depth)
+            picksInSearchOrder[depth] = pickedTerms[searchOrder[depth]];
+        if (!incumbent.canBeBeatenBy(score, picksInSearchOrder, qntOfLessons) || !timetable.isValid())
+            return false;
+
+        return incumbent.offerIfAbsent(score, pickedTerms.clone(), picksInSearchOrder.clone());
+    }
+}
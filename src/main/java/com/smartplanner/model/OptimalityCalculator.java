@@ -6,6 +6,7 @@ import java.time.Duration;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * Calculator for time spent on optimized activity.
@@ -17,6 +18,13 @@ public class OptimalityCalculator {
     private int numberOfDaysInCycle;
     private OptimizedActivity optimizedActivity;
 
+    private CompiledPlan compiledPlan;
+    private EntriesByDay entriesByDay;
+    private DayScoreCache dayScoreCache;
+    private DayScoreCache.DayKey dayKey;
+    private int[] minutesForDecisionPointsBuffer;
+    private int[] pickedPositionsBuffer;
+
     /**
      * Creates OptimalityCalculator.
      *
@@ -39,9 +47,35 @@ public class OptimalityCalculator {
         this.numberOfDaysInCycle = numberOfDaysInCycle;
     }
 
+    /**
+     * Creates OptimalityCalculator that can also score picked terms of the compiled plan. Scores of days are shared with
+     * other calculators through DayScoreCache of the plan. It keeps buffers for calculate(int[]) and
+     * calculateForDay(int, int[], int, int), so it shouldn't be shared between threads.
+     *
+     * @param compiledPlan plan compiled to primitive arrays
+     */
+    public OptimalityCalculator(CompiledPlan compiledPlan) {
+        this(compiledPlan.getTimeDistanceManager(),
+                compiledPlan.getMaxCommutesPerDay(),
+                compiledPlan.getMinTimeAtOptimizedActivityAtOnce(),
+                compiledPlan.getDaysInCycle(),
+                compiledPlan.getOptimizedActivity());
+        this.compiledPlan = compiledPlan;
+        this.entriesByDay = new EntriesByDay(compiledPlan);
+        this.dayScoreCache = compiledPlan.getDayScoreCache();
+        this.dayKey = new DayScoreCache.DayKey();
+        this.minutesForDecisionPointsBuffer = new int[compiledPlan.getNumberOfEntries() + 1];
+        this.pickedPositionsBuffer = new int[compiledPlan.getNumberOfEntries() + 1];
+    }
+
     /**
      * Calculates amount of time (in minutes) spent on optimized activity for provided timetable.
      *
+     * Each decision point adds a fixed amount of minutes that doesn't depend on other decision points, so the best
+     * decisions for a day are simply maxCommutesPerDay decision points with the highest positive amounts. They are
+     * found in a single pass over the day, O(k * maxCommutesPerDay) for k entries, instead of checking all 2^(k+1)
+     * combinations. Decision points are the same as the ones chosen by calculateByEnumeration(), including ties.
+     *
      * @param timetable complete timetable that first should pass the validation done by TimetableValidator
      * @return amount of minutes spent on optimized activity based on provided timetable
      */
@@ -56,13 +90,152 @@ public class OptimalityCalculator {
                 continue;
             }
 
-            GoToOptimizedActivityDecider decider = new GoToOptimizedActivityDecider(timetable, cycleDayNumber);
+            int[] minutesForDecisionPoints = calculateMinutesForDecisionPoints(
+                    extractEntriesForSpecifiedDay(timetable, cycleDayNumber));
+            boolean[] bestDecisionPoints = findOptimalDecisionPoints(minutesForDecisionPoints);
+
+            timeSpentInWorkInCycle += sumChosenMinutes(minutesForDecisionPoints, bestDecisionPoints);
+            optimalDecisionPoints.add(bestDecisionPoints == null ? null : castToBooleanArrayList(bestDecisionPoints));
+        }
+
+        return new TimetableWithDecisionPointsAndScore(timeSpentInWorkInCycle, timetable, optimalDecisionPoints);
+    }
+
+    /**
+     * Calculates amount of time (in minutes) spent on optimized activity in a single day of the cycle. The result
+     * depends only on entries that take place in that day, so it can be used to score a part of timetable.
+     *
+     * @param timetable timetable (complete or partial) that first should pass the validation done by TimetableValidator
+     * @param cycleDayNumber number of the day in cycle
+     * @return amount of minutes spent on optimized activity in specified day
+     */
+    public int calculateForDay(ArrayList<TimetableEntry> timetable, int cycleDayNumber) {
+        if (optimizedActivity.isOpenedInDay(cycleDayNumber) == false)
+            return 0;
+
+        int[] minutesForDecisionPoints = calculateMinutesForDecisionPoints(
+                extractEntriesForSpecifiedDay(timetable, cycleDayNumber));
+
+        return sumChosenMinutes(minutesForDecisionPoints, findOptimalDecisionPoints(minutesForDecisionPoints));
+    }
+
+    /**
+     * Calculates amount of time (in minutes) spent on optimized activity for picked terms of the compiled plan. Gives the
+     * same score as calculate() called with entities of the same terms, but doesn't allocate anything.
+     *
+     * @param pickedTerms term index for each lesson, picked terms should make a valid timetable
+     * @return amount of minutes spent on optimized activity
+     */
+    public int calculate(int[] pickedTerms) {
+        entriesByDay.fill(pickedTerms);
+        int timeSpentInWorkInCycle = 0;
+
+        for (int cycleDayNumber = 0; cycleDayNumber < numberOfDaysInCycle; ++cycleDayNumber)
+            timeSpentInWorkInCycle += calculateForDay(cycleDayNumber, entriesByDay.getEntries(),
+                    entriesByDay.getFirstEntryOfDay(cycleDayNumber), entriesByDay.getFirstEntryOfDay(cycleDayNumber + 1));
+
+        return timeSpentInWorkInCycle;
+    }
+
+    /**
+     * Calculates amount of time (in minutes) spent on optimized activity in a single day for entries of the compiled plan.
+     *
+     * @param cycleDayNumber number of the day in cycle
+     * @param sortedEntries entry numbers, entries between from and to have to take place in specified day and be sorted
+     *                      by start time
+     * @param from index of the first entry of the day
+     * @param to index after the last entry of the day
+     * @return amount of minutes spent on optimized activity in specified day
+     */
+    public int calculateForDay(int cycleDayNumber, int[] sortedEntries, int from, int to) {
+        if (compiledPlan.isOptimizedActivityOpenedInDay(cycleDayNumber) == false)
+            return 0;
+
+        if (dayKey.fill(compiledPlan, sortedEntries, from, to) == false)
+            return Math.min(sumOfBestDecisionPoints(sortedEntries, from, to), compiledPlan.getMaxTimeAtOptimizedActivityPerDay());
+
+        DayScoreCache.DayScore dayScore = dayScoreCache.get(dayKey);
+        if (dayScore == null) {
+            int timeSpentInWork = Math.min(sumOfBestDecisionPoints(sortedEntries, from, to),
+                    compiledPlan.getMaxTimeAtOptimizedActivityPerDay());
+            dayScore = new DayScoreCache.DayScore(timeSpentInWork);
+            dayScoreCache.put(dayKey, dayScore);
+        }
+        return dayScore.getMinutes();
+    }
+
+    /**
+     * Calculates amount of time (in minutes) spent on optimized activity in a single day for every commute limit up to
+     * provided one at once. The limit of the compiled plan is ignored. With limit c the best decision points are c
+     * decision points with the highest positive amounts, so scores for all limits are prefix sums of the sorted amounts.
+     *
+     * @param cycleDayNumber number of the day in cycle
+     * @param sortedEntries entry numbers, entries between from and to have to take place in specified day and be sorted
+     *                      by start time
+     * @param from index of the first entry of the day
+     * @param to index after the last entry of the day
+     * @param timeSpentInWorkByCommutes array filled with amount of minutes for each commute limit from 0 to its length
+     *                                  - 1, the same as calculateForDay() called for the plan with that limit
+     */
+    public void calculateForDayByCommutes(int cycleDayNumber, int[] sortedEntries, int from, int to,
+                                          int[] timeSpentInWorkByCommutes) {
+        int maxCommutesPerDay = timeSpentInWorkByCommutes.length - 1;
+        Arrays.fill(timeSpentInWorkByCommutes, 0);
+        if (compiledPlan.isOptimizedActivityOpenedInDay(cycleDayNumber) == false)
+            return;
+
+        int maxTimeInMinutes = compiledPlan.getMaxTimeAtOptimizedActivityPerDay();
+        int[] minutesForDecisionPoints = minutesForDecisionPointsBuffer;
+        int numberOfDecisionPoints = calculateMinutesForDecisionPoints(sortedEntries, from, to, minutesForDecisionPoints);
+
+        if (numberOfDecisionPoints == 1) { //there are no lessons that day, no commute is needed
+            Arrays.fill(timeSpentInWorkByCommutes, Math.min(Math.max(minutesForDecisionPoints[0], 0), maxTimeInMinutes));
+            return;
+        }
+
+        // picked positions aren't needed here, so their buffer is reused for sorting
+        int[] sortedMinutes = pickedPositionsBuffer;
+        System.arraycopy(minutesForDecisionPoints, 0, sortedMinutes, 0, numberOfDecisionPoints);
+        Arrays.sort(sortedMinutes, 0, numberOfDecisionPoints);
+        int timeSpentInWork = 0;
+        for (int commutes = 1; commutes <= maxCommutesPerDay; ++commutes) {
+            int position = numberOfDecisionPoints - commutes;
+            if (position >= 0 && sortedMinutes[position] > 0)
+                timeSpentInWork += sortedMinutes[position];
+            timeSpentInWorkByCommutes[commutes] = Math.min(timeSpentInWork, maxTimeInMinutes);
+        }
+    }
+
+    /**
+     * Calculates amount of time (in minutes) spent on optimized activity by checking every combination of decision
+     * points generated by GoToOptimizedActivityDecider. It's exponential in the number of entries per day and gives
+     * the same result as calculate(), so it's only kept as a reference for cross-checks. Combinations are scored
+     * as bitmasks, nothing is allocated per combination.
+     *
+     * @param timetable complete timetable that first should pass the validation done by TimetableValidator
+     * @return amount of minutes spent on optimized activity based on provided timetable
+     */
+    public TimetableWithDecisionPointsAndScore calculateByEnumeration(ArrayList<TimetableEntry> timetable) {
+        ArrayList<ArrayList<Boolean>> optimalDecisionPoints = new ArrayList<ArrayList<Boolean>>(numberOfDaysInCycle);
+        int timeSpentInWorkInCycle = 0;
+
+        for (int cycleDayNumber = 0; cycleDayNumber < numberOfDaysInCycle; ++cycleDayNumber) {
+
+            if (optimizedActivity.isOpenedInDay(cycleDayNumber) == false) {
+                optimalDecisionPoints.add(new ArrayList<Boolean>(Arrays.asList(false)));
+                continue;
+            }
+
+            int[] minutesForDecisionPoints = calculateMinutesForDecisionPoints(
+                    extractEntriesForSpecifiedDay(timetable, cycleDayNumber));
+            GoToOptimizedActivityDecider decider = new GoToOptimizedActivityDecider(minutesForDecisionPoints.length,
+                    maxCommutesPerDay);
             int maxForCurrentDay = 0;
-            ArrayList<Boolean> bestDecisionPoints = null;
+            long bestDecisionPoints = 0;
 
             while (decider.isNext()) {
-                ArrayList<Boolean> currDecisionPoints = decider.getNext();
-                int currentVal = calculateRegardingProvidedDecisionPoints(timetable, currDecisionPoints, cycleDayNumber);
+                long currDecisionPoints = decider.getNextMask();
+                int currentVal = calculateRegardingProvidedDecisionPoints(minutesForDecisionPoints, currDecisionPoints);
 
                 if (currentVal > maxForCurrentDay) {
                     bestDecisionPoints = currDecisionPoints;
@@ -74,70 +247,219 @@ public class OptimalityCalculator {
                 maxForCurrentDay = optimizedActivity.getMaxTimeInMinutes();
 
             timeSpentInWorkInCycle += maxForCurrentDay;
-            optimalDecisionPoints.add(bestDecisionPoints);
+            optimalDecisionPoints.add(maxForCurrentDay > 0
+                    ? castToBooleanArrayList(bestDecisionPoints, minutesForDecisionPoints.length)
+                    : null);
         }
 
         return new TimetableWithDecisionPointsAndScore(timeSpentInWorkInCycle, timetable, optimalDecisionPoints);
     }
 
-    private int getNumberOfCommutesToWork(ArrayList<Boolean> decisionPoints) {
-        int numberOfOnes = 0;
-        for (Boolean decision : decisionPoints)
-            if (decision == true)
-                ++numberOfOnes;
+    /**
+     * Calculates how many minutes each decision point adds if it's taken. Decision points that would give less than
+     * the minimal time spent at once add nothing.
+     *
+     * @param specifiedDayTimetable entries of a single day
+     * @return array with an amount of minutes for each decision point, for a day without lessons it contains the whole
+     * day of optimized activity
+     */
+    private int[] calculateMinutesForDecisionPoints(ArrayList<TimetableEntry> specifiedDayTimetable) {
+        int lastIndex = specifiedDayTimetable.size();
+        int[] minutesForDecisionPoints = new int[lastIndex + 1];
+
+        if (lastIndex == 0) { //there are no lessons that day
+            minutesForDecisionPoints[0] = calculateMinutesBetweenTwoTimePoints(optimizedActivity.getStartsAt(),
+                    optimizedActivity.getEndsAt());
+            return minutesForDecisionPoints;
+        }
+
+        minutesForDecisionPoints[0] = calculateMinutesBetweenTwoTimePoints(
+                optimizedActivity.getStartsAt(), specifiedDayTimetable.get(0).getTerm().getStartTime())
+                - timeDistanceManager.getTimeDistanceInMinutes(specifiedDayTimetable.get(0).getLesson(), optimizedActivity);
+
+        for (int i = 1; i < lastIndex; ++i) {
+            int timeBetweenTwoActivities = calculateMinutesBetweenTwoTimePoints(specifiedDayTimetable.get(i).getTerm()
+                    .getStartTime(), specifiedDayTimetable.get(i - 1).getTerm().getEndTime());
+            int transportTimeFromFirstActToOptimized = timeDistanceManager.getTimeDistanceInMinutes(specifiedDayTimetable
+                    .get(i - 1).getLesson(), optimizedActivity);
+            int transportTimeFromOptimizedToSecondAct = timeDistanceManager.getTimeDistanceInMinutes(optimizedActivity,
+                    specifiedDayTimetable.get(i).getLesson());
+            minutesForDecisionPoints[i] = timeBetweenTwoActivities
+                    - transportTimeFromFirstActToOptimized - transportTimeFromOptimizedToSecondAct;
+        }
 
-        return numberOfOnes;
+        minutesForDecisionPoints[lastIndex] = calculateMinutesBetweenTwoTimePoints(specifiedDayTimetable
+                .get(lastIndex - 1).getTerm().getEndTime(), optimizedActivity.getEndsAt())
+                - timeDistanceManager.getTimeDistanceInMinutes(specifiedDayTimetable.get(lastIndex - 1).getLesson(),
+                optimizedActivity);
+
+        for (int i = 0; i <= lastIndex; ++i)
+            if (minutesForDecisionPoints[i] < minTimeSpentOnOptimizedAtOnceInMinutes)
+                minutesForDecisionPoints[i] = 0;
+
+        return minutesForDecisionPoints;
     }
 
-    private int calculateRegardingProvidedDecisionPoints(ArrayList<TimetableEntry> timetable,
-                                                         ArrayList<Boolean> currDecisionPoints,
-                                                         int cycleDayNumber) {
-        if (getNumberOfCommutesToWork(currDecisionPoints) > maxCommutesPerDay)
-            return 0;
+    /**
+     * Array counterpart of calculateMinutesForDecisionPoints(ArrayList), writes the amounts to provided buffer
+     *
+     * @return amount of decision points
+     */
+    private int calculateMinutesForDecisionPoints(int[] sortedEntries, int from, int to, int[] minutesForDecisionPoints) {
+        int lastIndex = to - from;
 
-        int timeSpentInWork = 0;
-        ArrayList<TimetableEntry> specifiedDayTimetable = extractEntriesForSpecifiedDay(timetable, cycleDayNumber);
-        if (specifiedDayTimetable.size() == 0) //there are no lessons that day
-            return calculateMinutesBetweenTwoTimePoints(optimizedActivity.getStartsAt(), optimizedActivity.getEndsAt());
-
-        if (currDecisionPoints.get(0) == true) {
-            int timeBetweenOptimizedActivityOpenAndFirstActivityStart = calculateMinutesBetweenTwoTimePoints(
-                    optimizedActivity.getStartsAt(), specifiedDayTimetable.get(0).getTerm().getStartTime())
-                    - timeDistanceManager.getTimeDistanceInMinutes(specifiedDayTimetable.get(0).getLesson(), optimizedActivity);
-            int minutesSpentInWorkForCurrDecisionPoint = timeBetweenOptimizedActivityOpenAndFirstActivityStart;
-
-            if (minutesSpentInWorkForCurrDecisionPoint >= minTimeSpentOnOptimizedAtOnceInMinutes)
-                timeSpentInWork += minutesSpentInWorkForCurrDecisionPoint;
+        if (lastIndex == 0) { //there are no lessons that day
+            minutesForDecisionPoints[0] = Math.abs(compiledPlan.getOptimizedActivityEndMinute()
+                    - compiledPlan.getOptimizedActivityStartMinute());
+            return 1;
+        }
+
+        int firstEntry = sortedEntries[from];
+        minutesForDecisionPoints[0] = Math.abs(compiledPlan.getEntryStartMinute(firstEntry)
+                - compiledPlan.getOptimizedActivityStartMinute())
+                - compiledPlan.getEntryMinutesToOptimizedActivity(firstEntry);
+
+        for (int i = 1; i < lastIndex; ++i) {
+            int previousEntry = sortedEntries[from + i - 1];
+            int entry = sortedEntries[from + i];
+            minutesForDecisionPoints[i] = Math.abs(compiledPlan.getEntryStartMinute(entry)
+                    - compiledPlan.getEntryEndMinute(previousEntry))
+                    - compiledPlan.getEntryMinutesToOptimizedActivity(previousEntry)
+                    - compiledPlan.getEntryMinutesFromOptimizedActivity(entry);
         }
 
-        for (int i = 1; i < currDecisionPoints.size() - 1; ++i) {
-            if (currDecisionPoints.get(i) == true) {
-                int timeBetweenTwoActivities = calculateMinutesBetweenTwoTimePoints(specifiedDayTimetable.get(i).getTerm()
-                        .getStartTime(), specifiedDayTimetable.get(i - 1).getTerm().getEndTime());
-                int transportTimeFromFirstActToOptimized = timeDistanceManager.getTimeDistanceInMinutes(specifiedDayTimetable
-                        .get(i - 1).getLesson(), optimizedActivity);
-                int transportTimeFromOptimizedToSecondAct = timeDistanceManager.getTimeDistanceInMinutes(optimizedActivity,
-                        specifiedDayTimetable.get(i).getLesson());
-                int minutesSpentInWorkForCurrDecisionPoint = timeBetweenTwoActivities
-                        - transportTimeFromFirstActToOptimized - transportTimeFromOptimizedToSecondAct;
-
-                if (minutesSpentInWorkForCurrDecisionPoint >= minTimeSpentOnOptimizedAtOnceInMinutes)
-                    timeSpentInWork += minutesSpentInWorkForCurrDecisionPoint;
+        int lastEntry = sortedEntries[to - 1];
+        minutesForDecisionPoints[lastIndex] = Math.abs(compiledPlan.getOptimizedActivityEndMinute()
+                - compiledPlan.getEntryEndMinute(lastEntry))
+                - compiledPlan.getEntryMinutesToOptimizedActivity(lastEntry);
+
+        for (int i = 0; i <= lastIndex; ++i)
+            if (minutesForDecisionPoints[i] < minTimeSpentOnOptimizedAtOnceInMinutes)
+                minutesForDecisionPoints[i] = 0;
+
+        return lastIndex + 1;
+    }
+
+    /**
+     * Sums at most maxCommutesPerDay highest positive amounts of minutes of a day, i.e. the amounts picked by
+     * findOptimalDecisionPoints(). Amounts aren't capped here.
+     */
+    private int sumOfBestDecisionPoints(int[] sortedEntries, int from, int to) {
+        int[] minutesForDecisionPoints = minutesForDecisionPointsBuffer;
+        int numberOfDecisionPoints = calculateMinutesForDecisionPoints(sortedEntries, from, to, minutesForDecisionPoints);
+        int numberOfPickedPositions = 0;
+
+        if (numberOfDecisionPoints == 1 && maxCommutesPerDay >= 0) //there are no lessons that day, no commute is needed
+            return Math.max(minutesForDecisionPoints[0], 0);
+
+        // positions of the best amounts so far, ordered by amount (descending) and then by position (ascending)
+        int limit = Math.max(0, Math.min(maxCommutesPerDay, numberOfDecisionPoints));
+        for (int i = 0; i < numberOfDecisionPoints; ++i) {
+            int minutes = minutesForDecisionPoints[i];
+            if (minutes <= 0)
+                continue;
+            if (numberOfPickedPositions == limit && (numberOfPickedPositions == 0
+                    || minutes <= minutesForDecisionPoints[pickedPositionsBuffer[numberOfPickedPositions - 1]]))
+                continue;
+
+            int position = numberOfPickedPositions == limit ? numberOfPickedPositions - 1 : numberOfPickedPositions++;
+            while (position > 0 && minutesForDecisionPoints[pickedPositionsBuffer[position - 1]] < minutes) {
+                pickedPositionsBuffer[position] = pickedPositionsBuffer[position - 1];
+                --position;
             }
+            pickedPositionsBuffer[position] = i;
         }
 
-        if (currDecisionPoints.get(currDecisionPoints.size() - 1) == true) {
-            int timeBetweenLastActivityEndingAndOptimizedActivityClose = calculateMinutesBetweenTwoTimePoints(specifiedDayTimetable
-                    .get(specifiedDayTimetable.size() - 1).getTerm().getEndTime(), optimizedActivity.getEndsAt());
-            int travelTimeFromLastActivityToOptimizedActivity = timeDistanceManager.getTimeDistanceInMinutes(specifiedDayTimetable
-                    .get(specifiedDayTimetable.size() - 1).getLesson(), optimizedActivity);
-            int minutesSpentInWorkForCurrDecisionPoint = timeBetweenLastActivityEndingAndOptimizedActivityClose
-                    - travelTimeFromLastActivityToOptimizedActivity;
+        int timeSpentInWork = 0;
+        for (int i = 0; i < numberOfPickedPositions; ++i)
+            timeSpentInWork += minutesForDecisionPoints[pickedPositionsBuffer[i]];
 
-            if (minutesSpentInWorkForCurrDecisionPoint >= minTimeSpentOnOptimizedAtOnceInMinutes)
-                timeSpentInWork += minutesSpentInWorkForCurrDecisionPoint;
+        return timeSpentInWork;
+    }
+
+    /**
+     * Picks at most maxCommutesPerDay decision points with the highest positive amounts of minutes. From decision
+     * points with equal amounts the earlier ones are picked, which is the first best combination in the order of
+     * GoToOptimizedActivityDecider.
+     *
+     * @param minutesForDecisionPoints amounts of minutes added by each decision point
+     * @return picked decision points or null if none of combinations gives any time spent on optimized activity
+     */
+    private boolean[] findOptimalDecisionPoints(int[] minutesForDecisionPoints) {
+        boolean[] decisionPoints = new boolean[minutesForDecisionPoints.length];
+
+        if (minutesForDecisionPoints.length == 1 && maxCommutesPerDay >= 0) { //there are no lessons that day
+            return minutesForDecisionPoints[0] > 0 ? decisionPoints : null;
+        }
+
+        // best decision points so far, ordered by amount of minutes (descending) and then by position (ascending)
+        int numberOfPicked = 0;
+        int[] picked = new int[Math.max(0, Math.min(maxCommutesPerDay, minutesForDecisionPoints.length))];
+
+        for (int i = 0; i < minutesForDecisionPoints.length; ++i) {
+            int minutes = minutesForDecisionPoints[i];
+            if (minutes <= 0)
+                continue;
+            if (numberOfPicked == picked.length
+                    && (numberOfPicked == 0 || minutes <= minutesForDecisionPoints[picked[numberOfPicked - 1]]))
+                continue;
+
+            int position = numberOfPicked == picked.length ? numberOfPicked - 1 : numberOfPicked++;
+            while (position > 0 && minutesForDecisionPoints[picked[position - 1]] < minutes) {
+                picked[position] = picked[position - 1];
+                --position;
+            }
+            picked[position] = i;
         }
 
+        if (numberOfPicked == 0)
+            return null;
+
+        for (int i = 0; i < numberOfPicked; ++i)
+            decisionPoints[picked[i]] = true;
+
+        return decisionPoints;
+    }
+
+    private int sumChosenMinutes(int[] minutesForDecisionPoints, boolean[] decisionPoints) {
+        if (decisionPoints == null)
+            return 0;
+
+        int timeSpentInWork = 0;
+        if (minutesForDecisionPoints.length == 1) //there are no lessons that day, no commute is needed
+            timeSpentInWork = minutesForDecisionPoints[0];
+        else
+            for (int i = 0; i < minutesForDecisionPoints.length; ++i)
+                if (decisionPoints[i])
+                    timeSpentInWork += minutesForDecisionPoints[i];
+
+        return Math.min(timeSpentInWork, optimizedActivity.getMaxTimeInMinutes());
+    }
+
+    private ArrayList<Boolean> castToBooleanArrayList(boolean[] decisionPoints) {
+        ArrayList<Boolean> casted = new ArrayList<Boolean>(decisionPoints.length);
+        for (boolean decision : decisionPoints)
+            casted.add(decision);
+
+        return casted;
+    }
+
+    private ArrayList<Boolean> castToBooleanArrayList(long decisionPoints, int numberOfDecisionPoints) {
+        ArrayList<Boolean> casted = new ArrayList<Boolean>(numberOfDecisionPoints);
+        for (int i = 0; i < numberOfDecisionPoints; ++i)
+            casted.add((decisionPoints >>> i & 1) == 1);
+
+        return casted;
+    }
+
+    private int calculateRegardingProvidedDecisionPoints(int[] minutesForDecisionPoints, long currDecisionPoints) {
+        if (minutesForDecisionPoints.length == 1) //there are no lessons that day, no commute is needed
+            return minutesForDecisionPoints[0];
+
+        int timeSpentInWork = 0;
+        for (long decisions = currDecisionPoints; decisions != 0; decisions &= decisions - 1)
+            timeSpentInWork += minutesForDecisionPoints[Long.numberOfTrailingZeros(decisions)];
+
         return timeSpentInWork;
     }
 
@@ -147,6 +469,8 @@ public class OptimalityCalculator {
             if (entry.getTerm().getCycleDayNumber() == cycleDayNumber)
                 entriesForSpecifiedDay.add(entry);
 
+        // decision points lie between consecutive entries, so they have to be in chronological order (the sort is stable)
+        entriesForSpecifiedDay.sort(Comparator.comparing((TimetableEntry entry) -> entry.getTerm().getStartTime()));
         return entriesForSpecifiedDay;
     }
 
@@ -0,0 +1,160 @@
+package com.smartplanner.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * SHA-256 hash of everything in a compiled plan that can change the result of the search: times and days of entries
+ * of every term, travel times between lessons and to and from optimized activity, and settings of the plan and of
+ * optimized activity.
+ *
+ * Names of the plan and lessons and ids of places aren't hashed, so plans that differ only in them have equal
+ * fingerprints. Order of lessons and terms is kept, because picks are term indexes of lessons in that order, so picks
+ * found for one plan can be applied to any plan with the same fingerprint.
+ */
+public class PlanFingerprint {
+    private final byte[] digest;
+    private final int hash;
+
+    private PlanFingerprint(byte[] digest) {
+        this.digest = digest;
+        this.hash = Arrays.hashCode(digest);
+    }
+
+    /**
+     * Computes fingerprint of the plan
+     *
+     * @param compiledPlan plan compiled to primitive arrays
+     * @return fingerprint of the plan
+     */
+    public static PlanFingerprint of(CompiledPlan compiledPlan) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(compiledPlan.getDaysInCycle());
+            output.writeInt(compiledPlan.getMaxCommutesPerDay());
+            output.writeInt(compiledPlan.getOptimizedActivityStartMinute());
+            output.writeInt(compiledPlan.getOptimizedActivityEndMinute());
+            output.writeInt(compiledPlan.getMinTimeAtOptimizedActivityAtOnce());
+            output.writeInt(compiledPlan.getMaxTimeAtOptimizedActivityPerDay());
+            for (int cycleDayNumber = 0; cycleDayNumber < compiledPlan.getDaysInCycle(); ++cycleDayNumber)
+                output.writeBoolean(compiledPlan.isOptimizedActivityOpenedInDay(cycleDayNumber));
+
+            writeTerms(compiledPlan, output);
+            writeTravelTimes(compiledPlan, output, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return digest(bytes);
+    }
+
+    /**
+     * Computes fingerprint of everything that decides which timetables are valid: entries of every term and travel
+     * times between lessons. Optimized activity and maxCommutesPerDay only change scores, so they aren't hashed.
+     * Plans with equal fingerprints have the same valid timetables and can share ValidTimetableStore.
+     *
+     * @param compiledPlan plan compiled to primitive arrays
+     * @return fingerprint of validity of timetables of the plan
+     */
+    public static PlanFingerprint ofValidity(CompiledPlan compiledPlan) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(compiledPlan.getDaysInCycle());
+            writeTerms(compiledPlan, output);
+            writeTravelTimes(compiledPlan, output, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return digest(bytes);
+    }
+
+    /**
+     * Computes fingerprint of everything besides entries that changes score of a day: settings of optimized activity
+     * and maxCommutesPerDay. Plans with equal fingerprints can share DayScoreCache.
+     *
+     * @param compiledPlan plan compiled to primitive arrays
+     * @return fingerprint of the way days of the plan are scored
+     */
+    public static PlanFingerprint ofDayScoring(CompiledPlan compiledPlan) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(compiledPlan.getMaxCommutesPerDay());
+            output.writeInt(compiledPlan.getOptimizedActivityStartMinute());
+            output.writeInt(compiledPlan.getOptimizedActivityEndMinute());
+            output.writeInt(compiledPlan.getMinTimeAtOptimizedActivityAtOnce());
+            output.writeInt(compiledPlan.getMaxTimeAtOptimizedActivityPerDay());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return digest(bytes);
+    }
+
+    private static PlanFingerprint digest(ByteArrayOutputStream bytes) {
+        try {
+            return new PlanFingerprint(MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 isn't available", e);
+        }
+    }
+
+    private static void writeTerms(CompiledPlan compiledPlan, DataOutputStream output) throws IOException {
+        output.writeInt(compiledPlan.getNumberOfLessons());
+        for (int lessonIndex = 0; lessonIndex < compiledPlan.getNumberOfLessons(); ++lessonIndex) {
+            output.writeInt(compiledPlan.getNumberOfTerms(lessonIndex));
+            for (int term = compiledPlan.getFirstTermOfLesson(lessonIndex);
+                 term < compiledPlan.getFirstTermOfLesson(lessonIndex + 1); ++term) {
+                output.writeInt(compiledPlan.getFirstEntryOfTerm(term + 1) - compiledPlan.getFirstEntryOfTerm(term));
+                for (int entry = compiledPlan.getFirstEntryOfTerm(term); entry < compiledPlan.getFirstEntryOfTerm(term + 1); ++entry) {
+                    output.writeInt(compiledPlan.getEntryStartMinute(entry));
+                    output.writeInt(compiledPlan.getEntryEndMinute(entry));
+                    output.writeInt(compiledPlan.getEntryCycleDay(entry));
+                }
+            }
+        }
+    }
+
+    private static void writeTravelTimes(CompiledPlan compiledPlan, DataOutputStream output,
+                                         boolean withOptimizedActivity) throws IOException {
+        TimeDistanceManager timeDistanceManager = compiledPlan.getTimeDistanceManager();
+        int optimizedActivityId = compiledPlan.getOptimizedActivity().getId();
+        for (LessonWithPossibleTerms lesson : compiledPlan.getLessons()) {
+            if (withOptimizedActivity) {
+                output.writeInt(timeDistanceManager.getTimeDistanceInMinutes(lesson.getId(), optimizedActivityId));
+                output.writeInt(timeDistanceManager.getTimeDistanceInMinutes(optimizedActivityId, lesson.getId()));
+            }
+            for (LessonWithPossibleTerms otherLesson : compiledPlan.getLessons())
+                output.writeInt(timeDistanceManager.getTimeDistanceInMinutes(lesson.getId(), otherLesson.getId()));
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof PlanFingerprint))
+            return false;
+
+        return Arrays.equals(digest, ((PlanFingerprint) other).digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte value : digest)
+            hex.append(String.format("%02x", value));
+
+        return hex.toString();
+    }
+}
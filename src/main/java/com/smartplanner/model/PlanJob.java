@@ -0,0 +1,91 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.dto.PlanOutputDto;
+
+import java.time.Instant;
+
+/**
+ * Plan generation that runs in the background. It's created when the plan is submitted and holds the generated plan
+ * or the error once the solve has finished. Status is updated by the solver thread and read by request threads.
+ */
+public class PlanJob {
+    private final String id;
+    private final String username;
+    private final SolveBudget budget;
+    private final SolverProgress progress;
+    private final Instant createdAt;
+    private volatile PlanJobStatus status;
+    private volatile PlanOutputDto result;
+    private volatile Throwable error;
+    private volatile Instant finishedAt;
+
+    public PlanJob(String id, String username, SolveBudget budget) {
+        this.id = id;
+        this.username = username;
+        this.budget = budget;
+        this.progress = new SolverProgress();
+        this.createdAt = Instant.now();
+        this.status = PlanJobStatus.QUEUED;
+    }
+
+    public void start() {
+        status = PlanJobStatus.RUNNING;
+    }
+
+    public void complete(PlanOutputDto result) {
+        this.result = result;
+        this.finishedAt = Instant.now();
+        this.status = PlanJobStatus.SUCCEEDED;
+    }
+
+    public void fail(Throwable error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.status = PlanJobStatus.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == PlanJobStatus.SUCCEEDED || status == PlanJobStatus.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns budget of the solve, cancelling it stops the search and the best plan found so far is saved
+     *
+     * @return budget shared with the solver
+     */
+    public SolveBudget getBudget() {
+        return budget;
+    }
+
+    public SolverProgress getProgress() {
+        return progress;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public PlanJobStatus getStatus() {
+        return status;
+    }
+
+    public PlanOutputDto getResult() {
+        return result;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+}
@@ -0,0 +1,5 @@
+package com.smartplanner.model;
+
+public enum PlanJobStatus {
+    QUEUED, RUNNING, SUCCEEDED, FAILED
+}
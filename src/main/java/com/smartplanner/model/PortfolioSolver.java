@@ -0,0 +1,108 @@
+package com.smartplanner.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Finder of the best timetables that races the exact search against heuristic ones, for plans whose search time can't
+ * be predicted well (some of them are proven optimal in milliseconds, others never).
+ *
+ * BranchAndBoundSolver, LocalSearchSolver and IslandGeneticSolver (with a few islands) run at the same time on the
+ * fork/join pool and keep their timetables in one shared SolverIncumbent, so a good timetable found by a heuristic
+ * immediately tightens pruning of the exact search. They use the same tie-break keys, so if the exact search finishes,
+ * the result is the same as the one of the exact search alone.
+ *
+ * Everything stops as soon as one of the searches proves its timetables optimal (the exact search by finishing,
+ * a heuristic one when every kept timetable reaches the upper bound of the score) or when the budget runs out. Each
+ * search has its own child of the budget, so the others can be cancelled without cancelling the budget of the caller.
+ * All searches report to the same SolverProgress, the covered part of the search space is the one of the exact
+ * search.
+ *
+ * PortfolioSolver can't be reused, what means that you have to create new object for each search.
+ */
+public class PortfolioSolver {
+    private static final int ISLANDS_OF_GENETIC_SEARCH = 2;
+
+    private CompiledPlan compiledPlan;
+    private ForkJoinPool forkJoinPool;
+    private long seed;
+    private int[] searchOrder;
+
+    /**
+     * Creates solver for the compiled plan
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     * @param forkJoinPool pool that runs all searches
+     * @param seed seed of the heuristic searches
+     */
+    public PortfolioSolver(CompiledPlan compiledPlan, ForkJoinPool forkJoinPool, long seed) {
+        this.compiledPlan = compiledPlan;
+        this.forkJoinPool = forkJoinPool;
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the order of lessons of all searches, see BranchAndBoundSolver.withSearchOrder()
+     *
+     * @param searchOrder lesson index for each depth of the search
+     * @return this solver
+     */
+    public PortfolioSolver withSearchOrder(int[] searchOrder) {
+        this.searchOrder = searchOrder;
+        return this;
+    }
+
+    /**
+     * Searches for several best timetables within provided budget
+     *
+     * @param numberOfTimetables amount of timetables to find
+     * @param budget limits of the searches, each of them gets the limits remaining when it starts
+     * @param progress counters updated by all searches
+     * @return the same as BranchAndBoundSolver.solveForBestTimetables(). If the budget runs out, the upper bound of
+     * the score is the one of the exact search
+     */
+    public List<TimetableWithDecisionPointsAndScore> solveForBestTimetables(int numberOfTimetables, SolveBudget budget,
+                                                                           SolverProgress progress) {
+        SolverIncumbent incumbent = new SolverIncumbent(numberOfTimetables);
+        SolveBudget exactBudget = budget.createChildWithRemainingLimits();
+        SolveBudget localSearchBudget = budget.createChildWithRemainingLimits();
+        SolveBudget geneticSearchBudget = budget.createChildWithRemainingLimits();
+        List<SolveBudget> budgets = Arrays.asList(exactBudget, localSearchBudget, geneticSearchBudget);
+
+        ForkJoinTask<List<TimetableWithDecisionPointsAndScore>> localSearch = forkJoinPool.submit(() ->
+                stopOthersIfProven(new LocalSearchSolver(compiledPlan, seed).withSearchOrder(searchOrder)
+                        .withSharedIncumbent(incumbent)
+                        .solveForBestTimetables(numberOfTimetables, localSearchBudget, progress), budgets));
+        ForkJoinTask<List<TimetableWithDecisionPointsAndScore>> geneticSearch = forkJoinPool.submit(() ->
+                stopOthersIfProven(new IslandGeneticSolver(compiledPlan, forkJoinPool, ISLANDS_OF_GENETIC_SEARCH, seed)
+                        .withSearchOrder(searchOrder).withSharedIncumbent(incumbent)
+                        .solveForBestTimetables(numberOfTimetables, geneticSearchBudget, progress), budgets));
+
+        List<TimetableWithDecisionPointsAndScore> exactTimetables = stopOthersIfProven(
+                new BranchAndBoundSolver(compiledPlan, forkJoinPool).withSearchOrder(searchOrder)
+                        .withSharedIncumbent(incumbent)
+                        .solveForBestTimetables(numberOfTimetables, exactBudget, progress), budgets);
+
+        List<TimetableWithDecisionPointsAndScore> localSearchTimetables = localSearch.join();
+        List<TimetableWithDecisionPointsAndScore> geneticSearchTimetables = geneticSearch.join();
+        boolean isProvenOptimal = exactTimetables.get(0).isProvenOptimal()
+                || localSearchTimetables.get(0).isProvenOptimal() || geneticSearchTimetables.get(0).isProvenOptimal();
+        // heuristic searches may have improved the incumbent after the exact search returned its timetables
+        int bestScore = incumbent.getBestScore();
+        int upperBound = isProvenOptimal ? bestScore
+                : Math.max(bestScore, exactTimetables.get(0).getUpperBoundOfMinutes());
+
+        return ScoredTimetables.toScoredTimetables(compiledPlan, incumbent, isProvenOptimal, upperBound);
+    }
+
+    private List<TimetableWithDecisionPointsAndScore> stopOthersIfProven(
+            List<TimetableWithDecisionPointsAndScore> timetables, List<SolveBudget> budgets) {
+        if (timetables.get(0).isProvenOptimal())
+            for (SolveBudget budget : budgets)
+                budget.cancel();
+
+        return timetables;
+    }
+}
@@ -0,0 +1,36 @@
+package com.smartplanner.model;
+
+/**
+ * Moment when a running search found a better timetable than before (see SolverProgress.getBestScoreHistory()), so
+ * it can be seen how fast the search converges.
+ */
+public class ScoreImprovement {
+    private long elapsedMillis;
+    private long exploredCandidates;
+    private int minutesSpentAtOptimizedActivity;
+
+    /**
+     * Creates record of an improvement
+     *
+     * @param elapsedMillis time since the progress was created
+     * @param exploredCandidates amount of candidates reported by then
+     * @param minutesSpentAtOptimizedActivity score of the new best timetable
+     */
+    public ScoreImprovement(long elapsedMillis, long exploredCandidates, int minutesSpentAtOptimizedActivity) {
+        this.elapsedMillis = elapsedMillis;
+        this.exploredCandidates = exploredCandidates;
+        this.minutesSpentAtOptimizedActivity = minutesSpentAtOptimizedActivity;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getExploredCandidates() {
+        return exploredCandidates;
+    }
+
+    public int getMinutesSpentAtOptimizedActivity() {
+        return minutesSpentAtOptimizedActivity;
+    }
+}
@@ -0,0 +1,130 @@
+package com.smartplanner.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Helpers shared by solvers that don't prove optimality by searching the whole tree (heuristic searches, searches
+ * combined from others and re-scoring of stored timetables): the upper bound of the score, lessons that a search can
+ * move and the assembly of results from SolverIncumbent.
+ */
+final class ScoredTimetables {
+    private ScoredTimetables() {
+    }
+
+    /**
+     * Returns the upper bound of the score of any timetable of the plan, no day can give more than maxTimeInMinutes
+     * of optimized activity
+     *
+     * @param compiledPlan plan with optimized activity
+     * @return the highest possible amount of minutes spent at optimized activity
+     */
+    static int getMaxScore(CompiledPlan compiledPlan) {
+        int maxScore = 0;
+        for (int cycleDayNumber = 0; cycleDayNumber < compiledPlan.getDaysInCycle(); ++cycleDayNumber)
+            if (compiledPlan.isOptimizedActivityOpenedInDay(cycleDayNumber))
+                maxScore += compiledPlan.getMaxTimeAtOptimizedActivityPerDay();
+
+        return maxScore;
+    }
+
+    /**
+     * Checks if a heuristic search can't find anything better, what proves its timetables optimal
+     *
+     * @param incumbent timetables kept by the search
+     * @param maxScore result of getMaxScore()
+     * @return true if every kept timetable reaches the upper bound of the score, false else
+     */
+    static boolean isReachingMaxScore(SolverIncumbent incumbent, int maxScore) {
+        return incumbent.getThresholdScore() >= maxScore;
+    }
+
+    /**
+     * Finds lessons that can change their term
+     *
+     * @param compiledPlan plan with lessons and possible terms
+     * @return indexes of lessons with more than one possible term in ascending order
+     */
+    static int[] findMovableLessons(CompiledPlan compiledPlan) {
+        int qntOfLessons = compiledPlan.getNumberOfLessons();
+        int qntOfMovableLessons = 0;
+        int[] lessons = new int[qntOfLessons];
+        for (int lessonIndex = 0; lessonIndex < qntOfLessons; ++lessonIndex)
+            if (compiledPlan.getNumberOfTerms(lessonIndex) > 1)
+                lessons[qntOfMovableLessons++] = lessonIndex;
+
+        return Arrays.copyOf(lessons, qntOfMovableLessons);
+    }
+
+    /**
+     * Checks if a timetable can be made at all
+     *
+     * @param compiledPlan plan with lessons and possible terms
+     * @return false if some lesson has no possible term, true else
+     */
+    static boolean hasEveryLessonPossibleTerms(CompiledPlan compiledPlan) {
+        for (int lessonIndex = 0; lessonIndex < compiledPlan.getNumberOfLessons(); ++lessonIndex)
+            if (compiledPlan.getNumberOfTerms(lessonIndex) == 0)
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Returns the result of a heuristic search. Its timetables are proven optimal if they reach the upper bound of the
+     * score or if the search couldn't start, because there is no timetable at all.
+     *
+     * @param compiledPlan plan that has been searched
+     * @param incumbent timetables kept by the search
+     * @param isSearched false if the search couldn't start, true else
+     * @param maxScore result of getMaxScore()
+     * @return the same as toScoredTimetables()
+     */
+    static List<TimetableWithDecisionPointsAndScore> toHeuristicResult(CompiledPlan compiledPlan,
+                                                                       SolverIncumbent incumbent, boolean isSearched,
+                                                                       int maxScore) {
+        boolean isProvenOptimal = !isSearched || isReachingMaxScore(incumbent, maxScore);
+        int upperBound = isProvenOptimal ? incumbent.getBestScore() : maxScore;
+        return toScoredTimetables(compiledPlan, incumbent, isProvenOptimal, upperBound);
+    }
+
+    /**
+     * Scores every timetable kept by the incumbent
+     *
+     * @param compiledPlan plan that has been searched
+     * @param incumbent timetables kept by the search
+     * @param isProvenOptimal true if no better timetable exists, false else
+     * @param upperBound upper bound of the score of any timetable of the plan
+     * @return kept timetables, the best one first. If there is none, the list contains a single timetable without
+     * entries and with score 0
+     */
+    static List<TimetableWithDecisionPointsAndScore> toScoredTimetables(CompiledPlan compiledPlan,
+                                                                        SolverIncumbent incumbent,
+                                                                        boolean isProvenOptimal, int upperBound) {
+        List<TimetableWithDecisionPointsAndScore> timetables = new ArrayList<TimetableWithDecisionPointsAndScore>();
+        for (int[] pickedTerms : incumbent.getBestPickedTermsOfAll())
+            timetables.add(toScoredTimetable(compiledPlan, pickedTerms, isProvenOptimal, upperBound));
+        if (timetables.isEmpty())
+            timetables.add(toScoredTimetable(compiledPlan, null, isProvenOptimal, upperBound));
+        return timetables;
+    }
+
+    /**
+     * Scores a single timetable
+     *
+     * @param compiledPlan plan that has been searched
+     * @param pickedTerms term index for each lesson or null if there is no timetable
+     * @param isProvenOptimal true if no better timetable exists, false else
+     * @param upperBound upper bound of the score of any timetable of the plan
+     * @return scored timetable with its picks and the outcome of the search
+     */
+    static TimetableWithDecisionPointsAndScore toScoredTimetable(CompiledPlan compiledPlan, int[] pickedTerms,
+                                                                 boolean isProvenOptimal, int upperBound) {
+        TimetableWithDecisionPointsAndScore timetable = pickedTerms == null
+                ? new TimetableWithDecisionPointsAndScore(0, null, null)
+                : new OptimalityCalculator(compiledPlan).calculate(compiledPlan.toTimetable(pickedTerms));
+
+        return timetable.withPickedTerms(pickedTerms).withSearchOutcome(isProvenOptimal, upperBound);
+    }
+}
@@ -0,0 +1,37 @@
+package com.smartplanner.model;
+
+/**
+ * Size of the search space of a plan, estimated before it's searched (see SearchSpaceEstimator). Sizes are kept as
+ * doubles, because the raw size of large plans doesn't fit in a long.
+ */
+public class SearchSpaceEstimate {
+    private double rawSize;
+    private double candidates;
+    private double validTimetables;
+
+    /**
+     * Creates estimate of the search space
+     *
+     * @param rawSize amount of all combinations of terms, i.e. product of the numbers of possible terms of lessons
+     * @param candidates estimated amount of candidates (partial or complete timetables) that the search examines when
+     *                   only conflicts between terms prune it
+     * @param validTimetables estimated amount of valid timetables
+     */
+    public SearchSpaceEstimate(double rawSize, double candidates, double validTimetables) {
+        this.rawSize = rawSize;
+        this.candidates = candidates;
+        this.validTimetables = validTimetables;
+    }
+
+    public double getRawSize() {
+        return rawSize;
+    }
+
+    public double getCandidates() {
+        return candidates;
+    }
+
+    public double getValidTimetables() {
+        return validTimetables;
+    }
+}
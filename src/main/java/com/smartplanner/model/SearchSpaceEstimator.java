@@ -0,0 +1,136 @@
+package com.smartplanner.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Estimator of the size of the search space of a plan, cheap enough to be run before every search.
+ *
+ * The raw size is the product of the numbers of possible terms of lessons. The size left after conflicts between terms
+ * are ruled out is estimated by random probing of the search tree (Knuth's estimator): a probe picks terms in the same
+ * order as BranchAndBoundSolver, a random term without conflicts at each depth, and every level of the tree is assumed
+ * to be as wide as the product of the numbers of terms seen by the probe so far. The average over probes is an unbiased
+ * estimate of the size of the tree. Branches aren't pruned by score here, so the search examines fewer candidates
+ * than estimated. Like the search, probes only pick terms left by ConsistentTermDomains of the plan.
+ *
+ * Plans whose lessons split into independent components are searched by components (see DecomposingSolver), so each
+ * component is probed on its own, their candidates are added up and their valid timetables multiplied.
+ *
+ * Probes are drawn from a generator with a fixed seed, so the same plan always gets the same estimate.
+ */
+public class SearchSpaceEstimator {
+    private static final long SEED = 0x5EA5C4L;
+
+    private CompiledPlan compiledPlan;
+    private TermConflictIndex conflictIndex;
+    private ConsistentTermDomains consistentTermDomains;
+    private int[] searchOrder;
+    // lessons of the probed component in search order
+    private int[] probedOrder;
+
+    /**
+     * Creates estimator of the plan, it builds TermConflictIndex and ConsistentTermDomains of the plan if they haven't
+     * been built yet
+     *
+     * @param compiledPlan plan with lessons and possible terms
+     */
+    public SearchSpaceEstimator(CompiledPlan compiledPlan) {
+        this.compiledPlan = compiledPlan;
+    }
+
+    /**
+     * Estimates the size of the search space
+     *
+     * @param numberOfProbes amount of random paths through the search tree, the more of them, the more accurate
+     *                       the estimate
+     * @return sizes of the search space
+     */
+    public SearchSpaceEstimate estimate(int numberOfProbes) {
+        int numberOfLessons = compiledPlan.getNumberOfLessons();
+        double rawSize = 1;
+        for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex)
+            rawSize *= compiledPlan.getNumberOfTerms(lessonIndex);
+        if (rawSize == 0)
+            return new SearchSpaceEstimate(0, 0, 0);
+
+        consistentTermDomains = compiledPlan.getConsistentTermDomains();
+        if (!consistentTermDomains.isConsistent())
+            return new SearchSpaceEstimate(rawSize, 0, 0);
+
+        conflictIndex = compiledPlan.getTermConflictIndex();
+        searchOrder = BranchAndBoundSolver.orderLessonsByConstraints(compiledPlan, conflictIndex);
+
+        int[][] components = DecomposingSolver.findComponents(compiledPlan);
+        int[] componentOfLesson = new int[numberOfLessons];
+        for (int component = 0; component < components.length; ++component)
+            for (int lessonIndex : components[component])
+                componentOfLesson[lessonIndex] = component;
+
+        Random random = new Random(SEED);
+        double candidates = 0;
+        double validTimetables = 1;
+        for (int component = 0; component < components.length; ++component) {
+            int probedComponent = component;
+            probedOrder = Arrays.stream(searchOrder).filter(x -> componentOfLesson[x] == probedComponent).toArray();
+            double candidatesOfComponent = 0;
+            double validTimetablesOfComponent = 0;
+            for (int probe = 0; probe < numberOfProbes; ++probe) {
+                double[] probeResult = probe(random);
+                candidatesOfComponent += probeResult[0];
+                validTimetablesOfComponent += probeResult[1];
+            }
+            candidates += candidatesOfComponent / numberOfProbes;
+            validTimetables *= validTimetablesOfComponent / numberOfProbes;
+        }
+
+        return new SearchSpaceEstimate(rawSize, candidates, validTimetables);
+    }
+
+    /**
+     * Follows a single random path from the root of the search tree of the probed component
+     *
+     * @return estimated amount of candidates and of valid timetables
+     */
+    private double[] probe(Random random) {
+        long[] liveTerms = consistentTermDomains.getTerms().clone();
+        long[] liveTermsAfterPick = new long[liveTerms.length];
+        int[] possibleTerms = new int[compiledPlan.getNumberOfTerms()];
+
+        // amount of nodes at the current depth of the tree, as seen by this probe
+        double nodesAtDepth = 1;
+        double candidates = 0;
+        for (int depth = 0; depth < probedOrder.length; ++depth) {
+            int lessonIndex = probedOrder[depth];
+            int firstTerm = compiledPlan.getFirstTermOfLesson(lessonIndex);
+            int lastTerm = compiledPlan.getFirstTermOfLesson(lessonIndex + 1);
+            // every consistent term of the lesson is examined in each node, even the ones ruled out by earlier picks
+            candidates += nodesAtDepth * consistentTermDomains.getNumberOfTerms(lessonIndex);
+
+            int numberOfPossibleTerms = 0;
+            for (int term = firstTerm; term < lastTerm; ++term)
+                if (TermConflictIndex.contains(liveTerms, term) && canBePicked(depth, term, liveTerms, liveTermsAfterPick))
+                    possibleTerms[numberOfPossibleTerms++] = term;
+            if (numberOfPossibleTerms == 0)
+                return new double[]{candidates, 0};
+
+            nodesAtDepth *= numberOfPossibleTerms;
+            conflictIndex.removeConflictingTerms(possibleTerms[random.nextInt(numberOfPossibleTerms)], liveTerms);
+        }
+
+        return new double[]{candidates, nodesAtDepth};
+    }
+
+    // the same check as the one done by BranchAndBoundSolver when it picks a term
+    private boolean canBePicked(int depth, int term, long[] liveTerms, long[] liveTermsAfterPick) {
+        System.arraycopy(liveTerms, 0, liveTermsAfterPick, 0, liveTerms.length);
+        conflictIndex.removeConflictingTerms(term, liveTermsAfterPick);
+
+        for (int laterDepth = depth + 1; laterDepth < probedOrder.length; ++laterDepth) {
+            int lessonIndex = probedOrder[laterDepth];
+            if (TermConflictIndex.countTermsInRange(liveTermsAfterPick, compiledPlan.getFirstTermOfLesson(lessonIndex),
+                    compiledPlan.getFirstTermOfLesson(lessonIndex + 1)) == 0)
+                return false;
+        }
+        return true;
+    }
+}
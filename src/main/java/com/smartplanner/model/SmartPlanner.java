@@ -1,28 +1,18 @@
 package com.smartplanner.model;
 
-import com.smartplanner.controller.LoggingController;
-import com.smartplanner.exception.InvalidDataProvidedException;
 import com.smartplanner.model.entity.OptimizedActivity;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Finder of optimal timetable that allows to spent maximum possible time doing
  * optimized activity.
  */
 public class SmartPlanner {
-    private List<LessonWithPossibleTerms> lessons;
-    private int daysInCycle;
-    private TimeDistanceManager distanceManager;
-    private int maxCommutesPerDay;
-    private int minTimeSpentAtOptimizedAtOnceInMinutes;
-    private OptimizedActivity optimizedActivity;
-    private ExecutorService executor;
-    private Logger logger;
+    private CompiledPlan compiledPlan;
+    private ForkJoinPool forkJoinPool;
+    private int[] initialPickedTerms;
 
     /**
      * Creates SmartPlanner that finds the most optimal plan based on passed arguments
@@ -35,14 +25,40 @@ public class SmartPlanner {
      */
     public SmartPlanner(List<LessonWithPossibleTerms> lessons, int daysInCycle, TimeDistanceManager distanceManager,
                         int maxCommutesPerDay, OptimizedActivity optimizedActivity) {
-        this.lessons = lessons;
-        this.daysInCycle = daysInCycle;
-        this.distanceManager = distanceManager;
-        this.maxCommutesPerDay = maxCommutesPerDay;
-        this.minTimeSpentAtOptimizedAtOnceInMinutes = optimizedActivity.getMinTimeInMinutes(); //TODO:
-        this.optimizedActivity = optimizedActivity;
-        this.executor = Executors.newSingleThreadExecutor();
-        this.logger = LoggerFactory.getLogger(LoggingController.class);
+        this(new CompiledPlan(lessons, daysInCycle, distanceManager, maxCommutesPerDay, optimizedActivity));
+    }
+
+    /**
+     * Creates SmartPlanner for already compiled plan
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     */
+    public SmartPlanner(CompiledPlan compiledPlan) {
+        this(compiledPlan, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates SmartPlanner for already compiled plan that searches on provided pool
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     * @param forkJoinPool pool shared by searches of all plans
+     */
+    public SmartPlanner(CompiledPlan compiledPlan, ForkJoinPool forkJoinPool) {
+        this(compiledPlan, forkJoinPool, null);
+    }
+
+    /**
+     * Creates SmartPlanner that starts the search from a known timetable, e.g. terms previously chosen for an edited
+     * plan. The result is the same as without it, but a good timetable makes the search much faster.
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     * @param forkJoinPool pool shared by searches of all plans
+     * @param initialPickedTerms term index for each lesson or null if there is no known timetable
+     */
+    public SmartPlanner(CompiledPlan compiledPlan, ForkJoinPool forkJoinPool, int[] initialPickedTerms) {
+        this.compiledPlan = compiledPlan;
+        this.forkJoinPool = forkJoinPool;
+        this.initialPickedTerms = initialPickedTerms;
     }
 
     /**
@@ -53,122 +69,241 @@ public class SmartPlanner {
      * equal to 0 and every other field set to null
      */
     public TimetableWithDecisionPointsAndScore getOptimalPlan() {
-        LessonPicker lessonPicker = new LessonPicker((ArrayList<LessonWithPossibleTerms>) lessons, daysInCycle);
-
-        ArrayList<ArrayList<TimetableEntry>> potentialTimetables = new ArrayList<ArrayList<TimetableEntry>>();
-
-        while (lessonPicker.isNext())
-            potentialTimetables.add(lessonPicker.getNext());
-
-        TimetableValidator validator = new TimetableValidator(distanceManager);
-
-        int halfIndex = potentialTimetables.size() / 2;
-
-        List<ArrayList<TimetableEntry>> firstHalfOfPotentialTimetables = potentialTimetables.subList(0, halfIndex);
-        List<ArrayList<TimetableEntry>> secondHalfOfPotentialTimetables = potentialTimetables.subList(halfIndex, potentialTimetables.size());
-        ArrayList<ArrayList<TimetableEntry>> firstHalfOfValidTimetables = new ArrayList<ArrayList<TimetableEntry>>();
-        ArrayList<ArrayList<TimetableEntry>> secondHalfOfValidTimetables = new ArrayList<ArrayList<TimetableEntry>>();
-
-        class CallTask implements Callable<Boolean> {
-
-            /**
-             * Perform computations for the first half of the potential timetables
-             *
-             * @return true if the computations have been successfully performed,
-             * false otherwise
-             *
-             * @throws Exception whenever computation is interrupted
-             */
-            @Override
-            public Boolean call() throws Exception {
-                try {
-                    for (ArrayList<TimetableEntry> timetable : firstHalfOfPotentialTimetables) {
-                        if (validator.isValid(timetable)) {
-                            firstHalfOfValidTimetables.add(timetable);
-                        }
-                    }
-
-                    return true;
-                } catch (Exception e) {
-                    logger.error(e.getMessage());
-                    return false;
-                }
-            }
-        }
+        return getOptimalPlan(SolveBudget.unlimited());
+    }
 
-        Future<Boolean> isDataComputed = executor.submit(() -> {
-            /**
-             * Perform computations for the second half of the potential timetables
-             *
-             * return true if the computations have been successfully performed,
-             * false otherwise
-             */
-            try {
-                for (ArrayList<TimetableEntry> timetable : secondHalfOfPotentialTimetables) {
-                    if (validator.isValid(timetable)) {
-                        secondHalfOfValidTimetables.add(timetable);
-                    }
-                }
-
-                return true;
-            } catch (Exception e) {
-                logger.error(e.getMessage());
-                return false;
-            }
-        });
-
-        try {
-            List<Callable<Boolean>> listOfCallables = new ArrayList<>();
-            listOfCallables.add(new CallTask());
-            executor.invokeAll(listOfCallables);
-        } catch (InterruptedException e) {
-            logger.error(e.getMessage());
-        }
+    /**
+     * Returns the best plan that can be found within provided budget
+     *
+     * @param budget time and candidate limits of the search, it can also be cancelled while the search is running
+     * @return the same as getOptimalPlan(). If the budget runs out, it's the best plan found so far and it carries an
+     * upper bound of the optimal amount of minutes
+     */
+    public TimetableWithDecisionPointsAndScore getOptimalPlan(SolveBudget budget) {
+        return getOptimalPlan(budget, new SolverProgress());
+    }
 
-        try {
-            while (!isDataComputed.isDone()) {
-                logger.info("Computing data...");
-                Thread.sleep(300);
-            }
+    /**
+     * Returns the best plan that can be found within provided budget and reports progress of the search
+     *
+     * @param budget time and candidate limits of the search
+     * @param progress counters of the search that can be read while it's running
+     * @return the same as getOptimalPlan(SolveBudget)
+     */
+    public TimetableWithDecisionPointsAndScore getOptimalPlan(SolveBudget budget, SolverProgress progress) {
+        DecomposingSolver decomposingSolver = new DecomposingSolver(compiledPlan, forkJoinPool);
+        if (decomposingSolver.isDecomposable())
+            return decomposingSolver.withInitialTimetable(initialPickedTerms)
+                    .solveForBestTimetables(1, budget, progress).get(0);
 
-            if (!isDataComputed.get()) {
-                throw new InvalidDataProvidedException(
-                        "Cannot perform computations. An error occurred");
-            }
-        } catch (InterruptedException e) {
-            logger.error(e.getMessage());
-        } catch (ExecutionException e) {
-            logger.error(e.getMessage());
-        }
+        return new BranchAndBoundSolver(compiledPlan, forkJoinPool).withInitialTimetable(initialPickedTerms)
+                .solve(budget, progress);
+    }
 
-        try {
-            executor.shutdown();
-            if (!executor.awaitTermination(3, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
-            }
-        } catch (InterruptedException ex) {
-            executor.shutdownNow();
-            Thread.currentThread().interrupt();
-            throw new InvalidDataProvidedException(
-                    "An error occurred during computations");
-        }
+    /**
+     * Returns several best plans found by a single search
+     *
+     * @param numberOfPlans amount of plans to find
+     * @param budget time and candidate limits of the search
+     * @param progress counters of the search that can be read while it's running
+     * @return up to numberOfPlans distinct valid plans, the best one first. If there is no valid plan, the list contains
+     * the single result of getOptimalPlan(SolveBudget)
+     */
+    public List<TimetableWithDecisionPointsAndScore> getBestPlans(int numberOfPlans, SolveBudget budget,
+                                                                  SolverProgress progress) {
+        DecomposingSolver decomposingSolver = new DecomposingSolver(compiledPlan, forkJoinPool);
+        if (decomposingSolver.isDecomposable())
+            return decomposingSolver.withInitialTimetable(initialPickedTerms)
+                    .solveForBestTimetables(numberOfPlans, budget, progress);
 
-        ArrayList<ArrayList<TimetableEntry>> validTimetables = new ArrayList<ArrayList<TimetableEntry>>(firstHalfOfValidTimetables);
-        validTimetables.addAll(secondHalfOfValidTimetables);
+        return new BranchAndBoundSolver(compiledPlan, forkJoinPool).withInitialTimetable(initialPickedTerms)
+                .solveForBestTimetables(numberOfPlans, budget, progress);
+    }
 
-        TimetableWithDecisionPointsAndScore bestTimetable = new TimetableWithDecisionPointsAndScore(0, null, null);
-        if (validTimetables.size() != 0) {
-            OptimalityCalculator optimalityCalculator = new OptimalityCalculator(distanceManager, maxCommutesPerDay,
-                    minTimeSpentAtOptimizedAtOnceInMinutes, daysInCycle, optimizedActivity);
+    /**
+     * Checks if lessons of the plan split into groups that don't share any cycle day, which getOptimalPlan(),
+     * getBestPlans(), getBestPlansByPortfolio() and getOptimalPlansForEveryCommuteLimit() search separately (see
+     * DecomposingSolver)
+     *
+     * @return true if the plan is searched by components, false else
+     */
+    public boolean isDecomposable() {
+        return new DecomposingSolver(compiledPlan, forkJoinPool).isDecomposable();
+    }
 
-            for (ArrayList<TimetableEntry> validTimetable : validTimetables) {
-                TimetableWithDecisionPointsAndScore currentTimetable = optimalityCalculator.calculate(validTimetable);
-                if (currentTimetable.getMinutesSpentAtOptimizedActivity() > bestTimetable.getMinutesSpentAtOptimizedActivity())
-                    bestTimetable = currentTimetable;
-            }
+    /**
+     * Returns several best plans found by a single search that also stores every valid plan, so plans that differ only
+     * in optimized activity can be re-scored later with getBestPlans(ValidTimetableStore, ...). Branches aren't pruned
+     * by score while the store accepts plans, so the search is slower than getBestPlans() without the store.
+     *
+     * @param numberOfPlans amount of plans to find
+     * @param budget time and candidate limits of the search
+     * @param progress counters of the search that can be read while it's running
+     * @param validTimetableStore empty store, it's completed if the search has checked every plan
+     * @return the same as getBestPlans(int, SolveBudget, SolverProgress)
+     */
+    public List<TimetableWithDecisionPointsAndScore> getBestPlans(int numberOfPlans, SolveBudget budget,
+                                                                  SolverProgress progress,
+                                                                  ValidTimetableStore validTimetableStore) {
+        return new BranchAndBoundSolver(compiledPlan, forkJoinPool).withInitialTimetable(initialPickedTerms)
+                .withValidTimetableStore(validTimetableStore).solveForBestTimetables(numberOfPlans, budget, progress);
+    }
+
+    /**
+     * Returns several best plans by scoring valid plans stored by an earlier search, without searching again
+     *
+     * @param validTimetableStore completed store of a plan with the same PlanFingerprint.ofValidity()
+     * @param numberOfPlans amount of plans to find
+     * @param budget time and candidate limits, every stored plan counts as a candidate
+     * @param progress counters that can be read while plans are scored
+     * @return the same as getBestPlans(int, SolveBudget, SolverProgress) or null if the store can't be read anymore
+     */
+    public List<TimetableWithDecisionPointsAndScore> getBestPlans(ValidTimetableStore validTimetableStore,
+                                                                  int numberOfPlans, SolveBudget budget,
+                                                                  SolverProgress progress) {
+        return new ValidTimetableRescorer(compiledPlan, validTimetableStore)
+                .solveForBestTimetables(numberOfPlans, budget, progress);
+    }
+
+    /**
+     * Returns several good plans found by local search (see LocalSearchSolver). It scales to plans far too large for
+     * getBestPlans(), but plans aren't guaranteed to be optimal.
+     *
+     * @param numberOfPlans amount of plans to find
+     * @param seed seed of the search, the same seed gives the same plans unless the budget stops the search earlier
+     * @param budget time and candidate limits of the search, the search has to be limited by one of them or it runs
+     *               until it stops improving
+     * @param progress counters of the search that can be read while it's running
+     * @return the same as getBestPlans(int, SolveBudget, SolverProgress), plans are proven optimal only if they reach
+     * the upper bound of minutes
+     */
+    public List<TimetableWithDecisionPointsAndScore> getBestPlansByLocalSearch(int numberOfPlans, long seed,
+                                                                               SolveBudget budget,
+                                                                               SolverProgress progress) {
+        return new LocalSearchSolver(compiledPlan, seed).solveForBestTimetables(numberOfPlans, budget, progress);
+    }
+
+    /**
+     * Returns several good plans found by a genetic algorithm (see IslandGeneticSolver) with one island per thread of
+     * the pool. Like getBestPlansByLocalSearch(), it scales to the largest plans, but plans aren't guaranteed to be
+     * optimal. SolverProgress records how the best score converges.
+     *
+     * @param numberOfPlans amount of plans to find
+     * @param seed seed of the search, the same seed and parallelism of the pool give the same plans unless the budget
+     *             stops the search earlier
+     * @param budget time and candidate limits of the search
+     * @param progress counters of the search that can be read while it's running
+     * @return the same as getBestPlansByLocalSearch()
+     */
+    public List<TimetableWithDecisionPointsAndScore> getBestPlansByGeneticSearch(int numberOfPlans, long seed,
+                                                                                 SolveBudget budget,
+                                                                                 SolverProgress progress) {
+        return new IslandGeneticSolver(compiledPlan, forkJoinPool, forkJoinPool.getParallelism(), seed)
+                .solveForBestTimetables(numberOfPlans, budget, progress);
+    }
+
+    /**
+     * Returns several best plans found by the exact search raced against heuristic searches (see PortfolioSolver). If
+     * the exact search finishes, plans are the same as the ones of getBestPlans(), otherwise they are the best ones
+     * found by any of the searches. Like in getBestPlans(), independent components are searched separately, each of
+     * them by its own race.
+     *
+     * @param numberOfPlans amount of plans to find
+     * @param seed seed of the heuristic searches
+     * @param budget time and candidate limits of the searches
+     * @param progress counters of all searches that can be read while they are running
+     * @return the same as getBestPlans(int, SolveBudget, SolverProgress)
+     */
+    public List<TimetableWithDecisionPointsAndScore> getBestPlansByPortfolio(int numberOfPlans, long seed,
+                                                                             SolveBudget budget,
+                                                                             SolverProgress progress) {
+        DecomposingSolver decomposingSolver = new DecomposingSolver(compiledPlan, forkJoinPool);
+        if (decomposingSolver.isDecomposable())
+            return decomposingSolver.withHeuristics(seed).solveForBestTimetables(numberOfPlans, budget, progress);
+
+        return new PortfolioSolver(compiledPlan, forkJoinPool, seed).solveForBestTimetables(numberOfPlans, budget,
+                progress);
+    }
 
+    /**
+     * Returns the optimal plan for every commute limit from 1 to the limit of this plan, found by a single search
+     *
+     * @param budget time and candidate limits of the search
+     * @param progress counters of the search that can be read while it's running
+     * @return the optimal plan for commute limit c at index c - 1, the same as getOptimalPlan(SolveBudget) of the plan
+     * with that limit
+     */
+    public List<TimetableWithDecisionPointsAndScore> getOptimalPlansForEveryCommuteLimit(SolveBudget budget,
+                                                                                         SolverProgress progress) {
+        DecomposingSolver decomposingSolver = new DecomposingSolver(compiledPlan, forkJoinPool);
+        if (decomposingSolver.isDecomposable())
+            return decomposingSolver.solveForEveryCommuteLimit(budget, progress);
+
+        return new BranchAndBoundSolver(compiledPlan, forkJoinPool).solveForEveryCommuteLimit(budget, progress);
+    }
+
+    /**
+     * Returns the optimal plan for every commute limit from 1 to the limit of this plan by scoring valid plans stored by
+     * an earlier search once for all limits
+     *
+     * @param validTimetableStore completed store of a plan with the same PlanFingerprint.ofValidity()
+     * @param budget time and candidate limits, every stored plan counts as a candidate
+     * @param progress counters that can be read while plans are scored
+     * @return the same as getOptimalPlansForEveryCommuteLimit(SolveBudget, SolverProgress) or null if the store can't be
+     * read anymore
+     */
+    public List<TimetableWithDecisionPointsAndScore> getOptimalPlansForEveryCommuteLimit(
+            ValidTimetableStore validTimetableStore, SolveBudget budget, SolverProgress progress) {
+        return new ValidTimetableRescorer(compiledPlan, validTimetableStore)
+                .solveForEveryCommuteLimit(budget, progress);
+    }
+
+    /**
+     * Returns the optimal plan by validating and scoring every combination of terms. It gives the same result as
+     * getOptimalPlan() but doesn't prune anything, so it's only suitable for small inputs and cross-checks.
+     *
+     * Combinations are visited in Gray code order, so each of them differs from the previous one in a single lesson and
+     * is validated and scored incrementally. From timetables with equal score the one that LessonPicker would return
+     * first is chosen.
+     *
+     * @return the same as getOptimalPlan()
+     */
+    public TimetableWithDecisionPointsAndScore getOptimalPlanByEnumeration() {
+        GrayCodeLessonPicker lessonPicker = new GrayCodeLessonPicker(compiledPlan);
+        if (lessonPicker.isNext() == false)
+            return new TimetableWithDecisionPointsAndScore(0, null, null);
+
+        IncrementalTimetable timetable = new IncrementalTimetable(compiledPlan);
+        int[] termIndexes = lessonPicker.getTermIndexes();
+
+        int bestScore = 0;
+        int[] bestPickedTerms = null;
+        while (lessonPicker.isNext()) {
+            int changedLesson = lessonPicker.getNextChangedLesson();
+            if (changedLesson != -1)
+                timetable.changeTerm(changedLesson, termIndexes[changedLesson]);
+            if (timetable.isValid() == false)
+                continue;
+
+            int score = timetable.getScore();
+            if (score > bestScore || (score == bestScore && score > 0 && isVisitedEarlierByLessonPicker(termIndexes, bestPickedTerms))) {
+                bestScore = score;
+                bestPickedTerms = termIndexes.clone();
+            }
         }
 
-        return bestTimetable;
+        if (bestPickedTerms == null)
+            return new TimetableWithDecisionPointsAndScore(0, null, null);
+        return new OptimalityCalculator(compiledPlan).calculate(compiledPlan.toTimetable(bestPickedTerms))
+                .withPickedTerms(bestPickedTerms);
+    }
+
+    // LessonPicker changes the first lesson the most often, so the last lesson is the most significant one
+    private static boolean isVisitedEarlierByLessonPicker(int[] pickedTerms, int[] otherPickedTerms) {
+        for (int lessonIndex = pickedTerms.length - 1; lessonIndex >= 0; --lessonIndex)
+            if (pickedTerms[lessonIndex] != otherPickedTerms[lessonIndex])
+                return pickedTerms[lessonIndex] < otherPickedTerms[lessonIndex];
+
+        return false;
     }
 }
@@ -0,0 +1,155 @@
+package com.smartplanner.model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits of a single search: wall-clock time, amount of examined candidates (partial or complete timetables) and
+ * cancellation, e.g. when the client that asked for the plan has disconnected.
+ *
+ * Solvers check the budget cooperatively, every few hundred candidates, and return the best timetable found so far
+ * when it's exhausted. The object is shared by all workers of the search.
+ *
+ * Budgets of several searches that belong together (e.g. plans of a batch) can be created as children of a common
+ * budget, so cancelling it cancels all of them. Budgets of parts of a single search (e.g. engines of a portfolio) also
+ * charge their candidates to the parent, so together they examine no more candidates than its limit.
+ */
+public class SolveBudget {
+    /**
+     * Amount of candidates a worker examines between checks of the budget
+     */
+    public static final int CANDIDATES_BETWEEN_CHECKS = 256;
+
+    private final long deadlineInNanos;
+    private final boolean hasDeadline;
+    private final long maxCandidates;
+    private final AtomicLong examinedCandidates;
+    private volatile boolean isExhausted;
+    private volatile boolean isCancelled;
+    private final List<SolveBudget> children;
+    // budget that is charged with candidates examined within this one, null if this one is independent
+    private final SolveBudget chargedParent;
+
+    /**
+     * Creates budget with provided limits
+     *
+     * @param timeLimitInMillis wall-clock time limit counted from now, null or not positive value means no limit
+     * @param maxCandidates limit of examined candidates, null or not positive value means no limit
+     */
+    public SolveBudget(Long timeLimitInMillis, Long maxCandidates) {
+        this(timeLimitInMillis != null && timeLimitInMillis > 0,
+                timeLimitInMillis != null && timeLimitInMillis > 0 ? System.nanoTime() + timeLimitInMillis * 1_000_000 : 0,
+                maxCandidates != null && maxCandidates > 0 ? maxCandidates : Long.MAX_VALUE, null);
+    }
+
+    private SolveBudget(boolean hasDeadline, long deadlineInNanos, long maxCandidates, SolveBudget chargedParent) {
+        this.hasDeadline = hasDeadline;
+        this.deadlineInNanos = deadlineInNanos;
+        this.maxCandidates = maxCandidates;
+        this.examinedCandidates = new AtomicLong();
+        this.children = new CopyOnWriteArrayList<SolveBudget>();
+        this.chargedParent = chargedParent;
+    }
+
+    /**
+     * Creates budget without any limits, it can only be cancelled
+     *
+     * @return unlimited budget
+     */
+    public static SolveBudget unlimited() {
+        return new SolveBudget(null, null);
+    }
+
+    /**
+     * Creates budget of another search, which is cancelled together with this one. Limits of this budget don't apply
+     * to it.
+     *
+     * @param timeLimitInMillis wall-clock time limit counted from now, null or not positive value means no limit
+     * @param maxCandidates limit of examined candidates, null or not positive value means no limit
+     * @return budget with provided limits
+     */
+    public SolveBudget createChild(Long timeLimitInMillis, Long maxCandidates) {
+        return addChild(new SolveBudget(timeLimitInMillis, maxCandidates));
+    }
+
+    /**
+     * Creates budget of a part of this search that has to stop after provided time (e.g. a heuristic search). Limits of
+     * this budget apply to it too, its candidates are charged to this one and it's cancelled together with this one.
+     *
+     * @param timeLimitInMillis wall-clock time limit counted from now
+     * @return budget limited by this one and by provided time
+     */
+    public SolveBudget createChildWithTimeLimit(long timeLimitInMillis) {
+        long deadline = System.nanoTime() + timeLimitInMillis * 1_000_000;
+        if (hasDeadline && deadlineInNanos - deadline < 0)
+            deadline = deadlineInNanos;
+
+        return addChild(new SolveBudget(true, deadline, Long.MAX_VALUE, this));
+    }
+
+    /**
+     * Creates budget of a part of this search that runs next to other parts (e.g. engines of a portfolio), so it can be
+     * cancelled on its own. Limits of this budget apply to it, its candidates are charged to this one (so all parts
+     * share the remaining limit) and it's cancelled together with this one.
+     *
+     * @return budget limited by this one
+     */
+    public SolveBudget createChildWithRemainingLimits() {
+        return addChild(new SolveBudget(hasDeadline, deadlineInNanos, Long.MAX_VALUE, this));
+    }
+
+    private SolveBudget addChild(SolveBudget child) {
+        children.add(child);
+        // the child may have missed cancel() called in the meantime
+        if (isCancelled)
+            child.cancel();
+
+        return child;
+    }
+
+    /**
+     * Stops the search as soon as workers notice it. The best timetable found so far is still returned.
+     */
+    public void cancel() {
+        isCancelled = true;
+        isExhausted = true;
+        for (SolveBudget child : children)
+            child.cancel();
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * Adds examined candidates and checks the limits
+     *
+     * @param numberOfCandidates amount of candidates examined since the previous call
+     * @return true if the search should stop, false else
+     */
+    public boolean examineCandidates(int numberOfCandidates) {
+        if (isExhausted)
+            return true;
+
+        boolean isParentExhausted = chargedParent != null && chargedParent.examineCandidates(numberOfCandidates);
+        if (isParentExhausted || examinedCandidates.addAndGet(numberOfCandidates) >= maxCandidates
+                || (hasDeadline && System.nanoTime() - deadlineInNanos >= 0))
+            isExhausted = true;
+
+        return isExhausted;
+    }
+
+    /**
+     * Checks if the search should stop, without counting anything
+     *
+     * @return true if the budget is exhausted or cancelled, false else
+     */
+    public boolean isExhausted() {
+        return isExhausted;
+    }
+
+    public long getExaminedCandidates() {
+        return examinedCandidates.get();
+    }
+}
@@ -0,0 +1,13 @@
+package com.smartplanner.model;
+
+/**
+ * Way in which a plan is solved, chosen by SolveRouter before the search
+ */
+public enum SolveRoute {
+    // the search that proves its timetable optimal
+    EXACT,
+    // the exact search raced against heuristic ones for a short time, it returns the best timetable any of them finds
+    HEURISTIC,
+    // the plan isn't solved at all
+    REJECT
+}
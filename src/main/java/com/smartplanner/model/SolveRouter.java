@@ -0,0 +1,105 @@
+package com.smartplanner.model;
+
+/**
+ * Admission control of searches. Before a plan is searched, its search space is estimated (see SearchSpaceEstimator)
+ * and the time of the exact search is predicted from the throughput of previous searches. Plans whose exact search
+ * would take too long are only searched for a limited time, plans with an enormous search space are rejected, so they
+ * don't tie up the solver pool.
+ *
+ * The throughput is measured in estimated candidates per millisecond, so it also accounts for branches that the
+ * search prunes by score. It's an exponential moving average of the logarithm of throughputs of completed exact
+ * searches, which makes it robust to single plans that are pruned much better or much worse than usual.
+ *
+ * Heuristic searches race the exact search against heuristics (see PortfolioSolver) seeded with a configured seed.
+ *
+ * The router is shared by all searches, it's thread-safe.
+ */
+public class SolveRouter {
+    private static final int NUMBER_OF_PROBES = 64;
+    private static final double SMOOTHING_FACTOR = 0.2;
+    // shorter searches are dominated by the overhead of starting them
+    private static final long MIN_MEASURED_SEARCH_IN_NANOS = 10_000_000;
+
+    private final long maxExactSolveTimeInMillis;
+    private final double maxCandidates;
+    private final long heuristicTimeLimitInMillis;
+    private final long heuristicSeed;
+    private double logOfCandidatesPerMillisecond;
+
+    /**
+     * Creates router with provided thresholds
+     *
+     * @param maxExactSolveTimeInMillis longest predicted time of the exact search, plans predicted to take longer are
+     *                                  searched heuristically
+     * @param maxCandidates the highest estimated amount of candidates of plans that are searched at all
+     * @param heuristicTimeLimitInMillis time limit of the heuristic search
+     * @param heuristicSeed seed of the heuristic search
+     * @param initialCandidatesPerSecond throughput assumed before any search has been measured
+     */
+    public SolveRouter(long maxExactSolveTimeInMillis, double maxCandidates, long heuristicTimeLimitInMillis,
+                       long heuristicSeed, double initialCandidatesPerSecond) {
+        this.maxExactSolveTimeInMillis = maxExactSolveTimeInMillis;
+        this.maxCandidates = maxCandidates;
+        this.heuristicTimeLimitInMillis = heuristicTimeLimitInMillis;
+        this.heuristicSeed = heuristicSeed;
+        this.logOfCandidatesPerMillisecond = Math.log(initialCandidatesPerSecond / 1000);
+    }
+
+    /**
+     * Estimates the search space of the plan
+     *
+     * @param compiledPlan plan that is going to be searched
+     * @return estimated sizes of the search space
+     */
+    public SearchSpaceEstimate estimate(CompiledPlan compiledPlan) {
+        return new SearchSpaceEstimator(compiledPlan).estimate(NUMBER_OF_PROBES);
+    }
+
+    /**
+     * Predicts how long the exact search of the plan would take
+     *
+     * @param estimate estimated search space of the plan
+     * @return predicted time of the search in milliseconds
+     */
+    public synchronized double predictSolveTimeInMillis(SearchSpaceEstimate estimate) {
+        return estimate.getCandidates() / Math.exp(logOfCandidatesPerMillisecond);
+    }
+
+    /**
+     * Chooses the way in which the plan is solved
+     *
+     * @param estimate estimated search space of the plan
+     * @return REJECT if the search space is too large, HEURISTIC if the exact search would take too long, EXACT else
+     */
+    public SolveRoute route(SearchSpaceEstimate estimate) {
+        if (estimate.getCandidates() > maxCandidates)
+            return SolveRoute.REJECT;
+        if (predictSolveTimeInMillis(estimate) > maxExactSolveTimeInMillis)
+            return SolveRoute.HEURISTIC;
+
+        return SolveRoute.EXACT;
+    }
+
+    /**
+     * Updates the throughput with a completed exact search. Searches stopped by SolveBudget shouldn't be recorded.
+     *
+     * @param estimate estimated search space of the searched plan
+     * @param searchTimeInNanos wall-clock time of the search
+     */
+    public synchronized void recordSearch(SearchSpaceEstimate estimate, long searchTimeInNanos) {
+        if (searchTimeInNanos < MIN_MEASURED_SEARCH_IN_NANOS || estimate.getCandidates() < 1)
+            return;
+
+        double candidatesPerMillisecond = estimate.getCandidates() / (searchTimeInNanos / 1_000_000.0);
+        logOfCandidatesPerMillisecond += SMOOTHING_FACTOR
+                * (Math.log(candidatesPerMillisecond) - logOfCandidatesPerMillisecond);
+    }
+
+    public long getHeuristicTimeLimitInMillis() {
+        return heuristicTimeLimitInMillis;
+    }
+
+    public long getHeuristicSeed() {
+        return heuristicSeed;
+    }
+}
@@ -0,0 +1,287 @@
+package com.smartplanner.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Cache of optimal timetables of plans, keyed by PlanFingerprint. It's bounded (least recently used plans are removed
+ * first) and its entries expire after a while.
+ *
+ * Only picked terms and scores of timetables proven optimal are stored, results of searches stopped by SolveBudget
+ * aren't. Entities of the timetable are built again for the plan that asks for it, so names of its lessons are used.
+ *
+ * Concurrent searches for plans with the same fingerprint are coalesced: the first one solves the plan and the others
+ * wait for its result. If it isn't proven optimal, each of them solves the plan on its own.
+ *
+ * The cache also keeps a few DayScoreCaches, so plans whose days are scored the same way (e.g. a plan and its edited
+ * version) reuse scores of days computed for each other.
+ *
+ * Valid timetables of a few recently solved plans are kept in ValidTimetableStores, keyed by
+ * PlanFingerprint.ofValidity(), so a plan that differs from one of them only in optimized activity is re-scored
+ * instead of being searched. They expire like the timetables, evicted stores are closed. The search that collects
+ * them can't prune branches by score, so they're collected only for plans estimated to have far fewer valid
+ * timetables than the limit.
+ */
+public class SolvedPlanCache {
+    private static final long WAIT_STEP_IN_MILLIS = 50;
+    private static final int MAX_SHARED_DAY_SCORE_CACHES = 16;
+    private static final int MAX_VALID_TIMETABLE_STORES = 4;
+    private static final long DEFAULT_MAX_VALID_TIMETABLES = 250_000;
+    // valid timetables are collected only if their estimated amount is at most this part of the limit
+    private static final int ESTIMATED_VALID_TIMETABLES_PER_LIMIT = 16;
+
+    private final int capacity;
+    private final long timeToLiveInNanos;
+    private final LinkedHashMap<PlanFingerprint, CachedSolution> solutions;
+    private final ConcurrentHashMap<PlanFingerprint, CompletableFuture<CachedSolution>> searchesInProgress;
+    private final LinkedHashMap<PlanFingerprint, DayScoreCache> dayScoreCaches;
+    private final long maxValidTimetables;
+    private final LinkedHashMap<PlanFingerprint, StoredValidTimetables> validTimetableStores;
+
+    /**
+     * Creates empty cache
+     *
+     * @param capacity maximal amount of cached plans
+     * @param timeToLiveInMillis time after which cached plan expires
+     */
+    public SolvedPlanCache(int capacity, long timeToLiveInMillis) {
+        this(capacity, timeToLiveInMillis, DEFAULT_MAX_VALID_TIMETABLES);
+    }
+
+    /**
+     * Creates empty cache
+     *
+     * @param capacity maximal amount of cached plans
+     * @param timeToLiveInMillis time after which cached plan expires
+     * @param maxValidTimetables amount of valid timetables of a plan above which they aren't stored, 0 disables storing
+     */
+    public SolvedPlanCache(int capacity, long timeToLiveInMillis, long maxValidTimetables) {
+        this.capacity = capacity;
+        this.timeToLiveInNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveInMillis);
+        this.solutions = new LinkedHashMap<PlanFingerprint, CachedSolution>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PlanFingerprint, CachedSolution> eldest) {
+                return size() > SolvedPlanCache.this.capacity;
+            }
+        };
+        this.searchesInProgress = new ConcurrentHashMap<>();
+        this.dayScoreCaches = new LinkedHashMap<PlanFingerprint, DayScoreCache>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PlanFingerprint, DayScoreCache> eldest) {
+                return size() > MAX_SHARED_DAY_SCORE_CACHES;
+            }
+        };
+        this.maxValidTimetables = maxValidTimetables;
+        this.validTimetableStores = new LinkedHashMap<PlanFingerprint, StoredValidTimetables>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PlanFingerprint, StoredValidTimetables> eldest) {
+                if (size() <= MAX_VALID_TIMETABLE_STORES)
+                    return false;
+
+                eldest.getValue().store.close();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns valid timetables stored for a plan with the same lessons, terms and travel times between lessons
+     *
+     * @param compiledPlan plan to solve
+     * @return completed store or null if there is none
+     */
+    public ValidTimetableStore getValidTimetables(CompiledPlan compiledPlan) {
+        PlanFingerprint fingerprint = PlanFingerprint.ofValidity(compiledPlan);
+        synchronized (validTimetableStores) {
+            StoredValidTimetables storedValidTimetables = validTimetableStores.get(fingerprint);
+            if (storedValidTimetables != null && System.nanoTime() - storedValidTimetables.expiresAt >= 0) {
+                validTimetableStores.remove(fingerprint).store.close();
+                return null;
+            }
+            return storedValidTimetables != null ? storedValidTimetables.store : null;
+        }
+    }
+
+    /**
+     * Creates store for valid timetables of the plan, limited by the capacity set for this cache
+     *
+     * @param compiledPlan plan to solve
+     * @param estimate estimated size of the search space of the plan
+     * @return empty store or null if storing valid timetables is disabled or the plan is estimated to have too many of
+     * them, so the search should prune by score instead
+     */
+    public ValidTimetableStore createValidTimetableStore(CompiledPlan compiledPlan, SearchSpaceEstimate estimate) {
+        if (maxValidTimetables <= 0
+                || estimate.getValidTimetables() > (double) maxValidTimetables / ESTIMATED_VALID_TIMETABLES_PER_LIMIT)
+            return null;
+
+        return new ValidTimetableStore(compiledPlan, maxValidTimetables);
+    }
+
+    /**
+     * Keeps valid timetables of the plan for plans that differ from it only in optimized activity. Incomplete stores
+     * are closed instead.
+     *
+     * @param compiledPlan solved plan
+     * @param validTimetableStore store filled by the search of the plan
+     */
+    public void putValidTimetables(CompiledPlan compiledPlan, ValidTimetableStore validTimetableStore) {
+        if (!validTimetableStore.isComplete()) {
+            validTimetableStore.close();
+            return;
+        }
+
+        PlanFingerprint fingerprint = PlanFingerprint.ofValidity(compiledPlan);
+        synchronized (validTimetableStores) {
+            StoredValidTimetables replaced = validTimetableStores.put(fingerprint,
+                    new StoredValidTimetables(validTimetableStore));
+            if (replaced != null && replaced.store != validTimetableStore)
+                replaced.store.close();
+        }
+    }
+
+    /**
+     * Makes the plan use DayScoreCache shared with other plans whose days are scored the same way. A full shared cache
+     * is replaced with an empty one, so it doesn't stop caching days of new plans.
+     *
+     * @param compiledPlan plan that hasn't been solved yet
+     */
+    public void shareDayScoreCache(CompiledPlan compiledPlan) {
+        PlanFingerprint fingerprint = PlanFingerprint.ofDayScoring(compiledPlan);
+        DayScoreCache dayScoreCache;
+        synchronized (dayScoreCaches) {
+            dayScoreCache = dayScoreCaches.get(fingerprint);
+            if (dayScoreCache == null || dayScoreCache.isFull()) {
+                dayScoreCache = new DayScoreCache();
+                dayScoreCaches.put(fingerprint, dayScoreCache);
+            }
+        }
+        compiledPlan.setDayScoreCache(dayScoreCache);
+    }
+
+    /**
+     * Returns cached optimal timetable of the plan or finds it with provided solver
+     *
+     * @param compiledPlan plan to solve
+     * @param budget budget of the search, it also limits time spent waiting for a search of the same plan
+     * @param solver search for the plan, it's called only if the plan isn't cached
+     * @return timetable of the plan, the same as the solver returns
+     */
+    public TimetableWithDecisionPointsAndScore getOrSolve(CompiledPlan compiledPlan, SolveBudget budget,
+                                                          Supplier<TimetableWithDecisionPointsAndScore> solver) {
+        PlanFingerprint fingerprint = PlanFingerprint.of(compiledPlan);
+        CachedSolution cachedSolution = get(fingerprint);
+        if (cachedSolution != null)
+            return cachedSolution.toTimetable(compiledPlan);
+
+        CompletableFuture<CachedSolution> search = new CompletableFuture<>();
+        CompletableFuture<CachedSolution> searchOfSamePlan = searchesInProgress.putIfAbsent(fingerprint, search);
+        if (searchOfSamePlan != null) {
+            cachedSolution = waitFor(searchOfSamePlan, budget);
+            return cachedSolution != null ? cachedSolution.toTimetable(compiledPlan) : solver.get();
+        }
+
+        try {
+            TimetableWithDecisionPointsAndScore timetable = solver.get();
+            cachedSolution = put(fingerprint, timetable);
+            return timetable;
+        } finally {
+            search.complete(cachedSolution);
+            searchesInProgress.remove(fingerprint, search);
+        }
+    }
+
+    /**
+     * Caches timetable of the plan found by another search, e.g. one that has solved several plans at once. Timetables
+     * that aren't proven optimal are ignored.
+     *
+     * @param compiledPlan solved plan
+     * @param timetable timetable of the plan with its picked terms
+     */
+    public void put(CompiledPlan compiledPlan, TimetableWithDecisionPointsAndScore timetable) {
+        put(PlanFingerprint.of(compiledPlan), timetable);
+    }
+
+    private CachedSolution put(PlanFingerprint fingerprint, TimetableWithDecisionPointsAndScore timetable) {
+        boolean isTimetableKnownByPicks = timetable.getOptimalTimetable() == null || timetable.getPickedTerms() != null;
+        if (!timetable.isProvenOptimal() || !isTimetableKnownByPicks)
+            return null;
+
+        CachedSolution cachedSolution = new CachedSolution(timetable.getMinutesSpentAtOptimizedActivity(),
+                timetable.getPickedTerms());
+        put(fingerprint, cachedSolution);
+        return cachedSolution;
+    }
+
+    public synchronized int size() {
+        return solutions.size();
+    }
+
+    private synchronized CachedSolution get(PlanFingerprint fingerprint) {
+        CachedSolution cachedSolution = solutions.get(fingerprint);
+        if (cachedSolution != null && System.nanoTime() - cachedSolution.expiresAt >= 0) {
+            solutions.remove(fingerprint);
+            return null;
+        }
+        return cachedSolution;
+    }
+
+    private synchronized void put(PlanFingerprint fingerprint, CachedSolution cachedSolution) {
+        solutions.put(fingerprint, cachedSolution);
+    }
+
+    private CachedSolution waitFor(CompletableFuture<CachedSolution> search, SolveBudget budget) {
+        while (true) {
+            try {
+                return search.get(WAIT_STEP_IN_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (budget.examineCandidates(0))
+                    return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                return null;
+            }
+        }
+    }
+
+    private class StoredValidTimetables {
+        private final ValidTimetableStore store;
+        private final long expiresAt;
+
+        private StoredValidTimetables(ValidTimetableStore store) {
+            this.store = store;
+            this.expiresAt = System.nanoTime() + timeToLiveInNanos;
+        }
+    }
+
+    /**
+     * Optimal picks of a plan, null picks mean that the plan has no valid timetable
+     */
+    private class CachedSolution {
+        private final int score;
+        private final int[] pickedTerms;
+        private final long expiresAt;
+
+        private CachedSolution(int score, int[] pickedTerms) {
+            this.score = score;
+            this.pickedTerms = pickedTerms;
+            this.expiresAt = System.nanoTime() + timeToLiveInNanos;
+        }
+
+        private TimetableWithDecisionPointsAndScore toTimetable(CompiledPlan compiledPlan) {
+            if (pickedTerms == null)
+                return new TimetableWithDecisionPointsAndScore(score, null, null);
+
+            return new OptimalityCalculator(compiledPlan).calculate(compiledPlan.toTimetable(pickedTerms))
+                    .withPickedTerms(pickedTerms);
+        }
+    }
+}
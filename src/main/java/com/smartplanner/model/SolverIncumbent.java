@@ -0,0 +1,184 @@
+package com.smartplanner.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holder of the best timetables found so far, shared by all workers of a single search. Timetables are kept as picked
+ * term indexes of the compiled plan, entities are created only for the final result.
+ *
+ * Up to numberOfTimetables best timetables are kept in a bounded min-heap, whose root is the worst of them. Once the
+ * heap is full, a timetable has to beat the root to get in. The root is published through an atomic reference, so
+ * workers can read it on every node without locking and prune against results found by each other, only offers that
+ * get into the heap take the lock. Timetables with equal score are ordered by their tie-break key (lexicographically
+ * smaller key wins), which makes the result independent of the order in which workers report their timetables.
+ */
+public class SolverIncumbent {
+    private static final Incumbent NONE = new Incumbent(0, null, null);
+
+    private final int numberOfTimetables;
+    // the worst timetable in the full heap, NONE while the heap isn't full
+    private final AtomicReference<Incumbent> threshold;
+    private final AtomicReference<Incumbent> best;
+    private final PriorityQueue<Incumbent> kept;
+
+    /**
+     * Creates holder of the single best timetable
+     */
+    public SolverIncumbent() {
+        this(1);
+    }
+
+    /**
+     * Creates holder without any timetable. Only timetables with positive score can become incumbent.
+     *
+     * @param numberOfTimetables amount of best timetables to keep
+     */
+    public SolverIncumbent(int numberOfTimetables) {
+        this.numberOfTimetables = numberOfTimetables;
+        this.threshold = new AtomicReference<Incumbent>(NONE);
+        this.best = new AtomicReference<Incumbent>(NONE);
+        this.kept = new PriorityQueue<Incumbent>(numberOfTimetables + 1,
+                (lhs, rhs) -> lhs.isBetterThan(rhs) ? 1 : rhs.isBetterThan(lhs) ? -1 : 0);
+    }
+
+    /**
+     * Returns score of the best timetable found so far
+     *
+     * @return amount of minutes spent on optimized activity in the best timetable, 0 if there is none
+     */
+    public int getBestScore() {
+        return best.get().score;
+    }
+
+    /**
+     * Returns score of the worst of kept timetables, once as many timetables as asked for are kept
+     *
+     * @return score every kept timetable reaches, 0 while there is still place for another timetable
+     */
+    public int getThresholdScore() {
+        return threshold.get().score;
+    }
+
+    /**
+     * Returns picks of the best timetable found so far
+     *
+     * @return term index for each lesson or null if there is no timetable with positive score
+     */
+    public int[] getBestPickedTerms() {
+        return best.get().pickedTerms;
+    }
+
+    /**
+     * Returns picks of the best timetables found so far
+     *
+     * @return term index for each lesson of every kept timetable, the best one first
+     */
+    public synchronized List<int[]> getBestPickedTermsOfAll() {
+        List<Incumbent> incumbents = new ArrayList<Incumbent>(kept);
+        incumbents.sort((lhs, rhs) -> lhs.isBetterThan(rhs) ? -1 : rhs.isBetterThan(lhs) ? 1 : 0);
+
+        List<int[]> pickedTerms = new ArrayList<int[]>(incumbents.size());
+        for (Incumbent incumbent : incumbents)
+            pickedTerms.add(incumbent.pickedTerms);
+        return pickedTerms;
+    }
+
+    /**
+     * Offers a timetable, which is kept if it's better than the worst of kept timetables or there is still place for it.
+     *
+     * @param score amount of minutes spent on optimized activity in the timetable
+     * @param pickedTerms term index for each lesson, the array can't be modified afterwards
+     * @param tieBreakKey key used to choose between timetables with equal score (e.g. picked term indexes in search order)
+     * @return true if the timetable became the best one, false else
+     */
+    public boolean offer(int score, int[] pickedTerms, int[] tieBreakKey) {
+        Incumbent candidate = new Incumbent(score, pickedTerms, tieBreakKey);
+        if (!candidate.isBetterThan(threshold.get()))
+            return false;
+
+        synchronized (this) {
+            if (!candidate.isBetterThan(threshold.get()))
+                return false;
+
+            kept.add(candidate);
+            if (kept.size() > numberOfTimetables)
+                kept.poll();
+            if (kept.size() == numberOfTimetables)
+                threshold.set(kept.peek());
+
+            if (!candidate.isBetterThan(best.get()))
+                return false;
+            best.set(candidate);
+            return true;
+        }
+    }
+
+    /**
+     * Offers a timetable like offer(), unless a timetable with the same picks is already kept. Searches that can find
+     * the same timetable more than once (e.g. local search) use it, so the kept timetables stay distinct.
+     *
+     * @param score amount of minutes spent on optimized activity in the timetable
+     * @param pickedTerms term index for each lesson, the array can't be modified afterwards
+     * @param tieBreakKey key used to choose between timetables with equal score
+     * @return true if the timetable became the best one, false else
+     */
+    public synchronized boolean offerIfAbsent(int score, int[] pickedTerms, int[] tieBreakKey) {
+        for (Incumbent incumbent : kept)
+            if (Arrays.equals(incumbent.pickedTerms, pickedTerms))
+                return false;
+
+        return offer(score, pickedTerms, tieBreakKey);
+    }
+
+    /**
+     * Checks if any timetable that starts with provided picks can still be kept.
+     *
+     * @param optimisticScore upper bound of the score of every timetable that starts with provided picks
+     * @param partialKey tie-break key of the picks made so far
+     * @param partialKeyLength number of picks made so far
+     * @return false if every such timetable would be rejected by offer(), true else
+     */
+    public boolean canBeBeatenBy(int optimisticScore, int[] partialKey, int partialKeyLength) {
+        Incumbent current = threshold.get();
+
+        if (optimisticScore != current.score)
+            return optimisticScore > current.score;
+        if (current.tieBreakKey == null)
+            return false;
+
+        for (int i = 0; i < partialKeyLength; ++i)
+            if (partialKey[i] != current.tieBreakKey[i])
+                return partialKey[i] < current.tieBreakKey[i];
+
+        return true;
+    }
+
+    private static class Incumbent {
+        private final int score;
+        private final int[] pickedTerms;
+        private final int[] tieBreakKey;
+
+        private Incumbent(int score, int[] pickedTerms, int[] tieBreakKey) {
+            this.score = score;
+            this.pickedTerms = pickedTerms;
+            this.tieBreakKey = tieBreakKey;
+        }
+
+        private boolean isBetterThan(Incumbent other) {
+            if (score != other.score)
+                return score > other.score;
+            if (other.tieBreakKey == null)
+                return false;
+
+            for (int i = 0; i < tieBreakKey.length; ++i)
+                if (tieBreakKey[i] != other.tieBreakKey[i])
+                    return tieBreakKey[i] < other.tieBreakKey[i];
+
+            return false;
+        }
+    }
+}
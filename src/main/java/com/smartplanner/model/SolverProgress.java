@@ -0,0 +1,115 @@
+package com.smartplanner.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a running search that can be read by other threads, e.g. to show progress to the user.
+ *
+ * Workers count in local variables and add them here every few hundred candidates (together with checks of
+ * SolveBudget), so reading progress doesn't slow the search down and values can be slightly behind.
+ *
+ * Every improvement of the best score is also recorded with the time it took to find it, which shows how the search
+ * converges. Scores are whole minutes below the upper bound of the plan, so the history stays short.
+ */
+public class SolverProgress {
+    private final LongAdder exploredCandidates;
+    private final LongAdder prunedCandidates;
+    private final LongAdder validTimetables;
+    private final LongAdder coveredPartOfSearchSpace;
+    private final AtomicInteger bestScore;
+    private volatile long sizeOfSearchSpace;
+    private final long createdAtInNanos;
+    private final List<ScoreImprovement> bestScoreHistory;
+
+    public SolverProgress() {
+        this.exploredCandidates = new LongAdder();
+        this.prunedCandidates = new LongAdder();
+        this.validTimetables = new LongAdder();
+        this.coveredPartOfSearchSpace = new LongAdder();
+        this.bestScore = new AtomicInteger();
+        this.sizeOfSearchSpace = 0;
+        this.createdAtInNanos = System.nanoTime();
+        this.bestScoreHistory = new ArrayList<ScoreImprovement>();
+    }
+
+    /**
+     * Sets size of the search space, against which the covered part is measured
+     *
+     * @param sizeOfSearchSpace amount of units that cover the whole search space, units are chosen by the solver
+     */
+    public void start(long sizeOfSearchSpace) {
+        this.sizeOfSearchSpace = sizeOfSearchSpace;
+    }
+
+    /**
+     * Adds counters collected by a worker since its previous report
+     *
+     * @param explored amount of examined (partial or complete) timetables
+     * @param pruned amount of examined timetables that have been dropped without going deeper
+     * @param valid amount of valid complete timetables
+     * @param covered part of the search space that has been searched or ruled out, in units of start()
+     */
+    public void report(long explored, long pruned, long valid, long covered) {
+        exploredCandidates.add(explored);
+        prunedCandidates.add(pruned);
+        validTimetables.add(valid);
+        coveredPartOfSearchSpace.add(covered);
+    }
+
+    public void offerBestScore(int score) {
+        if (score <= bestScore.getAndAccumulate(score, Math::max))
+            return;
+
+        // offers of several workers can get here in any order, the history keeps only increasing scores
+        synchronized (bestScoreHistory) {
+            int lastIndex = bestScoreHistory.size() - 1;
+            if (lastIndex >= 0 && bestScoreHistory.get(lastIndex).getMinutesSpentAtOptimizedActivity() >= score)
+                return;
+            bestScoreHistory.add(new ScoreImprovement((System.nanoTime() - createdAtInNanos) / 1_000_000,
+                    exploredCandidates.sum(), score));
+        }
+    }
+
+    /**
+     * Returns improvements of the best score so far
+     *
+     * @return improvements in the order in which they have been found, each one with a higher score than the previous
+     */
+    public List<ScoreImprovement> getBestScoreHistory() {
+        synchronized (bestScoreHistory) {
+            return new ArrayList<ScoreImprovement>(bestScoreHistory);
+        }
+    }
+
+    public long getExploredCandidates() {
+        return exploredCandidates.sum();
+    }
+
+    public long getPrunedCandidates() {
+        return prunedCandidates.sum();
+    }
+
+    public long getValidTimetables() {
+        return validTimetables.sum();
+    }
+
+    public int getBestScore() {
+        return bestScore.get();
+    }
+
+    /**
+     * Returns estimated part of the search space that has already been searched or ruled out
+     *
+     * @return value between 0 and 1, 0 if the search hasn't started yet
+     */
+    public double getCoveredFraction() {
+        long size = sizeOfSearchSpace;
+        if (size == 0)
+            return 0;
+
+        return Math.min(1.0, (double) coveredPartOfSearchSpace.sum() / size);
+    }
+}
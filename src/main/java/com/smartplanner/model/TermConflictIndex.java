@@ -0,0 +1,240 @@
+package com.smartplanner.model;
+
+/**
+ * Index of conflicts between every pair of terms of a compiled plan (with all of their repeats in cycle). Conflicts of
+ * each term are stored as a bitset of global term numbers, so checking a pair of terms is a single bit test and ruling
+ * out terms that conflict with a picked one is a bitwise AND over a few words.
+ *
+ * Two terms conflict if their entries overlap or one of them can't be reached in time after the other, even by the
+ * shortest route through places of other lessons. Every timetable that contains conflicting terms is invalid, because
+ * any entries attended in between can only make the travel longer. If the direct travel time is always the shortest one
+ * (the commute matrix satisfies triangle inequality), the reverse is also true and isExact() returns true. Otherwise
+ * picks without conflicts still have to be validated by TimetableValidator. If some travel time or duration is negative,
+ * only overlaps are stored.
+ *
+ * Terms of the same lesson are never picked together, so they don't conflict with each other.
+ */
+public class TermConflictIndex {
+    private int numberOfTerms;
+    private int wordsPerTerm;
+    // shortest travel time between places of lessons, shortestTravelTime[lessonIndex][otherLessonIndex]
+    private int[][] shortestTravelTime;
+    // conflicts[term * wordsPerTerm + otherTerm / 64] has bit (otherTerm % 64) set if the terms conflict
+    private long[] conflicts;
+    private boolean isExact;
+
+    /**
+     * Builds the index, it checks every pair of terms once.
+     *
+     * @param compiledPlan plan compiled to primitive arrays
+     */
+    public TermConflictIndex(CompiledPlan compiledPlan) {
+        TimetableValidator validator = new TimetableValidator(compiledPlan);
+        this.numberOfTerms = compiledPlan.getNumberOfTerms();
+        this.wordsPerTerm = getWordsForTerms(numberOfTerms);
+        this.conflicts = new long[numberOfTerms * wordsPerTerm];
+        boolean canCheckReachability = findShortestTravelTimes(compiledPlan);
+
+        for (int lessonIndex = 0; lessonIndex < compiledPlan.getNumberOfLessons(); ++lessonIndex) {
+            for (int term = compiledPlan.getFirstTermOfLesson(lessonIndex);
+                 term < compiledPlan.getFirstTermOfLesson(lessonIndex + 1); ++term) {
+                for (int otherTerm = compiledPlan.getFirstTermOfLesson(lessonIndex + 1); otherTerm < numberOfTerms; ++otherTerm) {
+                    boolean areConflicting = validator.areOverlapping(term, otherTerm)
+                            || (canCheckReachability && isUnreachable(compiledPlan, term, otherTerm));
+                    if (areConflicting) {
+                        conflicts[term * wordsPerTerm + (otherTerm >>> 6)] |= 1L << otherTerm;
+                        conflicts[otherTerm * wordsPerTerm + (term >>> 6)] |= 1L << term;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns amount of long words needed for a bitset of terms
+     *
+     * @param numberOfTerms amount of terms in the plan
+     * @return size of long[] that can hold a bit for each term
+     */
+    public static int getWordsForTerms(int numberOfTerms) {
+        return (numberOfTerms + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Finds shortest travel times between places of lessons (Floyd-Warshall) and checks if they are the direct ones.
+     *
+     * @return false if some travel time or duration is negative, true else
+     */
+    private boolean findShortestTravelTimes(CompiledPlan compiledPlan) {
+        TimeDistanceManager timeDistanceManager = compiledPlan.getTimeDistanceManager();
+        int numberOfLessons = compiledPlan.getNumberOfLessons();
+        isExact = false;
+
+        for (int entry = 0; entry < compiledPlan.getNumberOfEntries(); ++entry)
+            if (compiledPlan.getEntryEndMinute(entry) < compiledPlan.getEntryStartMinute(entry))
+                return false;
+
+        shortestTravelTime = new int[numberOfLessons][numberOfLessons];
+        for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex) {
+            for (int otherLessonIndex = 0; otherLessonIndex < numberOfLessons; ++otherLessonIndex) {
+                shortestTravelTime[lessonIndex][otherLessonIndex] = timeDistanceManager.getTimeDistanceInMinutes(
+                        compiledPlan.getLessons().get(lessonIndex).getId(),
+                        compiledPlan.getLessons().get(otherLessonIndex).getId());
+                if (shortestTravelTime[lessonIndex][otherLessonIndex] < 0)
+                    return false;
+            }
+        }
+
+        isExact = true;
+        for (int through = 0; through < numberOfLessons; ++through) {
+            for (int from = 0; from < numberOfLessons; ++from) {
+                for (int to = 0; to < numberOfLessons; ++to) {
+                    int travelTimeThrough = shortestTravelTime[from][through] + shortestTravelTime[through][to];
+                    if (travelTimeThrough < shortestTravelTime[from][to]) {
+                        shortestTravelTime[from][to] = travelTimeThrough;
+                        isExact = false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isUnreachable(CompiledPlan compiledPlan, int term, int otherTerm) {
+        for (int entry = compiledPlan.getFirstEntryOfTerm(term); entry < compiledPlan.getFirstEntryOfTerm(term + 1); ++entry) {
+            for (int otherEntry = compiledPlan.getFirstEntryOfTerm(otherTerm);
+                 otherEntry < compiledPlan.getFirstEntryOfTerm(otherTerm + 1); ++otherEntry) {
+                if (compiledPlan.getEntryCycleDay(entry) != compiledPlan.getEntryCycleDay(otherEntry))
+                    continue;
+
+                // the same order of entries that start at the same time as in TimetableValidator
+                boolean isEntryEarlier = compiledPlan.getEntryStartMinute(entry) <= compiledPlan.getEntryStartMinute(otherEntry);
+                int earlier = isEntryEarlier ? entry : otherEntry;
+                int later = isEntryEarlier ? otherEntry : entry;
+                int travelTime = shortestTravelTime[compiledPlan.getEntryLesson(earlier)][compiledPlan.getEntryLesson(later)];
+                if (compiledPlan.getEntryEndMinute(earlier) + travelTime > compiledPlan.getEntryStartMinute(later))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if conflicts stored in the index are enough to tell if picks make a valid timetable
+     *
+     * @return true if picks without conflicts always make a valid timetable, false if they have to be validated
+     */
+    public boolean isExact() {
+        return isExact;
+    }
+
+    /**
+     * Checks if two terms conflict with each other
+     *
+     * @param term global number of the first term
+     * @param otherTerm global number of the second term
+     * @return true if the terms can't be picked together, false else
+     */
+    public boolean areConflicting(int term, int otherTerm) {
+        return (conflicts[term * wordsPerTerm + (otherTerm >>> 6)] >>> otherTerm & 1) != 0;
+    }
+
+    /**
+     * Checks if any two of picked terms conflict with each other
+     *
+     * @param compiledPlan plan the index was built for
+     * @param pickedTerms term index for each lesson
+     * @return true if some of the terms can't be picked together, false else
+     */
+    public boolean hasConflicts(CompiledPlan compiledPlan, int[] pickedTerms) {
+        for (int lessonIndex = 1; lessonIndex < pickedTerms.length; ++lessonIndex) {
+            int term = compiledPlan.getFirstTermOfLesson(lessonIndex) + pickedTerms[lessonIndex];
+            int firstWord = term * wordsPerTerm;
+            for (int otherLessonIndex = 0; otherLessonIndex < lessonIndex; ++otherLessonIndex) {
+                int otherTerm = compiledPlan.getFirstTermOfLesson(otherLessonIndex) + pickedTerms[otherLessonIndex];
+                if ((conflicts[firstWord + (otherTerm >>> 6)] >>> otherTerm & 1) != 0)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Clears bits of terms that conflict with provided term
+     *
+     * @param term global number of the picked term
+     * @param terms bitset of terms with getWordsForTerms() words, it's modified in place
+     */
+    public void removeConflictingTerms(int term, long[] terms) {
+        int firstWord = term * wordsPerTerm;
+        for (int word = 0; word < wordsPerTerm; ++word)
+            terms[word] &= ~conflicts[firstWord + word];
+    }
+
+    /**
+     * Counts terms that conflict with provided term
+     *
+     * @param term global number of the term
+     * @return amount of conflicting terms
+     */
+    public int countConflicts(int term) {
+        int numberOfConflicts = 0;
+        for (int word = term * wordsPerTerm; word < (term + 1) * wordsPerTerm; ++word)
+            numberOfConflicts += Long.bitCount(conflicts[word]);
+
+        return numberOfConflicts;
+    }
+
+    /**
+     * Counts terms from the bitset that conflict with provided term
+     *
+     * @param term global number of the term
+     * @param terms bitset of terms, e.g. terms picked so far
+     * @return amount of terms in the bitset that can't be picked together with the term
+     */
+    public int countConflictsWith(int term, long[] terms) {
+        int numberOfConflicts = 0;
+        int firstWord = term * wordsPerTerm;
+        for (int word = 0; word < wordsPerTerm; ++word)
+            numberOfConflicts += Long.bitCount(conflicts[firstWord + word] & terms[word]);
+
+        return numberOfConflicts;
+    }
+
+    /**
+     * Counts bits set in range [from, to) of a bitset, e.g. live terms of a single lesson
+     *
+     * @param terms bitset of terms
+     * @param from global number of the first term
+     * @param to global number after the last term
+     * @return amount of bits set in the range
+     */
+    public static int countTermsInRange(long[] terms, int from, int to) {
+        if (from >= to)
+            return 0;
+
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (Long.SIZE - 1 - ((to - 1) & 63));
+        if (firstWord == lastWord)
+            return Long.bitCount(terms[firstWord] & firstMask & lastMask);
+
+        int count = Long.bitCount(terms[firstWord] & firstMask) + Long.bitCount(terms[lastWord] & lastMask);
+        for (int word = firstWord + 1; word < lastWord; ++word)
+            count += Long.bitCount(terms[word]);
+
+        return count;
+    }
+
+    /**
+     * Checks if the bit of provided term is set
+     *
+     * @param terms bitset of terms
+     * @param term global number of the term
+     * @return true if the term is in the bitset, false else
+     */
+    public static boolean contains(long[] terms, int term) {
+        return (terms[term >>> 6] >>> term & 1) != 0;
+    }
+}
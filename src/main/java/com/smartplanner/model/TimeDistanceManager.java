@@ -1,5 +1,6 @@
 package com.smartplanner.model;
 
+import com.smartplanner.exception.InvalidDataProvidedException;
 import com.smartplanner.model.entity.Lesson;
 import com.smartplanner.model.entity.OptimizedActivity;
 
@@ -8,10 +9,16 @@ import java.util.List;
 /**
  * Wrapper for commute matrix, which is a two dimensional array where commuteMatrix.get(id1).get(id2) yields amount
  * of time that is needed to travel from activity with id1 to activity with id2
+ *
+ * The matrix is copied to a single int array in row-major order. If it's symmetric, only the upper triangle (with the
+ * diagonal) is stored. Shape of the matrix is checked once, in the constructor, so lookups don't check anything.
  */
 public class TimeDistanceManager {
-    // timeDistance[from ID][to ID]
-    private List<List<Integer>> timeDistanceInMinutes;
+    private int numberOfPlaces;
+    private boolean isSymmetric;
+    // timeDistanceInMinutes[rowOffset[from ID] + to ID], for symmetric matrix from ID <= to ID
+    private int[] timeDistanceInMinutes;
+    private int[] rowOffset;
 
     /**
      * Creates TimeDistanceManager based on commute matrix which is two dimensional array,
@@ -20,9 +27,81 @@ public class TimeDistanceManager {
      *
      * @param timeDistanceInMinutes commute matrix where commuteMatrix.get(id1).get(id2) yields amount
      *                              of time that is needed to travel from activity with id1 to activity with id2
+     * @throws InvalidDataProvidedException if the matrix isn't square or contains empty values
      */
     public TimeDistanceManager(List<List<Integer>> timeDistanceInMinutes) {
-        this.timeDistanceInMinutes = timeDistanceInMinutes;
+        validateShape(timeDistanceInMinutes);
+
+        this.numberOfPlaces = timeDistanceInMinutes.size();
+        this.isSymmetric = checkIfSymmetric(timeDistanceInMinutes);
+        this.rowOffset = new int[numberOfPlaces];
+
+        int size = 0;
+        for (int fromId = 0; fromId < numberOfPlaces; ++fromId) {
+            int firstStoredToId = isSymmetric ? fromId : 0;
+            rowOffset[fromId] = size - firstStoredToId;
+            size += numberOfPlaces - firstStoredToId;
+        }
+
+        this.timeDistanceInMinutes = new int[size];
+        for (int fromId = 0; fromId < numberOfPlaces; ++fromId)
+            for (int toId = isSymmetric ? fromId : 0; toId < numberOfPlaces; ++toId)
+                this.timeDistanceInMinutes[rowOffset[fromId] + toId] = timeDistanceInMinutes.get(fromId).get(toId);
+    }
+
+    private static void validateShape(List<List<Integer>> timeDistanceInMinutes) {
+        if (timeDistanceInMinutes == null)
+            throw new InvalidDataProvidedException("Commute matrix is missing");
+
+        for (List<Integer> row : timeDistanceInMinutes) {
+            if (row == null || row.size() != timeDistanceInMinutes.size())
+                throw new InvalidDataProvidedException("Commute matrix has to be square");
+            if (row.contains(null))
+                throw new InvalidDataProvidedException("Commute matrix can't contain empty values");
+        }
+    }
+
+    private static boolean checkIfSymmetric(List<List<Integer>> timeDistanceInMinutes) {
+        for (int fromId = 0; fromId < timeDistanceInMinutes.size(); ++fromId)
+            for (int toId = fromId + 1; toId < timeDistanceInMinutes.size(); ++toId)
+                if (timeDistanceInMinutes.get(fromId).get(toId).equals(timeDistanceInMinutes.get(toId).get(fromId)) == false)
+                    return false;
+
+        return true;
+    }
+
+    /**
+     * Checks if the commute matrix contains travel times for place with provided id. Lookups don't check ids, so every
+     * id should be checked with this method before it's used.
+     *
+     * @param id id of the place (lesson or optimized activity)
+     * @return true if the id is a valid row and column of the matrix, false else
+     */
+    public boolean containsPlace(int id) {
+        return id >= 0 && id < numberOfPlaces;
+    }
+
+    public int getNumberOfPlaces() {
+        return numberOfPlaces;
+    }
+
+    public boolean isSymmetric() {
+        return isSymmetric;
+    }
+
+    /**
+     * Returns time needed to travel between places with provided ids
+     *
+     * @param fromId id of the place (lesson or optimized activity) for which you want to get information about travel time
+     *               (traveling time from the place)
+     * @param toId id of the place for which you want to get information about travel time (traveling time to the place)
+     * @return amount of time that is needed to travel from place with fromId to place with toId
+     */
+    public int getTimeDistanceInMinutes(int fromId, int toId) {
+        if (isSymmetric && fromId > toId)
+            return timeDistanceInMinutes[rowOffset[toId] + fromId];
+
+        return timeDistanceInMinutes[rowOffset[fromId] + toId];
     }
 
     /**
@@ -33,7 +112,7 @@ public class TimeDistanceManager {
      * @return amount of time that is needed to travel from lesson "from" to lesson "to"
      */
     public int getTimeDistanceInMinutes(Lesson from, Lesson to) {
-        return timeDistanceInMinutes.get(from.getId()).get(to.getId());
+        return getTimeDistanceInMinutes(from.getId(), to.getId());
     }
 
     /**
@@ -44,7 +123,7 @@ public class TimeDistanceManager {
      * @return amount of time that is needed to travel from optimized activity "from" to lesson "to"
      */
     public int getTimeDistanceInMinutes(OptimizedActivity from, Lesson to) {
-        return timeDistanceInMinutes.get(from.getId()).get(to.getId());
+        return getTimeDistanceInMinutes(from.getId(), to.getId());
     }
 
     /**
@@ -55,6 +134,6 @@ public class TimeDistanceManager {
      * @return amount of time that is needed to travel from lesson "from" to optimized activity "to"
      */
     public int getTimeDistanceInMinutes(Lesson from, OptimizedActivity to) {
-        return timeDistanceInMinutes.get(from.getId()).get(to.getId());
+        return getTimeDistanceInMinutes(from.getId(), to.getId());
     }
 }
@@ -11,6 +11,8 @@ import java.util.Comparator;
  */
 public class TimetableValidator {
     TimeDistanceManager distanceManager;
+    private CompiledPlan compiledPlan;
+    private EntriesByDay entriesByDay;
 
     /**
      * Creates validator for timetables
@@ -21,6 +23,18 @@ public class TimetableValidator {
         this.distanceManager = distanceManager;
     }
 
+    /**
+     * Creates validator that can also check picked terms of the compiled plan. It keeps a buffer for isValid(int[]),
+     * so it shouldn't be shared between threads.
+     *
+     * @param compiledPlan plan compiled to primitive arrays
+     */
+    public TimetableValidator(CompiledPlan compiledPlan) {
+        this(compiledPlan.getTimeDistanceManager());
+        this.compiledPlan = compiledPlan;
+        this.entriesByDay = new EntriesByDay(compiledPlan);
+    }
+
     /**
      * Checks if the timetable provided as an argument is valid (i.e. none of entries overlaps each other)
      *
@@ -48,6 +62,106 @@ public class TimetableValidator {
         return noneOfActivitesOverlaps(timetable) && allActivitiesAreTransportationReachable(timetableSorted);
     }
 
+    /**
+     * Checks if picked terms of the compiled plan make a valid timetable. Gives the same result as isValid() called with
+     * entities of the same terms. Conflicts are looked up in TermConflictIndex of the plan, entries are only sorted and
+     * checked one by one if the index isn't exact.
+     *
+     * @param pickedTerms term index for each lesson
+     * @return true if timetable is valid, false else
+     */
+    public boolean isValid(int[] pickedTerms) {
+        TermConflictIndex conflictIndex = compiledPlan.getTermConflictIndex();
+        if (conflictIndex.hasConflicts(compiledPlan, pickedTerms))
+            return false;
+
+        return conflictIndex.isExact() || areEntriesValidChronologically(pickedTerms);
+    }
+
+    private boolean areEntriesValidChronologically(int[] pickedTerms) {
+        entriesByDay.fill(pickedTerms);
+        int[] entries = entriesByDay.getEntries();
+
+        for (int cycleDayNumber = 0; cycleDayNumber < compiledPlan.getDaysInCycle(); ++cycleDayNumber) {
+            int from = entriesByDay.getFirstEntryOfDay(cycleDayNumber);
+            int to = entriesByDay.getFirstEntryOfDay(cycleDayNumber + 1);
+            int latestEndMinute = Integer.MIN_VALUE;
+
+            for (int i = from; i < to; ++i) {
+                int entry = entries[i];
+                int startMinute = compiledPlan.getEntryStartMinute(entry);
+
+                // entries are sorted by start time, so an entry can only overlap with the ones that started before it
+                // or at the same time (which are right before it)
+                if (latestEndMinute > startMinute)
+                    return false;
+                if (i > from && compiledPlan.getEntryStartMinute(entries[i - 1]) == startMinute
+                        && compiledPlan.getEntryEndMinute(entry) > startMinute)
+                    return false;
+                if (i > from && isTransportationReachable(entries[i - 1], entry) == false)
+                    return false;
+
+                latestEndMinute = Math.max(latestEndMinute, compiledPlan.getEntryEndMinute(entry));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if entries of two terms of the compiled plan overlap, regardless of travel time between them
+     *
+     * @param term global number of the first term
+     * @param otherTerm global number of the second term
+     * @return true if some entries of the terms take place at the same time, false else
+     */
+    public boolean areOverlapping(int term, int otherTerm) {
+        for (int entry = compiledPlan.getFirstEntryOfTerm(term); entry < compiledPlan.getFirstEntryOfTerm(term + 1); ++entry)
+            for (int otherEntry = compiledPlan.getFirstEntryOfTerm(otherTerm);
+                 otherEntry < compiledPlan.getFirstEntryOfTerm(otherTerm + 1); ++otherEntry)
+                if (compiledPlan.getEntryCycleDay(entry) == compiledPlan.getEntryCycleDay(otherEntry)
+                        && doesOverlap(entry, otherEntry))
+                    return true;
+
+        return false;
+    }
+
+    /**
+     * Counts consecutive entries of a day of the compiled plan that can't be reached in time from the entry before them.
+     * Together with overlapping terms (see areOverlapping()) they are everything that makes picked terms invalid.
+     *
+     * @param sortedEntries entry numbers, entries between from and to have to take place in the same day and be sorted
+     *                      by start time
+     * @param from index of the first entry of the day
+     * @param to index after the last entry of the day
+     * @return amount of entries that can't be reached from the previous entry
+     */
+    public int countUnreachableEntries(int[] sortedEntries, int from, int to) {
+        int numberOfUnreachableEntries = 0;
+        for (int i = from + 1; i < to; ++i)
+            if (isTransportationReachable(sortedEntries[i - 1], sortedEntries[i]) == false)
+                ++numberOfUnreachableEntries;
+
+        return numberOfUnreachableEntries;
+    }
+
+    private boolean isTransportationReachable(int earlierEntry, int laterEntry) {
+        int possibleArrivalToLaterEntryMinute = compiledPlan.getEntryEndMinute(earlierEntry) + distanceManager
+                .getTimeDistanceInMinutes(compiledPlan.getEntryLocation(earlierEntry), compiledPlan.getEntryLocation(laterEntry));
+
+        return possibleArrivalToLaterEntryMinute <= compiledPlan.getEntryStartMinute(laterEntry);
+    }
+
+    private boolean doesOverlap(int entry, int otherEntry) {
+        int startMinute = compiledPlan.getEntryStartMinute(entry);
+        int otherStartMinute = compiledPlan.getEntryStartMinute(otherEntry);
+
+        if (startMinute < otherStartMinute)
+            return compiledPlan.getEntryEndMinute(entry) > otherStartMinute;
+        if (otherStartMinute < startMinute)
+            return compiledPlan.getEntryEndMinute(otherEntry) > startMinute;
+        return compiledPlan.getEntryEndMinute(entry) > startMinute || compiledPlan.getEntryEndMinute(otherEntry) > startMinute;
+    }
+
     private boolean allActivitiesAreTransportationReachable(ArrayList<TimetableEntry> sortedTimetable) {
         for (int i = 0; i + 1 < sortedTimetable.size(); ++i)
             if (isTransportationReachable(sortedTimetable.get(i), sortedTimetable.get(i + 1)) == false)
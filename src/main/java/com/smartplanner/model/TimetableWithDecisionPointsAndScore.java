@@ -4,17 +4,56 @@ import java.util.ArrayList;
 
 /**
  * Holder of information about timetable. It stores decision points and amount of minutes spent on optimized activity.
+ * If the search was stopped before it finished (see SolveBudget), the timetable is the best one found so far and
+ * upperBoundOfMinutes tells how good the optimal timetable can be.
  */
 public class TimetableWithDecisionPointsAndScore {
     private int minutesSpentAtOptimizedActivity;
     private ArrayList<TimetableEntry> optimalTimetable;
     private ArrayList<ArrayList<Boolean>> optimalDecisionPoints;
+    private boolean isProvenOptimal;
+    private int upperBoundOfMinutes;
+    private int[] pickedTerms;
 
     public TimetableWithDecisionPointsAndScore(int minutesSpentAtOptimizedActivity, ArrayList<TimetableEntry> optimalTimetable,
                                                ArrayList<ArrayList<Boolean>> optimalDecisionPoints) {
+        this(minutesSpentAtOptimizedActivity, optimalTimetable, optimalDecisionPoints, true, minutesSpentAtOptimizedActivity);
+    }
+
+    public TimetableWithDecisionPointsAndScore(int minutesSpentAtOptimizedActivity, ArrayList<TimetableEntry> optimalTimetable,
+                                               ArrayList<ArrayList<Boolean>> optimalDecisionPoints,
+                                               boolean isProvenOptimal, int upperBoundOfMinutes) {
         this.minutesSpentAtOptimizedActivity = minutesSpentAtOptimizedActivity;
         this.optimalTimetable = optimalTimetable;
         this.optimalDecisionPoints = optimalDecisionPoints;
+        this.isProvenOptimal = isProvenOptimal;
+        this.upperBoundOfMinutes = upperBoundOfMinutes;
+    }
+
+    /**
+     * Creates copy of the timetable with provided outcome of the search
+     *
+     * @param isProvenOptimal true if the search has finished, so no timetable is better than this one
+     * @param upperBoundOfMinutes the highest score that any timetable can have
+     * @return copy of the timetable
+     */
+    public TimetableWithDecisionPointsAndScore withSearchOutcome(boolean isProvenOptimal, int upperBoundOfMinutes) {
+        TimetableWithDecisionPointsAndScore timetable = new TimetableWithDecisionPointsAndScore(
+                minutesSpentAtOptimizedActivity, optimalTimetable, optimalDecisionPoints, isProvenOptimal, upperBoundOfMinutes);
+        timetable.pickedTerms = pickedTerms;
+        return timetable;
+    }
+
+    /**
+     * Creates copy of the timetable that remembers picks it was built from
+     *
+     * @param pickedTerms term index for each lesson of the compiled plan
+     * @return copy of the timetable
+     */
+    public TimetableWithDecisionPointsAndScore withPickedTerms(int[] pickedTerms) {
+        TimetableWithDecisionPointsAndScore timetable = withSearchOutcome(isProvenOptimal, upperBoundOfMinutes);
+        timetable.pickedTerms = pickedTerms;
+        return timetable;
     }
 
     public int getMinutesSpentAtOptimizedActivity() {
@@ -25,6 +64,24 @@ public class TimetableWithDecisionPointsAndScore {
         return optimalTimetable;
     }
 
+    public boolean isProvenOptimal() {
+        return isProvenOptimal;
+    }
+
+    public int getUpperBoundOfMinutes() {
+        return upperBoundOfMinutes;
+    }
+
+    /**
+     * Returns picks the timetable was built from
+     *
+     * @return term index for each lesson of the compiled plan, null if there is no timetable or it wasn't built from
+     * picks of a compiled plan
+     */
+    public int[] getPickedTerms() {
+        return pickedTerms;
+    }
+
     /**
      * Calculates optimal timetable that will maximize amount of time spent on optimized activity.
      *
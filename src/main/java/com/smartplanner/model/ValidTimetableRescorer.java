@@ -0,0 +1,197 @@
+package com.smartplanner.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finder of the best timetables of a plan among timetables of ValidTimetableStore filled for a plan with the same
+ * lessons, terms and travel times between lessons (e.g. before optimized activity was changed). Nothing is searched or
+ * validated. Each day of the store is scored once with OptimalityCalculator of the plan and a timetable is scored by
+ * adding scores of its days.
+ *
+ * Timetables with equal score are resolved by the smallest picks in search order of the store, the same way as
+ * BranchAndBoundSolver does, so the result is the same as the one of a full search.
+ *
+ * ValidTimetableRescorer can't be reused, what means that you have to create new object for each search.
+ */
+public class ValidTimetableRescorer {
+    private CompiledPlan compiledPlan;
+    private ValidTimetableStore validTimetableStore;
+
+    /**
+     * Creates rescorer of the plan
+     *
+     * @param compiledPlan plan with lessons, possible terms, commute matrix and optimized activity
+     * @param validTimetableStore completed store of a plan with the same fingerprint of validity
+     */
+    public ValidTimetableRescorer(CompiledPlan compiledPlan, ValidTimetableStore validTimetableStore) {
+        this.compiledPlan = compiledPlan;
+        this.validTimetableStore = validTimetableStore;
+    }
+
+    /**
+     * Scores every stored timetable and keeps the best ones
+     *
+     * @param numberOfTimetables amount of timetables to find
+     * @param budget limits of the search, every scored timetable counts as a candidate
+     * @param progress counters updated while timetables are scored, the search space is the number of stored timetables
+     * @return the same as BranchAndBoundSolver.solveForBestTimetables() or null if the store has been closed before it
+     * could be read
+     */
+    public List<TimetableWithDecisionPointsAndScore> solveForBestTimetables(int numberOfTimetables, SolveBudget budget,
+                                                                           SolverProgress progress) {
+        int[] searchOrder = validTimetableStore.getSearchOrder();
+        if (searchOrder == null || validTimetableStore.getNumberOfLessons() != compiledPlan.getNumberOfLessons()
+                || validTimetableStore.getDaysInCycle() != compiledPlan.getDaysInCycle())
+            return null;
+
+        int[] scoreOfDay = scoreDays();
+        SolverIncumbent incumbent = new SolverIncumbent(numberOfTimetables);
+        int[] picksInSearchOrder = new int[searchOrder.length];
+        int[] scoredSinceBudgetCheck = new int[1];
+        progress.start(validTimetableStore.size());
+
+        boolean isRead = validTimetableStore.forEach((pickedTerms, daysOfTimetable) -> {
+            if (budget.isExhausted())
+                return;
+
+            if (++scoredSinceBudgetCheck[0] == SolveBudget.CANDIDATES_BETWEEN_CHECKS) {
+                progress.report(scoredSinceBudgetCheck[0], 0, scoredSinceBudgetCheck[0], scoredSinceBudgetCheck[0]);
+                scoredSinceBudgetCheck[0] = 0;
+                budget.examineCandidates(SolveBudget.CANDIDATES_BETWEEN_CHECKS);
+            }
+
+            int score = 0;
+            for (int numberOfDay : daysOfTimetable)
+                score += scoreOfDay[numberOfDay];
+            if (!incumbent.canBeBeatenBy(score, null, 0))
+                return;
+
+            for (int depth = 0; depth < searchOrder.length; ++depth)
+                picksInSearchOrder[depth] = pickedTerms[searchOrder[depth]];
+
+            if (incumbent.canBeBeatenBy(score, picksInSearchOrder, picksInSearchOrder.length)
+                    && incumbent.offer(score, pickedTerms.clone(), picksInSearchOrder.clone()))
+                progress.offerBestScore(score);
+        });
+        if (!isRead)
+            return null;
+
+        boolean isProvenOptimal = !budget.isExhausted();
+        if (isProvenOptimal)
+            progress.report(scoredSinceBudgetCheck[0], 0, scoredSinceBudgetCheck[0], scoredSinceBudgetCheck[0]);
+        int upperBound = isProvenOptimal ? incumbent.getBestScore() : ScoredTimetables.getMaxScore(compiledPlan);
+
+        return ScoredTimetables.toScoredTimetables(compiledPlan, incumbent, isProvenOptimal, upperBound);
+    }
+
+    /**
+     * Scores every stored timetable for each commute limit from 1 to the limit of the plan at once. Each day of the store
+     * is scored once for all limits (see OptimalityCalculator.calculateForDayByCommutes()) and each limit keeps its own
+     * best timetable.
+     *
+     * @param budget limits of the search, every scored timetable counts as a candidate
+     * @param progress counters updated while timetables are scored, the best score is the one of the highest limit
+     * @return the best timetable for each commute limit (the one for limit c at index c - 1), the same as
+     * solveForBestTimetables(1, ...) for the plan with that limit, or null if the store has been closed before it could
+     * be read
+     */
+    public List<TimetableWithDecisionPointsAndScore> solveForEveryCommuteLimit(SolveBudget budget,
+                                                                                     SolverProgress progress) {
+        int[] searchOrder = validTimetableStore.getSearchOrder();
+        if (searchOrder == null || validTimetableStore.getNumberOfLessons() != compiledPlan.getNumberOfLessons()
+                || validTimetableStore.getDaysInCycle() != compiledPlan.getDaysInCycle())
+            return null;
+
+        int maxCommutesPerDay = compiledPlan.getMaxCommutesPerDay();
+        int[][] scoreOfDayByCommutes = scoreDaysByCommutes(maxCommutesPerDay);
+        SolverIncumbent[] incumbents = new SolverIncumbent[maxCommutesPerDay + 1];
+        for (int commutes = 1; commutes <= maxCommutesPerDay; ++commutes)
+            incumbents[commutes] = new SolverIncumbent();
+        int[] scoreByCommutes = new int[maxCommutesPerDay + 1];
+        int[] picksInSearchOrder = new int[searchOrder.length];
+        int[] scoredSinceBudgetCheck = new int[1];
+        progress.start(validTimetableStore.size());
+
+        boolean isRead = validTimetableStore.forEach((pickedTerms, daysOfTimetable) -> {
+            if (budget.isExhausted())
+                return;
+
+            if (++scoredSinceBudgetCheck[0] == SolveBudget.CANDIDATES_BETWEEN_CHECKS) {
+                progress.report(scoredSinceBudgetCheck[0], 0, scoredSinceBudgetCheck[0], scoredSinceBudgetCheck[0]);
+                scoredSinceBudgetCheck[0] = 0;
+                budget.examineCandidates(SolveBudget.CANDIDATES_BETWEEN_CHECKS);
+            }
+
+            Arrays.fill(scoreByCommutes, 0);
+            for (int numberOfDay : daysOfTimetable)
+                for (int commutes = 1; commutes <= maxCommutesPerDay; ++commutes)
+                    scoreByCommutes[commutes] += scoreOfDayByCommutes[numberOfDay][commutes];
+
+            // picks are copied at most once, incumbents of all limits can share them
+            int[] keptPickedTerms = null;
+            int[] keptPicksInSearchOrder = null;
+            for (int commutes = 1; commutes <= maxCommutesPerDay; ++commutes) {
+                int score = scoreByCommutes[commutes];
+                if (!incumbents[commutes].canBeBeatenBy(score, null, 0))
+                    continue;
+
+                if (keptPickedTerms == null) {
+                    for (int depth = 0; depth < searchOrder.length; ++depth)
+                        picksInSearchOrder[depth] = pickedTerms[searchOrder[depth]];
+                }
+                if (!incumbents[commutes].canBeBeatenBy(score, picksInSearchOrder, picksInSearchOrder.length))
+                    continue;
+
+                if (keptPickedTerms == null) {
+                    keptPickedTerms = pickedTerms.clone();
+                    keptPicksInSearchOrder = picksInSearchOrder.clone();
+                }
+                if (incumbents[commutes].offer(score, keptPickedTerms, keptPicksInSearchOrder)
+                        && commutes == maxCommutesPerDay)
+                    progress.offerBestScore(score);
+            }
+        });
+        if (!isRead)
+            return null;
+
+        boolean isProvenOptimal = !budget.isExhausted();
+        if (isProvenOptimal)
+            progress.report(scoredSinceBudgetCheck[0], 0, scoredSinceBudgetCheck[0], scoredSinceBudgetCheck[0]);
+
+        int maxScore = ScoredTimetables.getMaxScore(compiledPlan);
+        List<TimetableWithDecisionPointsAndScore> timetables = new ArrayList<TimetableWithDecisionPointsAndScore>();
+        for (int commutes = 1; commutes <= maxCommutesPerDay; ++commutes) {
+            CompiledPlan compiledPlanWithLimit = commutes == maxCommutesPerDay ? compiledPlan
+                    : compiledPlan.withOptimizedActivity(commutes, compiledPlan.getOptimizedActivity());
+            int upperBound = isProvenOptimal ? incumbents[commutes].getBestScore() : maxScore;
+            timetables.add(ScoredTimetables.toScoredTimetable(compiledPlanWithLimit,
+                    incumbents[commutes].getBestPickedTerms(), isProvenOptimal, upperBound));
+        }
+        return timetables;
+    }
+
+    private int[] scoreDays() {
+        OptimalityCalculator optimalityCalculator = new OptimalityCalculator(compiledPlan);
+        int[] scoreOfDay = new int[validTimetableStore.getNumberOfDays()];
+        for (int numberOfDay = 0; numberOfDay < scoreOfDay.length; ++numberOfDay) {
+            int[] entries = validTimetableStore.getEntriesOfDay(numberOfDay);
+            scoreOfDay[numberOfDay] = optimalityCalculator.calculateForDay(
+                    validTimetableStore.getCycleDayNumber(numberOfDay), entries, 0, entries.length);
+        }
+        return scoreOfDay;
+    }
+
+    private int[][] scoreDaysByCommutes(int maxCommutesPerDay) {
+        OptimalityCalculator optimalityCalculator = new OptimalityCalculator(compiledPlan);
+        int[][] scoreOfDayByCommutes = new int[validTimetableStore.getNumberOfDays()][];
+        for (int numberOfDay = 0; numberOfDay < scoreOfDayByCommutes.length; ++numberOfDay) {
+            int[] entries = validTimetableStore.getEntriesOfDay(numberOfDay);
+            scoreOfDayByCommutes[numberOfDay] = new int[maxCommutesPerDay + 1];
+            optimalityCalculator.calculateForDayByCommutes(validTimetableStore.getCycleDayNumber(numberOfDay), entries,
+                    0, entries.length, scoreOfDayByCommutes[numberOfDay]);
+        }
+        return scoreOfDayByCommutes;
+    }
+}
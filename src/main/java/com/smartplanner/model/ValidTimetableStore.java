@@ -0,0 +1,382 @@
+package com.smartplanner.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every valid timetable of a plan, stored as term indexes of its lessons. Validity of a timetable doesn't depend on
+ * optimized activity (see PlanFingerprint.ofValidity()), so a plan that differs only in it can be re-scored from the
+ * store without searching and validating again.
+ *
+ * Score of a timetable is the sum of scores of its days and most timetables share their days with many others, so
+ * entries of each day are stored only once, as a day of the store. Every timetable is kept as its term indexes followed
+ * by numbers of its days (one for each day of the cycle), which lets it be re-scored by adding a few numbers once each
+ * day of the store has been scored.
+ *
+ * Timetables are packed one after another into an int array that grows up to a few megabytes. When it's full, it's
+ * appended to a temporary file, so larger stores are kept mostly on disk. When there are more than maxTimetables of
+ * them, the store gives up: it drops what it has stored and stops accepting new timetables.
+ *
+ * Timetables are added by workers of a single search and read after the store has been completed. The store keeps
+ * the search order of lessons of that search, so timetables with equal score can be resolved the same way as in the
+ * search.
+ */
+public class ValidTimetableStore implements AutoCloseable {
+    private static final int MAX_INTS_IN_MEMORY = 1 << 20;
+    private static final int INITIAL_TIMETABLES_IN_MEMORY = 1 << 10;
+
+    private final int numberOfLessons;
+    private final int daysInCycle;
+    private final int intsPerTimetable;
+    private final long maxTimetables;
+    private final EntriesByDay entriesByDay;
+    private final int maxTimetablesInMemory;
+    private int[] buffer;
+    private int bufferedTimetables;
+    private long spilledTimetables;
+    private Path spillFile;
+    private FileChannel spillOutput;
+
+    private final Map<Day, Integer> numbersOfDays;
+    private final List<Day> days;
+
+    private int[] searchOrder;
+    private volatile boolean isAccepting;
+    private boolean isComplete;
+    private boolean isClosed;
+    private int numberOfReaders;
+
+    /**
+     * Visitor of stored timetables
+     */
+    public interface TimetableVisitor {
+        /**
+         * @param pickedTerms term index for each lesson
+         * @param daysOfTimetable number of the day of the store for each day of the cycle
+         */
+        void visit(int[] pickedTerms, int[] daysOfTimetable);
+    }
+
+    /**
+     * Creates empty store
+     *
+     * @param compiledPlan plan whose timetables will be stored
+     * @param maxTimetables amount of timetables after which the store stops accepting them
+     */
+    public ValidTimetableStore(CompiledPlan compiledPlan, long maxTimetables) {
+        this.numberOfLessons = compiledPlan.getNumberOfLessons();
+        this.daysInCycle = compiledPlan.getDaysInCycle();
+        this.intsPerTimetable = numberOfLessons + daysInCycle;
+        this.maxTimetables = maxTimetables;
+        this.entriesByDay = new EntriesByDay(compiledPlan);
+        this.maxTimetablesInMemory = (int) Math.min(Math.max(1, maxTimetables),
+                intsPerTimetable == 0 ? 1 : Math.max(1, MAX_INTS_IN_MEMORY / intsPerTimetable));
+        this.buffer = new int[Math.min(INITIAL_TIMETABLES_IN_MEMORY, maxTimetablesInMemory) * intsPerTimetable];
+        this.numbersOfDays = new HashMap<Day, Integer>();
+        this.days = new ArrayList<Day>();
+        this.isAccepting = maxTimetables > 0;
+    }
+
+    /**
+     * Checks if timetables are still accepted, i.e. the store hasn't been completed and hasn't given up
+     *
+     * @return true if timetables can be added, false else
+     */
+    public boolean isAccepting() {
+        return isAccepting;
+    }
+
+    /**
+     * Adds timetables packed one after another
+     *
+     * @param timetables term indexes of lessons of each timetable
+     * @param numberOfTimetables amount of timetables at the beginning of the array
+     */
+    public synchronized void addAll(int[] timetables, int numberOfTimetables) {
+        if (!isAccepting)
+            return;
+        if (bufferedTimetables + spilledTimetables + numberOfTimetables > maxTimetables) {
+            giveUp();
+            return;
+        }
+
+        int[] pickedTerms = new int[numberOfLessons];
+        for (int timetable = 0; timetable < numberOfTimetables; ++timetable) {
+            if ((bufferedTimetables + 1) * intsPerTimetable > buffer.length) {
+                if (bufferedTimetables < maxTimetablesInMemory)
+                    buffer = Arrays.copyOf(buffer, Math.min(2 * bufferedTimetables, maxTimetablesInMemory) * intsPerTimetable);
+                else if (!spillBuffer())
+                    return;
+            }
+
+            System.arraycopy(timetables, timetable * numberOfLessons, pickedTerms, 0, numberOfLessons);
+            int position = bufferedTimetables * intsPerTimetable;
+            System.arraycopy(pickedTerms, 0, buffer, position, numberOfLessons);
+
+            entriesByDay.fill(pickedTerms);
+            for (int cycleDayNumber = 0; cycleDayNumber < daysInCycle; ++cycleDayNumber)
+                buffer[position + numberOfLessons + cycleDayNumber] = getNumberOfDay(cycleDayNumber);
+            ++bufferedTimetables;
+        }
+    }
+
+    private int getNumberOfDay(int cycleDayNumber) {
+        Day day = new Day(cycleDayNumber, Arrays.copyOfRange(entriesByDay.getEntries(),
+                entriesByDay.getFirstEntryOfDay(cycleDayNumber), entriesByDay.getFirstEntryOfDay(cycleDayNumber + 1)));
+
+        Integer numberOfDay = numbersOfDays.get(day);
+        if (numberOfDay == null) {
+            numberOfDay = days.size();
+            numbersOfDays.put(day, numberOfDay);
+            days.add(day);
+        }
+        return numberOfDay;
+    }
+
+    /**
+     * Marks the store as containing every valid timetable of the plan. No more timetables are accepted.
+     *
+     * @param searchOrder lessons in order in which they were picked by the search
+     * @return false if the store has given up before, true else
+     */
+    public synchronized boolean complete(int[] searchOrder) {
+        if (!isAccepting)
+            return false;
+
+        try {
+            if (spillOutput != null)
+                spillOutput.close();
+        } catch (IOException e) {
+            giveUp();
+            return false;
+        }
+
+        this.searchOrder = searchOrder.clone();
+        numbersOfDays.clear();
+        isAccepting = false;
+        isComplete = true;
+        return true;
+    }
+
+    public synchronized boolean isComplete() {
+        return isComplete && !isClosed;
+    }
+
+    public synchronized long size() {
+        return bufferedTimetables + spilledTimetables;
+    }
+
+    public int getNumberOfLessons() {
+        return numberOfLessons;
+    }
+
+    public int getDaysInCycle() {
+        return daysInCycle;
+    }
+
+    /**
+     * Returns lessons in order in which they were picked by the search that filled the store
+     *
+     * @return lesson indexes, the first picked first. Null if the store hasn't been completed
+     */
+    public synchronized int[] getSearchOrder() {
+        return searchOrder;
+    }
+
+    /**
+     * Returns amount of distinct days of stored timetables
+     *
+     * @return amount of days of the store, they are numbered from 0
+     */
+    public synchronized int getNumberOfDays() {
+        return days.size();
+    }
+
+    /**
+     * Returns day of the cycle of a day of the store
+     *
+     * @param numberOfDay number of the day of the store
+     * @return number of the day in cycle
+     */
+    public synchronized int getCycleDayNumber(int numberOfDay) {
+        return days.get(numberOfDay).cycleDayNumber;
+    }
+
+    /**
+     * Returns entries of a day of the store
+     *
+     * @param numberOfDay number of the day of the store
+     * @return entry numbers sorted by start time, the same way as by EntriesByDay. The array can't be modified
+     */
+    public synchronized int[] getEntriesOfDay(int numberOfDay) {
+        return days.get(numberOfDay).entries;
+    }
+
+    /**
+     * Visits every stored timetable. The store can be read by many threads at once.
+     *
+     * @param visitor called for each timetable. Arrays passed to it are reused, so they have to be copied if they're kept
+     * @return false if the store hasn't been completed or has been closed, true if every timetable has been visited
+     */
+    public boolean forEach(TimetableVisitor visitor) {
+        long timetablesInFile;
+        int timetablesInMemory;
+        int[] timetablesInBuffer;
+        synchronized (this) {
+            if (!isComplete || isClosed)
+                return false;
+            ++numberOfReaders;
+            timetablesInFile = spilledTimetables;
+            timetablesInMemory = bufferedTimetables;
+            timetablesInBuffer = buffer;
+        }
+
+        try {
+            int[] pickedTerms = new int[numberOfLessons];
+            int[] daysOfTimetable = new int[daysInCycle];
+            if (timetablesInFile > 0)
+                visitSpilledTimetables(visitor, timetablesInFile, pickedTerms, daysOfTimetable);
+
+            visitTimetables(visitor, timetablesInBuffer, timetablesInMemory, pickedTerms, daysOfTimetable);
+            return true;
+        } finally {
+            synchronized (this) {
+                --numberOfReaders;
+                if (isClosed && numberOfReaders == 0)
+                    deleteSpillFile();
+            }
+        }
+    }
+
+    // the file is read in chunks of the size of the buffer, each of them is decoded at once
+    private void visitSpilledTimetables(TimetableVisitor visitor, long timetablesInFile, int[] pickedTerms,
+                                        int[] daysOfTimetable) {
+        int timetablesInChunk = maxTimetablesInMemory;
+        ByteBuffer bytes = ByteBuffer.allocate(timetablesInChunk * intsPerTimetable * Integer.BYTES);
+        int[] chunk = new int[timetablesInChunk * intsPerTimetable];
+
+        try (FileChannel input = FileChannel.open(spillFile, StandardOpenOption.READ)) {
+            for (long timetable = 0; timetable < timetablesInFile; timetable += timetablesInChunk) {
+                int timetablesToRead = (int) Math.min(timetablesInChunk, timetablesInFile - timetable);
+                bytes.clear().limit(timetablesToRead * intsPerTimetable * Integer.BYTES);
+                while (bytes.hasRemaining())
+                    if (input.read(bytes) < 0)
+                        throw new IOException("File of valid timetables ended too early");
+
+                bytes.flip();
+                bytes.asIntBuffer().get(chunk, 0, timetablesToRead * intsPerTimetable);
+                visitTimetables(visitor, chunk, timetablesToRead, pickedTerms, daysOfTimetable);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void visitTimetables(TimetableVisitor visitor, int[] timetables, int numberOfTimetables, int[] pickedTerms,
+                                 int[] daysOfTimetable) {
+        for (int timetable = 0; timetable < numberOfTimetables; ++timetable) {
+            System.arraycopy(timetables, timetable * intsPerTimetable, pickedTerms, 0, numberOfLessons);
+            System.arraycopy(timetables, timetable * intsPerTimetable + numberOfLessons, daysOfTimetable, 0, daysInCycle);
+            visitor.visit(pickedTerms, daysOfTimetable);
+        }
+    }
+
+    /**
+     * Drops stored timetables. The temporary file is deleted once nobody reads it.
+     */
+    @Override
+    public synchronized void close() {
+        isAccepting = false;
+        isClosed = true;
+        if (numberOfReaders == 0)
+            deleteSpillFile();
+    }
+
+    private boolean spillBuffer() {
+        try {
+            if (spillOutput == null) {
+                spillFile = Files.createTempFile("smartplanner-valid-timetables-", ".bin");
+                spillFile.toFile().deleteOnExit();
+                spillOutput = FileChannel.open(spillFile, StandardOpenOption.WRITE);
+            }
+
+            ByteBuffer bytes = ByteBuffer.allocate(bufferedTimetables * intsPerTimetable * Integer.BYTES);
+            bytes.asIntBuffer().put(buffer, 0, bufferedTimetables * intsPerTimetable);
+            while (bytes.hasRemaining())
+                spillOutput.write(bytes);
+        } catch (IOException e) {
+            giveUp();
+            return false;
+        }
+
+        spilledTimetables += bufferedTimetables;
+        bufferedTimetables = 0;
+        return true;
+    }
+
+    private void giveUp() {
+        isAccepting = false;
+        bufferedTimetables = 0;
+        spilledTimetables = 0;
+        numbersOfDays.clear();
+        days.clear();
+        deleteSpillFile();
+    }
+
+    private void deleteSpillFile() {
+        try {
+            if (spillOutput != null)
+                spillOutput.close();
+        } catch (IOException e) {
+            // the file is deleted anyway
+        }
+        spillOutput = null;
+
+        try {
+            if (spillFile != null)
+                Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            spillFile.toFile().deleteOnExit();
+        }
+        spillFile = null;
+    }
+
+    /**
+     * Entries of a single day of some timetables
+     */
+    private static class Day {
+        private final int cycleDayNumber;
+        private final int[] entries;
+        private final int hash;
+
+        private Day(int cycleDayNumber, int[] entries) {
+            this.cycleDayNumber = cycleDayNumber;
+            this.entries = entries;
+            this.hash = 31 * cycleDayNumber + Arrays.hashCode(entries);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Day))
+                return false;
+
+            Day otherDay = (Day) other;
+            return cycleDayNumber == otherDay.cycleDayNumber && Arrays.equals(entries, otherDay.entries);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.smartplanner.model.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CommuteLimitPlanDto extends PlanAlternativeDto {
+
+    private int maxCommutesPerDay;
+
+    private boolean provenOptimal;
+
+    private int minutesUpperBound;
+}
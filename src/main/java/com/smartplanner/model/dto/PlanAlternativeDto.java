@@ -0,0 +1,19 @@
+package com.smartplanner.model.dto;
+
+import com.smartplanner.model.entity.Lesson;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class PlanAlternativeDto {
+
+    private int minutesSpentAtOptimizedActivity;
+
+    private List<Lesson> lessons;
+
+    // decisionPoints.get(day).get(n) tells if optimized activity should be visited after n-th lesson of the day
+    private List<List<Boolean>> decisionPoints;
+}
@@ -0,0 +1,28 @@
+package com.smartplanner.model.dto;
+
+import com.smartplanner.model.LessonWithPossibleTerms;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class PlanBatchInputDto {
+
+    // lesson catalogue and commute matrix shared by all plans of the batch
+    private int daysInCycle;
+
+    private List<LessonWithPossibleTerms> lessons;
+
+    private List<List<Integer>> timeDistanceInMinutes;
+
+    // optional limits of the whole batch, if any of them is reached every plan gets the best timetable found so far
+    private Long timeLimitInMillis;
+
+    private Long candidateLimit;
+
+    // plans that differ in optimized activity, commute limit or limits of the search, their own lessons, commute
+    // matrix and days in cycle are replaced with the shared ones
+    private List<PlanInputDto> plans;
+}
@@ -0,0 +1,14 @@
+package com.smartplanner.model.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class PlanBatchResultDto {
+
+    // saved plan, null if it couldn't be generated
+    private PlanOutputDto plan;
+
+    private String errorMessage;
+}
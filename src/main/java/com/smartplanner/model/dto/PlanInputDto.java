@@ -11,4 +11,12 @@ import java.util.List;
 public class PlanInputDto extends PlanDto {
 
     private List<LessonWithPossibleTerms> lessons;
+
+    // optional limits of the search, if any of them is reached the best plan found so far is returned
+    private Long timeLimitInMillis;
+
+    private Long candidateLimit;
+
+    // amount of the best plans (k) to return as alternatives, by default only the optimal one is found
+    private Integer numberOfBestPlans;
 }
@@ -0,0 +1,22 @@
+package com.smartplanner.model.dto;
+
+import com.smartplanner.model.PlanJobStatus;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+public class PlanJobDto {
+
+    private String id;
+
+    private PlanJobStatus status;
+
+    private Instant createdAt;
+
+    private Instant finishedAt;
+
+    private String errorMessage;
+}
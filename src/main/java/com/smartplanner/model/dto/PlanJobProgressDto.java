@@ -0,0 +1,30 @@
+package com.smartplanner.model.dto;
+
+import com.smartplanner.model.PlanJobStatus;
+import com.smartplanner.model.ScoreImprovement;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class PlanJobProgressDto {
+
+    private PlanJobStatus status;
+
+    private long exploredCandidates;
+
+    private long prunedCandidates;
+
+    private long validTimetables;
+
+    // score of the best plan found so far
+    private int minutesSpentAtOptimizedActivity;
+
+    // estimated part of all possible plans that has already been searched or ruled out, between 0 and 1
+    private double coveredFraction;
+
+    // every improvement of the best plan with the time it took to find it
+    private List<ScoreImprovement> bestScoreHistory;
+}
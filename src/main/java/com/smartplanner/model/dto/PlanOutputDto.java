@@ -11,4 +11,14 @@ import java.util.List;
 public class PlanOutputDto extends PlanDto {
 
     private List<Lesson> lessons;
+
+    // outcome of the search, it's only available right after the plan has been generated
+    private Integer minutesSpentAtOptimizedActivity;
+
+    private Boolean provenOptimal;
+
+    private Integer minutesUpperBound;
+
+    // the best plans found by the search, the first one is the saved plan
+    private List<PlanAlternativeDto> alternatives;
 }
@@ -0,0 +1,39 @@
+package com.smartplanner.service;
+
+import com.smartplanner.model.SolveBudget;
+import com.smartplanner.model.dto.CommuteLimitPlanDto;
+import com.smartplanner.model.dto.PlanBatchInputDto;
+import com.smartplanner.model.dto.PlanBatchResultDto;
+import com.smartplanner.model.dto.PlanInputDto;
+import com.smartplanner.model.dto.PlanJobDto;
+import com.smartplanner.model.dto.PlanJobProgressDto;
+import com.smartplanner.model.dto.PlanOutputDto;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+public interface PlanJobService {
+
+    CompletableFuture<PlanOutputDto> generateOptimalPlanAsync(PlanInputDto planInputDto, String username, SolveBudget budget);
+
+    CompletableFuture<PlanOutputDto> reoptimizePlanAsync(int id, PlanInputDto planInputDto, String username,
+                                                         SolveBudget budget);
+
+    CompletableFuture<List<PlanBatchResultDto>> generateOptimalPlansAsync(PlanBatchInputDto planBatchInputDto,
+                                                                          String username, SolveBudget budget);
+
+    CompletableFuture<List<CommuteLimitPlanDto>> generateOptimalPlansForEveryCommuteLimitAsync(
+            PlanInputDto planInputDto, SolveBudget budget);
+
+    PlanJobDto submitPlanJob(PlanInputDto planInputDto, String username);
+
+    PlanJobDto getPlanJob(String id, String username);
+
+    PlanOutputDto getPlanJobResult(String id, String username);
+
+    PlanJobDto cancelPlanJob(String id, String username);
+
+    PlanJobProgressDto getPlanJobProgress(String id, String username);
+}
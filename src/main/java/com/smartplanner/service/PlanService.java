@@ -1,5 +1,10 @@
 package com.smartplanner.service;
 
+import com.smartplanner.model.SolveBudget;
+import com.smartplanner.model.SolverProgress;
+import com.smartplanner.model.dto.CommuteLimitPlanDto;
+import com.smartplanner.model.dto.PlanBatchInputDto;
+import com.smartplanner.model.dto.PlanBatchResultDto;
 import com.smartplanner.model.dto.PlanInputDto;
 import com.smartplanner.model.dto.PlanOutputDto;
 import com.smartplanner.model.entity.Lesson;
@@ -20,4 +25,18 @@ public interface PlanService {
     List<Lesson> pickOptimalTerm(PlanInputDto planInputDto);
 
     PlanOutputDto generateOptimalPlan(PlanInputDto planInputDto, String username);
+
+    PlanOutputDto generateOptimalPlan(PlanInputDto planInputDto, String username, SolveBudget budget);
+
+    PlanOutputDto generateOptimalPlan(PlanInputDto planInputDto, String username, SolveBudget budget,
+                                      SolverProgress progress);
+
+    PlanOutputDto generateOptimalPlan(PlanInputDto planInputDto, String username, SolveBudget budget,
+                                      SolverProgress progress, int[] initialPickedTerms);
+
+    List<PlanBatchResultDto> generateOptimalPlans(PlanBatchInputDto planBatchInputDto, String username, SolveBudget budget);
+
+    List<CommuteLimitPlanDto> generateOptimalPlansForEveryCommuteLimit(PlanInputDto planInputDto, SolveBudget budget);
+
+    int[] getPickedTermsOfPlan(int id, PlanInputDto planInputDto, String username);
 }
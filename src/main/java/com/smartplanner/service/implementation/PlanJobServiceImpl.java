@@ -0,0 +1,199 @@
+package com.smartplanner.service.implementation;
+
+import com.smartplanner.config.SolverConfig;
+import com.smartplanner.exception.PlanJobNotFinishedException;
+import com.smartplanner.exception.ResourceNotFoundException;
+import com.smartplanner.exception.TooManyPlanJobsException;
+import com.smartplanner.model.PlanJob;
+import com.smartplanner.model.SolveBudget;
+import com.smartplanner.model.dto.CommuteLimitPlanDto;
+import com.smartplanner.model.dto.PlanBatchInputDto;
+import com.smartplanner.model.dto.PlanBatchResultDto;
+import com.smartplanner.model.dto.PlanInputDto;
+import com.smartplanner.model.SolverProgress;
+import com.smartplanner.model.dto.PlanJobDto;
+import com.smartplanner.model.dto.PlanJobProgressDto;
+import com.smartplanner.model.dto.PlanOutputDto;
+import com.smartplanner.service.PlanJobService;
+import com.smartplanner.service.PlanService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+@Service
+public class PlanJobServiceImpl implements PlanJobService {
+
+    // finished jobs are forgotten after that time, the plan itself stays saved
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+    private static final Duration EXPIRED_JOBS_REMOVAL_INTERVAL = Duration.ofMinutes(5);
+
+    private final PlanService planService;
+    private final AsyncTaskExecutor solverExecutor;
+    private final Map<String, PlanJob> jobs;
+
+    @Autowired
+    public PlanJobServiceImpl(PlanService planService,
+                              @Qualifier(SolverConfig.SOLVER_EXECUTOR) AsyncTaskExecutor solverExecutor,
+                              @Qualifier(SolverConfig.PROGRESS_SCHEDULER) TaskScheduler progressScheduler) {
+        this.planService = planService;
+        this.solverExecutor = solverExecutor;
+        this.jobs = new ConcurrentHashMap<>();
+        // jobs whose results are never fetched are forgotten too, even when no new job is submitted
+        progressScheduler.scheduleWithFixedDelay(this::removeExpiredJobs, EXPIRED_JOBS_REMOVAL_INTERVAL);
+    }
+
+    @Override
+    public CompletableFuture<PlanOutputDto> generateOptimalPlanAsync(PlanInputDto planInputDto, String username,
+                                                                     SolveBudget budget) {
+        return supplyAsync(() -> planService.generateOptimalPlan(planInputDto, username, budget));
+    }
+
+    // the saved plan is read before the job is queued, so a missing plan is reported right away
+    @Override
+    public CompletableFuture<PlanOutputDto> reoptimizePlanAsync(int id, PlanInputDto planInputDto, String username,
+                                                                SolveBudget budget) {
+        int[] previousPickedTerms = planService.getPickedTermsOfPlan(id, planInputDto, username);
+
+        return supplyAsync(() -> planService.generateOptimalPlan(planInputDto, username, budget, new SolverProgress(),
+                previousPickedTerms));
+    }
+
+    // the whole batch takes a single place in the queue, its plans are solved together on the solver pool
+    @Override
+    public CompletableFuture<List<PlanBatchResultDto>> generateOptimalPlansAsync(PlanBatchInputDto planBatchInputDto,
+                                                                                 String username, SolveBudget budget) {
+        return supplyAsync(() -> planService.generateOptimalPlans(planBatchInputDto, username, budget));
+    }
+
+    @Override
+    public CompletableFuture<List<CommuteLimitPlanDto>> generateOptimalPlansForEveryCommuteLimitAsync(
+            PlanInputDto planInputDto, SolveBudget budget) {
+        return supplyAsync(() -> planService.generateOptimalPlansForEveryCommuteLimit(planInputDto, budget));
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, solverExecutor);
+        } catch (RejectedExecutionException e) {
+            throw new TooManyPlanJobsException("Too many plans are being generated, try again later");
+        }
+    }
+
+    @Override
+    public PlanJobDto submitPlanJob(PlanInputDto planInputDto, String username) {
+        SolveBudget budget = new SolveBudget(planInputDto.getTimeLimitInMillis(), planInputDto.getCandidateLimit());
+        PlanJob job = new PlanJob(UUID.randomUUID().toString(), username, budget);
+
+        jobs.put(job.getId(), job);
+        try {
+            solverExecutor.execute(() -> runJob(job, planInputDto));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new TooManyPlanJobsException("Too many plans are being generated, try again later");
+        }
+
+        return toPlanJobDto(job);
+    }
+
+    private void runJob(PlanJob job, PlanInputDto planInputDto) {
+        job.start();
+        try {
+            job.complete(planService.generateOptimalPlan(planInputDto, job.getUsername(), job.getBudget(),
+                    job.getProgress()));
+        } catch (RuntimeException e) {
+            job.fail(e);
+        } catch (Error e) {
+            // the job is finished even when the solver thread dies, so clients don't poll it forever
+            job.fail(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public PlanJobDto getPlanJob(String id, String username) {
+        return toPlanJobDto(findJob(id, username));
+    }
+
+    @Override
+    public PlanOutputDto getPlanJobResult(String id, String username) {
+        PlanJob job = findJob(id, username);
+        if (!job.isFinished()) {
+            throw new PlanJobNotFinishedException(id);
+        }
+
+        Throwable error = job.getError();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new IllegalStateException("Plan generation failed", error);
+        }
+
+        return job.getResult();
+    }
+
+    @Override
+    public PlanJobDto cancelPlanJob(String id, String username) {
+        PlanJob job = findJob(id, username);
+        job.getBudget().cancel();
+
+        return toPlanJobDto(job);
+    }
+
+    @Override
+    public PlanJobProgressDto getPlanJobProgress(String id, String username) {
+        PlanJob job = findJob(id, username);
+        SolverProgress progress = job.getProgress();
+
+        PlanJobProgressDto planJobProgressDto = new PlanJobProgressDto();
+        planJobProgressDto.setStatus(job.getStatus());
+        planJobProgressDto.setExploredCandidates(progress.getExploredCandidates());
+        planJobProgressDto.setPrunedCandidates(progress.getPrunedCandidates());
+        planJobProgressDto.setValidTimetables(progress.getValidTimetables());
+        planJobProgressDto.setMinutesSpentAtOptimizedActivity(progress.getBestScore());
+        planJobProgressDto.setCoveredFraction(progress.getCoveredFraction());
+        planJobProgressDto.setBestScoreHistory(progress.getBestScoreHistory());
+
+        return planJobProgressDto;
+    }
+
+    // jobs of other users are reported as missing, so their ids can't be probed
+    private PlanJob findJob(String id, String username) {
+        PlanJob job = jobs.get(id);
+        if (job == null || !job.getUsername().equals(username)) {
+            throw new ResourceNotFoundException("Plan job", "id", id);
+        }
+
+        return job;
+    }
+
+    private void removeExpiredJobs() {
+        Instant expiredBefore = Instant.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(expiredBefore));
+    }
+
+    private PlanJobDto toPlanJobDto(PlanJob job) {
+        PlanJobDto planJobDto = new PlanJobDto();
+        planJobDto.setId(job.getId());
+        planJobDto.setStatus(job.getStatus());
+        planJobDto.setCreatedAt(job.getCreatedAt());
+        planJobDto.setFinishedAt(job.getFinishedAt());
+        if (job.getError() != null) {
+            planJobDto.setErrorMessage(job.getError().getMessage());
+        }
+
+        return planJobDto;
+    }
+}
@@ -1,45 +1,88 @@
 package com.smartplanner.service.implementation;
 
+import com.smartplanner.config.SolverConfig;
 import com.smartplanner.exception.InvalidDataProvidedException;
+import com.smartplanner.exception.ResourceNotFoundException;
+import com.smartplanner.exception.SearchSpaceTooLargeException;
+import com.smartplanner.exception.SolveBudgetExceededException;
+import com.smartplanner.model.CompiledPlan;
+import com.smartplanner.model.ConsistentTermDomains;
+import com.smartplanner.model.LessonWithPossibleTerms;
+import com.smartplanner.model.SearchSpaceEstimate;
 import com.smartplanner.model.SmartPlanner;
+import com.smartplanner.model.SolveBudget;
+import com.smartplanner.model.SolveRoute;
+import com.smartplanner.model.SolveRouter;
+import com.smartplanner.model.SolvedPlanCache;
+import com.smartplanner.model.SolverProgress;
 import com.smartplanner.model.TimeDistanceManager;
 import com.smartplanner.model.TimetableEntry;
 import com.smartplanner.model.TimetableWithDecisionPointsAndScore;
+import com.smartplanner.model.ValidTimetableStore;
+import com.smartplanner.model.dto.CommuteLimitPlanDto;
+import com.smartplanner.model.dto.PlanAlternativeDto;
+import com.smartplanner.model.dto.PlanBatchInputDto;
+import com.smartplanner.model.dto.PlanBatchResultDto;
 import com.smartplanner.model.dto.PlanInputDto;
 import com.smartplanner.model.dto.PlanOutputDto;
 import com.smartplanner.model.entity.Lesson;
 import com.smartplanner.model.entity.OptimizedActivity;
 import com.smartplanner.model.entity.Plan;
 import com.smartplanner.model.entity.Term;
+import com.smartplanner.model.entity.User;
 import com.smartplanner.repository.PlanRepository;
 import com.smartplanner.repository.UserRepository;
 import com.smartplanner.service.PlanService;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 public class PlanServiceImpl implements PlanService {
 
+    private static final int MAX_NUMBER_OF_BEST_PLANS = 20;
+    private static final int MAX_NUMBER_OF_PLANS_IN_BATCH = 500;
+    private static final int MAX_COMMUTES_PER_DAY_IN_SWEEP = 10;
+
     private final PlanRepository planRepository;
     private final UserRepository userRepository;
+    private final ForkJoinPool solverForkJoinPool;
+    private final SolvedPlanCache solvedPlanCache;
+    private final SolveRouter solveRouter;
     private ModelMapper modelMapper;
 
     @Autowired
-    public PlanServiceImpl(PlanRepository planRepository, UserRepository userRepository) {
-        this(planRepository, userRepository, new ModelMapper());
+    public PlanServiceImpl(PlanRepository planRepository, UserRepository userRepository,
+                           @Qualifier(SolverConfig.SOLVER_FORK_JOIN_POOL) ForkJoinPool solverForkJoinPool,
+                           SolvedPlanCache solvedPlanCache, SolveRouter solveRouter) {
+        this(planRepository, userRepository, solverForkJoinPool, solvedPlanCache, solveRouter, new ModelMapper());
     }
 
     public PlanServiceImpl(
             PlanRepository planRepository,
             UserRepository userRepository,
+            ForkJoinPool solverForkJoinPool,
+            SolvedPlanCache solvedPlanCache,
+            SolveRouter solveRouter,
             ModelMapper modelMapper
     ) {
         this.planRepository = planRepository;
         this.userRepository = userRepository;
+        this.solverForkJoinPool = solverForkJoinPool;
+        this.solvedPlanCache = solvedPlanCache;
+        this.solveRouter = solveRouter;
         this.modelMapper = modelMapper;
     }
 
@@ -53,6 +96,10 @@ public class PlanServiceImpl implements PlanService {
 
     @Override
     public Plan savePlan(Plan plan) {
+        return planRepository.save(linkEntities(plan));
+    }
+
+    private Plan linkEntities(Plan plan) {
 
         OptimizedActivity optimizedActivity = plan.getOptimizedActivity();
         optimizedActivity.setPlan(plan);
@@ -69,41 +116,414 @@ public class PlanServiceImpl implements PlanService {
         );
         plan.setLessons(lessons);
 
-        return planRepository.save(plan);
+        return plan;
     }
 
     @Override
     public PlanOutputDto generateOptimalPlan(PlanInputDto planInputDto, String username) {
+        return generateOptimalPlan(planInputDto, username, createBudget(planInputDto));
+    }
+
+    @Override
+    public PlanOutputDto generateOptimalPlan(PlanInputDto planInputDto, String username, SolveBudget budget) {
+        return generateOptimalPlan(planInputDto, username, budget, new SolverProgress());
+    }
+
+    @Override
+    public PlanOutputDto generateOptimalPlan(PlanInputDto planInputDto, String username, SolveBudget budget,
+                                             SolverProgress progress) {
+        return generateOptimalPlan(planInputDto, username, budget, progress, null);
+    }
+
+    @Override
+    public PlanOutputDto generateOptimalPlan(PlanInputDto planInputDto, String username, SolveBudget budget,
+                                             SolverProgress progress, int[] initialPickedTerms) {
+        CompiledPlan compiledPlan = CompiledPlan.compile(planInputDto);
+        List<TimetableWithDecisionPointsAndScore> timetables =
+                findBestTimetables(planInputDto, compiledPlan, budget, progress, initialPickedTerms);
+
+        Plan plan = this.toPlan(planInputDto, timetables.get(0), userRepository.findByUsername(username));
+        plan = this.savePlan(plan);
+
+        return toPlanOutputDto(plan, planInputDto, timetables);
+    }
+
+    // lessons, commute matrix and terms are compiled once, together with TermConflictIndex and ConsistentTermDomains,
+    // and shared by all plans.
+    // The first plan is searched on its own, so the others can re-score valid timetables stored by its search
+    @Override
+    public List<PlanBatchResultDto> generateOptimalPlans(PlanBatchInputDto planBatchInputDto, String username,
+                                                         SolveBudget budget) {
+        if (planBatchInputDto.getPlans() == null || planBatchInputDto.getPlans().isEmpty()
+                || planBatchInputDto.getPlans().size() > MAX_NUMBER_OF_PLANS_IN_BATCH
+                || planBatchInputDto.getPlans().contains(null)) {
+            throw new InvalidDataProvidedException(
+                    "Batch has to contain between 1 and " + MAX_NUMBER_OF_PLANS_IN_BATCH + " plans");
+        }
+
+        List<PlanInputDto> planInputDtos = planBatchInputDto.getPlans().stream()
+                .map(x -> toPlanOfBatch(planBatchInputDto, x)).collect(Collectors.toList());
+        TimeDistanceManager timeDistanceManager = new TimeDistanceManager(planBatchInputDto.getTimeDistanceInMinutes());
+        List<List<TimetableWithDecisionPointsAndScore>> timetables = new ArrayList<>(Collections.nCopies(
+                planInputDtos.size(), null));
+        String[] errorMessages = new String[planInputDtos.size()];
+
+        OptionalInt firstValidPlan = IntStream.range(0, planInputDtos.size())
+                .filter(x -> hasValidPlace(planInputDtos.get(x), timeDistanceManager)).findFirst();
+        if (firstValidPlan.isPresent()) {
+            int firstPlan = firstValidPlan.getAsInt();
+            CompiledPlan catalogue = new CompiledPlan(planBatchInputDto.getLessons(),
+                    planBatchInputDto.getDaysInCycle(), timeDistanceManager,
+                    planInputDtos.get(firstPlan).getMaxCommutesPerDay(),
+                    planInputDtos.get(firstPlan).getOptimizedActivity());
+            catalogue.getConsistentTermDomains();
+
+            findBestTimetablesOfBatch(planInputDtos, firstPlan, catalogue, budget, timetables, errorMessages);
+            List<Integer> otherPlans = IntStream.range(0, planInputDtos.size()).filter(x -> x != firstPlan).boxed()
+                    .collect(Collectors.toList());
+            solverForkJoinPool.invoke(ForkJoinTask.adapt(() -> otherPlans.parallelStream().forEach(x ->
+                    findBestTimetablesOfBatch(planInputDtos, x, catalogue, budget, timetables, errorMessages))));
+        } else {
+            // the catalogue can't be compiled without a valid optimized activity, so every plan is reported
+            for (int x = 0; x < planInputDtos.size(); ++x) {
+                try {
+                    checkOptimizedActivity(planInputDtos.get(x), timeDistanceManager);
+                } catch (InvalidDataProvidedException e) {
+                    errorMessages[x] = e.getMessage();
+                }
+            }
+        }
+
+        User user = userRepository.findByUsername(username);
+        List<Plan> plans = new ArrayList<>();
+        for (int x = 0; x < planInputDtos.size(); ++x) {
+            if (timetables.get(x) != null) {
+                plans.add(linkEntities(this.toPlan(planInputDtos.get(x), timetables.get(x).get(0), user)));
+            }
+        }
+        Iterator<Plan> savedPlans = planRepository.saveAll(plans).iterator();
+
+        List<PlanBatchResultDto> results = new ArrayList<>();
+        for (int x = 0; x < planInputDtos.size(); ++x) {
+            PlanBatchResultDto result = new PlanBatchResultDto();
+            if (timetables.get(x) != null) {
+                result.setPlan(toPlanOutputDto(savedPlans.next(), planInputDtos.get(x), timetables.get(x)));
+            } else {
+                result.setErrorMessage(errorMessages[x]);
+            }
+            results.add(result);
+        }
+
+        return results;
+    }
+
+    private boolean hasValidPlace(PlanInputDto planInputDto, TimeDistanceManager timeDistanceManager) {
+        return planInputDto.getOptimizedActivity() != null
+                && timeDistanceManager.containsPlace(planInputDto.getOptimizedActivity().getId());
+    }
+
+    private void checkOptimizedActivity(PlanInputDto planInputDto, TimeDistanceManager timeDistanceManager) {
+        if (planInputDto.getOptimizedActivity() == null) {
+            throw new InvalidDataProvidedException("Optimized activity is missing");
+        }
+
+        if (!hasValidPlace(planInputDto, timeDistanceManager)) {
+            throw new InvalidDataProvidedException("Commute matrix doesn't contain the optimized activity");
+        }
+    }
+
+    // plans of the batch get the shared lessons, commute matrix and days in cycle, plans of the request are left as
+    // they are
+    private PlanInputDto toPlanOfBatch(PlanBatchInputDto planBatchInputDto, PlanInputDto planInputDto) {
+        PlanInputDto planOfBatch = new PlanInputDto();
+        planOfBatch.setId(planInputDto.getId());
+        planOfBatch.setName(planInputDto.getName());
+        planOfBatch.setMaxCommutesPerDay(planInputDto.getMaxCommutesPerDay());
+        planOfBatch.setOptimizedActivity(planInputDto.getOptimizedActivity());
+        planOfBatch.setTimeLimitInMillis(planInputDto.getTimeLimitInMillis());
+        planOfBatch.setCandidateLimit(planInputDto.getCandidateLimit());
+        planOfBatch.setNumberOfBestPlans(planInputDto.getNumberOfBestPlans());
+        planOfBatch.setDaysInCycle(planBatchInputDto.getDaysInCycle());
+        planOfBatch.setLessons(planBatchInputDto.getLessons());
+        planOfBatch.setTimeDistanceInMinutes(planBatchInputDto.getTimeDistanceInMinutes());
+
+        return planOfBatch;
+    }
+
+    // plans that can't be generated are reported with their error, the rest of the batch is still generated
+    private void findBestTimetablesOfBatch(List<PlanInputDto> planInputDtos, int index, CompiledPlan catalogue,
+                                           SolveBudget budget,
+                                           List<List<TimetableWithDecisionPointsAndScore>> timetables,
+                                           String[] errorMessages) {
+        PlanInputDto planInputDto = planInputDtos.get(index);
+        try {
+            checkOptimizedActivity(planInputDto, catalogue.getTimeDistanceManager());
+
+            CompiledPlan compiledPlan = catalogue.withOptimizedActivity(planInputDto.getMaxCommutesPerDay(),
+                    planInputDto.getOptimizedActivity());
+            SolveBudget budgetOfPlan = budget.createChild(planInputDto.getTimeLimitInMillis(),
+                    planInputDto.getCandidateLimit());
+            timetables.set(index, findBestTimetables(planInputDto, compiledPlan, budgetOfPlan, new SolverProgress(),
+                    null));
+        } catch (InvalidDataProvidedException | SolveBudgetExceededException | SearchSpaceTooLargeException e) {
+            errorMessages[index] = e.getMessage();
+        }
+    }
+
+    private Plan toPlan(PlanInputDto planInputDto, TimetableWithDecisionPointsAndScore timetable, User user) {
         Plan plan = modelMapper.map(planInputDto, Plan.class);
         plan.setLessons(new ArrayList<>());
-        plan.setLessons(this.pickOptimalTerm(planInputDto));
+        plan.setLessons(this.toLessons(timetable));
+        plan.setUser(user);
 
-        plan.setUser(userRepository.findByUsername(username));
-        plan = this.savePlan(plan);
+        return plan;
+    }
+
+    private PlanOutputDto toPlanOutputDto(Plan plan, PlanInputDto planInputDto,
+                                          List<TimetableWithDecisionPointsAndScore> timetables) {
+        TimetableWithDecisionPointsAndScore timetable = timetables.get(0);
 
         PlanOutputDto planOutputDto = modelMapper.map(plan, PlanOutputDto.class);
+        planOutputDto.setMinutesSpentAtOptimizedActivity(timetable.getMinutesSpentAtOptimizedActivity());
+        planOutputDto.setProvenOptimal(timetable.isProvenOptimal());
+        planOutputDto.setMinutesUpperBound(timetable.getUpperBoundOfMinutes());
+        if (getNumberOfBestPlans(planInputDto) > 1) {
+            planOutputDto.setAlternatives(this.toAlternatives(timetables));
+        }
 
         return planOutputDto;
     }
 
+    // plans aren't saved, but optimal plans of all limits are cached, so the one chosen by a user is saved right away
+    @Override
+    public List<CommuteLimitPlanDto> generateOptimalPlansForEveryCommuteLimit(PlanInputDto planInputDto,
+                                                                             SolveBudget budget) {
+        int maxCommutesPerDay = planInputDto.getMaxCommutesPerDay();
+        if (maxCommutesPerDay < 1 || maxCommutesPerDay > MAX_COMMUTES_PER_DAY_IN_SWEEP) {
+            throw new InvalidDataProvidedException(
+                    "Max commutes per day has to be between 1 and " + MAX_COMMUTES_PER_DAY_IN_SWEEP);
+        }
+
+        CompiledPlan compiledPlan = CompiledPlan.compile(planInputDto);
+        checkTermsCanBeCombined(compiledPlan);
+        solvedPlanCache.shareDayScoreCache(compiledPlan);
+        SmartPlanner smartPlanner = new SmartPlanner(compiledPlan, solverForkJoinPool);
+
+        List<TimetableWithDecisionPointsAndScore> timetables = null;
+        ValidTimetableStore validTimetables = solvedPlanCache.getValidTimetables(compiledPlan);
+        if (validTimetables != null) {
+            timetables = smartPlanner.getOptimalPlansForEveryCommuteLimit(validTimetables, budget,
+                    new SolverProgress());
+        }
+        if (timetables == null) {
+            SolveBudget budgetOfRoute = routeSearch(solveRouter.estimate(compiledPlan)) == SolveRoute.HEURISTIC
+                    ? budget.createChildWithTimeLimit(solveRouter.getHeuristicTimeLimitInMillis()) : budget;
+            timetables = smartPlanner.getOptimalPlansForEveryCommuteLimit(budgetOfRoute, new SolverProgress());
+        }
+        checkTimetableFound(timetables.get(timetables.size() - 1));
+
+        List<CommuteLimitPlanDto> commuteLimitPlans = new ArrayList<>();
+        for (int commutes = 1; commutes <= timetables.size(); ++commutes) {
+            TimetableWithDecisionPointsAndScore timetable = timetables.get(commutes - 1);
+            solvedPlanCache.put(compiledPlan.withOptimizedActivity(commutes, planInputDto.getOptimizedActivity()),
+                    timetable);
+
+            CommuteLimitPlanDto commuteLimitPlan = new CommuteLimitPlanDto();
+            commuteLimitPlan.setMaxCommutesPerDay(commutes);
+            commuteLimitPlan.setMinutesSpentAtOptimizedActivity(timetable.getMinutesSpentAtOptimizedActivity());
+            commuteLimitPlan.setProvenOptimal(timetable.isProvenOptimal());
+            commuteLimitPlan.setMinutesUpperBound(timetable.getUpperBoundOfMinutes());
+            if (timetable.getOptimalTimetable() != null) {
+                commuteLimitPlan.setLessons(this.toLessons(timetable));
+                commuteLimitPlan.setDecisionPoints(new ArrayList<>(timetable.getOptimalDecisionPoints()));
+            }
+            commuteLimitPlans.add(commuteLimitPlan);
+        }
+
+        return commuteLimitPlans;
+    }
+
     @Override
     public List<Lesson> pickOptimalTerm(PlanInputDto planInputDto) {
-        SmartPlanner smartPlanner = new SmartPlanner(
-                planInputDto.getLessons(),
-                planInputDto.getDaysInCycle(),
-                new TimeDistanceManager(planInputDto.getTimeDistanceInMinutes()),
-                planInputDto.getMaxCommutesPerDay(),
-                planInputDto.getOptimizedActivity()
-        );
+        return toLessons(findBestTimetables(planInputDto, CompiledPlan.compile(planInputDto), createBudget(planInputDto),
+                new SolverProgress(), null).get(0));
+    }
 
-        TimetableWithDecisionPointsAndScore timetable = smartPlanner.getOptimalPlan();
+    // a lesson of the saved plan is matched by name and its term by duration, day and start time, lessons that can't
+    // be matched (e.g. renamed or with all of their terms changed) leave the search without a starting timetable
+    @Override
+    @Transactional(readOnly = true)
+    public int[] getPickedTermsOfPlan(int id, PlanInputDto planInputDto, String username) {
+        Plan plan = planRepository.findById(id)
+                .filter(x -> x.getUser() != null && x.getUser().getUsername().equals(username))
+                .orElseThrow(() -> new ResourceNotFoundException("Plan", "id", id));
 
-        List<TimetableEntry> timetableEntries = timetable.getOptimalTimetable();
+        List<LessonWithPossibleTerms> lessons = planInputDto.getLessons();
+        if (lessons == null) {
+            return null;
+        }
+
+        int[] pickedTerms = new int[lessons.size()];
+        for (int lessonIndex = 0; lessonIndex < lessons.size(); ++lessonIndex) {
+            LessonWithPossibleTerms lesson = lessons.get(lessonIndex);
+            List<Term> possibleTerms = lesson.getPossibleTerms() != null ? lesson.getPossibleTerms() : new ArrayList<>();
+
+            pickedTerms[lessonIndex] = -1;
+            for (int termIndex = 0; termIndex < possibleTerms.size() && pickedTerms[lessonIndex] < 0; ++termIndex) {
+                Term possibleTerm = possibleTerms.get(termIndex);
+                boolean wasPicked = plan.getLessons().stream().anyMatch(x -> x.getName() != null
+                        && x.getName().equals(lesson.getName()) && possibleTerm.equals(x.getTerm()));
+                if (wasPicked) {
+                    pickedTerms[lessonIndex] = termIndex;
+                }
+            }
+
+            if (pickedTerms[lessonIndex] < 0) {
+                return null;
+            }
+        }
+
+        return pickedTerms;
+    }
+
+    private int getNumberOfBestPlans(PlanInputDto planInputDto) {
+        Integer numberOfBestPlans = planInputDto.getNumberOfBestPlans();
+        if (numberOfBestPlans == null) {
+            return 1;
+        }
 
-        if (timetableEntries == null) {
+        if (numberOfBestPlans < 1 || numberOfBestPlans > MAX_NUMBER_OF_BEST_PLANS) {
+            throw new InvalidDataProvidedException(
+                    "Number of best plans has to be between 1 and " + MAX_NUMBER_OF_BEST_PLANS);
+        }
+
+        return numberOfBestPlans;
+    }
+
+    private SolveBudget createBudget(PlanInputDto planInputDto) {
+        return new SolveBudget(planInputDto.getTimeLimitInMillis(), planInputDto.getCandidateLimit());
+    }
+
+    // the best timetable is the first one, only the single optimal timetable is cached
+    private List<TimetableWithDecisionPointsAndScore> findBestTimetables(PlanInputDto planInputDto,
+                                                                         CompiledPlan compiledPlan, SolveBudget budget,
+                                                                         SolverProgress progress,
+                                                                         int[] initialPickedTerms) {
+        int numberOfBestPlans = getNumberOfBestPlans(planInputDto);
+        checkTermsCanBeCombined(compiledPlan);
+        solvedPlanCache.shareDayScoreCache(compiledPlan);
+        SmartPlanner smartPlanner = new SmartPlanner(compiledPlan, solverForkJoinPool, initialPickedTerms);
+
+        List<TimetableWithDecisionPointsAndScore> timetables = numberOfBestPlans > 1
+                ? searchOrRescore(compiledPlan, smartPlanner, numberOfBestPlans, budget, progress)
+                : Collections.singletonList(solvedPlanCache.getOrSolve(compiledPlan, budget,
+                        () -> searchOrRescore(compiledPlan, smartPlanner, 1, budget, progress).get(0)));
+        checkTimetableFound(timetables.get(0));
+
+        return timetables;
+    }
+
+    // terms that can't be combined with any term of some other lesson are ruled out before the search, so a plan
+    // without any valid timetable is rejected without searching, together with lessons that can't be attended together
+    private void checkTermsCanBeCombined(CompiledPlan compiledPlan) {
+        ConsistentTermDomains consistentTermDomains = compiledPlan.getConsistentTermDomains();
+        if (consistentTermDomains.isConsistent()) {
+            return;
+        }
+
+        List<String> lessons = consistentTermDomains.getConflictingLessons().stream()
+                .map(x -> compiledPlan.getLessons().get(x).getName()).collect(Collectors.toList());
+        if (lessons.size() == 1) {
+            throw new InvalidDataProvidedException("Lesson " + lessons.get(0) + " doesn't have any possible term");
+        }
+
+        throw new InvalidDataProvidedException("Activities are either unreachable or they overlap with each other, "
+                + "lessons " + String.join(", ", lessons) + " can't be attended together");
+    }
+
+    private void checkTimetableFound(TimetableWithDecisionPointsAndScore timetable) {
+        if (timetable.getOptimalTimetable() == null && !timetable.isProvenOptimal()) {
+            throw new SolveBudgetExceededException(
+                    "No plan has been found before the time or candidate limit was reached");
+        }
+
+        if (timetable.getOptimalTimetable() == null) {
             throw new InvalidDataProvidedException(
                     "Activities are either unreachable or they overlap with each other");
         }
+    }
+
+    // valid timetables stored for a plan that differs only in optimized activity are re-scored without searching.
+    // Otherwise the plan is routed by the estimated size of its search space: the exact search stores valid timetables
+    // for the next plans if there are few of them (it doesn't prune by score then). Predictions aren't reliable, so
+    // plans routed to the heuristic search are still searched exactly, raced against heuristics for a limited time
+    private List<TimetableWithDecisionPointsAndScore> searchOrRescore(CompiledPlan compiledPlan,
+                                                                      SmartPlanner smartPlanner, int numberOfBestPlans,
+                                                                      SolveBudget budget, SolverProgress progress) {
+        ValidTimetableStore validTimetables = solvedPlanCache.getValidTimetables(compiledPlan);
+        if (validTimetables != null) {
+            List<TimetableWithDecisionPointsAndScore> timetables =
+                    smartPlanner.getBestPlans(validTimetables, numberOfBestPlans, budget, progress);
+            if (timetables != null) {
+                return timetables;
+            }
+        }
+
+        SearchSpaceEstimate estimate = solveRouter.estimate(compiledPlan);
+        if (routeSearch(estimate) == SolveRoute.HEURISTIC) {
+            return smartPlanner.getBestPlansByPortfolio(numberOfBestPlans, solveRouter.getHeuristicSeed(),
+                    budget.createChildWithTimeLimit(solveRouter.getHeuristicTimeLimitInMillis()), progress);
+        }
+
+        long searchStart = System.nanoTime();
+        List<TimetableWithDecisionPointsAndScore> timetables;
+        // valid timetables of a plan searched by components would be stored as their product, so they aren't stored
+        validTimetables = smartPlanner.isDecomposable() ? null
+                : solvedPlanCache.createValidTimetableStore(compiledPlan, estimate);
+        if (validTimetables == null) {
+            timetables = smartPlanner.getBestPlans(numberOfBestPlans, budget, progress);
+        } else {
+            // a store left incomplete by a failed search is closed by the cache, so its temporary file is deleted
+            try {
+                timetables = smartPlanner.getBestPlans(numberOfBestPlans, budget, progress, validTimetables);
+            } finally {
+                solvedPlanCache.putValidTimetables(compiledPlan, validTimetables);
+            }
+        }
+
+        if (!budget.isExhausted()) {
+            solveRouter.recordSearch(estimate, System.nanoTime() - searchStart);
+        }
+
+        return timetables;
+    }
+
+    private SolveRoute routeSearch(SearchSpaceEstimate estimate) {
+        SolveRoute route = solveRouter.route(estimate);
+        if (route == SolveRoute.REJECT) {
+            throw new SearchSpaceTooLargeException(String.format("Plan has about %.2g combinations of terms, "
+                    + "it's too large to be generated. Remove some of possible terms", estimate.getRawSize()));
+        }
+
+        return route;
+    }
+
+    private List<PlanAlternativeDto> toAlternatives(List<TimetableWithDecisionPointsAndScore> timetables) {
+        List<PlanAlternativeDto> alternatives = new ArrayList<>();
+        timetables.forEach(x -> {
+                    PlanAlternativeDto alternative = new PlanAlternativeDto();
+                    alternative.setMinutesSpentAtOptimizedActivity(x.getMinutesSpentAtOptimizedActivity());
+                    alternative.setLessons(this.toLessons(x));
+                    alternative.setDecisionPoints(new ArrayList<>(x.getOptimalDecisionPoints()));
+                    alternatives.add(alternative);
+                }
+        );
+
+        return alternatives;
+    }
+
+    private List<Lesson> toLessons(TimetableWithDecisionPointsAndScore timetable) {
+        List<TimetableEntry> timetableEntries = timetable.getOptimalTimetable();
 
         List<Lesson> lessons = new ArrayList<>();
         timetableEntries.forEach(x -> {
@@ -0,0 +1,178 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.entity.Term;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.smartplanner.model.PlanFixtures.createLesson;
+import static com.smartplanner.model.PlanFixtures.createOptimizedActivity;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BranchAndBoundSolverTest {
+    private static final int NUMBER_OF_PLANS = 500;
+    private static final int NUMBER_OF_TIMETABLES = 4;
+    private static final int MAX_COMMUTES_PER_DAY = 3;
+
+    @Test
+    public void findsTheSameScoreAsEnumeration() {
+        RandomPlans randomPlans = new RandomPlans(2);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        try {
+            for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+                CompiledPlan compiledPlan = randomPlans.next();
+                String message = "plan " + plan;
+
+                TimetableWithDecisionPointsAndScore expected =
+                        new SmartPlanner(compiledPlan).getOptimalPlanByEnumeration();
+                TimetableWithDecisionPointsAndScore actual = new BranchAndBoundSolver(compiledPlan, forkJoinPool)
+                        .solve();
+
+                assertEquals(message, expected.getMinutesSpentAtOptimizedActivity(),
+                        actual.getMinutesSpentAtOptimizedActivity());
+                if (expected.getOptimalTimetable() == null) {
+                    assertNull(message, actual.getOptimalTimetable());
+                    continue;
+                }
+
+                // the timetable may differ from the one of enumeration only if both have the same score
+                assertTrue(message, new TimetableValidator(compiledPlan).isValid(actual.getOptimalTimetable()));
+                assertEquals(message, actual.getMinutesSpentAtOptimizedActivity(),
+                        new OptimalityCalculator(compiledPlan).calculate(actual.getOptimalTimetable())
+                                .getMinutesSpentAtOptimizedActivity());
+            }
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    @Test
+    public void findsTheSameTimetableOnEveryRun() {
+        RandomPlans randomPlans = new RandomPlans(3);
+        ForkJoinPool sequentialPool = new ForkJoinPool(1);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        try {
+            for (int plan = 0; plan < NUMBER_OF_PLANS / 5; ++plan) {
+                CompiledPlan compiledPlan = randomPlans.next();
+                TimetableWithDecisionPointsAndScore sequential = new BranchAndBoundSolver(compiledPlan, sequentialPool)
+                        .solve();
+                TimetableWithDecisionPointsAndScore parallel = new BranchAndBoundSolver(compiledPlan, forkJoinPool)
+                        .solve();
+
+                assertEquals("plan " + plan, sequential.getMinutesSpentAtOptimizedActivity(),
+                        parallel.getMinutesSpentAtOptimizedActivity());
+                assertEquals("plan " + plan, sequential.getOptimalTimetable(), parallel.getOptimalTimetable());
+            }
+        } finally {
+            sequentialPool.shutdown();
+            forkJoinPool.shutdown();
+        }
+    }
+
+    @Test
+    public void findsTheSameBestScoresAsEnumeration() {
+        RandomPlans randomPlans = new RandomPlans(15);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            String message = "plan " + plan;
+
+            List<Integer> scores = RandomPlans.scoreValidTimetables(compiledPlan);
+            List<Integer> expected = scores.subList(0, Math.min(scores.size(), NUMBER_OF_TIMETABLES));
+            List<TimetableWithDecisionPointsAndScore> actual = new BranchAndBoundSolver(compiledPlan)
+                    .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+
+            if (expected.isEmpty()) {
+                assertEquals(message, 1, actual.size());
+                assertNull(message, actual.get(0).getOptimalTimetable());
+                continue;
+            }
+            assertEquals(message, expected.size(), actual.size());
+            Set<String> pickedTermsOfTimetables = new HashSet<String>();
+            for (int index = 0; index < expected.size(); ++index) {
+                TimetableWithDecisionPointsAndScore timetable = actual.get(index);
+                assertEquals(message, (int) expected.get(index), timetable.getMinutesSpentAtOptimizedActivity());
+                assertTrue(message, timetable.isProvenOptimal());
+                assertTrue(message, new TimetableValidator(compiledPlan).isValid(timetable.getOptimalTimetable()));
+                assertTrue(message, pickedTermsOfTimetables.add(Arrays.toString(timetable.getPickedTerms())));
+            }
+        }
+    }
+
+    @Test
+    public void findsTheSameTimetableWhenStartedFromAnyPicks() {
+        RandomPlans randomPlans = new RandomPlans(16);
+        for (int plan = 0; plan < NUMBER_OF_PLANS / 5; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            TimetableWithDecisionPointsAndScore expected = new BranchAndBoundSolver(compiledPlan).solve();
+
+            // invalid picks are ignored, valid ones only prune the search
+            for (int[] initialPickedTerms : RandomPlans.enumeratePickedTerms(compiledPlan)) {
+                String message = "plan " + plan + ", initial picks " + Arrays.toString(initialPickedTerms);
+                TimetableWithDecisionPointsAndScore actual = new BranchAndBoundSolver(compiledPlan)
+                        .withInitialTimetable(initialPickedTerms).solve();
+
+                assertEquals(message, expected.getMinutesSpentAtOptimizedActivity(),
+                        actual.getMinutesSpentAtOptimizedActivity());
+                assertEquals(message, expected.getOptimalTimetable(), actual.getOptimalTimetable());
+                assertTrue(message, actual.isProvenOptimal());
+            }
+        }
+    }
+
+    @Test
+    public void findsTimetableWhenTravellingThroughAnotherPlaceIsFaster() {
+        // lessons 0 and 2 are two hours apart, but both are five minutes away from lesson 1 that takes place between them
+        List<LessonWithPossibleTerms> lessons = Arrays.asList(
+                createLesson(0, new Term(60, 0, LocalTime.of(8, 0))),
+                createLesson(1, new Term(60, 0, LocalTime.of(9, 5))),
+                createLesson(2, new Term(60, 0, LocalTime.of(10, 10))));
+        List<List<Integer>> timeDistances = Arrays.asList(
+                Arrays.asList(0, 5, 120, 10),
+                Arrays.asList(5, 0, 5, 10),
+                Arrays.asList(120, 5, 0, 10),
+                Arrays.asList(10, 10, 10, 0));
+
+        SmartPlanner smartPlanner = new SmartPlanner(lessons, 1, new TimeDistanceManager(timeDistances), 1,
+                createOptimizedActivity(3, 1));
+        TimetableWithDecisionPointsAndScore actual = smartPlanner.getOptimalPlan();
+
+        assertNotNull(actual.getOptimalTimetable());
+        assertEquals(smartPlanner.getOptimalPlanByEnumeration().getMinutesSpentAtOptimizedActivity(),
+                actual.getMinutesSpentAtOptimizedActivity());
+    }
+
+    @Test
+    public void findsTheSameTimetableOfEveryCommuteLimitAsSeparateSolves() {
+        RandomPlans randomPlans = new RandomPlans(19);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan randomPlan = randomPlans.next();
+            CompiledPlan compiledPlan = randomPlan.withOptimizedActivity(MAX_COMMUTES_PER_DAY,
+                    randomPlan.getOptimizedActivity());
+
+            List<TimetableWithDecisionPointsAndScore> actual = new BranchAndBoundSolver(compiledPlan)
+                    .solveForEveryCommuteLimit(SolveBudget.unlimited(), new SolverProgress());
+
+            assertEquals("plan " + plan, MAX_COMMUTES_PER_DAY, actual.size());
+            for (int commutes = 1; commutes <= MAX_COMMUTES_PER_DAY; ++commutes) {
+                String message = "plan " + plan + ", commute limit " + commutes;
+                TimetableWithDecisionPointsAndScore expected = new BranchAndBoundSolver(
+                        compiledPlan.withOptimizedActivity(commutes, compiledPlan.getOptimizedActivity())).solve();
+                TimetableWithDecisionPointsAndScore timetable = actual.get(commutes - 1);
+
+                assertEquals(message, expected.getMinutesSpentAtOptimizedActivity(),
+                        timetable.getMinutesSpentAtOptimizedActivity());
+                assertEquals(message, expected.getOptimalTimetable(), timetable.getOptimalTimetable());
+                assertEquals(message, expected.getOptimalDecisionPoints(), timetable.getOptimalDecisionPoints());
+                assertTrue(message, timetable.isProvenOptimal());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.smartplanner.model;
+
+import com.smartplanner.exception.InvalidDataProvidedException;
+import com.smartplanner.model.entity.Term;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.smartplanner.model.PlanFixtures.createLesson;
+import static com.smartplanner.model.PlanFixtures.createOptimizedActivity;
+import static com.smartplanner.model.PlanFixtures.createTimeDistanceManager;
+import static org.junit.Assert.assertEquals;
+
+public class CompiledPlanTest {
+    private static final int NUMBER_OF_PLANS = 300;
+
+    @Test
+    public void validatesPickedTermsTheSameAsEntities() {
+        RandomPlans randomPlans = new RandomPlans(6);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            TimetableValidator timetableValidator = new TimetableValidator(compiledPlan);
+
+            for (int[] pickedTerms : RandomPlans.enumeratePickedTerms(compiledPlan)) {
+                ArrayList<TimetableEntry> timetable = compiledPlan.toTimetable(pickedTerms);
+                assertEquals("plan " + plan, timetableValidator.isValid(timetable),
+                        timetableValidator.isValid(pickedTerms));
+            }
+        }
+    }
+
+    @Test(expected = InvalidDataProvidedException.class)
+    public void rejectsTermsThatEndAfterMidnight() {
+        new CompiledPlan(Arrays.asList(
+                createLesson(0, new Term(90, 0, LocalTime.of(10, 0))),
+                createLesson(1, new Term(90, 0, LocalTime.of(10, 0)), new Term(90, 1, LocalTime.of(23, 0)))),
+                2, createTimeDistanceManager(3, 15), 1, createOptimizedActivity(2, 2));
+    }
+
+    @Test
+    public void compilesTermsThatEndBeforeMidnight() {
+        CompiledPlan compiledPlan = new CompiledPlan(Collections.singletonList(
+                createLesson(0, new Term(89, 0, LocalTime.of(22, 30)))),
+                1, createTimeDistanceManager(2, 15), 1, createOptimizedActivity(1, 1));
+
+        assertEquals(24 * 60 - 1, compiledPlan.getEntryEndMinute(compiledPlan.getFirstEntryOfTerm(0)));
+    }
+}
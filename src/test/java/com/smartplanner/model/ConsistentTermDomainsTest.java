@@ -0,0 +1,104 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.entity.Term;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.smartplanner.model.PlanFixtures.createLesson;
+import static com.smartplanner.model.PlanFixtures.createOptimizedActivity;
+import static com.smartplanner.model.PlanFixtures.createTimeDistanceManager;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentTermDomainsTest {
+    private static final int NUMBER_OF_PLANS = 500;
+
+    @Test
+    public void keepsEveryTermOfValidTimetables() {
+        RandomPlans randomPlans = new RandomPlans(24);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            ConsistentTermDomains consistentTermDomains = new ConsistentTermDomains(compiledPlan);
+            TimetableValidator timetableValidator = new TimetableValidator(compiledPlan);
+
+            boolean hasValidTimetable = false;
+            for (int[] pickedTerms : RandomPlans.enumeratePickedTerms(compiledPlan)) {
+                if (!timetableValidator.isValid(compiledPlan.toTimetable(pickedTerms)))
+                    continue;
+
+                hasValidTimetable = true;
+                for (int lessonIndex = 0; lessonIndex < pickedTerms.length; ++lessonIndex)
+                    assertTrue("plan " + plan, Arrays.binarySearch(consistentTermDomains.getTermIndexes(lessonIndex),
+                            pickedTerms[lessonIndex]) >= 0);
+            }
+
+            if (hasValidTimetable)
+                assertTrue("plan " + plan, consistentTermDomains.isConsistent());
+        }
+    }
+
+    @Test
+    public void findsLessonsThatCantBeAttendedTogether() {
+        RandomPlans randomPlans = new RandomPlans(25);
+        int numberOfInconsistentPlans = 0;
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            ConsistentTermDomains consistentTermDomains = new ConsistentTermDomains(compiledPlan);
+            if (consistentTermDomains.isConsistent()) {
+                assertTrue("plan " + plan, consistentTermDomains.getConflictingLessons().isEmpty());
+                continue;
+            }
+
+            ++numberOfInconsistentPlans;
+            List<LessonWithPossibleTerms> conflictingLessons = new ArrayList<LessonWithPossibleTerms>();
+            for (int lessonIndex : consistentTermDomains.getConflictingLessons())
+                conflictingLessons.add(compiledPlan.getLessons().get(lessonIndex));
+            CompiledPlan planOfConflictingLessons = new CompiledPlan(conflictingLessons, compiledPlan.getDaysInCycle(),
+                    compiledPlan.getTimeDistanceManager(), compiledPlan.getMaxCommutesPerDay(),
+                    compiledPlan.getOptimizedActivity());
+
+            TimetableValidator timetableValidator = new TimetableValidator(planOfConflictingLessons);
+            for (int[] pickedTerms : RandomPlans.enumeratePickedTerms(planOfConflictingLessons))
+                assertFalse("plan " + plan,
+                        timetableValidator.isValid(planOfConflictingLessons.toTimetable(pickedTerms)));
+        }
+        assertTrue(numberOfInconsistentPlans > 0);
+    }
+
+    // each term of lesson 0 overlaps the only term of lesson 2 or 3, lesson 1 takes place on another day
+    @Test
+    public void findsOverlappingLessonsWithoutSearching() {
+        List<LessonWithPossibleTerms> lessons = Arrays.asList(
+                createLesson(0, new Term(90, 0, LocalTime.of(10, 0)), new Term(90, 1, LocalTime.of(12, 0))),
+                createLesson(1, new Term(60, 2, LocalTime.of(8, 0))),
+                createLesson(2, new Term(45, 1, LocalTime.of(13, 0))),
+                createLesson(3, new Term(45, 0, LocalTime.of(11, 0))));
+        CompiledPlan compiledPlan = new CompiledPlan(lessons, 3, createTimeDistanceManager(5, 0), 1,
+                createOptimizedActivity(4, 3));
+
+        ConsistentTermDomains consistentTermDomains = new ConsistentTermDomains(compiledPlan);
+
+        assertFalse(consistentTermDomains.isConsistent());
+        assertEquals(Arrays.asList(0, 2, 3), consistentTermDomains.getConflictingLessons());
+    }
+
+    @Test
+    public void findsLessonWithoutPossibleTerms() {
+        List<LessonWithPossibleTerms> lessons = Arrays.asList(
+                createLesson(0, new Term(90, 0, LocalTime.of(10, 0))),
+                createLesson(1));
+        CompiledPlan compiledPlan = new CompiledPlan(lessons, 1, createTimeDistanceManager(3, 0), 1,
+                createOptimizedActivity(2, 1));
+
+        ConsistentTermDomains consistentTermDomains = new ConsistentTermDomains(compiledPlan);
+
+        assertFalse(consistentTermDomains.isConsistent());
+        assertEquals(Collections.singletonList(1), consistentTermDomains.getConflictingLessons());
+    }
+}
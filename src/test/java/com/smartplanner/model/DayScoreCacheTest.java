@@ -0,0 +1,93 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.entity.Term;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+
+import static com.smartplanner.model.PlanFixtures.createLesson;
+import static com.smartplanner.model.PlanFixtures.createOptimizedActivity;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DayScoreCacheTest {
+    // terms 0 and 1 differ only in day, term 2 only in start time, term 3 (of another lesson) only in travel times to
+    // and from the optimized activity and term 4 (of another lesson too) differs from term 2 only in place
+    private final CompiledPlan compiledPlan = new CompiledPlan(Arrays.asList(
+            createLesson(0, new Term(90, 0, LocalTime.of(10, 0)), new Term(90, 1, LocalTime.of(10, 0)),
+                    new Term(90, 0, LocalTime.of(12, 0))),
+            createLesson(1, new Term(90, 0, LocalTime.of(10, 0))),
+            createLesson(2, new Term(90, 0, LocalTime.of(12, 0)))),
+            2, new TimeDistanceManager(Arrays.asList(
+                    Arrays.asList(0, 15, 15, 15),
+                    Arrays.asList(15, 0, 15, 30),
+                    Arrays.asList(15, 15, 0, 15),
+                    Arrays.asList(15, 30, 15, 0))),
+            1, createOptimizedActivity(3, 2));
+
+    @Test
+    public void identifiesDaysByTimesAndTravelTimesOfEntries() {
+        DayScoreCache.DayKey key = createKey(0);
+
+        assertEquals(key, createKey(1));
+        assertEquals(key.hashCode(), createKey(1).hashCode());
+        assertNotEquals(key, createKey(2));
+        assertNotEquals(key, createKey(3));
+        assertEquals(createKey(2), createKey(4));
+    }
+
+    @Test
+    public void findsScoreOfDayWithTheSameEntries() {
+        DayScoreCache dayScoreCache = new DayScoreCache();
+        DayScoreCache.DayScore dayScore = new DayScoreCache.DayScore(120);
+        DayScoreCache.DayKey key = createKey(0);
+        dayScoreCache.put(key, dayScore);
+
+        assertSame(dayScore, dayScoreCache.get(createKey(1)));
+        assertNull(dayScoreCache.get(createKey(2)));
+
+        // the cache keeps a copy of the key, so refilling it doesn't change cached days
+        assertTrue(key.fill(compiledPlan, new int[]{compiledPlan.getFirstEntryOfTerm(2)}, 0, 1));
+        assertNull(dayScoreCache.get(key));
+        assertSame(dayScore, dayScoreCache.get(createKey(0)));
+    }
+
+    @Test
+    public void stopsAddingDaysWhenFull() {
+        DayScoreCache dayScoreCache = new DayScoreCache(1);
+        dayScoreCache.put(createKey(0), new DayScoreCache.DayScore(120));
+        dayScoreCache.put(createKey(2), new DayScoreCache.DayScore(60));
+
+        assertEquals(1, dayScoreCache.size());
+        assertNull(dayScoreCache.get(createKey(2)));
+    }
+
+    @Test
+    public void doesntCacheDaysWithTooManyEntries() {
+        int[] sortedEntries = new int[DayScoreCache.MAX_ENTRIES_IN_DAY + 1];
+
+        assertFalse(new DayScoreCache.DayKey().fill(compiledPlan, sortedEntries, 0, sortedEntries.length));
+    }
+
+    @Test
+    public void scoresDaysWithCachedEntriesFromCacheOfPlan() {
+        compiledPlan.getDayScoreCache().put(createKey(0), new DayScoreCache.DayScore(1));
+        int[] pickedTerms = {1, 0, 0};
+        // day 0 of the timetable has terms of lessons 1 and 2, it isn't cached yet
+        int scoreOfDay0 = new OptimalityCalculator(compiledPlan).calculateForDay(compiledPlan.toTimetable(pickedTerms), 0);
+
+        // day 1 has only term 1, which is the same day as the cached one with term 0
+        assertEquals(scoreOfDay0 + 1, new OptimalityCalculator(compiledPlan).calculate(pickedTerms));
+    }
+
+    private DayScoreCache.DayKey createKey(int term) {
+        DayScoreCache.DayKey key = new DayScoreCache.DayKey();
+        assertTrue(key.fill(compiledPlan, new int[]{compiledPlan.getFirstEntryOfTerm(term)}, 0, 1));
+        return key;
+    }
+}
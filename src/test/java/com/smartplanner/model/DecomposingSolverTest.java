@@ -0,0 +1,83 @@
+package com.smartplanner.model;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecomposingSolverTest {
+    private static final int NUMBER_OF_PLANS = 300;
+    private static final int NUMBER_OF_TIMETABLES = 3;
+
+    @Test
+    public void findsTheSameBestTimetablesAsSearchOfWholePlan() {
+        RandomPlans randomPlans = new RandomPlans(25);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.nextDecomposable();
+            DecomposingSolver decomposingSolver = new DecomposingSolver(compiledPlan, ForkJoinPool.commonPool());
+            assertTrue("plan " + plan, decomposingSolver.isDecomposable());
+
+            List<TimetableWithDecisionPointsAndScore> expected = new BranchAndBoundSolver(compiledPlan)
+                    .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+            List<TimetableWithDecisionPointsAndScore> actual = decomposingSolver
+                    .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+
+            assertSameTimetables("plan " + plan, expected, actual);
+        }
+    }
+
+    @Test
+    public void findsTheSameTimetableOfEveryCommuteLimitAsSearchOfWholePlan() {
+        RandomPlans randomPlans = new RandomPlans(26);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.nextDecomposable();
+
+            List<TimetableWithDecisionPointsAndScore> expected = new BranchAndBoundSolver(compiledPlan)
+                    .solveForEveryCommuteLimit(SolveBudget.unlimited(), new SolverProgress());
+            List<TimetableWithDecisionPointsAndScore> actual = new DecomposingSolver(compiledPlan,
+                    ForkJoinPool.commonPool()).solveForEveryCommuteLimit(SolveBudget.unlimited(), new SolverProgress());
+
+            assertSameTimetables("plan " + plan, expected, actual);
+        }
+    }
+
+    @Test
+    public void portfolioOfComponentsFindsTheSameScoresAsSearchOfWholePlan() {
+        RandomPlans randomPlans = new RandomPlans(27);
+        for (int plan = 0; plan < NUMBER_OF_PLANS / 10; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.nextDecomposable();
+
+            List<TimetableWithDecisionPointsAndScore> expected = new BranchAndBoundSolver(compiledPlan)
+                    .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+            List<TimetableWithDecisionPointsAndScore> actual = new SmartPlanner(compiledPlan)
+                    .getBestPlansByPortfolio(NUMBER_OF_TIMETABLES, plan, SolveBudget.unlimited(), new SolverProgress());
+
+            assertEquals("plan " + plan, expected.size(), actual.size());
+            for (int index = 0; index < expected.size(); ++index)
+                assertEquals("plan " + plan + ", timetable " + index,
+                        expected.get(index).getMinutesSpentAtOptimizedActivity(),
+                        actual.get(index).getMinutesSpentAtOptimizedActivity());
+            assertTrue("plan " + plan, actual.get(0).isProvenOptimal());
+        }
+    }
+
+    private static void assertSameTimetables(String message, List<TimetableWithDecisionPointsAndScore> expected,
+                                             List<TimetableWithDecisionPointsAndScore> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int index = 0; index < expected.size(); ++index) {
+            String messageOfTimetable = message + ", timetable " + index;
+            assertEquals(messageOfTimetable, expected.get(index).getMinutesSpentAtOptimizedActivity(),
+                    actual.get(index).getMinutesSpentAtOptimizedActivity());
+            assertArrayEquals(messageOfTimetable, expected.get(index).getPickedTerms(),
+                    actual.get(index).getPickedTerms());
+            assertEquals(messageOfTimetable, expected.get(index).isProvenOptimal(),
+                    actual.get(index).isProvenOptimal());
+            assertEquals(messageOfTimetable, expected.get(index).getUpperBoundOfMinutes(),
+                    actual.get(index).getUpperBoundOfMinutes());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.entity.Term;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.smartplanner.model.PlanFixtures.createLesson;
+import static com.smartplanner.model.PlanFixtures.createOptimizedActivity;
+import static com.smartplanner.model.PlanFixtures.createTimeDistanceManager;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GrayCodeLessonPickerTest {
+    @Test
+    public void visitsEveryCombinationExactlyOnceChangingOneTermAtATime() {
+        GrayCodeLessonPicker lessonPicker = new GrayCodeLessonPicker(createPlan(3, 1, 2, 4));
+        Set<String> combinations = new HashSet<String>();
+
+        assertEquals(-1, lessonPicker.getNextChangedLesson());
+        assertArrayEquals(new int[]{0, 0, 0, 0}, lessonPicker.getTermIndexes());
+        combinations.add(Arrays.toString(lessonPicker.getTermIndexes()));
+        while (lessonPicker.isNext()) {
+            int[] previous = lessonPicker.getTermIndexes().clone();
+            int changedLesson = lessonPicker.getNextChangedLesson();
+            int[] current = lessonPicker.getTermIndexes();
+
+            assertTrue(combinations.add(Arrays.toString(current)));
+            for (int lessonIndex = 0; lessonIndex < current.length; ++lessonIndex)
+                assertEquals(lessonIndex == changedLesson ? 1 : 0,
+                        Math.abs(current[lessonIndex] - previous[lessonIndex]));
+        }
+
+        assertEquals(3 * 2 * 4, combinations.size());
+    }
+
+    @Test
+    public void visitsSingleCombinationWhenNoLessonHasMoreTerms() {
+        GrayCodeLessonPicker lessonPicker = new GrayCodeLessonPicker(createPlan(1, 1));
+
+        assertTrue(lessonPicker.isNext());
+        assertEquals(-1, lessonPicker.getNextChangedLesson());
+        assertArrayEquals(new int[]{0, 0}, lessonPicker.getTermIndexes());
+        assertFalse(lessonPicker.isNext());
+    }
+
+    @Test
+    public void visitsNothingWhenSomeLessonHasNoTerms() {
+        assertFalse(new GrayCodeLessonPicker(createPlan(2, 0, 3)).isNext());
+    }
+
+    private CompiledPlan createPlan(int... numbersOfTerms) {
+        List<LessonWithPossibleTerms> lessons = new ArrayList<LessonWithPossibleTerms>();
+        for (int lessonIndex = 0; lessonIndex < numbersOfTerms.length; ++lessonIndex) {
+            Term[] possibleTerms = new Term[numbersOfTerms[lessonIndex]];
+            for (int termIndex = 0; termIndex < possibleTerms.length; ++termIndex)
+                possibleTerms[termIndex] = new Term(45, termIndex, LocalTime.of(8 + lessonIndex, 0));
+            lessons.add(createLesson(lessonIndex, possibleTerms));
+        }
+
+        return new CompiledPlan(lessons, 4, createTimeDistanceManager(numbersOfTerms.length + 1, 10), 1,
+                createOptimizedActivity(numbersOfTerms.length, 4));
+    }
+}
@@ -0,0 +1,113 @@
+package com.smartplanner.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IslandGeneticSolverTest {
+    private static final int NUMBER_OF_PLANS = 20;
+    private static final int NUMBER_OF_TIMETABLES = 3;
+    private static final int NUMBER_OF_ISLANDS = 4;
+    private static final long SEED = 7;
+    private static final int MAX_CANDIDATES = 500;
+    // the same as in IslandGeneticSolver
+    private static final int POPULATION_OF_ISLAND = 48;
+
+    @Test
+    public void findsTheSameTimetablesWithTheSameSeedOnAnyPool() {
+        RandomPlans randomPlans = new RandomPlans(23);
+        ForkJoinPool sequentialPool = new ForkJoinPool(1);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(NUMBER_OF_ISLANDS);
+        try {
+            for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+                CompiledPlan compiledPlan = randomPlans.next();
+                String message = "plan " + plan;
+
+                List<TimetableWithDecisionPointsAndScore> sequential = new IslandGeneticSolver(compiledPlan,
+                        sequentialPool, NUMBER_OF_ISLANDS, SEED)
+                        .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+                List<TimetableWithDecisionPointsAndScore> parallel = new IslandGeneticSolver(compiledPlan,
+                        forkJoinPool, NUMBER_OF_ISLANDS, SEED)
+                        .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+
+                assertEquals(message, sequential.size(), parallel.size());
+                for (int index = 0; index < sequential.size(); ++index) {
+                    assertEquals(message, sequential.get(index).getMinutesSpentAtOptimizedActivity(),
+                            parallel.get(index).getMinutesSpentAtOptimizedActivity());
+                    assertArrayEquals(message, sequential.get(index).getPickedTerms(),
+                            parallel.get(index).getPickedTerms());
+                    assertEquals(message, sequential.get(index).isProvenOptimal(),
+                            parallel.get(index).isProvenOptimal());
+                }
+            }
+        } finally {
+            sequentialPool.shutdown();
+            forkJoinPool.shutdown();
+        }
+    }
+
+    @Test
+    public void findsValidTimetablesNotBetterThanOptimal() {
+        RandomPlans randomPlans = new RandomPlans(24);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(NUMBER_OF_ISLANDS);
+        try {
+            for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+                CompiledPlan compiledPlan = randomPlans.next();
+                String message = "plan " + plan;
+                TimetableWithDecisionPointsAndScore optimal = new BranchAndBoundSolver(compiledPlan).solve();
+
+                List<TimetableWithDecisionPointsAndScore> actual = new IslandGeneticSolver(compiledPlan, forkJoinPool,
+                        NUMBER_OF_ISLANDS, SEED)
+                        .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+
+                if (optimal.getOptimalTimetable() == null) {
+                    assertEquals(message, 1, actual.size());
+                    assertNull(message, actual.get(0).getOptimalTimetable());
+                    continue;
+                }
+                for (TimetableWithDecisionPointsAndScore timetable : actual) {
+                    String timetableMessage = message + ", picks " + Arrays.toString(timetable.getPickedTerms());
+                    assertTrue(timetableMessage,
+                            new TimetableValidator(compiledPlan).isValid(timetable.getOptimalTimetable()));
+                    assertTrue(timetableMessage, timetable.getMinutesSpentAtOptimizedActivity()
+                            <= optimal.getMinutesSpentAtOptimizedActivity());
+                }
+                // the best timetable is proven optimal only when it reaches the upper bound of the score
+                if (actual.get(0).isProvenOptimal()) {
+                    assertEquals(message, optimal.getMinutesSpentAtOptimizedActivity(),
+                            actual.get(0).getMinutesSpentAtOptimizedActivity());
+                }
+            }
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    @Test
+    public void staysWithinLimitOfCandidates() {
+        RandomPlans randomPlans = new RandomPlans(25);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(NUMBER_OF_ISLANDS);
+        try {
+            for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+                CompiledPlan compiledPlan = randomPlans.next();
+                SolveBudget budget = new SolveBudget(null, (long) MAX_CANDIDATES);
+
+                new IslandGeneticSolver(compiledPlan, forkJoinPool, NUMBER_OF_ISLANDS, SEED)
+                        .solveForBestTimetables(NUMBER_OF_TIMETABLES, budget, new SolverProgress());
+
+                // every island may finish the generation in which the limit has been reached
+                assertTrue("plan " + plan, budget.getExaminedCandidates()
+                        <= MAX_CANDIDATES + NUMBER_OF_ISLANDS * POPULATION_OF_ISLAND);
+            }
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.smartplanner.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalSearchSolverTest {
+    private static final int NUMBER_OF_PLANS = 50;
+    private static final int NUMBER_OF_TIMETABLES = 3;
+    private static final long SEED = 7;
+
+    @Test
+    public void findsTheSameTimetablesWithTheSameSeed() {
+        RandomPlans randomPlans = new RandomPlans(21);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            String message = "plan " + plan;
+
+            List<TimetableWithDecisionPointsAndScore> first = new LocalSearchSolver(compiledPlan, SEED)
+                    .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+            List<TimetableWithDecisionPointsAndScore> second = new LocalSearchSolver(compiledPlan, SEED)
+                    .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+
+            assertEquals(message, first.size(), second.size());
+            for (int index = 0; index < first.size(); ++index) {
+                assertEquals(message, first.get(index).getMinutesSpentAtOptimizedActivity(),
+                        second.get(index).getMinutesSpentAtOptimizedActivity());
+                assertArrayEquals(message, first.get(index).getPickedTerms(), second.get(index).getPickedTerms());
+                assertEquals(message, first.get(index).isProvenOptimal(), second.get(index).isProvenOptimal());
+            }
+        }
+    }
+
+    @Test
+    public void findsValidTimetablesNotBetterThanOptimal() {
+        RandomPlans randomPlans = new RandomPlans(22);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            String message = "plan " + plan;
+            TimetableWithDecisionPointsAndScore optimal = new BranchAndBoundSolver(compiledPlan).solve();
+
+            List<TimetableWithDecisionPointsAndScore> actual = new LocalSearchSolver(compiledPlan, SEED)
+                    .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+
+            if (optimal.getOptimalTimetable() == null) {
+                assertEquals(message, 1, actual.size());
+                assertNull(message, actual.get(0).getOptimalTimetable());
+                continue;
+            }
+            for (TimetableWithDecisionPointsAndScore timetable : actual) {
+                String timetableMessage = message + ", picks " + Arrays.toString(timetable.getPickedTerms());
+                assertTrue(timetableMessage, new TimetableValidator(compiledPlan).isValid(timetable.getOptimalTimetable()));
+                assertTrue(timetableMessage, timetable.getMinutesSpentAtOptimizedActivity()
+                        <= optimal.getMinutesSpentAtOptimizedActivity());
+            }
+            // the best timetable is proven optimal only when it reaches the upper bound of the score
+            if (actual.get(0).isProvenOptimal()) {
+                assertEquals(message, optimal.getMinutesSpentAtOptimizedActivity(),
+                        actual.get(0).getMinutesSpentAtOptimizedActivity());
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.smartplanner.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OptimalityCalculatorTest {
+    private static final int NUMBER_OF_PLANS = 300;
+
+    @Test
+    public void scoresTimetablesTheSameAsEnumerationOfDecisionPoints() {
+        RandomPlans randomPlans = new RandomPlans(4);
+        int numberOfCheckedTimetables = 0;
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            TimetableValidator timetableValidator = new TimetableValidator(compiledPlan);
+            OptimalityCalculator optimalityCalculator = new OptimalityCalculator(compiledPlan);
+
+            for (int[] pickedTerms : RandomPlans.enumeratePickedTerms(compiledPlan)) {
+                ArrayList<TimetableEntry> timetable = compiledPlan.toTimetable(pickedTerms);
+                if (!timetableValidator.isValid(timetable))
+                    continue;
+
+                String message = "plan " + plan + ", timetable " + numberOfCheckedTimetables++;
+                TimetableWithDecisionPointsAndScore expected = optimalityCalculator.calculateByEnumeration(timetable);
+                TimetableWithDecisionPointsAndScore actual = optimalityCalculator.calculate(timetable);
+
+                assertEquals(message, expected.getMinutesSpentAtOptimizedActivity(),
+                        actual.getMinutesSpentAtOptimizedActivity());
+                assertEquals(message, expected.getOptimalDecisionPoints(), actual.getOptimalDecisionPoints());
+                assertEquals(message, actual.getMinutesSpentAtOptimizedActivity(),
+                        optimalityCalculator.calculate(pickedTerms));
+            }
+        }
+        assertTrue(numberOfCheckedTimetables > NUMBER_OF_PLANS);
+    }
+
+    @Test
+    public void scoresEveryDayTheSameAsWholeTimetable() {
+        RandomPlans randomPlans = new RandomPlans(5);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            TimetableValidator timetableValidator = new TimetableValidator(compiledPlan);
+            OptimalityCalculator optimalityCalculator = new OptimalityCalculator(compiledPlan);
+
+            for (int[] pickedTerms : RandomPlans.enumeratePickedTerms(compiledPlan)) {
+                ArrayList<TimetableEntry> timetable = compiledPlan.toTimetable(pickedTerms);
+                if (!timetableValidator.isValid(timetable))
+                    continue;
+
+                int scoreOfDays = 0;
+                for (int cycleDayNumber = 0; cycleDayNumber < compiledPlan.getDaysInCycle(); ++cycleDayNumber)
+                    scoreOfDays += optimalityCalculator.calculateForDay(timetable, cycleDayNumber);
+
+                assertEquals("plan " + plan, optimalityCalculator.calculate(timetable)
+                        .getMinutesSpentAtOptimizedActivity(), scoreOfDays);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.entity.OptimizedActivity;
+import com.smartplanner.model.entity.Term;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Building blocks of small hand-written plans for tests of a single behaviour, see RandomPlans for cross-checks
+ */
+class PlanFixtures {
+    private PlanFixtures() {
+    }
+
+    /**
+     * Creates lesson that takes place once in cycle
+     *
+     * @param id id of the lesson, also its place in the commute matrix
+     * @param possibleTerms possible terms of the lesson
+     * @return lesson with provided terms
+     */
+    static LessonWithPossibleTerms createLesson(int id, Term... possibleTerms) {
+        LessonWithPossibleTerms lesson = new LessonWithPossibleTerms();
+        lesson.setId(id);
+        lesson.setName("Lesson " + id);
+        lesson.setPossibleTerms(Arrays.asList(possibleTerms));
+        return lesson;
+    }
+
+    /**
+     * Creates optimized activity opened from 7:00 to 19:00 every day, for one to eight hours a day
+     *
+     * @param id id of the activity, also its place in the commute matrix
+     * @param daysInCycle amount of days in cycle of the plan
+     * @return optimized activity
+     */
+    static OptimizedActivity createOptimizedActivity(int id, int daysInCycle) {
+        OptimizedActivity optimizedActivity = new OptimizedActivity();
+        optimizedActivity.setId(id);
+        optimizedActivity.setName("Work");
+        optimizedActivity.setStartsAt(LocalTime.of(7, 0));
+        optimizedActivity.setEndsAt(LocalTime.of(19, 0));
+        optimizedActivity.setMinTimeInMinutes(60);
+        optimizedActivity.setMaxTimeInMinutes(480);
+        optimizedActivity.setIsOpenedInDay(new ArrayList<Boolean>(Collections.nCopies(daysInCycle, true)));
+        return optimizedActivity;
+    }
+
+    /**
+     * Creates commute matrix with the same travel time between every two different places
+     *
+     * @param numberOfPlaces amount of lessons and activities
+     * @param minutes travel time between different places
+     * @return commute matrix
+     */
+    static TimeDistanceManager createTimeDistanceManager(int numberOfPlaces, int minutes) {
+        List<List<Integer>> timeDistances = new ArrayList<List<Integer>>();
+        for (int fromId = 0; fromId < numberOfPlaces; ++fromId) {
+            List<Integer> row = new ArrayList<Integer>(Collections.nCopies(numberOfPlaces, minutes));
+            row.set(fromId, 0);
+            timeDistances.add(row);
+        }
+        return new TimeDistanceManager(timeDistances);
+    }
+}
@@ -0,0 +1,49 @@
+package com.smartplanner.model;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PortfolioSolverTest {
+    private static final int NUMBER_OF_PLANS = 200;
+    private static final int NUMBER_OF_TIMETABLES = 3;
+    private static final long SEED = 23;
+
+    @Test
+    public void findsTheSameTimetablesAsExactSearch() {
+        RandomPlans randomPlans = new RandomPlans(23);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        try {
+            for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+                CompiledPlan compiledPlan = randomPlans.next();
+
+                List<TimetableWithDecisionPointsAndScore> expected = new BranchAndBoundSolver(compiledPlan, forkJoinPool)
+                        .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+                List<TimetableWithDecisionPointsAndScore> actual = new PortfolioSolver(compiledPlan, forkJoinPool, SEED)
+                        .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+
+                assertEquals("plan " + plan, expected.size(), actual.size());
+                for (int index = 0; index < expected.size(); ++index) {
+                    String message = "plan " + plan + ", timetable " + index;
+                    assertEquals(message, expected.get(index).getMinutesSpentAtOptimizedActivity(),
+                            actual.get(index).getMinutesSpentAtOptimizedActivity());
+                    assertTrue(message, actual.get(index).isProvenOptimal());
+                }
+                // a heuristic search that reaches the upper bound stops the race, maybe with other timetables of the
+                // same score, otherwise the exact search has finished and it breaks ties
+                if (actual.get(0).getMinutesSpentAtOptimizedActivity() >= ScoredTimetables.getMaxScore(compiledPlan))
+                    continue;
+                for (int index = 0; index < expected.size(); ++index)
+                    assertArrayEquals("plan " + plan + ", timetable " + index, expected.get(index).getPickedTerms(),
+                            actual.get(index).getPickedTerms());
+            }
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.entity.OptimizedActivity;
+import com.smartplanner.model.entity.Term;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of small random plans for cross-checks of solvers against enumeration of every timetable. Plans have
+ * at most a few hundred combinations of terms, so enumeration stays fast, but terms overlap often enough that many
+ * combinations are invalid. Travel times are random, so they often don't satisfy triangle inequality.
+ */
+class RandomPlans {
+    private static final int MAX_LESSONS = 6;
+    private static final int MAX_TERMS_OF_LESSON = 3;
+    private static final int[] DURATIONS_IN_MINUTES = {45, 90, 135};
+
+    private final Random random;
+
+    /**
+     * Creates generator of plans
+     *
+     * @param seed seed of the generator, the same seed gives the same plans
+     */
+    RandomPlans(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates plan whose lessons may share any cycle day
+     *
+     * @return compiled plan with 1 to 6 lessons and 2 to 5 days in cycle
+     */
+    CompiledPlan next() {
+        int daysInCycle = 2 + random.nextInt(4);
+        int numberOfLessons = 1 + random.nextInt(MAX_LESSONS);
+        int[] firstDayOfLesson = new int[numberOfLessons];
+        int[] daysOfLesson = new int[numberOfLessons];
+        for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex)
+            daysOfLesson[lessonIndex] = daysInCycle;
+
+        return generate(daysInCycle, firstDayOfLesson, daysOfLesson);
+    }
+
+    /**
+     * Generates plan whose lessons split into at least two groups that don't share any cycle day (see
+     * DecomposingSolver)
+     *
+     * @return compiled plan with 2 to 6 lessons and 4 or 6 days in cycle
+     */
+    CompiledPlan nextDecomposable() {
+        int daysInCycle = 4 + 2 * random.nextInt(2);
+        int numberOfLessons = 2 + random.nextInt(MAX_LESSONS - 1);
+        int[] firstDayOfLesson = new int[numberOfLessons];
+        int[] daysOfLesson = new int[numberOfLessons];
+        for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex) {
+            // the first two lessons are in different halves of the cycle, the others in any of them
+            int half = lessonIndex < 2 ? lessonIndex : random.nextInt(2);
+            firstDayOfLesson[lessonIndex] = half * daysInCycle / 2;
+            daysOfLesson[lessonIndex] = daysInCycle / 2;
+        }
+
+        return generate(daysInCycle, firstDayOfLesson, daysOfLesson);
+    }
+
+    private CompiledPlan generate(int daysInCycle, int[] firstDayOfLesson, int[] daysOfLesson) {
+        int numberOfLessons = firstDayOfLesson.length;
+        List<LessonWithPossibleTerms> lessons = new ArrayList<LessonWithPossibleTerms>();
+        for (int lessonIndex = 0; lessonIndex < numberOfLessons; ++lessonIndex) {
+            LessonWithPossibleTerms lesson = new LessonWithPossibleTerms();
+            lesson.setId(lessonIndex);
+            lesson.setName("Lesson " + lessonIndex);
+            // lessons repeat every cycle, so they stay on the days they were generated for
+            lesson.setRepeatingPeriod(daysInCycle);
+
+            List<Term> possibleTerms = new ArrayList<Term>();
+            int numberOfTerms = 1 + random.nextInt(MAX_TERMS_OF_LESSON);
+            for (int termIndex = 0; termIndex < numberOfTerms; ++termIndex) {
+                int cycleDayNumber = firstDayOfLesson[lessonIndex] + random.nextInt(daysOfLesson[lessonIndex]);
+                LocalTime startTime = LocalTime.of(8, 0).plusMinutes(15 * random.nextInt(40));
+                possibleTerms.add(new Term(DURATIONS_IN_MINUTES[random.nextInt(DURATIONS_IN_MINUTES.length)],
+                        cycleDayNumber, startTime));
+            }
+            lesson.setPossibleTerms(possibleTerms);
+            lessons.add(lesson);
+        }
+
+        OptimizedActivity optimizedActivity = new OptimizedActivity();
+        optimizedActivity.setId(numberOfLessons);
+        optimizedActivity.setName("Work");
+        optimizedActivity.setStartsAt(LocalTime.of(7, 0));
+        optimizedActivity.setEndsAt(LocalTime.of(19, 0));
+        optimizedActivity.setMinTimeInMinutes(30 + 30 * random.nextInt(3));
+        optimizedActivity.setMaxTimeInMinutes(240 + 60 * random.nextInt(5));
+        List<Boolean> isOpenedInDay = new ArrayList<Boolean>();
+        for (int cycleDayNumber = 0; cycleDayNumber < daysInCycle; ++cycleDayNumber)
+            isOpenedInDay.add(random.nextInt(5) != 0);
+        optimizedActivity.setIsOpenedInDay(isOpenedInDay);
+
+        TimeDistanceManager timeDistanceManager = new TimeDistanceManager(generateTimeDistances(numberOfLessons + 1));
+        return new CompiledPlan(lessons, daysInCycle, timeDistanceManager, 1 + random.nextInt(3), optimizedActivity);
+    }
+
+    private List<List<Integer>> generateTimeDistances(int numberOfPlaces) {
+        int[][] timeDistances = new int[numberOfPlaces][numberOfPlaces];
+        for (int fromId = 0; fromId < numberOfPlaces; ++fromId)
+            for (int toId = fromId + 1; toId < numberOfPlaces; ++toId) {
+                timeDistances[fromId][toId] = 5 + random.nextInt(40);
+                timeDistances[toId][fromId] = timeDistances[fromId][toId];
+            }
+
+        List<List<Integer>> rows = new ArrayList<List<Integer>>();
+        for (int[] row : timeDistances) {
+            List<Integer> values = new ArrayList<Integer>();
+            for (int value : row)
+                values.add(value);
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns every combination of picked terms of the plan
+     *
+     * @param compiledPlan plan with lessons and possible terms
+     * @return term index for each lesson of every combination
+     */
+    static List<int[]> enumeratePickedTerms(CompiledPlan compiledPlan) {
+        List<int[]> combinations = new ArrayList<int[]>();
+        int[] pickedTerms = new int[compiledPlan.getNumberOfLessons()];
+        for (int lessonIndex = 0; lessonIndex < pickedTerms.length; ++lessonIndex)
+            if (compiledPlan.getNumberOfTerms(lessonIndex) == 0)
+                return combinations;
+
+        while (true) {
+            combinations.add(pickedTerms.clone());
+            int lessonIndex = 0;
+            while (lessonIndex < pickedTerms.length
+                    && ++pickedTerms[lessonIndex] == compiledPlan.getNumberOfTerms(lessonIndex))
+                pickedTerms[lessonIndex++] = 0;
+            if (lessonIndex == pickedTerms.length)
+                return combinations;
+        }
+    }
+
+    /**
+     * Returns scores of every valid timetable of the plan, the ones with score 0 are left out like in results of
+     * solvers
+     *
+     * @param compiledPlan plan with lessons, possible terms and optimized activity
+     * @return scores in descending order
+     */
+    static List<Integer> scoreValidTimetables(CompiledPlan compiledPlan) {
+        TimetableValidator timetableValidator = new TimetableValidator(compiledPlan);
+        OptimalityCalculator optimalityCalculator = new OptimalityCalculator(compiledPlan);
+        List<Integer> scores = new ArrayList<Integer>();
+        for (int[] pickedTerms : enumeratePickedTerms(compiledPlan)) {
+            if (!timetableValidator.isValid(compiledPlan.toTimetable(pickedTerms)))
+                continue;
+
+            int score = optimalityCalculator.calculate(compiledPlan.toTimetable(pickedTerms))
+                    .getMinutesSpentAtOptimizedActivity();
+            if (score > 0)
+                scores.add(score);
+        }
+
+        scores.sort((lhs, rhs) -> Integer.compare(rhs, lhs));
+        return scores;
+    }
+}
@@ -0,0 +1,63 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.entity.Term;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+
+import static com.smartplanner.model.PlanFixtures.createLesson;
+import static com.smartplanner.model.PlanFixtures.createOptimizedActivity;
+import static com.smartplanner.model.PlanFixtures.createTimeDistanceManager;
+import static org.junit.Assert.assertEquals;
+
+public class SearchSpaceEstimatorTest {
+    private static final int NUMBER_OF_PROBES = 16;
+    private static final LocalTime START_TIME = LocalTime.of(10, 0);
+
+    @Test
+    public void estimatesExactSizesOfPlanWithIndependentLessons() {
+        // every term takes place on its own day, so every lesson is a component searched on its own
+        CompiledPlan compiledPlan = new CompiledPlan(Arrays.asList(
+                createLesson(0, new Term(90, 5, START_TIME), new Term(90, 6, START_TIME), new Term(90, 7, START_TIME),
+                        new Term(90, 8, START_TIME)),
+                createLesson(1, new Term(90, 0, START_TIME), new Term(90, 1, START_TIME)),
+                createLesson(2, new Term(90, 2, START_TIME), new Term(90, 3, START_TIME), new Term(90, 4, START_TIME))),
+                9, createTimeDistanceManager(4, 15), 1, createOptimizedActivity(3, 9));
+
+        SearchSpaceEstimate estimate = new SearchSpaceEstimator(compiledPlan).estimate(NUMBER_OF_PROBES);
+
+        assertEquals(24, estimate.getRawSize(), 0);
+        assertEquals(2 + 3 + 4, estimate.getCandidates(), 0);
+        assertEquals(24, estimate.getValidTimetables(), 0);
+    }
+
+    @Test
+    public void estimatesSizesLeftAfterConflicts() {
+        // both lessons take place at the same time, so they have to be picked on different days
+        CompiledPlan compiledPlan = new CompiledPlan(Arrays.asList(
+                createLesson(0, new Term(90, 0, START_TIME), new Term(90, 1, START_TIME)),
+                createLesson(1, new Term(90, 0, START_TIME), new Term(90, 1, START_TIME))),
+                2, createTimeDistanceManager(3, 15), 1, createOptimizedActivity(2, 2));
+
+        SearchSpaceEstimate estimate = new SearchSpaceEstimator(compiledPlan).estimate(NUMBER_OF_PROBES);
+
+        assertEquals(4, estimate.getRawSize(), 0);
+        assertEquals(2 + 2 * 2, estimate.getCandidates(), 0);
+        assertEquals(2, estimate.getValidTimetables(), 0);
+    }
+
+    @Test
+    public void estimatesEmptySearchSpaceWhenSomeLessonHasNoTerms() {
+        CompiledPlan compiledPlan = new CompiledPlan(Arrays.asList(
+                createLesson(0, new Term(90, 0, START_TIME), new Term(90, 1, START_TIME)),
+                createLesson(1)),
+                2, createTimeDistanceManager(3, 15), 1, createOptimizedActivity(2, 2));
+
+        SearchSpaceEstimate estimate = new SearchSpaceEstimator(compiledPlan).estimate(NUMBER_OF_PROBES);
+
+        assertEquals(0, estimate.getRawSize(), 0);
+        assertEquals(0, estimate.getCandidates(), 0);
+        assertEquals(0, estimate.getValidTimetables(), 0);
+    }
+}
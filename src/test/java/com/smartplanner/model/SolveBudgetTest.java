@@ -0,0 +1,36 @@
+package com.smartplanner.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SolveBudgetTest {
+
+    @Test
+    public void chargesCandidatesOfPartsOfSearchToTheirParent() {
+        SolveBudget budget = new SolveBudget(null, 1_000L);
+        SolveBudget exactSearch = budget.createChildWithRemainingLimits();
+        SolveBudget heuristicSearch = budget.createChildWithTimeLimit(60_000);
+
+        assertFalse(exactSearch.examineCandidates(600));
+        // each part alone is within the limit, together they exhaust it
+        assertTrue(heuristicSearch.examineCandidates(600));
+
+        assertEquals(1_200, budget.getExaminedCandidates());
+        assertTrue(budget.isExhausted());
+        assertTrue(exactSearch.examineCandidates(1));
+    }
+
+    @Test
+    public void cancelsChildrenTogetherWithParent() {
+        SolveBudget budget = SolveBudget.unlimited();
+        SolveBudget child = budget.createChildWithRemainingLimits();
+
+        budget.cancel();
+
+        assertTrue(child.isCancelled());
+        assertTrue(child.examineCandidates(1));
+    }
+}
@@ -0,0 +1,48 @@
+package com.smartplanner.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SolveRouterTest {
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void rejectsPlansWithTooManyCandidates() {
+        SolveRouter solveRouter = new SolveRouter(1_000, 100, 10, 0, 1_000_000);
+
+        assertEquals(SolveRoute.EXACT, solveRouter.route(new SearchSpaceEstimate(100, 100, 10)));
+        assertEquals(SolveRoute.REJECT, solveRouter.route(new SearchSpaceEstimate(1_000, 101, 10)));
+    }
+
+    @Test
+    public void searchesPlansThatWouldTakeTooLongHeuristically() {
+        // one candidate per millisecond
+        SolveRouter solveRouter = new SolveRouter(1_000, 1e15, 10, 0, 1_000);
+
+        assertEquals(500, solveRouter.predictSolveTimeInMillis(new SearchSpaceEstimate(500, 500, 10)), DELTA);
+        assertEquals(SolveRoute.EXACT, solveRouter.route(new SearchSpaceEstimate(1_000, 1_000, 10)));
+        assertEquals(SolveRoute.HEURISTIC, solveRouter.route(new SearchSpaceEstimate(5_000, 5_000, 10)));
+    }
+
+    @Test
+    public void learnsThroughputFromCompletedSearches() {
+        SolveRouter solveRouter = new SolveRouter(1_000, 1e15, 10, 0, 1_000);
+        SearchSpaceEstimate estimate = new SearchSpaceEstimate(1_000, 1_000, 10);
+
+        // 10^4 candidates per millisecond moves the logarithm of the throughput by a fifth of the way
+        solveRouter.recordSearch(new SearchSpaceEstimate(1e6, 1e6, 10), 100_000_000);
+
+        assertEquals(1_000 / Math.pow(1e4, 0.2), solveRouter.predictSolveTimeInMillis(estimate), DELTA);
+    }
+
+    @Test
+    public void ignoresSearchesTooShortToBeMeasured() {
+        SolveRouter solveRouter = new SolveRouter(1_000, 1e15, 10, 0, 1_000);
+        SearchSpaceEstimate estimate = new SearchSpaceEstimate(1_000, 1_000, 10);
+
+        solveRouter.recordSearch(new SearchSpaceEstimate(1e6, 1e6, 10), 1_000_000);
+
+        assertEquals(1_000, solveRouter.predictSolveTimeInMillis(estimate), DELTA);
+    }
+}
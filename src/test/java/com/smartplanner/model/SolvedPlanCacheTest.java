@@ -0,0 +1,120 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.entity.Term;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static com.smartplanner.model.PlanFixtures.createLesson;
+import static com.smartplanner.model.PlanFixtures.createOptimizedActivity;
+import static com.smartplanner.model.PlanFixtures.createTimeDistanceManager;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SolvedPlanCacheTest {
+    private static final long TIME_TO_LIVE_IN_MILLIS = 60_000;
+
+    private final AtomicInteger numberOfSearches = new AtomicInteger();
+
+    @Test
+    public void returnsCachedTimetableOfPlanWithTheSameFingerprint() {
+        SolvedPlanCache solvedPlanCache = new SolvedPlanCache(10, TIME_TO_LIVE_IN_MILLIS);
+        TimetableWithDecisionPointsAndScore solved = solvedPlanCache.getOrSolve(createPlan(), SolveBudget.unlimited(),
+                countedSearch(createPlan()));
+
+        CompiledPlan samePlan = createPlan();
+        TimetableWithDecisionPointsAndScore cached = solvedPlanCache.getOrSolve(samePlan, SolveBudget.unlimited(),
+                countedSearch(samePlan));
+
+        assertEquals(1, numberOfSearches.get());
+        assertEquals(solved.getMinutesSpentAtOptimizedActivity(), cached.getMinutesSpentAtOptimizedActivity());
+        assertArrayEquals(solved.getPickedTerms(), cached.getPickedTerms());
+        assertEquals(solved.getOptimalTimetable(), cached.getOptimalTimetable());
+    }
+
+    @Test
+    public void coalescesConcurrentSearchesOfTheSamePlan() throws InterruptedException {
+        SolvedPlanCache solvedPlanCache = new SolvedPlanCache(10, TIME_TO_LIVE_IN_MILLIS);
+        CountDownLatch hasFirstSearchStarted = new CountDownLatch(1);
+        CountDownLatch canFirstSearchFinish = new CountDownLatch(1);
+        CompiledPlan firstPlan = createPlan();
+        Supplier<TimetableWithDecisionPointsAndScore> firstSearch = () -> {
+            hasFirstSearchStarted.countDown();
+            try {
+                canFirstSearchFinish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return countedSearch(firstPlan).get();
+        };
+        AtomicReference<TimetableWithDecisionPointsAndScore> firstResult = new AtomicReference<>();
+        AtomicReference<TimetableWithDecisionPointsAndScore> secondResult = new AtomicReference<>();
+        CompiledPlan secondPlan = createPlan();
+
+        Thread first = new Thread(() -> firstResult.set(
+                solvedPlanCache.getOrSolve(firstPlan, SolveBudget.unlimited(), firstSearch)));
+        first.start();
+        hasFirstSearchStarted.await();
+        Thread second = new Thread(() -> secondResult.set(
+                solvedPlanCache.getOrSolve(secondPlan, SolveBudget.unlimited(), countedSearch(secondPlan))));
+        second.start();
+        // the second search waits in steps, so it's timed waiting until the first one finishes
+        while (second.isAlive() && second.getState() != Thread.State.TIMED_WAITING)
+            Thread.yield();
+        canFirstSearchFinish.countDown();
+        first.join();
+        second.join();
+
+        assertEquals(1, numberOfSearches.get());
+        assertEquals(firstResult.get().getMinutesSpentAtOptimizedActivity(),
+                secondResult.get().getMinutesSpentAtOptimizedActivity());
+        assertArrayEquals(firstResult.get().getPickedTerms(), secondResult.get().getPickedTerms());
+    }
+
+    @Test
+    public void doesntCacheTimetablesThatArentProvenOptimal() {
+        SolvedPlanCache solvedPlanCache = new SolvedPlanCache(10, TIME_TO_LIVE_IN_MILLIS);
+        CompiledPlan compiledPlan = createPlan();
+        solvedPlanCache.getOrSolve(compiledPlan, SolveBudget.unlimited(),
+                () -> countedSearch(compiledPlan).get().withSearchOutcome(false, Integer.MAX_VALUE));
+
+        solvedPlanCache.getOrSolve(compiledPlan, SolveBudget.unlimited(), countedSearch(compiledPlan));
+
+        assertEquals(2, numberOfSearches.get());
+        assertEquals(1, solvedPlanCache.size());
+    }
+
+    @Test
+    public void solvesPlanAgainAfterItExpires() {
+        SolvedPlanCache solvedPlanCache = new SolvedPlanCache(10, 0);
+        CompiledPlan compiledPlan = createPlan();
+        solvedPlanCache.getOrSolve(compiledPlan, SolveBudget.unlimited(), countedSearch(compiledPlan));
+
+        TimetableWithDecisionPointsAndScore timetable = solvedPlanCache.getOrSolve(compiledPlan,
+                SolveBudget.unlimited(), countedSearch(compiledPlan));
+
+        assertEquals(2, numberOfSearches.get());
+        assertTrue(timetable.isProvenOptimal());
+    }
+
+    private Supplier<TimetableWithDecisionPointsAndScore> countedSearch(CompiledPlan compiledPlan) {
+        return () -> {
+            numberOfSearches.incrementAndGet();
+            return new BranchAndBoundSolver(compiledPlan).solve();
+        };
+    }
+
+    // every call creates new objects of the same plan, so they only share the fingerprint
+    private CompiledPlan createPlan() {
+        return new CompiledPlan(Arrays.asList(
+                createLesson(0, new Term(90, 0, LocalTime.of(8, 0)), new Term(90, 1, LocalTime.of(8, 0))),
+                createLesson(1, new Term(60, 0, LocalTime.of(12, 0)), new Term(60, 1, LocalTime.of(9, 0)))),
+                2, createTimeDistanceManager(3, 15), 1, createOptimizedActivity(2, 2));
+    }
+}
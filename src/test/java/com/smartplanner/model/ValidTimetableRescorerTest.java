@@ -0,0 +1,64 @@
+package com.smartplanner.model;
+
+import com.smartplanner.model.entity.OptimizedActivity;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ValidTimetableRescorerTest {
+    private static final int NUMBER_OF_PLANS = 200;
+    private static final int NUMBER_OF_TIMETABLES = 3;
+
+    @Test
+    public void findsTheSameTimetablesAsSearchWithChangedOptimizedActivity() {
+        RandomPlans randomPlans = new RandomPlans(17);
+        for (int plan = 0; plan < NUMBER_OF_PLANS; ++plan) {
+            CompiledPlan compiledPlan = randomPlans.next();
+            String message = "plan " + plan;
+
+            try (ValidTimetableStore validTimetableStore = new ValidTimetableStore(compiledPlan, Long.MAX_VALUE)) {
+                new BranchAndBoundSolver(compiledPlan).withValidTimetableStore(validTimetableStore)
+                        .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+                assertTrue(message, validTimetableStore.isComplete());
+
+                CompiledPlan changedPlan = new CompiledPlan(compiledPlan.getLessons(), compiledPlan.getDaysInCycle(),
+                        compiledPlan.getTimeDistanceManager(), compiledPlan.getMaxCommutesPerDay(),
+                        changeOptimizedActivity(compiledPlan.getOptimizedActivity()));
+                List<TimetableWithDecisionPointsAndScore> expected = new BranchAndBoundSolver(changedPlan)
+                        .solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(), new SolverProgress());
+                List<TimetableWithDecisionPointsAndScore> actual = new ValidTimetableRescorer(changedPlan,
+                        validTimetableStore).solveForBestTimetables(NUMBER_OF_TIMETABLES, SolveBudget.unlimited(),
+                        new SolverProgress());
+
+                assertEquals(message, expected.size(), actual.size());
+                for (int index = 0; index < expected.size(); ++index) {
+                    assertEquals(message, expected.get(index).getMinutesSpentAtOptimizedActivity(),
+                            actual.get(index).getMinutesSpentAtOptimizedActivity());
+                    assertArrayEquals(message, expected.get(index).getPickedTerms(),
+                            actual.get(index).getPickedTerms());
+                    assertTrue(message, actual.get(index).isProvenOptimal());
+                }
+            }
+        }
+    }
+
+    // shorter hours, other limits and the first day of the cycle closed, the place stays the same
+    private OptimizedActivity changeOptimizedActivity(OptimizedActivity optimizedActivity) {
+        OptimizedActivity changedActivity = new OptimizedActivity();
+        changedActivity.setId(optimizedActivity.getId());
+        changedActivity.setName(optimizedActivity.getName());
+        changedActivity.setStartsAt(optimizedActivity.getStartsAt().plusHours(1));
+        changedActivity.setEndsAt(optimizedActivity.getEndsAt().minusHours(2));
+        changedActivity.setMinTimeInMinutes(optimizedActivity.getMinTimeInMinutes() + 15);
+        changedActivity.setMaxTimeInMinutes(optimizedActivity.getMaxTimeInMinutes() - 30);
+        List<Boolean> isOpenedInDay = new ArrayList<Boolean>(optimizedActivity.getIsOpenedInDay());
+        isOpenedInDay.set(0, false);
+        changedActivity.setIsOpenedInDay(isOpenedInDay);
+        return changedActivity;
+    }
+}
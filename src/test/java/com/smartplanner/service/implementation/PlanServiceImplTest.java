@@ -0,0 +1,180 @@
+package com.smartplanner.service.implementation;
+
+import com.smartplanner.exception.InvalidDataProvidedException;
+import com.smartplanner.model.LessonWithPossibleTerms;
+import com.smartplanner.model.SolveBudget;
+import com.smartplanner.model.SolveRouter;
+import com.smartplanner.model.SolvedPlanCache;
+import com.smartplanner.model.dto.PlanBatchInputDto;
+import com.smartplanner.model.dto.PlanBatchResultDto;
+import com.smartplanner.model.dto.PlanInputDto;
+import com.smartplanner.model.entity.OptimizedActivity;
+import com.smartplanner.model.entity.Term;
+import com.smartplanner.model.entity.User;
+import com.smartplanner.repository.PlanRepository;
+import com.smartplanner.repository.UserRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PlanServiceImplTest {
+    private static final String USERNAME = "user";
+
+    private PlanRepository planRepository;
+    private UserRepository userRepository;
+    private ForkJoinPool forkJoinPool;
+    private PlanServiceImpl planService;
+
+    @Before
+    public void setUp() {
+        planRepository = mock(PlanRepository.class);
+        when(planRepository.saveAll(anyIterable())).thenAnswer(invocation -> invocation.getArgument(0));
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findByUsername(anyString())).thenReturn(new User());
+        forkJoinPool = new ForkJoinPool(2);
+        planService = createPlanService(new SolveRouter(60_000, 1e15, 10_000, 0, 2_000_000));
+    }
+
+    @After
+    public void tearDown() {
+        forkJoinPool.shutdown();
+    }
+
+    @Test
+    public void reportsErrorsOfPlansThatCantBeGeneratedAndSavesTheOthers() {
+        PlanBatchInputDto planBatchInputDto = createBatch(
+                createPlan(createOptimizedActivity(2)),
+                createPlan(null),
+                createPlan(createOptimizedActivity(7)),
+                createPlan(createOptimizedActivity(2)));
+
+        List<PlanBatchResultDto> results = planService.generateOptimalPlans(planBatchInputDto, USERNAME,
+                SolveBudget.unlimited());
+
+        assertEquals(4, results.size());
+        for (int index : new int[]{0, 3}) {
+            assertNotNull(results.get(index).getPlan());
+            assertNull(results.get(index).getErrorMessage());
+        }
+        assertNull(results.get(1).getPlan());
+        assertEquals("Optimized activity is missing", results.get(1).getErrorMessage());
+        assertNull(results.get(2).getPlan());
+        assertEquals("Commute matrix doesn't contain the optimized activity", results.get(2).getErrorMessage());
+        verify(planRepository, times(1)).saveAll(anyIterable());
+    }
+
+    @Test
+    public void reportsPlansRejectedBecauseOfTheirSizeWithoutAbortingBatch() {
+        // no plan is small enough to be searched
+        PlanServiceImpl planService = createPlanService(new SolveRouter(60_000, 1, 10_000, 0, 2_000_000));
+        PlanBatchInputDto planBatchInputDto = createBatch(
+                createPlan(createOptimizedActivity(2)),
+                createPlan(null));
+
+        List<PlanBatchResultDto> results = planService.generateOptimalPlans(planBatchInputDto, USERNAME,
+                SolveBudget.unlimited());
+
+        assertEquals(2, results.size());
+        assertNull(results.get(0).getPlan());
+        assertTrue(results.get(0).getErrorMessage().startsWith("Plan has about"));
+        assertEquals("Optimized activity is missing", results.get(1).getErrorMessage());
+    }
+
+    @Test
+    public void reportsEveryPlanWhenNoneOfThemHasValidOptimizedActivity() {
+        PlanBatchInputDto planBatchInputDto = createBatch(
+                createPlan(null),
+                createPlan(createOptimizedActivity(7)));
+
+        List<PlanBatchResultDto> results = planService.generateOptimalPlans(planBatchInputDto, USERNAME,
+                SolveBudget.unlimited());
+
+        assertEquals(2, results.size());
+        assertEquals("Optimized activity is missing", results.get(0).getErrorMessage());
+        assertNull(results.get(1).getPlan());
+        assertEquals("Commute matrix doesn't contain the optimized activity", results.get(1).getErrorMessage());
+    }
+
+    @Test
+    public void leavesPlansOfBatchUnchanged() {
+        PlanInputDto planInputDto = createPlan(createOptimizedActivity(2));
+        PlanBatchInputDto planBatchInputDto = createBatch(planInputDto);
+
+        planService.generateOptimalPlans(planBatchInputDto, USERNAME, SolveBudget.unlimited());
+
+        assertNull(planInputDto.getLessons());
+        assertNull(planInputDto.getTimeDistanceInMinutes());
+        assertEquals(0, planInputDto.getDaysInCycle());
+    }
+
+    @Test(expected = InvalidDataProvidedException.class)
+    public void rejectsBatchWithoutPlans() {
+        planService.generateOptimalPlans(createBatch(), USERNAME, SolveBudget.unlimited());
+    }
+
+    private PlanServiceImpl createPlanService(SolveRouter solveRouter) {
+        return new PlanServiceImpl(planRepository, userRepository, forkJoinPool, new SolvedPlanCache(10, 60_000),
+                solveRouter);
+    }
+
+    // two lessons at places 0 and 1, optimized activity should be at place 2
+    private PlanBatchInputDto createBatch(PlanInputDto... plans) {
+        PlanBatchInputDto planBatchInputDto = new PlanBatchInputDto();
+        planBatchInputDto.setDaysInCycle(2);
+        planBatchInputDto.setLessons(Arrays.asList(
+                createLesson(0, new Term(90, 0, LocalTime.of(8, 0)), new Term(90, 1, LocalTime.of(10, 0))),
+                createLesson(1, new Term(60, 0, LocalTime.of(12, 0)))));
+        planBatchInputDto.setTimeDistanceInMinutes(Arrays.asList(
+                Arrays.asList(0, 15, 15),
+                Arrays.asList(15, 0, 15),
+                Arrays.asList(15, 15, 0)));
+        planBatchInputDto.setPlans(new ArrayList<>(Arrays.asList(plans)));
+        return planBatchInputDto;
+    }
+
+    private PlanInputDto createPlan(OptimizedActivity optimizedActivity) {
+        PlanInputDto planInputDto = new PlanInputDto();
+        planInputDto.setName("Plan");
+        planInputDto.setMaxCommutesPerDay(1);
+        planInputDto.setOptimizedActivity(optimizedActivity);
+        return planInputDto;
+    }
+
+    private LessonWithPossibleTerms createLesson(int id, Term... possibleTerms) {
+        LessonWithPossibleTerms lesson = new LessonWithPossibleTerms();
+        lesson.setId(id);
+        lesson.setName("Lesson " + id);
+        lesson.setPossibleTerms(Arrays.asList(possibleTerms));
+        return lesson;
+    }
+
+    private OptimizedActivity createOptimizedActivity(int id) {
+        OptimizedActivity optimizedActivity = new OptimizedActivity();
+        optimizedActivity.setId(id);
+        optimizedActivity.setName("Work");
+        optimizedActivity.setStartsAt(LocalTime.of(7, 0));
+        optimizedActivity.setEndsAt(LocalTime.of(19, 0));
+        optimizedActivity.setMinTimeInMinutes(60);
+        optimizedActivity.setMaxTimeInMinutes(480);
+        optimizedActivity.setIsOpenedInDay(new ArrayList<>(Collections.nCopies(2, true)));
+        return optimizedActivity;
+    }
+}